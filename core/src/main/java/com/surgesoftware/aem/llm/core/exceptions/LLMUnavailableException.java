@@ -28,6 +28,9 @@ public class LLMUnavailableException extends IOException {
     private final String userFriendlyMessage;
     private final String technicalDetails;
     private final String suggestion;
+    private boolean circuitOpen;
+    private boolean deadlineExceeded;
+    private long retryAfterSeconds;
     
     public LLMUnavailableException(String message) {
         super(message);
@@ -62,6 +65,27 @@ public class LLMUnavailableException extends IOException {
         return suggestion;
     }
     
+    /**
+     * Whether the request was rejected by the open circuit breaker without reaching the LLM
+     */
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+    
+    /**
+     * Whether the request ran out of its time budget (or its client went away) before the LLM answered
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+    
+    /**
+     * Seconds after which a new attempt makes sense, 0 if unknown
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+    
     /**
      * Create a timeout-specific exception with appropriate suggestions
      */
@@ -94,4 +118,33 @@ public class LLMUnavailableException extends IOException {
             "Please ensure Ollama is running. Try: 'ollama serve' or check if the service is accessible"
         );
     }
-}
\ No newline at end of file
+    
+    /**
+     * Create a fail-fast exception for requests rejected by the open circuit breaker
+     */
+    public static LLMUnavailableException forCircuitOpen(String apiUrl, long retryAfterSeconds) {
+        LLMUnavailableException exception = new LLMUnavailableException(
+            "LLM service is temporarily unavailable",
+            "Recent calls to " + apiUrl + " failed or were too slow, requests are rejected for " + retryAfterSeconds + "s",
+            "Please retry in " + retryAfterSeconds + " seconds. Check that Ollama is running and responsive"
+        );
+        exception.circuitOpen = true;
+        exception.retryAfterSeconds = retryAfterSeconds;
+        return exception;
+    }
+    
+    /**
+     * Create an exception for a request whose deadline passed; lastFailure is the failure of the
+     * last attempt that was made, if any
+     */
+    public static LLMUnavailableException forDeadlineExceeded(long budgetMillis, String lastFailure) {
+        LLMUnavailableException exception = new LLMUnavailableException(
+            "LLM request deadline exceeded",
+            "No response within the request budget of " + budgetMillis / 1000 + " seconds"
+                + (lastFailure != null ? " (last attempt: " + lastFailure + ")" : ""),
+            "Retry with a longer timeout, or use async=true for long generations"
+        );
+        exception.deadlineExceeded = true;
+        return exception;
+    }
+}
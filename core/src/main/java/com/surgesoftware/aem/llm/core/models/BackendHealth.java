@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backend Health Model
+ *
+ * Snapshot of the last lightweight liveness check of the LLM backend
+ * (reachability, latency, server version and models loaded in memory)
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BackendHealth {
+
+    public static final String STATUS_UP = "UP";
+    public static final String STATUS_DOWN = "DOWN";
+    public static final String STATUS_UNKNOWN = "UNKNOWN";
+    public static final String STATUS_DISABLED = "DISABLED";
+
+    @JsonProperty("status")
+    private String status = STATUS_UNKNOWN;
+
+    @JsonProperty("reachable")
+    private boolean reachable;
+
+    @JsonProperty("version")
+    private String version;
+
+    @JsonProperty("latencyMs")
+    private long latencyMs = -1;
+
+    @JsonProperty("lastCheck")
+    private long lastCheck;
+
+    @JsonProperty("loadedModels")
+    private List<String> loadedModels = new ArrayList<>();
+
+    @JsonProperty("error")
+    private String error;
+
+    public static BackendHealth of(String status, String error) {
+        BackendHealth health = new BackendHealth();
+        health.setStatus(status);
+        health.setError(error);
+        return health;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public void setReachable(boolean reachable) {
+        this.reachable = reachable;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public void setLastCheck(long lastCheck) {
+        this.lastCheck = lastCheck;
+    }
+
+    public List<String> getLoadedModels() {
+        return loadedModels;
+    }
+
+    public void setLoadedModels(List<String> loadedModels) {
+        this.loadedModels = loadedModels;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BackendHealth{" +
+                "status='" + status + '\'' +
+                ", version='" + version + '\'' +
+                ", latencyMs=" + latencyMs +
+                ", loadedModels=" + loadedModels +
+                '}';
+    }
+}
@@ -26,13 +26,13 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  */
 public class ComponentField {
     
-    @JsonProperty("name")
+    @JsonProperty(value = "name", required = true)
     private String name;
     
-    @JsonProperty("type")
+    @JsonProperty(value = "type", required = true)
     private String type;
     
-    @JsonProperty("label")
+    @JsonProperty(value = "label", required = true)
     private String label;
     
     @JsonProperty("description")
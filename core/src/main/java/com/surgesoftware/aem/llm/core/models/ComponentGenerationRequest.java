@@ -15,6 +15,7 @@
  */
 package com.surgesoftware.aem.llm.core.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -42,6 +43,18 @@ public class ComponentGenerationRequest {
     @JsonProperty("imageData")
     private String imageData;
     
+    // Uploaded image spooled off the heap, takes precedence over imageData
+    @JsonIgnore
+    private ImageAttachment image;
+    
+    // Skip cached responses and generate afresh (the new response still refreshes the cache)
+    @JsonProperty("bypassCache")
+    private boolean bypassCache;
+    
+    // Epoch millis after which the client no longer waits for the result, 0 if it set none
+    @JsonProperty("deadline")
+    private long deadline;
+    
     public ComponentGenerationRequest() {
         // Default constructor for Jackson
     }
@@ -92,10 +105,45 @@ public class ComponentGenerationRequest {
     
     public void setImageData(String imageData) {
         this.imageData = imageData;
+        this.image = null;
+    }
+    
+    /**
+     * The image of this request: the uploaded attachment, or one reading the imageData data URL
+     */
+    @JsonIgnore
+    public ImageAttachment getImage() {
+        if (image == null && imageData != null && !imageData.isEmpty()) {
+            image = ImageAttachment.fromDataUrl(imageData);
+        }
+        return image;
+    }
+    
+    /**
+     * Attach an uploaded image; it is closed once no generation needs it any more
+     */
+    public void setImage(ImageAttachment image) {
+        this.image = image;
+    }
+    
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+    
+    public void setBypassCache(boolean bypassCache) {
+        this.bypassCache = bypassCache;
+    }
+    
+    public long getDeadline() {
+        return deadline;
+    }
+    
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
     }
     
     public boolean hasImage() {
-        return imageData != null && !imageData.isEmpty();
+        return image != null || (imageData != null && !imageData.isEmpty());
     }
     
     @Override
@@ -28,6 +28,15 @@ import java.util.HashMap;
  */
 public class ComponentGenerationResponse {
     
+    /** The request was not admitted because the generation queue is full */
+    public static final String ERROR_QUEUE_FULL = "queue_full";
+    
+    /** The request was rejected by the open circuit breaker without reaching the LLM */
+    public static final String ERROR_CIRCUIT_OPEN = "circuit_open";
+
+    /** The request deadline passed before the LLM answered */
+    public static final String ERROR_DEADLINE_EXCEEDED = "deadline_exceeded";
+
     @JsonProperty("status")
     private String status;
     
@@ -58,6 +67,21 @@ public class ComponentGenerationResponse {
     @JsonProperty("timestamp")
     private String timestamp;
     
+    @JsonProperty("errorCode")
+    private String errorCode;
+    
+    @JsonProperty("retryAfterSeconds")
+    private Long retryAfterSeconds;
+    
+    @JsonProperty("queuePosition")
+    private Integer queuePosition;
+    
+    @JsonProperty("cached")
+    private boolean cached;
+    
+    @JsonProperty("similarity")
+    private Double similarity;
+    
     public ComponentGenerationResponse() {
         this.generatedFiles = new HashMap<>();
         this.sampleData = new HashMap<>();
@@ -157,6 +181,52 @@ public class ComponentGenerationResponse {
         this.timestamp = timestamp;
     }
     
+    public String getErrorCode() {
+        return errorCode;
+    }
+    
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+    
+    public Long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+    
+    public void setRetryAfterSeconds(Long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public Integer getQueuePosition() {
+        return queuePosition;
+    }
+    
+    public void setQueuePosition(Integer queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+    
+    /**
+     * Whether this response was served from the response cache instead of a new generation
+     */
+    public boolean isCached() {
+        return cached;
+    }
+    
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+    
+    /**
+     * Prompt similarity of a response served by the semantic cache, null otherwise
+     */
+    public Double getSimilarity() {
+        return similarity;
+    }
+    
+    public void setSimilarity(Double similarity) {
+        this.similarity = similarity;
+    }
+    
     public boolean isSuccess() {
         return "success".equals(status);
     }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Generated Artifacts Model
+ *
+ * Repository paths and URLs of the files persisted for one generated component
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class GeneratedArtifacts {
+
+    @JsonProperty("savedPath")
+    private String savedPath;
+
+    @JsonProperty("zipPath")
+    private String zipPath;
+
+    @JsonProperty("previewPath")
+    private String previewPath;
+
+    @JsonProperty("downloadUrl")
+    private String downloadUrl;
+
+    @JsonProperty("previewUrl")
+    private String previewUrl;
+
+    public String getSavedPath() {
+        return savedPath;
+    }
+
+    public void setSavedPath(String savedPath) {
+        this.savedPath = savedPath;
+    }
+
+    public String getZipPath() {
+        return zipPath;
+    }
+
+    public void setZipPath(String zipPath) {
+        this.zipPath = zipPath;
+    }
+
+    public String getPreviewPath() {
+        return previewPath;
+    }
+
+    public void setPreviewPath(String previewPath) {
+        this.previewPath = previewPath;
+    }
+
+    public String getDownloadUrl() {
+        return downloadUrl;
+    }
+
+    public void setDownloadUrl(String downloadUrl) {
+        this.downloadUrl = downloadUrl;
+    }
+
+    public String getPreviewUrl() {
+        return previewUrl;
+    }
+
+    public void setPreviewUrl(String previewUrl) {
+        this.previewUrl = previewUrl;
+    }
+
+    @Override
+    public String toString() {
+        return "GeneratedArtifacts{" +
+                "savedPath='" + savedPath + '\'' +
+                ", downloadUrl='" + downloadUrl + '\'' +
+                ", previewUrl='" + previewUrl + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Generation Job Model
+ *
+ * State of a component generation submitted asynchronously: lifecycle status,
+ * current stage and progress while running, and the persisted result (or error) once done.
+ * Written by the generation thread and read by status requests, hence the volatile fields.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GenerationJob {
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @JsonProperty("jobId")
+    private final String jobId;
+
+    @JsonProperty("prompt")
+    private final String prompt;
+
+    @JsonProperty("status")
+    private volatile String status = STATUS_QUEUED;
+
+    @JsonProperty("stage")
+    private volatile String stage;
+
+    @JsonProperty("stageDetail")
+    private volatile String stageDetail;
+
+    @JsonProperty("tokensReceived")
+    private volatile long tokensReceived;
+
+    @JsonProperty("createdAt")
+    private final long createdAt;
+
+    @JsonProperty("startedAt")
+    private volatile Long startedAt;
+
+    @JsonProperty("completedAt")
+    private volatile Long completedAt;
+
+    @JsonProperty("result")
+    private volatile Map<String, Object> result;
+
+    @JsonProperty("error")
+    private volatile String error;
+
+    @JsonProperty("errorCode")
+    private volatile String errorCode;
+
+    @JsonProperty("modelError")
+    private volatile String modelError;
+
+    @JsonProperty("retryAfterSeconds")
+    private volatile Long retryAfterSeconds;
+
+    @JsonIgnore
+    private volatile ComponentGenerationResponse failedResponse;
+
+    public GenerationJob(String jobId, String prompt) {
+        this.jobId = jobId;
+        this.prompt = prompt;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public String getStageDetail() {
+        return stageDetail;
+    }
+
+    public void setStageDetail(String stageDetail) {
+        this.stageDetail = stageDetail;
+    }
+
+    public long getTokensReceived() {
+        return tokensReceived;
+    }
+
+    public void setTokensReceived(long tokensReceived) {
+        this.tokensReceived = tokensReceived;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Long completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public Map<String, Object> getResult() {
+        return result;
+    }
+
+    public void setResult(Map<String, Object> result) {
+        this.result = result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getModelError() {
+        return modelError;
+    }
+
+    public void setModelError(String modelError) {
+        this.modelError = modelError;
+    }
+
+    public Long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(Long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * The generation response of a failed job, kept to map the failure to an HTTP status
+     */
+    @JsonIgnore
+    public ComponentGenerationResponse getFailedResponse() {
+        return failedResponse;
+    }
+
+    @JsonIgnore
+    public void setFailedResponse(ComponentGenerationResponse failedResponse) {
+        this.failedResponse = failedResponse;
+    }
+
+    @JsonIgnore
+    public boolean isDone() {
+        return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Image Attachment Model
+ *
+ * An image sent along with a generation request, kept out of the heap: uploads are spooled to a
+ * temporary file in small chunks and read back as a stream every time a request body is written,
+ * so retries do not hold a copy either. Images given as a Base64 data URL
+ * ({@link ComponentGenerationRequest#setImageData}) are decoded on the fly from that string.
+ *
+ * Closing the attachment deletes its temporary file; the service does so once the generation
+ * that uses it has completed.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public final class ImageAttachment implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String contentType;
+    private final long size;
+    private final String digest;
+    private final Path file;
+    private final String dataUrl;
+    private final int dataStart;
+
+    private ImageAttachment(String contentType, long size, String digest, Path file, String dataUrl, int dataStart) {
+        this.contentType = contentType;
+        this.size = size;
+        this.digest = digest;
+        this.file = file;
+        this.dataUrl = dataUrl;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * Copy an upload to a temporary file, hashing it on the way
+     *
+     * @param maxBytes largest accepted image
+     * @throws IllegalArgumentException if the upload is larger than maxBytes
+     */
+    public static ImageAttachment spool(InputStream upload, String contentType, long maxBytes) throws IOException {
+        Path file = Files.createTempFile("surge-llm-image-", ".upload");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            MessageDigest sha256 = sha256();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+            int read;
+            while ((read = upload.read(buffer)) != -1) {
+                size += read;
+                if (size > maxBytes) {
+                    throw new IllegalArgumentException("Image file too large. Maximum size is "
+                        + (maxBytes / 1024 / 1024) + "MB");
+                }
+                sha256.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+            return new ImageAttachment(contentType, size, hex(sha256.digest()), file, null, 0);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Image given as a data URL ({@code data:image/png;base64,...}) or plain Base64; null if there is none
+     */
+    public static ImageAttachment fromDataUrl(String dataUrl) {
+        if (dataUrl == null || dataUrl.isEmpty()) {
+            return null;
+        }
+        int comma = dataUrl.indexOf(',');
+        String contentType = null;
+        if (dataUrl.startsWith("data:") && comma > 0) {
+            int semicolon = dataUrl.indexOf(';');
+            contentType = dataUrl.substring("data:".length(), semicolon > 0 && semicolon < comma ? semicolon : comma);
+        }
+        int dataStart = comma + 1;
+        int length = dataUrl.length() - dataStart;
+        int padding = length > 0 && dataUrl.charAt(dataUrl.length() - 1) == '='
+            ? (length > 1 && dataUrl.charAt(dataUrl.length() - 2) == '=' ? 2 : 1) : 0;
+
+        // Hashed as text: a data URL is not decoded until a request body is written
+        MessageDigest sha256 = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int i = dataStart; i < dataUrl.length(); ) {
+            int n = Math.min(buffer.length, dataUrl.length() - i);
+            for (int j = 0; j < n; j++) {
+                buffer[j] = (byte) dataUrl.charAt(i + j);
+            }
+            sha256.update(buffer, 0, n);
+            i += n;
+        }
+        return new ImageAttachment(contentType, length / 4L * 3 - padding, hex(sha256.digest()), null, dataUrl,
+                                   dataStart);
+    }
+
+    /**
+     * Content type of the upload, e.g. image/png; null if unknown
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Size of the image in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * SHA-256 of the image (of its Base64 text for data URLs), identifying it in request keys
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Open a new stream of the raw image bytes; every call starts from the beginning
+     */
+    public InputStream openStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        return Base64.getMimeDecoder().wrap(new InputStream() {
+            private int position = dataStart;
+
+            @Override
+            public int read() {
+                return position < dataUrl.length() ? dataUrl.charAt(position++) & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                int n = Math.min(len, dataUrl.length() - position);
+                if (n <= 0) {
+                    return -1;
+                }
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) dataUrl.charAt(position++);
+                }
+                return n;
+            }
+        });
+    }
+
+    /**
+     * Delete the temporary file of a spooled upload; streams already open keep reading where the platform allows it
+     */
+    @Override
+    public void close() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImageAttachment{" +
+                "contentType='" + contentType + '\'' +
+                ", size=" + size +
+                ", spooled=" + (file != null) +
+                '}';
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -23,40 +23,41 @@ import java.util.HashMap;
 /**
  * LLM Response Model
  * 
- * Represents the structured response from local LLM for AEM component generation
+ * Represents the structured response from local LLM for AEM component generation.
+ * Properties marked required are required by the JSON schema sent in structured output mode.
  * 
  * @author SURGE Software Solutions Private Limited
  */
 public class LLMResponse {
     
-    @JsonProperty("name")
+    @JsonProperty(value = "name", required = true)
     private String name;
     
-    @JsonProperty("description")
+    @JsonProperty(value = "description", required = true)
     private String description;
     
-    @JsonProperty("fields")
+    @JsonProperty(value = "fields", required = true)
     private List<ComponentField> fields;
     
-    @JsonProperty("html")
+    @JsonProperty(value = "html", required = true)
     private String html;
     
-    @JsonProperty("dialog")
+    @JsonProperty(value = "dialog", required = true)
     private String dialog;
     
     @JsonProperty("js")
     private String js;
     
-    @JsonProperty("java")
+    @JsonProperty(value = "java", required = true)
     private String java;
     
-    @JsonProperty("content")
+    @JsonProperty(value = "content", required = true)
     private String content;
     
     @JsonProperty("sampleData")
     private Map<String, Object> sampleData;
     
-    @JsonProperty("previewHtml")
+    @JsonProperty(value = "previewHtml", required = true)
     private String previewHtml;
     
     public LLMResponse() {
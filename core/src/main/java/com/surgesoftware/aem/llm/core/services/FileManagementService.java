@@ -15,6 +15,9 @@
  */
 package com.surgesoftware.aem.llm.core.services;
 
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
+
 import java.util.Map;
 
 /**
@@ -54,6 +57,16 @@ public interface FileManagementService {
      */
     String savePreviewFile(String htmlContent, String timestamp);
     
+    /**
+     * Persist a successful generation: component files, ZIP archive and preview,
+     * and resolve their download and preview URLs
+     * 
+     * @param generationResponse The successful generation response
+     * @param timestamp Timestamp for folder and file naming
+     * @return Paths and URLs of the persisted artifacts
+     */
+    GeneratedArtifacts saveGeneratedComponent(ComponentGenerationResponse generationResponse, String timestamp);
+    
     /**
      * Get the download URL for a ZIP file
      * 
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * OSGi Configuration for SURGE AEM LLM Connector - Generation Jobs
+ * 
+ * Retention of asynchronously submitted component generations and their results.
+ * 
+ * @author SURGE Software Solutions Private Limited
+ */
+@ObjectClassDefinition(
+    name = "SURGE AEM LLM Connector - Generation Job Configuration",
+    description = "Retention of asynchronous component generation jobs (/bin/aem-llm/jobs)"
+)
+public @interface GenerationJobConfiguration {
+
+    @AttributeDefinition(
+        name = "Job Retention (minutes)",
+        description = "How long the status and result of a finished generation job can be fetched",
+        type = AttributeType.INTEGER
+    )
+    int jobRetentionMinutes() default 60;
+
+    @AttributeDefinition(
+        name = "Max Retained Jobs",
+        description = "Maximum number of finished jobs kept in memory. The oldest are dropped first",
+        type = AttributeType.INTEGER
+    )
+    int maxRetainedJobs() default 200;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.GenerationJob;
+
+/**
+ * Generation Job Service for SURGE AEM LLM Connector
+ * 
+ * Runs component generations detached from the HTTP request that submitted them,
+ * so clients can poll for progress and the result instead of holding a connection
+ * open for the whole generation.
+ * 
+ * @author SURGE Software Solutions Private Limited
+ */
+public interface GenerationJobService {
+
+    /**
+     * Submit a generation; it runs on the service's generation executor and its
+     * artifacts are saved through {@link FileManagementService} when it succeeds
+     * 
+     * @param request The component generation request
+     * @param timestamp Timestamp for folder and file naming of the saved artifacts
+     * @return The new job, or a FAILED job that was not retained when the request was rejected up front
+     */
+    GenerationJob submit(ComponentGenerationRequest request, String timestamp);
+
+    /**
+     * Look up a job by id
+     * 
+     * @param jobId The id returned by {@link #submit(ComponentGenerationRequest, String)}
+     * @return The job, or null if it is unknown or its retention period expired
+     */
+    GenerationJob getJob(String jobId);
+}
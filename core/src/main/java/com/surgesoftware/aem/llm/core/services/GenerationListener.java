@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+
+/**
+ * Generation Listener for SURGE AEM LLM Connector
+ *
+ * Callback interface for observing a component generation while it runs:
+ * stage changes, the tokens streamed by the local LLM and the fields of the generated
+ * component as soon as each one is complete. Callbacks are invoked
+ * on the thread performing the generation and must return quickly.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public interface GenerationListener {
+
+    String STAGE_QUEUED = "queued";
+    String STAGE_MODEL_LOADING = "model_loading";
+    String STAGE_GENERATING = "generating";
+    String STAGE_RETRYING = "retrying";
+    String STAGE_PARSING = "parsing";
+    String STAGE_SAVING = "saving";
+
+    /**
+     * Called when the generation enters a new stage
+     *
+     * @param stage One of the STAGE_* constants
+     * @param detail Optional human readable detail, may be null
+     */
+    default void onStage(String stage, String detail) {
+    }
+
+    /**
+     * Called for each token received from the local LLM
+     *
+     * @param token The generated text fragment
+     */
+    default void onToken(String token) {
+    }
+
+    /**
+     * Called while generating each time a top-level field of the component JSON (such as
+     * {@code html} or {@code java}) has been generated completely. Fields of an attempt that
+     * fails may be reported before a retry reports them again.
+     *
+     * @param name The field name
+     * @param value The complete field value
+     */
+    default void onField(String name, JsonNode value) {
+    }
+
+    /**
+     * Called before generating when an earlier generation for a similar prompt is cached.
+     * The suggestion can be shown right away while the fresh generation runs.
+     *
+     * @param suggestion The cached response
+     * @param similarity Cosine similarity of the prompts (0.0 to 1.0)
+     */
+    default void onSuggestion(ComponentGenerationResponse suggestion, double similarity) {
+    }
+}
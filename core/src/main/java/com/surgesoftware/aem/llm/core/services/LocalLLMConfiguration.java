@@ -46,6 +46,27 @@ public @interface LocalLLMConfiguration {
         type = AttributeType.STRING
     )
     String apiUrl() default "http://localhost:11434/api/generate";
+
+    @AttributeDefinition(
+        name = "Inference Backends",
+        description = "Several servers of the same provider to balance generations across, one per entry: URL;weight=N;maxConcurrency=N (e.g. http://box1:11434;weight=2;maxConcurrency=2). A bare server URL gets the path of the LLM API URL; maxConcurrency defaults to Max Connections per Route. When set, the max in-flight generations are the sum of the backends' max concurrency. Empty uses the LLM API URL only",
+        type = AttributeType.STRING
+    )
+    String[] backends() default {};
+
+    @AttributeDefinition(
+        name = "Outlier Ejection - Consecutive Failures",
+        description = "A backend failing this many calls in a row is taken out of rotation for a while",
+        type = AttributeType.INTEGER
+    )
+    int outlierConsecutiveFailures() default 3;
+
+    @AttributeDefinition(
+        name = "Outlier Ejection - Base Time (seconds)",
+        description = "How long an ejected backend stays out of rotation, multiplied by the number of times in a row it was ejected",
+        type = AttributeType.INTEGER
+    )
+    int outlierEjectionSeconds() default 30;
     
     @AttributeDefinition(
         name = "LLM Model",
@@ -84,10 +105,17 @@ public @interface LocalLLMConfiguration {
     
     @AttributeDefinition(
         name = "Retry Attempts",
-        description = "Number of retry attempts for failed requests",
+        description = "Number of attempts per generation, the first call included. Only transient failures (timeouts, connection errors, overload) are retried, with jittered backoff",
         type = AttributeType.INTEGER
     )
     int retryAttempts() default 3;
+
+    @AttributeDefinition(
+        name = "Retry Budget (%)",
+        description = "Retries may add at most this share of the generations of the last minute, so a failing backend is not flooded with retries (a few retries per minute are always allowed)",
+        type = AttributeType.INTEGER
+    )
+    int retryBudgetPercent() default 20;
     
     @AttributeDefinition(
         name = "System Prompt",
@@ -102,4 +130,263 @@ public @interface LocalLLMConfiguration {
         type = AttributeType.BOOLEAN
     )
     boolean stripMarkdown() default true;
-} 
\ No newline at end of file
+
+    @AttributeDefinition(
+        name = "Stop at End of JSON",
+        description = "Close the Ollama stream as soon as the generated component JSON object is complete, instead of waiting for the explanation models tend to add after it",
+        type = AttributeType.BOOLEAN
+    )
+    boolean stopAtJsonEnd() default true;
+
+    @AttributeDefinition(
+        name = "Structured Output",
+        description = "Constrain generation to the JSON schema of a component (Ollama 'format', 'response_format' for LocalAI and other OpenAI-compatible servers), so the response always parses and needs no repair. Requires a backend version that supports JSON schema output",
+        type = AttributeType.BOOLEAN
+    )
+    boolean structuredOutput() default false;
+
+    @AttributeDefinition(
+        name = "Max Connections (total)",
+        description = "Maximum number of pooled HTTP connections to the LLM backend(s)",
+        type = AttributeType.INTEGER
+    )
+    int maxConnectionsTotal() default 8;
+
+    @AttributeDefinition(
+        name = "Max Connections per Route",
+        description = "Minimum size of the HTTP connection pool per backend host. Each host always gets room for its in-flight generations plus its health probe, model keeper and model catalog calls",
+        type = AttributeType.INTEGER
+    )
+    int maxConnectionsPerRoute() default 4;
+
+    @AttributeDefinition(
+        name = "Connection Keep-Alive (seconds)",
+        description = "How long an idle pooled connection may be reused when the server sends no Keep-Alive hint",
+        type = AttributeType.INTEGER
+    )
+    int keepAliveSeconds() default 60;
+
+    @AttributeDefinition(
+        name = "Idle Connection Eviction (seconds)",
+        description = "Pooled connections idle for longer than this are closed by a background evictor",
+        type = AttributeType.INTEGER
+    )
+    int idleConnectionEvictSeconds() default 30;
+
+    @AttributeDefinition(
+        name = "Connection Lease Timeout (seconds)",
+        description = "Maximum time a request waits for a free pooled connection",
+        type = AttributeType.INTEGER
+    )
+    int connectionLeaseTimeout() default 30;
+
+    @AttributeDefinition(
+        name = "Max In-Flight Generations",
+        description = "Maximum number of generations running against the LLM backend at the same time. Further requests wait in the service's work queue",
+        type = AttributeType.INTEGER
+    )
+    int maxInFlightRequests() default 4;
+
+    @AttributeDefinition(
+        name = "Max Queued Generations",
+        description = "Maximum number of generations waiting for a free slot. Further requests are rejected right away with 429 and a Retry-After estimate",
+        type = AttributeType.INTEGER
+    )
+    int maxQueuedRequests() default 8;
+
+    @AttributeDefinition(
+        name = "Model Catalog TTL (seconds)",
+        description = "How long the cached list of models installed on each backend (/api/tags) is used before it is refreshed in the background",
+        type = AttributeType.INTEGER
+    )
+    int modelCatalogTtlSeconds() default 60;
+
+    @AttributeDefinition(
+        name = "Circuit Breaker Window Size",
+        description = "Number of most recent LLM calls the circuit breaker evaluates",
+        type = AttributeType.INTEGER
+    )
+    int circuitBreakerWindowSize() default 10;
+
+    @AttributeDefinition(
+        name = "Circuit Breaker Failure Rate Threshold (%)",
+        description = "Failure rate over the window at which the circuit breaker opens and requests fail fast",
+        type = AttributeType.INTEGER
+    )
+    int circuitBreakerFailureRateThreshold() default 50;
+
+    @AttributeDefinition(
+        name = "Circuit Breaker Slow Call Rate Threshold (%)",
+        description = "Slow call rate over the window at which the circuit breaker opens",
+        type = AttributeType.INTEGER
+    )
+    int circuitBreakerSlowCallRateThreshold() default 80;
+
+    @AttributeDefinition(
+        name = "Circuit Breaker Slow Call Duration (seconds)",
+        description = "LLM calls taking at least this long count as slow",
+        type = AttributeType.INTEGER
+    )
+    int circuitBreakerSlowCallSeconds() default 120;
+
+    @AttributeDefinition(
+        name = "Circuit Breaker Open Duration (seconds)",
+        description = "How long an open circuit breaker rejects requests before letting a single probe through",
+        type = AttributeType.INTEGER
+    )
+    int circuitBreakerOpenSeconds() default 30;
+
+    @AttributeDefinition(
+        name = "Health Probe Interval (seconds)",
+        description = "How often the LLM backend is checked in the background with lightweight metadata calls (/api/version, /api/ps)",
+        type = AttributeType.INTEGER
+    )
+    int healthProbeIntervalSeconds() default 15;
+
+    @AttributeDefinition(
+        name = "Adaptive Timeouts Enabled",
+        description = "Derive first-token, idle (between tokens) and overall deadlines per model from the prompt eval and token rates of recent generations, so a stalled stream is aborted within seconds. Until a model has a few samples the Timeout applies (Ollama)",
+        type = AttributeType.BOOLEAN
+    )
+    boolean adaptiveTimeoutsEnabled() default true;
+
+    @AttributeDefinition(
+        name = "Minimum Stream Deadline (seconds)",
+        description = "Lower bound for the learned first-token and idle deadlines",
+        type = AttributeType.INTEGER
+    )
+    int minStreamDeadlineSeconds() default 10;
+
+    @AttributeDefinition(
+        name = "Request Deadline (seconds)",
+        description = "Wall-clock budget of one generation including queueing, retries, warm-up and fallback models. Every step is shortened to the time left or skipped; a client can ask for less with the timeout parameter. 0 disables the deadline",
+        type = AttributeType.INTEGER
+    )
+    int requestDeadlineSeconds() default 300;
+
+    @AttributeDefinition(
+        name = "Request Hedging Enabled",
+        description = "When the first token of a generation is late, send a duplicate request to another backend or slot and keep whichever streams first (Ollama, needs more than one in-flight slot)",
+        type = AttributeType.BOOLEAN
+    )
+    boolean hedgingEnabled() default false;
+
+    @AttributeDefinition(
+        name = "Hedge Delay Percentile",
+        description = "A duplicate request is sent once the first token is later than this percentile (50 to 99) of recent first-token times",
+        type = AttributeType.INTEGER
+    )
+    int hedgeDelayPercentile() default 95;
+
+    @AttributeDefinition(
+        name = "Hedge Budget (%)",
+        description = "Maximum extra load from duplicate requests, as a percentage of generation calls",
+        type = AttributeType.INTEGER
+    )
+    int hedgeBudgetPercent() default 10;
+
+    @AttributeDefinition(
+        name = "Response Cache Enabled",
+        description = "Serve identical generation requests (same prompt, requirements, image and model settings) from a cache of earlier successful responses. Off by default: with a temperature above 0, generating again is expected to give a new variant, while a cached request returns the earlier component until the TTL expires (requests can still bypass the cache)",
+        type = AttributeType.BOOLEAN
+    )
+    boolean responseCacheEnabled() default false;
+
+    @AttributeDefinition(
+        name = "Response Cache TTL (hours)",
+        description = "How long a cached generation response is served",
+        type = AttributeType.INTEGER
+    )
+    int responseCacheTtlHours() default 24;
+
+    @AttributeDefinition(
+        name = "Response Cache Heap Size (MB)",
+        description = "Approximate heap size of the in-memory cache tier; least recently used responses are evicted beyond it",
+        type = AttributeType.INTEGER
+    )
+    int responseCacheMaxSizeMb() default 16;
+
+    @AttributeDefinition(
+        name = "Persistent Response Cache",
+        description = "Also keep cached responses in the repository under /var/aem-llm/cache so they survive restarts (only with the response cache enabled; off by default)",
+        type = AttributeType.BOOLEAN
+    )
+    boolean responseCachePersistent() default false;
+
+    @AttributeDefinition(
+        name = "Semantic Cache Enabled",
+        description = "Also serve cached responses for prompts that are worded differently but mean the same, using prompt embeddings from the backend (requires the response cache)",
+        type = AttributeType.BOOLEAN
+    )
+    boolean semanticCacheEnabled() default false;
+
+    @AttributeDefinition(
+        name = "Semantic Cache Embedding Model",
+        description = "Embedding model served by the backend (Ollama: nomic-embed-text, all-minilm, mxbai-embed-large)",
+        type = AttributeType.STRING
+    )
+    String semanticCacheEmbeddingModel() default "nomic-embed-text";
+
+    @AttributeDefinition(
+        name = "Semantic Cache Hit Threshold",
+        description = "Cosine similarity (0.0 to 1.0) at which a cached response is returned instead of generating",
+        type = AttributeType.DOUBLE
+    )
+    double semanticCacheThreshold() default 0.92;
+
+    @AttributeDefinition(
+        name = "Semantic Cache Suggestion Threshold",
+        description = "Cosine similarity (0.0 to 1.0) at which a cached response is offered as a suggestion while a fresh generation runs",
+        type = AttributeType.DOUBLE
+    )
+    double semanticCacheSuggestionThreshold() default 0.80;
+
+    @AttributeDefinition(
+        name = "Semantic Cache Max Entries",
+        description = "Maximum number of prompt embeddings kept in the in-memory index; the oldest are replaced first",
+        type = AttributeType.INTEGER
+    )
+    int semanticCacheMaxEntries() default 10000;
+
+    @AttributeDefinition(
+        name = "Model Keep-Alive",
+        description = "How long Ollama keeps a model loaded after a request, sent with every request (Ollama duration such as 30m or 2h, seconds, or -1 to keep it loaded indefinitely). Empty uses the server default of 5 minutes",
+        type = AttributeType.STRING
+    )
+    String modelKeepAlive() default "30m";
+
+    @AttributeDefinition(
+        name = "Warm Up on Activation",
+        description = "Load the kept-warm models in the background as soon as the service activates",
+        type = AttributeType.BOOLEAN
+    )
+    boolean warmUpOnActivate() default true;
+
+    @AttributeDefinition(
+        name = "Keep Models Warm",
+        description = "Check the loaded models (/api/ps) in the background and reload them before their keep-alive expires",
+        type = AttributeType.BOOLEAN
+    )
+    boolean keepWarmEnabled() default true;
+
+    @AttributeDefinition(
+        name = "Kept-Warm Models",
+        description = "Models kept loaded by the background keeper. Empty keeps the configured model warm",
+        type = AttributeType.STRING
+    )
+    String[] keepWarmModels() default {};
+
+    @AttributeDefinition(
+        name = "Keep-Warm Schedule",
+        description = "Days and hours (server time zone) during which models are kept loaded, e.g. MON-FRI 08:00-19:00. Empty keeps them loaded at all times",
+        type = AttributeType.STRING
+    )
+    String keepWarmSchedule() default "";
+
+    @AttributeDefinition(
+        name = "Keep-Warm Check Interval (seconds)",
+        description = "How often the keeper checks the loaded models and their expiry",
+        type = AttributeType.INTEGER
+    )
+    int keepWarmCheckSeconds() default 60;
+}  
\ No newline at end of file
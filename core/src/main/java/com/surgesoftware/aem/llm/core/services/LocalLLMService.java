@@ -15,9 +15,13 @@
  */
 package com.surgesoftware.aem.llm.core.services;
 
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Local LLM Service for SURGE AEM LLM Connector
  * 
@@ -35,18 +39,69 @@ public interface LocalLLMService {
      * @return ComponentGenerationResponse with generated files and metadata
      */
     ComponentGenerationResponse generateComponent(ComponentGenerationRequest request);
-    
+
+    /**
+     * Generate AEM component files using local LLM, reporting progress while generating
+     *
+     * @param request The component generation request containing prompt and requirements
+     * @param listener Listener notified of stage changes and streamed tokens, may be null
+     * @return ComponentGenerationResponse with generated files and metadata
+     */
+    ComponentGenerationResponse generateComponent(ComponentGenerationRequest request, GenerationListener listener);
+
+    /**
+     * Generate AEM component files without blocking the calling thread.
+     * The number of generations in flight against the local LLM is bounded by configuration;
+     * further requests wait in the service's work queue, and beyond that are answered right away
+     * with a queue-full error. The backend call itself is blocking I/O: each generation in flight
+     * occupies one thread of the service's bounded generation pool (never the caller's).
+     *
+     * @param request The component generation request containing prompt and requirements
+     * @return Future completed with the generation response (errors are reported in the response, not thrown)
+     */
+    CompletableFuture<ComponentGenerationResponse> generateComponentAsync(ComponentGenerationRequest request);
+
+    /**
+     * Generate AEM component files without blocking the calling thread, reporting progress while generating.
+     * An image attached to the request is closed (its temporary file deleted) once no generation needs it any more:
+     * when the generation it started is over, even if this caller cancelled earlier.
+     *
+     * @param request The component generation request containing prompt and requirements
+     * @param listener Listener notified of stage changes and streamed tokens, may be null
+     * @return Future completed with the generation response (errors are reported in the response, not thrown)
+     */
+    CompletableFuture<ComponentGenerationResponse> generateComponentAsync(ComponentGenerationRequest request,
+                                                                          GenerationListener listener);
+
     /**
-     * Test the local LLM connection
+     * Test the local LLM connection with a real generation (deep probe).
+     * This puts load on the model; use {@link #getBackendHealth()} for routine liveness checks.
+     * The generation goes through the same admission control as component generations, concurrent
+     * callers share one, and its result is reused for 30 seconds.
      * 
      * @return true if connection is successful, false otherwise
      */
     boolean testConnection();
     
+    /**
+     * Get the result of the last background liveness check of the LLM backend.
+     * Served from memory, never performs I/O.
+     *
+     * @return BackendHealth snapshot (reachability, latency, version, loaded models)
+     */
+    BackendHealth getBackendHealth();
+    
     /**
      * Get the current LLM provider and model information
      * 
      * @return String containing provider and model details
      */
     String getLLMInfo();
+
+    /**
+     * Get runtime metrics of the service (connection pool usage and similar)
+     *
+     * @return Map of metric groups, suitable for JSON serialization
+     */
+    Map<String, Object> getServiceMetrics();
 } 
\ No newline at end of file
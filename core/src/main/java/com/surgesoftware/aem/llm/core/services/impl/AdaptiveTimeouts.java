@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generation deadlines derived from how fast each model has actually been answering
+ *
+ * The {@code done} chunk of every Ollama generation reports the prompt evaluation and
+ * token generation counts and durations. Per model, exponentially weighted averages (with
+ * their mean deviation) of the prompt eval rate, the generation rate and the prompt length
+ * in characters per token are kept. For the next call they give, with a safety margin:
+ * <ul>
+ *   <li>a first-token deadline: the time to evaluate the prompt at a pessimistic rate</li>
+ *   <li>an idle deadline: the longest plausible gap between two tokens</li>
+ *   <li>an overall deadline: first token plus {@code num_predict} tokens at a pessimistic rate</li>
+ * </ul>
+ * The first-token and idle deadlines never drop below {@code minDeadlineMs}. Until a model
+ * has {@link #MIN_SAMPLES} samples there are no deadlines and the configured timeout applies.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class AdaptiveTimeouts {
+
+    static final int MIN_SAMPLES = 5;
+
+    private static final double ALPHA = 0.2;
+    private static final double DEVIATIONS = 3;
+    private static final double FIRST_TOKEN_FACTOR = 3;
+    private static final double IDLE_FACTOR = 20;
+    private static final double TOTAL_FACTOR = 2;
+    private static final double DEFAULT_CHARS_PER_TOKEN = 4;
+
+    private final long minDeadlineMs;
+    private final Map<String, ModelStats> models = new ConcurrentHashMap<>();
+
+    AdaptiveTimeouts(long minDeadlineMs) {
+        this.minDeadlineMs = minDeadlineMs;
+    }
+
+    /**
+     * Learn from the {@code done} chunk of a finished generation
+     *
+     * @param promptChars length of the prompt that was sent
+     */
+    void record(String model, int promptChars, OllamaChunk doneChunk) {
+        long promptEvalCount = doneChunk.promptEvalCount;
+        long promptEvalNanos = doneChunk.promptEvalDuration;
+        long evalCount = doneChunk.evalCount;
+        long evalNanos = doneChunk.evalDuration;
+        if (evalCount < 2 || evalNanos <= 0) {
+            return; // Nothing generated to learn from
+        }
+        models.computeIfAbsent(model, name -> new ModelStats())
+            .record(promptChars, promptEvalCount, promptEvalNanos, evalCount, evalNanos);
+    }
+
+    /**
+     * Deadlines for the next generation with the given model
+     *
+     * @param numPredict maximum number of tokens to generate
+     * @return the deadlines, or null while the model has too few samples
+     */
+    Deadlines deadlinesFor(String model, int promptChars, int numPredict) {
+        ModelStats stats = models.get(model);
+        return stats != null ? stats.deadlines(promptChars, numPredict, minDeadlineMs) : null;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("minDeadlineMs", minDeadlineMs);
+        Map<String, Object> perModel = new LinkedHashMap<>();
+        models.forEach((model, modelStats) -> perModel.put(model, modelStats.toMap()));
+        stats.put("models", perModel);
+        return stats;
+    }
+
+    /**
+     * Deadlines of one generation, in milliseconds from its start (first token and overall)
+     * or from the previous token (idle)
+     */
+    static final class Deadlines {
+
+        final long firstTokenMs;
+        final long idleMs;
+        final long totalMs;
+
+        Deadlines(long firstTokenMs, long idleMs, long totalMs) {
+            this.firstTokenMs = firstTokenMs;
+            this.idleMs = idleMs;
+            this.totalMs = totalMs;
+        }
+
+        @Override
+        public String toString() {
+            return "first token " + firstTokenMs + "ms, idle " + idleMs + "ms, total " + totalMs + "ms";
+        }
+    }
+
+    /**
+     * Rolling statistics of one model
+     */
+    private static final class ModelStats {
+
+        private final Ewma promptRate = new Ewma();
+        private final Ewma evalRate = new Ewma();
+        private final Ewma charsPerToken = new Ewma();
+        private long samples;
+
+        synchronized void record(int promptChars, long promptEvalCount, long promptEvalNanos,
+                                 long evalCount, long evalNanos) {
+            samples++;
+            evalRate.add(evalCount * 1e9 / evalNanos);
+            // Prompt eval is skipped for a cached prompt prefix; too few tokens say nothing about the rate
+            if (promptEvalCount >= 8 && promptEvalNanos > 0) {
+                promptRate.add(promptEvalCount * 1e9 / promptEvalNanos);
+                if (promptChars > 0) {
+                    charsPerToken.add((double) promptChars / promptEvalCount);
+                }
+            }
+        }
+
+        synchronized Deadlines deadlines(int promptChars, int numPredict, long minDeadlineMs) {
+            if (samples < MIN_SAMPLES || !promptRate.hasValue()) {
+                return null;
+            }
+            double promptTokens = promptChars / (charsPerToken.hasValue() ? charsPerToken.low() : DEFAULT_CHARS_PER_TOKEN);
+            long firstTokenMs = Math.max(minDeadlineMs,
+                Math.round(FIRST_TOKEN_FACTOR * promptTokens * 1000 / promptRate.low()));
+            long idleMs = Math.max(minDeadlineMs, Math.round(IDLE_FACTOR * 1000 / evalRate.low()));
+            long totalMs = firstTokenMs + Math.round(TOTAL_FACTOR * numPredict * 1000 / evalRate.low());
+            return new Deadlines(firstTokenMs, idleMs, totalMs);
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("samples", samples);
+            map.put("promptTokensPerSecond", Math.round(promptRate.mean));
+            map.put("tokensPerSecond", Math.round(evalRate.mean * 10) / 10.0);
+            map.put("charsPerToken", Math.round(charsPerToken.mean * 10) / 10.0);
+            return map;
+        }
+    }
+
+    /**
+     * Exponentially weighted mean and mean absolute deviation
+     */
+    private static final class Ewma {
+
+        private double mean;
+        private double deviation;
+        private boolean initialized;
+
+        void add(double value) {
+            if (!initialized) {
+                mean = value;
+                deviation = value / 4;
+                initialized = true;
+                return;
+            }
+            deviation = (1 - ALPHA) * deviation + ALPHA * Math.abs(value - mean);
+            mean = (1 - ALPHA) * mean + ALPHA * value;
+        }
+
+        boolean hasValue() {
+            return initialized;
+        }
+
+        /**
+         * Pessimistic value: a few deviations below the mean, but never below a quarter of it
+         */
+        double low() {
+            return Math.max(mean / 4, mean - DEVIATIONS * deviation);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configured inference backend: API URL, routing weight and the number of generations it runs at once
+ *
+ * Parsed from entries such as {@code http://box1:11434/api/generate;weight=2;maxConcurrency=2}.
+ * A bare server URL ({@code http://box1:11434}) gets the API path of the main API URL.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class BackendEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackendEndpoint.class);
+
+    final String apiUrl;
+    final int weight;
+    final int maxConcurrency;
+
+    BackendEndpoint(String apiUrl, int weight, int maxConcurrency) {
+        this.apiUrl = apiUrl;
+        this.weight = Math.max(1, weight);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Parse the configured backend entries; invalid entries are logged and skipped.
+     * Without any valid entry the main API URL is the only backend.
+     */
+    static List<BackendEndpoint> parseAll(String[] entries, String defaultApiUrl, int defaultConcurrency,
+                                          int singleBackendConcurrency) {
+        List<BackendEndpoint> endpoints = new ArrayList<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                if (entry == null || entry.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    endpoints.add(parse(entry.trim(), defaultApiUrl, defaultConcurrency));
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("⚠️ Ignoring invalid backend '{}': {}", entry, e.getMessage());
+                }
+            }
+        }
+        if (endpoints.isEmpty()) {
+            return Collections.singletonList(new BackendEndpoint(defaultApiUrl, 1, singleBackendConcurrency));
+        }
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    static BackendEndpoint parse(String entry, String defaultApiUrl, int defaultConcurrency) {
+        String[] parts = entry.split(";");
+        String url = parts[0].trim();
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            throw new IllegalArgumentException("URL must start with http:// or https://");
+        }
+        String baseUrl = BackendHealthProbe.baseUrlOf(url);
+        if (baseUrl.equals(url) || (baseUrl + "/").equals(url)) {
+            url = baseUrl + defaultApiUrl.substring(BackendHealthProbe.baseUrlOf(defaultApiUrl).length());
+        }
+
+        int weight = 1;
+        int maxConcurrency = defaultConcurrency;
+        for (int i = 1; i < parts.length; i++) {
+            String[] option = parts[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected name=value but got '" + parts[i].trim() + "'");
+            }
+            String name = option[0].trim();
+            int value;
+            try {
+                value = Integer.parseInt(option[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: '" + option[1].trim() + "'");
+            }
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1");
+            }
+            if ("weight".equals(name)) {
+                weight = value;
+            } else if ("maxConcurrency".equals(name)) {
+                maxConcurrency = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option '" + name + "'");
+            }
+        }
+        return new BackendEndpoint(url, weight, maxConcurrency);
+    }
+
+    @Override
+    public String toString() {
+        return apiUrl + ";weight=" + weight + ";maxConcurrency=" + maxConcurrency;
+    }
+}
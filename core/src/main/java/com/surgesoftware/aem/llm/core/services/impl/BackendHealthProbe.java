@@ -0,0 +1,170 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background liveness prober for the LLM backend
+ *
+ * A single scheduled thread checks the backend with cheap metadata calls
+ * ({@code /api/version} and {@code /api/ps} for Ollama, the model listing for
+ * OpenAI-compatible servers) and publishes an immutable {@link BackendHealth}
+ * snapshot. Readers get the last snapshot without any I/O.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class BackendHealthProbe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackendHealthProbe.class);
+
+    private static final int PROBE_TIMEOUT_MS = 3000;
+
+    private final CloseableHttpClient httpClient;
+    private final ObjectReader treeReader;
+    private final ObjectReader modelListReader;
+    private final boolean ollama;
+    private final String baseUrl;
+    private final long intervalMs;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile BackendHealth snapshot = BackendHealth.of(BackendHealth.STATUS_UNKNOWN, "Not checked yet");
+
+    BackendHealthProbe(CloseableHttpClient httpClient, ObjectMapper objectMapper, String provider,
+                       String apiUrl, long intervalMs) {
+        this.httpClient = httpClient;
+        this.treeReader = objectMapper.readerFor(JsonNode.class);
+        this.modelListReader = objectMapper.readerFor(OllamaModelList.class);
+        this.ollama = "ollama".equals(provider);
+        this.baseUrl = baseUrlOf(apiUrl);
+        this.intervalMs = intervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::probe, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Last published health snapshot, no I/O
+     */
+    BackendHealth getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Run one liveness check and publish its result
+     */
+    void probe() {
+        long startTime = System.currentTimeMillis();
+        BackendHealth health = new BackendHealth();
+        health.setLastCheck(startTime);
+        try {
+            if (ollama) {
+                JsonNode version = get(baseUrl + "/api/version", treeReader);
+                health.setLatencyMs(System.currentTimeMillis() - startTime);
+                health.setVersion(version.path("version").asText(null));
+                health.setLoadedModels(loadedModels());
+            } else {
+                get(baseUrl + "/v1/models", treeReader);
+                health.setLatencyMs(System.currentTimeMillis() - startTime);
+            }
+            health.setReachable(true);
+            health.setStatus(BackendHealth.STATUS_UP);
+            if (!snapshot.isReachable()) {
+                LOG.info("✅ LLM backend is reachable ({}ms, version {})", health.getLatencyMs(), health.getVersion());
+            }
+        } catch (Exception e) {
+            health.setLatencyMs(System.currentTimeMillis() - startTime);
+            health.setStatus(BackendHealth.STATUS_DOWN);
+            health.setError(e.getMessage());
+            if (snapshot.isReachable() || BackendHealth.STATUS_UNKNOWN.equals(snapshot.getStatus())) {
+                LOG.warn("❌ LLM backend liveness check failed: {}", e.getMessage());
+            }
+        }
+        snapshot = health;
+    }
+
+    /**
+     * Models currently loaded in memory; a failing {@code /api/ps} does not make the backend unhealthy
+     */
+    private List<String> loadedModels() {
+        try {
+            OllamaModelList listing = get(baseUrl + "/api/ps", modelListReader);
+            return listing.names();
+        } catch (IOException e) {
+            LOG.debug("Could not list loaded models: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private <T> T get(String url, ObjectReader reader) throws IOException {
+        HttpGet httpGet = new HttpGet(url);
+        httpGet.setConfig(RequestConfig.custom()
+            .setConnectTimeout(PROBE_TIMEOUT_MS)
+            .setSocketTimeout(PROBE_TIMEOUT_MS)
+            .setConnectionRequestTimeout(PROBE_TIMEOUT_MS)
+            .build());
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw new IOException("HTTP " + statusCode + " from " + url);
+            }
+            return reader.readValue(responseBody);
+        }
+    }
+
+    /**
+     * Server root of an API endpoint, e.g. http://localhost:11434 for http://localhost:11434/api/generate
+     */
+    static String baseUrlOf(String apiUrl) {
+        for (String marker : new String[] {"/api/", "/v1/"}) {
+            int index = apiUrl.indexOf(marker);
+            if (index > 0) {
+                return apiUrl.substring(0, index);
+            }
+        }
+        return apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+    }
+}
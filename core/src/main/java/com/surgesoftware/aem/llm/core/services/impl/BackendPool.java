@@ -0,0 +1,354 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Inference backends of the service and the routing between them
+ *
+ * Each call goes to the backend with the fewest outstanding requests relative to its
+ * weight, among the backends that are not excluded (already tried by this request),
+ * not ejected, not reported down by their health probe and below their max concurrency.
+ * Ties are spread round-robin. When no backend qualifies the constraints are relaxed in
+ * that order, so a request is never refused just because every backend looks unhealthy.
+ * A call for a given model first looks among the backends whose model catalog lists it
+ * (or is not known yet), so a model installed on some backends only is not swapped for
+ * another one while a backend that has it is left.
+ *
+ * Passive outlier ejection: a backend failing {@code consecutiveFailures} calls in a row is
+ * ejected for the base ejection time multiplied by the number of times it has been ejected
+ * (capped at ten); a successful call resets both.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class BackendPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackendPool.class);
+
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+    private final List<Backend> backends;
+    private final int consecutiveFailuresToEject;
+    private final long baseEjectionMs;
+    private final LongSupplier clock;
+    private int nextStart;
+
+    BackendPool(List<Backend> backends, int consecutiveFailuresToEject, long baseEjectionMs) {
+        this(backends, consecutiveFailuresToEject, baseEjectionMs, System::currentTimeMillis);
+    }
+
+    BackendPool(List<Backend> backends, int consecutiveFailuresToEject, long baseEjectionMs, LongSupplier clock) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required");
+        }
+        this.backends = Collections.unmodifiableList(new ArrayList<>(backends));
+        this.consecutiveFailuresToEject = Math.max(1, consecutiveFailuresToEject);
+        this.baseEjectionMs = baseEjectionMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Start the health probes, model catalogs and model keepers of all backends
+     */
+    void start(boolean warmUpNow, boolean keepWarm) {
+        for (Backend backend : backends) {
+            if (backend.healthProbe != null) {
+                backend.healthProbe.start();
+            }
+            if (backend.modelCatalog != null) {
+                backend.modelCatalog.start();
+            }
+            if (backend.modelKeeper != null) {
+                backend.modelKeeper.start(warmUpNow, keepWarm);
+            }
+        }
+    }
+
+    void close() {
+        for (Backend backend : backends) {
+            if (backend.healthProbe != null) {
+                backend.healthProbe.close();
+            }
+            if (backend.modelCatalog != null) {
+                backend.modelCatalog.close();
+            }
+            if (backend.modelKeeper != null) {
+                backend.modelKeeper.close();
+            }
+        }
+    }
+
+    /**
+     * First configured backend, used for metadata such as embeddings
+     */
+    Backend primary() {
+        return backends.get(0);
+    }
+
+    List<Backend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * Pick a backend for one call and count it as outstanding. Must be followed by {@link #release}.
+     *
+     * @param excluded backends already tried by this request, avoided while any other is left
+     */
+    synchronized Backend acquire(List<Backend> excluded) {
+        return acquire(excluded, null);
+    }
+
+    /**
+     * Pick a backend for one call of the given model, preferring the healthy backends that have it installed
+     *
+     * @param model model of the call, null when any backend will do
+     */
+    synchronized Backend acquire(List<Backend> excluded, String model) {
+        long now = clock.getAsLong();
+        Backend chosen = null;
+        if (model != null) {
+            chosen = pick(excluded, now, true, true, model);
+            if (chosen == null) {
+                chosen = pick(excluded, now, true, false, model);
+            }
+        }
+        if (chosen == null) {
+            chosen = pick(excluded, now, true, true, null);
+        }
+        if (chosen == null) {
+            // All eligible backends busy: the executor bounds the total, so queue on the least loaded
+            chosen = pick(excluded, now, true, false, null);
+        }
+        if (chosen == null) {
+            LOG.warn("⚠️ No healthy backend left to try, routing to an ejected or unhealthy one");
+            chosen = pick(excluded, now, false, false, null);
+        }
+        if (chosen == null) {
+            chosen = pick(Collections.emptyList(), now, false, false, null);
+        }
+        chosen.outstanding++;
+        chosen.requests++;
+        return chosen;
+    }
+
+    /**
+     * Record the outcome of a call started with {@link #acquire}
+     *
+     * @param failed whether the backend failed; failures caused by the request itself should not count
+     */
+    synchronized void release(Backend backend, boolean failed) {
+        backend.outstanding--;
+        if (!failed) {
+            backend.consecutiveFailures = 0;
+            if (backend.ejectedUntil <= clock.getAsLong()) {
+                backend.ejections = 0;
+            }
+            return;
+        }
+        backend.failures++;
+        backend.consecutiveFailures++;
+        long now = clock.getAsLong();
+        if (backend.consecutiveFailures >= consecutiveFailuresToEject && backend.ejectedUntil <= now) {
+            backend.ejections++;
+            long ejectionMs = baseEjectionMs * Math.min(backend.ejections, MAX_EJECTION_MULTIPLIER);
+            backend.ejectedUntil = now + ejectionMs;
+            backend.totalEjections++;
+            LOG.warn("🚫 Ejecting backend {} for {}ms after {} consecutive failures", backend.endpoint.apiUrl,
+                     ejectionMs, backend.consecutiveFailures);
+        }
+    }
+
+    /**
+     * Health of the service as a whole: the first reachable backend, otherwise the primary one
+     */
+    BackendHealth getHealth() {
+        for (Backend backend : backends) {
+            if (backend.isReachable()) {
+                return backend.healthProbe.getSnapshot();
+            }
+        }
+        Backend primary = primary();
+        return primary.healthProbe != null
+            ? primary.healthProbe.getSnapshot()
+            : BackendHealth.of(BackendHealth.STATUS_UNKNOWN, "Health probe is not running");
+    }
+
+    /**
+     * Whether a backend not tried by this request is left, e.g. to look for a model another backend lacks
+     */
+    boolean hasUntried(List<Backend> tried) {
+        for (Backend backend : backends) {
+            if (!tried.contains(backend)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isAnyReachable() {
+        for (Backend backend : backends) {
+            if (backend.isReachable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized List<Map<String, Object>> getStats() {
+        long now = clock.getAsLong();
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Backend backend : backends) {
+            Map<String, Object> backendStats = new LinkedHashMap<>();
+            backendStats.put("apiUrl", backend.endpoint.apiUrl);
+            backendStats.put("weight", backend.endpoint.weight);
+            backendStats.put("maxConcurrency", backend.endpoint.maxConcurrency);
+            backendStats.put("outstanding", backend.outstanding);
+            backendStats.put("requests", backend.requests);
+            backendStats.put("failures", backend.failures);
+            backendStats.put("consecutiveFailures", backend.consecutiveFailures);
+            backendStats.put("ejected", backend.ejectedUntil > now);
+            backendStats.put("ejectedForMs", Math.max(0, backend.ejectedUntil - now));
+            backendStats.put("ejections", backend.totalEjections);
+            if (backend.healthProbe != null) {
+                backendStats.put("health", backend.healthProbe.getSnapshot().getStatus());
+            }
+            if (backend.modelCatalog != null) {
+                backendStats.put("modelCatalog", backend.modelCatalog.getStats());
+            }
+            if (backend.modelKeeper != null) {
+                backendStats.put("modelKeeper", backend.modelKeeper.getStats());
+            }
+            stats.add(backendStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Weighted least-outstanding choice among the backends passing the given filters, round-robin on ties
+     */
+    private Backend pick(List<Backend> excluded, long now, boolean healthyOnly, boolean belowCapacity, String model) {
+        Backend best = null;
+        int size = backends.size();
+        int start = nextStart;
+        for (int i = 0; i < size; i++) {
+            Backend candidate = backends.get((start + i) % size);
+            if (excluded.contains(candidate)) {
+                continue;
+            }
+            if (healthyOnly && (candidate.ejectedUntil > now || candidate.isDown())) {
+                continue;
+            }
+            if (belowCapacity && candidate.outstanding >= candidate.endpoint.maxConcurrency) {
+                continue;
+            }
+            if (model != null && !candidate.mayHave(model)) {
+                continue;
+            }
+            if (best == null || candidate.load() < best.load()) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            nextStart = (backends.indexOf(best) + 1) % size;
+        }
+        return best;
+    }
+
+    /**
+     * One inference backend with its own health probe, model catalog, model keeper and routing state
+     */
+    static final class Backend {
+
+        final BackendEndpoint endpoint;
+        final BackendHealthProbe healthProbe;
+        final ModelCatalog modelCatalog;
+        final ModelKeeper modelKeeper;
+
+        // Guarded by the pool
+        private int outstanding;
+        private long requests;
+        private long failures;
+        private int consecutiveFailures;
+        private int ejections;
+        private long totalEjections;
+        private long ejectedUntil;
+
+        Backend(BackendEndpoint endpoint, BackendHealthProbe healthProbe, ModelKeeper modelKeeper) {
+            this(endpoint, healthProbe, null, modelKeeper);
+        }
+
+        Backend(BackendEndpoint endpoint, BackendHealthProbe healthProbe, ModelCatalog modelCatalog,
+                ModelKeeper modelKeeper) {
+            this.endpoint = endpoint;
+            this.healthProbe = healthProbe;
+            this.modelCatalog = modelCatalog;
+            this.modelKeeper = modelKeeper;
+        }
+
+        String apiUrl() {
+            return endpoint.apiUrl;
+        }
+
+        /**
+         * Whether the last health probe saw the model loaded in memory on this backend
+         */
+        boolean hasLoaded(String model) {
+            return healthProbe != null && ModelCatalog.isInstalled(model, healthProbe.getSnapshot().getLoadedModels());
+        }
+
+        /**
+         * Whether the model may be installed here: listed by the catalog, or the listing is not known
+         * (no catalog, or not loaded yet). Served from memory, the catalog is never loaded by this check.
+         */
+        boolean mayHave(String model) {
+            if (modelCatalog == null) {
+                return true;
+            }
+            List<String> installed = modelCatalog.getCachedModels();
+            return installed.isEmpty() || ModelCatalog.isInstalled(model, installed);
+        }
+
+        boolean isReachable() {
+            return healthProbe != null && healthProbe.getSnapshot().isReachable();
+        }
+
+        /**
+         * Only a probe that actually failed counts; a backend not checked yet is given the benefit of the doubt
+         */
+        private boolean isDown() {
+            return healthProbe != null && BackendHealth.STATUS_DOWN.equals(healthProbe.getSnapshot().getStatus());
+        }
+
+        private double load() {
+            return (outstanding + 1) / (double) endpoint.weight;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint.apiUrl;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Handle for aborting an LLM call from another thread
+ *
+ * The call attaches its HTTP request once it has created it; cancelling aborts that request,
+ * which makes the blocked execute or stream read fail right away. Cancelling before the
+ * request is attached aborts it as soon as it is.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class CallCancellation {
+
+    private volatile boolean cancelled;
+    private volatile HttpUriRequest request;
+
+    void attach(HttpUriRequest httpRequest) {
+        this.request = httpRequest;
+        if (cancelled) {
+            httpRequest.abort();
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        HttpUriRequest httpRequest = this.request;
+        if (httpRequest != null) {
+            httpRequest.abort();
+        }
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+}
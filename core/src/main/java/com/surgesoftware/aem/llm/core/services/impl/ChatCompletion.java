@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format of the OpenAI compatible {@code /v1/chat/completions} endpoint (LocalAI)
+ *
+ * The request is written and the response read through an {@code ObjectWriter} and an
+ * {@code ObjectReader} built once; of the response only the message content is bound.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class ChatCompletion {
+
+    private ChatCompletion() {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class Request {
+
+        @JsonProperty("model")
+        final String model;
+
+        @JsonProperty("max_tokens")
+        final int maxTokens;
+
+        @JsonProperty("temperature")
+        final double temperature;
+
+        @JsonProperty("messages")
+        final List<Message> messages = new ArrayList<>();
+
+        @JsonProperty("response_format")
+        JsonNode responseFormat;
+
+        Request(String model, int maxTokens, double temperature) {
+            this.model = model;
+            this.maxTokens = maxTokens;
+            this.temperature = temperature;
+        }
+
+        Request message(String role, String content) {
+            messages.add(new Message(role, content));
+            return this;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Message {
+
+        @JsonProperty("role")
+        String role;
+
+        @JsonProperty("content")
+        String content;
+
+        Message() {
+        }
+
+        Message(String role, String content) {
+            this.role = role;
+            this.content = content;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Response {
+
+        @JsonProperty("choices")
+        List<Choice> choices;
+
+        /**
+         * Content of the first choice's message, null when there is none
+         */
+        String content() {
+            if (choices == null || choices.isEmpty() || choices.get(0) == null || choices.get(0).message == null) {
+                return null;
+            }
+            return choices.get(0).message.content;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Choice {
+
+        @JsonProperty("message")
+        Message message;
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker guarding the LLM backend, shared by all requests of the service
+ *
+ * Records the outcome of the last {@code windowSize} backend calls. When the failure rate
+ * or the slow-call rate of that window reaches its threshold the breaker opens and calls
+ * are rejected without touching the backend. After {@code openDurationMs} a single probe
+ * call is let through (half-open); its outcome closes or re-opens the breaker.
+ *
+ * Every call holds a {@link Permit} of the state it was let through in. Only calls let through
+ * while closed, and finishing in that same closed period, fill the window; in half-open only the
+ * probe decides. A call that ends without telling anything about the backend (cancelled, lost a
+ * hedge, cut off by its deadline) is released without an outcome.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationMs;
+    private final long openDurationMs;
+    private final LongSupplier clock;
+
+    // Ring buffer of the most recent call outcomes
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int recordedCalls;
+    private int nextSlot;
+
+    private State state = State.CLOSED;
+    // Bumped on every transition: permits of an earlier state no longer count
+    private long generation;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long rejectedCalls;
+    private final Map<String, Long> transitions = new LinkedHashMap<>();
+
+    CircuitBreaker(int windowSize, int failureRateThreshold, int slowCallRateThreshold,
+                   long slowCallDurationMs, long openDurationMs) {
+        this(windowSize, failureRateThreshold, slowCallRateThreshold, slowCallDurationMs, openDurationMs,
+             System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int windowSize, int failureRateThreshold, int slowCallRateThreshold,
+                   long slowCallDurationMs, long openDurationMs, LongSupplier clock) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, this.windowSize / 2);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMs = slowCallDurationMs;
+        this.openDurationMs = openDurationMs;
+        this.clock = clock;
+        this.failedCalls = new boolean[this.windowSize];
+        this.slowCalls = new boolean[this.windowSize];
+    }
+
+    /**
+     * Permission to make one backend call
+     */
+    static final class Permit {
+
+        private final long generation;
+        private final boolean probe;
+
+        private Permit(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        boolean isProbe() {
+            return probe;
+        }
+    }
+
+    /**
+     * Ask for permission to call the backend. Every granted permit must be handed back to
+     * {@link #onSuccess(Permit, long)}, {@link #onFailure(Permit, long)} or {@link #release(Permit)}.
+     *
+     * @return null while the breaker is open, or half-open with the probe already in flight
+     */
+    synchronized Permit tryAcquirePermission() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openDurationMs) {
+            transitionTo(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return new Permit(generation, false);
+            case HALF_OPEN:
+                if (!probeInFlight) {
+                    probeInFlight = true;
+                    LOG.info("🔎 Circuit breaker half-open, letting one probe call through");
+                    return new Permit(generation, true);
+                }
+                rejectedCalls++;
+                return null;
+            default:
+                rejectedCalls++;
+                return null;
+        }
+    }
+
+    synchronized void onSuccess(Permit permit, long durationMs) {
+        boolean slow = durationMs >= slowCallDurationMs;
+        if (isCurrentProbe(permit)) {
+            probeInFlight = false;
+            if (slow) {
+                LOG.warn("⚠️ Circuit breaker probe was slow ({}ms), opening again", durationMs);
+                transitionTo(State.OPEN);
+            } else {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (isCurrentClosed(permit)) {
+            record(false, slow);
+        }
+    }
+
+    synchronized void onFailure(Permit permit, long durationMs) {
+        if (isCurrentProbe(permit)) {
+            probeInFlight = false;
+            LOG.warn("⚠️ Circuit breaker probe failed, opening again");
+            transitionTo(State.OPEN);
+            return;
+        }
+        if (isCurrentClosed(permit)) {
+            record(true, durationMs >= slowCallDurationMs);
+        }
+    }
+
+    /**
+     * Hand back a permit without an outcome, e.g. for a cancelled call; a probe released this
+     * way lets the next call probe instead
+     */
+    synchronized void release(Permit permit) {
+        if (isCurrentProbe(permit)) {
+            probeInFlight = false;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Time until an open breaker lets the next probe through, 0 when not open
+     */
+    synchronized long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openDurationMs - (clock.getAsLong() - openedAt));
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("failureRate", rate(failedCalls));
+        stats.put("slowCallRate", rate(slowCalls));
+        stats.put("bufferedCalls", recordedCalls);
+        stats.put("rejectedCalls", rejectedCalls);
+        stats.put("remainingOpenMs", getRemainingOpenMillis());
+        stats.put("transitions", new LinkedHashMap<>(transitions));
+        return stats;
+    }
+
+    private boolean isCurrentProbe(Permit permit) {
+        return permit.probe && state == State.HALF_OPEN && permit.generation == generation;
+    }
+
+    private boolean isCurrentClosed(Permit permit) {
+        return !permit.probe && state == State.CLOSED && permit.generation == generation;
+    }
+
+    private void record(boolean failed, boolean slow) {
+        failedCalls[nextSlot] = failed;
+        slowCalls[nextSlot] = slow;
+        nextSlot = (nextSlot + 1) % windowSize;
+        recordedCalls = Math.min(recordedCalls + 1, windowSize);
+
+        if (state == State.CLOSED && recordedCalls >= minimumCalls) {
+            int failureRate = rate(failedCalls);
+            int slowCallRate = rate(slowCalls);
+            if (failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold) {
+                LOG.warn("🚫 Circuit breaker opening - failure rate {}%, slow call rate {}% over {} calls",
+                         failureRate, slowCallRate, recordedCalls);
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * Percentage of flagged calls among the recorded ones
+     */
+    private int rate(boolean[] outcomes) {
+        if (recordedCalls == 0) {
+            return 0;
+        }
+        int flagged = 0;
+        for (int i = 0; i < recordedCalls; i++) {
+            if (outcomes[i]) {
+                flagged++;
+            }
+        }
+        return flagged * 100 / recordedCalls;
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState) {
+            return;
+        }
+        String transition = state + "->" + newState;
+        transitions.merge(transition, 1L, Long::sum);
+        LOG.info("🔁 Circuit breaker {}", transition);
+        state = newState;
+        generation++;
+        if (newState == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        if (newState == State.CLOSED) {
+            // Start with a clean window after recovery
+            recordedCalls = 0;
+            nextSlot = 0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Gate in front of the deep health probe, a real generation that anyone polling the health
+ * endpoints can ask for
+ *
+ * At most one probe runs at a time: concurrent callers share it. Its result is then reused for
+ * {@link #RESULT_TTL_MS}, so polling faster than that adds no load on the backend. A result only
+ * holds for the configuration it was measured against.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class DeepProbe {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeepProbe.class);
+
+    static final long RESULT_TTL_MS = 30000;
+
+    private final LongSupplier clock;
+
+    private Object owner;
+    private CompletableFuture<Boolean> result;
+    private long completedAt;
+
+    DeepProbe() {
+        this(System::currentTimeMillis);
+    }
+
+    DeepProbe(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * The result of the running probe or of a recent one for the same owner, or else of a new
+     * probe started with the given supplier
+     *
+     * @param owner Configuration the probe runs against; a result of another one is not reused
+     */
+    synchronized CompletableFuture<Boolean> check(Object owner, Supplier<CompletableFuture<Boolean>> probe) {
+        if (owner == this.owner && result != null
+                && (!result.isDone() || clock.getAsLong() - completedAt < RESULT_TTL_MS)) {
+            LOG.debug("Reusing the {} deep probe", result.isDone() ? "recent" : "running");
+            return result;
+        }
+        CompletableFuture<Boolean> started = probe.get();
+        this.owner = owner;
+        this.result = started;
+        started.whenComplete((connected, error) -> completed(started));
+        return started;
+    }
+
+    private synchronized void completed(CompletableFuture<Boolean> probe) {
+        if (probe == result) {
+            completedAt = clock.getAsLong();
+        }
+    }
+}
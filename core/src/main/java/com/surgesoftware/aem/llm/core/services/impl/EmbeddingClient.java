@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client for the embeddings endpoint of the LLM backend
+ *
+ * Uses {@code /api/embed} on Ollama and the OpenAI-compatible {@code /v1/embeddings}
+ * on other providers (LocalAI and similar).
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class EmbeddingClient {
+
+    private static final int TIMEOUT_MS = 5000;
+
+    private final CloseableHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final boolean ollama;
+    private final String url;
+    private final String model;
+
+    EmbeddingClient(CloseableHttpClient httpClient, ObjectMapper objectMapper, String provider, String apiUrl,
+                    String model) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.ollama = "ollama".equals(provider);
+        this.url = BackendHealthProbe.baseUrlOf(apiUrl) + (ollama ? "/api/embed" : "/v1/embeddings");
+        this.model = model;
+    }
+
+    float[] embed(String text) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("model", model);
+        body.put("input", text);
+
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setConfig(RequestConfig.custom()
+            .setConnectTimeout(TIMEOUT_MS)
+            .setSocketTimeout(TIMEOUT_MS)
+            .setConnectionRequestTimeout(TIMEOUT_MS)
+            .build());
+        httpPost.setEntity(new StringEntity(objectMapper.writeValueAsString(body), ContentType.APPLICATION_JSON));
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw new IOException("HTTP " + statusCode + " from " + url + ": " + responseBody);
+            }
+
+            JsonNode root = objectMapper.readTree(responseBody);
+            JsonNode vector = ollama ? root.path("embeddings").path(0) : root.path("data").path(0).path("embedding");
+            if (!vector.isArray() || vector.size() == 0) {
+                throw new IOException("No embedding in response from " + url);
+            }
+            float[] embedding = new float[vector.size()];
+            for (int i = 0; i < embedding.length; i++) {
+                embedding[i] = (float) vector.get(i).asDouble();
+            }
+            return embedding;
+        }
+    }
+}
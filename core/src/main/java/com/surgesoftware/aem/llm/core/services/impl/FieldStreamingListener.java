@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+
+/**
+ * Listener wrapped around the caller's listener for one generation, parsing the streamed tokens
+ *
+ * Every attempt (first call, retry or fallback model) starts with a stage notification and
+ * gets a fresh {@link StreamingJsonFieldParser}; completed fields are reported to the caller
+ * through {@link GenerationListener#onField(String, JsonNode)}.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class FieldStreamingListener implements GenerationListener {
+
+    private final ObjectMapper objectMapper;
+    private final GenerationListener delegate;
+    private volatile StreamingJsonFieldParser parser;
+
+    /**
+     * @param delegate The caller's listener, may be null
+     */
+    FieldStreamingListener(ObjectMapper objectMapper, GenerationListener delegate) {
+        this.objectMapper = objectMapper;
+        this.delegate = delegate;
+        this.parser = newParser();
+    }
+
+    /**
+     * The component JSON parsed while streaming the last attempt, null when it did not stream
+     * a complete, strictly valid JSON object
+     */
+    ObjectNode getStreamedResponse() {
+        return parser.getResult();
+    }
+
+    @Override
+    public void onStage(String stage, String detail) {
+        if (STAGE_MODEL_LOADING.equals(stage) || STAGE_RETRYING.equals(stage)) {
+            parser = newParser();
+        }
+        if (delegate != null) {
+            delegate.onStage(stage, detail);
+        }
+    }
+
+    @Override
+    public void onToken(String token) {
+        // Forward first so the token is shown before the field it completes
+        if (delegate != null) {
+            delegate.onToken(token);
+        }
+        parser.feed(token);
+    }
+
+    @Override
+    public void onField(String name, JsonNode value) {
+        if (delegate != null) {
+            delegate.onField(name, value);
+        }
+    }
+
+    @Override
+    public void onSuggestion(ComponentGenerationResponse suggestion, double similarity) {
+        if (delegate != null) {
+            delegate.onSuggestion(suggestion, similarity);
+        }
+    }
+
+    private StreamingJsonFieldParser newParser() {
+        return new StreamingJsonFieldParser(objectMapper, this::onField);
+    }
+}
@@ -17,6 +17,8 @@ package com.surgesoftware.aem.llm.core.services.impl;
 
 import com.surgesoftware.aem.llm.core.services.FileManagementService;
 import com.surgesoftware.aem.llm.core.config.ServiceUserConfig;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.Resource;
@@ -182,6 +184,32 @@ public class FileManagementServiceImpl implements FileManagementService {
         }
     }
     
+    @Override
+    public GeneratedArtifacts saveGeneratedComponent(ComponentGenerationResponse generationResponse, String timestamp) {
+        GeneratedArtifacts artifacts = new GeneratedArtifacts();
+        
+        // Save component files to repository
+        artifacts.setSavedPath(saveComponentFiles(generationResponse.getGeneratedFiles(), timestamp));
+        LOG.info("savedPath: {}", artifacts.getSavedPath());
+        
+        // Create ZIP file for download
+        artifacts.setZipPath(createZipFile(generationResponse.getGeneratedFiles(), timestamp));
+        LOG.info("zipPath: {}", artifacts.getZipPath());
+        
+        // Save preview HTML if available
+        if (generationResponse.getPreviewHtml() != null) {
+            artifacts.setPreviewPath(savePreviewFile(generationResponse.getPreviewHtml(), timestamp));
+            LOG.info("previewPath: {}", artifacts.getPreviewPath());
+        }
+        
+        // Generate URLs
+        artifacts.setDownloadUrl(getDownloadUrl(artifacts.getZipPath()));
+        artifacts.setPreviewUrl(getPreviewUrl(artifacts.getPreviewPath()));
+        LOG.info("downloadUrl: {}, previewUrl: {}", artifacts.getDownloadUrl(), artifacts.getPreviewUrl());
+        
+        return artifacts;
+    }
+    
     @Override
     public String getDownloadUrl(String zipPath) {
         if (zipPath == null) return null;
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for component generations
+ *
+ * Counts the generations that are running or waiting and refuses new ones once
+ * {@code maxInFlight + maxQueued} are admitted, so overload is answered right away
+ * instead of piling up behind the socket timeout. Keeps an exponentially weighted
+ * moving average of the service time to estimate when a rejected client should retry.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class GenerationAdmission {
+
+    static final int REJECTED = -1;
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final long INITIAL_SERVICE_TIME_MS = 30000;
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile double averageServiceTimeMs = INITIAL_SERVICE_TIME_MS;
+
+    GenerationAdmission(int maxInFlight, int maxQueued) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxQueued = Math.max(0, maxQueued);
+    }
+
+    /**
+     * Try to admit one generation
+     *
+     * @return its queue position (0 = runs right away, 1 = next in line, ...) or {@link #REJECTED}
+     */
+    int tryAdmit() {
+        while (true) {
+            int current = admitted.get();
+            if (current >= maxInFlight + maxQueued) {
+                rejectedCount.incrementAndGet();
+                return REJECTED;
+            }
+            if (admitted.compareAndSet(current, current + 1)) {
+                return Math.max(0, current + 1 - maxInFlight);
+            }
+        }
+    }
+
+    /**
+     * Give the slot of an admitted generation back
+     */
+    void release() {
+        admitted.decrementAndGet();
+    }
+
+    synchronized void recordServiceTime(long serviceTimeMs) {
+        averageServiceTimeMs = EWMA_ALPHA * serviceTimeMs + (1 - EWMA_ALPHA) * averageServiceTimeMs;
+    }
+
+    /**
+     * Estimated seconds until a slot frees up: the waiting generations are served
+     * {@code maxInFlight} at a time, each wave taking the average service time
+     */
+    long retryAfterSeconds() {
+        int queued = Math.max(0, admitted.get() - maxInFlight);
+        long waves = queued / maxInFlight + 1;
+        return Math.max(1, (long) Math.ceil(averageServiceTimeMs * waves / 1000.0));
+    }
+
+    Map<String, Object> getStats() {
+        int current = admitted.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("admitted", current);
+        stats.put("waiting", Math.max(0, current - maxInFlight));
+        stats.put("maxQueued", maxQueued);
+        stats.put("rejected", rejectedCount.get());
+        stats.put("averageServiceTimeMs", Math.round(averageServiceTimeMs));
+        return stats;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Single-flight coalescing of identical generations
+ *
+ * Generations are keyed on a hash of their normalized inputs and the model settings.
+ * While one is in flight, an identical request attaches to it instead of starting a second
+ * upstream call: it receives the stage and token events from the moment it joined, and the
+ * same response object, which callers must treat as read-only. A generation all of whose
+ * callers went away is cancelled, so nobody's abandoned request keeps the backend busy.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class GenerationCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationCoalescer.class);
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    /**
+     * Join the identical generation in flight, or start one
+     *
+     * @param key Key from {@link #keyOf(ComponentGenerationRequest, ServiceSettings)}
+     * @param listener Listener of this caller, may be null
+     * @param generation Starts the generation, reporting progress to the given listener
+     * @return Future of this caller; cancelling it does not affect the other callers,
+     *         but once every caller has cancelled, the upstream generation is cancelled too
+     */
+    CompletableFuture<ComponentGenerationResponse> execute(String key, GenerationListener listener,
+            Function<GenerationListener, CompletableFuture<ComponentGenerationResponse>> generation) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing != null) {
+                CompletableFuture<ComponentGenerationResponse> joined = existing.join(listener);
+                if (joined != null) {
+                    coalesced.incrementAndGet();
+                    LOG.info("🔗 Attached to an identical generation in flight");
+                    return joined;
+                }
+                // Every caller of that one left and it is being cancelled: start afresh
+                flights.remove(key, existing);
+                continue;
+            }
+
+            started.incrementAndGet();
+            CompletableFuture<ComponentGenerationResponse> result = flight.join(listener);
+            try {
+                CompletableFuture<ComponentGenerationResponse> upstream = generation.apply(flight);
+                flight.upstream = upstream;
+                upstream.whenComplete((response, error) -> {
+                    flights.remove(key, flight);
+                    if (error != null) {
+                        flight.result.completeExceptionally(error);
+                    } else {
+                        flight.result.complete(response);
+                    }
+                });
+            } catch (RuntimeException e) {
+                flights.remove(key, flight);
+                throw e;
+            }
+            return result;
+        }
+    }
+
+    Map<String, Object> getStats() {
+        long startedCount = started.get();
+        long coalescedCount = coalesced.get();
+        long total = startedCount + coalescedCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", flights.size());
+        stats.put("started", startedCount);
+        stats.put("coalesced", coalescedCount);
+        stats.put("coalescingRate", total > 0 ? coalescedCount * 100 / total : 0);
+        stats.put("abandoned", abandoned.get());
+        return stats;
+    }
+
+    /**
+     * SHA-256 over the inputs that determine the generated output: the whitespace-normalized
+     * prompt and everything covered by {@link #contextKeyOf(ComponentGenerationRequest, ServiceSettings)}.
+     * Also used as the response cache key, so it must cover everything that shapes the response.
+     */
+    static String keyOf(ComponentGenerationRequest request, ServiceSettings settings) {
+        return sha256(normalize(request.getPrompt()) + '\u0000' + contextKeyOf(request, settings));
+    }
+
+    /**
+     * SHA-256 over every input except the prompt: requirements, component type and format
+     * (whitespace-normalized), a hash of the image, and the model settings (model, temperature,
+     * token limit, system prompt, markdown stripping)
+     */
+    static String contextKeyOf(ComponentGenerationRequest request, ServiceSettings settings) {
+        StringBuilder canonical = new StringBuilder()
+            .append(normalize(request.getRequirements())).append('\u0000')
+            .append(normalize(request.getComponentType())).append('\u0000')
+            .append(normalize(request.getFormat())).append('\u0000')
+            .append(request.hasImage() ? request.getImage().getDigest() : "").append('\u0000')
+            .append(settings.model).append('\u0000')
+            .append(settings.temperature).append('\u0000')
+            .append(settings.maxTokens).append('\u0000')
+            .append(settings.systemPrompt).append('\u0000')
+            .append(settings.stripMarkdown);
+        return sha256(canonical.toString());
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ");
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * One upstream generation and the listeners of every caller attached to it
+     */
+    private final class Flight implements GenerationListener {
+
+        final CompletableFuture<ComponentGenerationResponse> result = new CompletableFuture<>();
+        volatile CompletableFuture<ComponentGenerationResponse> upstream;
+        private final List<GenerationListener> listeners = new CopyOnWriteArrayList<>();
+        private String lastStage;
+        private String lastDetail;
+        private int callers;
+        private boolean cancelled;
+
+        /**
+         * Add a caller: its listener is brought up to the current stage, and cancelling the returned
+         * future removes it again
+         *
+         * @return Future of the caller, null if the flight is already being cancelled
+         */
+        synchronized CompletableFuture<ComponentGenerationResponse> join(GenerationListener listener) {
+            if (cancelled) {
+                return null;
+            }
+            callers++;
+            if (listener != null) {
+                listeners.add(listener);
+                if (lastStage != null) {
+                    listener.onStage(lastStage, lastDetail);
+                }
+            }
+            CompletableFuture<ComponentGenerationResponse> callerResult = result.copy();
+            callerResult.whenComplete((response, error) -> {
+                if (callerResult.isCancelled()) {
+                    leave(listener);
+                }
+            });
+            return callerResult;
+        }
+
+        private void leave(GenerationListener listener) {
+            CompletableFuture<ComponentGenerationResponse> toCancel;
+            synchronized (this) {
+                listeners.remove(listener);
+                if (--callers > 0 || result.isDone() || upstream == null) {
+                    return;
+                }
+                cancelled = true;
+                toCancel = upstream;
+            }
+            abandoned.incrementAndGet();
+            LOG.info("🛑 Every caller of a generation in flight went away, cancelling it");
+            toCancel.cancel(true);
+        }
+
+        @Override
+        public synchronized void onStage(String stage, String detail) {
+            lastStage = stage;
+            lastDetail = detail;
+            for (GenerationListener listener : listeners) {
+                listener.onStage(stage, detail);
+            }
+        }
+
+        @Override
+        public void onToken(String token) {
+            for (GenerationListener listener : listeners) {
+                listener.onToken(token);
+            }
+        }
+
+        @Override
+        public void onField(String name, JsonNode value) {
+            for (GenerationListener listener : listeners) {
+                listener.onField(name, value);
+            }
+        }
+
+        @Override
+        public void onSuggestion(ComponentGenerationResponse suggestion, double similarity) {
+            for (GenerationListener listener : listeners) {
+                listener.onSuggestion(suggestion, similarity);
+            }
+        }
+    }
+}
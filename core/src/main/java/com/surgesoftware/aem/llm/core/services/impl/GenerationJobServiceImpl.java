@@ -0,0 +1,238 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
+import com.surgesoftware.aem.llm.core.models.GenerationJob;
+import com.surgesoftware.aem.llm.core.services.FileManagementService;
+import com.surgesoftware.aem.llm.core.services.GenerationJobConfiguration;
+import com.surgesoftware.aem.llm.core.services.GenerationJobService;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import com.surgesoftware.aem.llm.core.services.LocalLLMService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation Job Service Implementation for SURGE AEM LLM Connector
+ * 
+ * Jobs run on the bounded generation executor of {@link LocalLLMService} and are kept
+ * in memory; a single background thread saves the artifacts of finished generations and
+ * drops jobs whose retention period expired. Jobs do not survive a restart, but the
+ * artifacts they produced are persisted in the repository.
+ * 
+ * @author SURGE Software Solutions Private Limited
+ */
+@Component(service = GenerationJobService.class,
+    property = {
+        "service.description=SURGE AEM LLM Connector - Generation Job Service",
+        "service.vendor=SURGE Software Solutions Private Limited"
+    })
+@Designate(ocd = GenerationJobConfiguration.class)
+public class GenerationJobServiceImpl implements GenerationJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationJobServiceImpl.class);
+
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    @Reference
+    private LocalLLMService localLLMService;
+
+    @Reference
+    private FileManagementService fileManagementService;
+
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+    private volatile long retentionMillis = TimeUnit.MINUTES.toMillis(60);
+    private volatile int maxRetainedJobs = 200;
+    private ScheduledExecutorService worker;
+
+    @Activate
+    @Modified
+    protected void activate(GenerationJobConfiguration configuration) {
+        if (configuration != null) {
+            retentionMillis = TimeUnit.MINUTES.toMillis(Math.max(1, configuration.jobRetentionMinutes()));
+            maxRetainedJobs = Math.max(1, configuration.maxRetainedJobs());
+        }
+        if (worker == null) {
+            worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "surge-llm-jobs");
+                thread.setDaemon(true);
+                return thread;
+            });
+            worker.scheduleWithFixedDelay(this::removeExpiredJobs, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS,
+                                          TimeUnit.SECONDS);
+        }
+        LOG.info("✅ Generation jobs retained for {} minutes (max {} finished jobs)",
+                 TimeUnit.MILLISECONDS.toMinutes(retentionMillis), maxRetainedJobs);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+        jobs.clear();
+    }
+
+    @Override
+    public GenerationJob submit(ComponentGenerationRequest request, String timestamp) {
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), request.getPrompt());
+        CompletableFuture<ComponentGenerationResponse> future =
+            localLLMService.generateComponentAsync(request, new JobProgressListener(job));
+
+        // Rejected up front (queue full, circuit open, disabled): nothing to poll for
+        ComponentGenerationResponse immediate = future.getNow(null);
+        if (immediate != null && !immediate.isSuccess()) {
+            fail(job, immediate);
+            return job;
+        }
+
+        jobs.put(job.getJobId(), job);
+        dropOverflow();
+        LOG.info("📨 Generation job {} submitted for prompt: {}", job.getJobId(), request.getPrompt());
+
+        ScheduledExecutorService completionExecutor = worker;
+        future.thenAcceptAsync(response -> complete(job, response, timestamp), completionExecutor)
+              .exceptionally(e -> {
+                  LOG.error("❌ Generation job {} failed: {}", job.getJobId(), e.getMessage(), e);
+                  fail(job, "Generation job failed: " + e.getMessage());
+                  return null;
+              });
+        return job;
+    }
+
+    @Override
+    public GenerationJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    /**
+     * Save the artifacts of a finished generation and publish the result on the job
+     */
+    private void complete(GenerationJob job, ComponentGenerationResponse response, String timestamp) {
+        if (!response.isSuccess()) {
+            fail(job, response);
+            return;
+        }
+        job.setStage(GenerationListener.STAGE_SAVING);
+        job.setStageDetail(null);
+        GeneratedArtifacts artifacts = fileManagementService.saveGeneratedComponent(response, timestamp);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("message", response.getMessage());
+        result.put("componentName", response.getComponentName());
+        result.put("componentDescription", response.getComponentDescription());
+        result.put("filesGenerated", response.getGeneratedFiles().size());
+        result.put("cached", response.isCached());
+        if (response.getQueuePosition() != null) {
+            result.put("queuePosition", response.getQueuePosition());
+        }
+        if (response.getSimilarity() != null) {
+            result.put("similarity", response.getSimilarity());
+        }
+        result.put("downloadUrl", artifacts.getDownloadUrl() != null ? artifacts.getDownloadUrl() : "");
+        result.put("previewUrl", artifacts.getPreviewUrl() != null ? artifacts.getPreviewUrl() : "");
+        result.put("savedPath", artifacts.getSavedPath() != null ? artifacts.getSavedPath() : "");
+        job.setResult(result);
+        job.setCompletedAt(System.currentTimeMillis());
+        job.setStatus(GenerationJob.STATUS_SUCCEEDED);
+        LOG.info("✅ Generation job {} succeeded: {}", job.getJobId(), response.getComponentName());
+    }
+
+    private void fail(GenerationJob job, ComponentGenerationResponse response) {
+        job.setFailedResponse(response);
+        job.setErrorCode(response.getErrorCode());
+        job.setModelError(response.getModelError());
+        job.setRetryAfterSeconds(response.getRetryAfterSeconds());
+        fail(job, response.getError());
+    }
+
+    private void fail(GenerationJob job, String error) {
+        job.setError(error);
+        job.setCompletedAt(System.currentTimeMillis());
+        job.setStatus(GenerationJob.STATUS_FAILED);
+    }
+
+    private void removeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.isDone() && job.getCompletedAt() < cutoff);
+        if (jobs.size() < before) {
+            LOG.debug("🧹 Removed {} expired generation jobs", before - jobs.size());
+        }
+    }
+
+    /**
+     * Keep the number of finished jobs bounded by dropping the oldest ones
+     */
+    private void dropOverflow() {
+        long finished = jobs.values().stream().filter(GenerationJob::isDone).count();
+        if (finished <= maxRetainedJobs) {
+            return;
+        }
+        jobs.values().stream()
+            .filter(GenerationJob::isDone)
+            .sorted(Comparator.comparingLong(GenerationJob::getCompletedAt))
+            .limit(finished - maxRetainedJobs)
+            .forEach(job -> jobs.remove(job.getJobId()));
+    }
+
+    /**
+     * Mirrors stage changes and token progress of the running generation onto its job
+     */
+    private static final class JobProgressListener implements GenerationListener {
+
+        private final GenerationJob job;
+
+        JobProgressListener(GenerationJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onStage(String stage, String detail) {
+            if (!STAGE_QUEUED.equals(stage) && job.getStartedAt() == null) {
+                job.setStartedAt(System.currentTimeMillis());
+                job.setStatus(GenerationJob.STATUS_RUNNING);
+            }
+            job.setStage(stage);
+            job.setStageDetail(detail);
+        }
+
+        @Override
+        public void onToken(String token) {
+            // Only the generation thread writes the counter
+            job.setTokensReceived(job.getTokensReceived() + 1);
+        }
+    }
+}
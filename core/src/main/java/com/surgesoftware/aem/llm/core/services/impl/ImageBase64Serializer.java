@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.surgesoftware.aem.llm.core.models.ImageAttachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Writes an image as a Base64 JSON string, encoding it from the attachment's stream while the
+ * generator writes, a few kilobytes at a time. Neither the image nor its Base64 text is ever
+ * held in memory as a whole.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class ImageBase64Serializer extends StdSerializer<ImageAttachment> {
+
+    ImageBase64Serializer() {
+        super(ImageAttachment.class);
+    }
+
+    @Override
+    public void serialize(ImageAttachment image, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        try (InputStream in = image.openStream()) {
+            // Unknown length: data URLs are only decoded here
+            generator.writeBinary(provider.getConfig().getBase64Variant(), in, -1);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.config.ServiceUserConfig;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+/**
+ * Persistent tier of the response cache, stored as JSON files under /var/aem-llm/cache
+ *
+ * Files are spread over sub-folders named after the first two characters of the key
+ * to keep folders small.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class JcrResponseCacheStore implements ResponseCache.Store {
+
+    static final String CACHE_PATH = "/var/aem-llm/cache";
+
+    private final ServiceUserConfig serviceUserConfig;
+
+    JcrResponseCacheStore(ServiceUserConfig serviceUserConfig) {
+        this.serviceUserConfig = serviceUserConfig;
+    }
+
+    @Override
+    public ResponseCache.Entry read(String key) throws Exception {
+        try (ResourceResolver resolver = serviceUserConfig.getServiceResourceResolver()) {
+            Session session = resolver.adaptTo(Session.class);
+            String path = pathOf(key);
+            if (session == null || !session.nodeExists(path)) {
+                return null;
+            }
+            Node content = session.getNode(path).getNode("jcr:content");
+            String json;
+            try (InputStream in = content.getProperty("jcr:data").getBinary().getStream()) {
+                json = IOUtils.toString(in, StandardCharsets.UTF_8);
+            }
+            return new ResponseCache.Entry(json, content.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+        }
+    }
+
+    @Override
+    public void write(String key, String json) throws Exception {
+        try (ResourceResolver resolver = serviceUserConfig.getServiceResourceResolver()) {
+            Session session = resolver.adaptTo(Session.class);
+            if (session == null) {
+                throw new RepositoryException("Could not adapt ResourceResolver to Session");
+            }
+            Node folder = createFolderStructure(session, CACHE_PATH + "/" + key.substring(0, 2));
+            String fileName = key + ".json";
+            if (folder.hasNode(fileName)) {
+                folder.getNode(fileName).remove();
+            }
+            Node contentNode = folder.addNode(fileName, "nt:file").addNode("jcr:content", "nt:resource");
+            Binary binary = session.getValueFactory().createBinary(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+            contentNode.setProperty("jcr:data", binary);
+            contentNode.setProperty("jcr:mimeType", "application/json");
+            contentNode.setProperty("jcr:lastModified", Calendar.getInstance());
+            session.save();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws Exception {
+        try (ResourceResolver resolver = serviceUserConfig.getServiceResourceResolver()) {
+            Session session = resolver.adaptTo(Session.class);
+            String path = pathOf(key);
+            if (session != null && session.nodeExists(path)) {
+                session.getNode(path).remove();
+                session.save();
+            }
+        }
+    }
+
+    private static String pathOf(String key) {
+        return CACHE_PATH + "/" + key.substring(0, 2) + "/" + key + ".json";
+    }
+
+    static Node createFolderStructure(Session session, String path) throws RepositoryException {
+        Node current = session.getRootNode();
+        for (String segment : path.substring(1).split("/")) {
+            current = current.hasNode(segment) ? current.getNode(segment) : current.addNode(segment, "nt:folder");
+        }
+        return current;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.config.ServiceUserConfig;
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Calendar;
+
+/**
+ * Persistent snapshot of the semantic cache index, stored as one binary file under /var/aem-llm/semantic
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class JcrSemanticIndexStore implements SemanticCache.SnapshotStore {
+
+    static final String INDEX_FOLDER = "/var/aem-llm/semantic";
+    static final String INDEX_FILE = "index.bin";
+
+    private final ServiceUserConfig serviceUserConfig;
+
+    JcrSemanticIndexStore(ServiceUserConfig serviceUserConfig) {
+        this.serviceUserConfig = serviceUserConfig;
+    }
+
+    @Override
+    public byte[] load() throws Exception {
+        try (ResourceResolver resolver = serviceUserConfig.getServiceResourceResolver()) {
+            Session session = resolver.adaptTo(Session.class);
+            String path = INDEX_FOLDER + "/" + INDEX_FILE;
+            if (session == null || !session.nodeExists(path)) {
+                return null;
+            }
+            try (InputStream in = session.getNode(path).getNode("jcr:content")
+                    .getProperty("jcr:data").getBinary().getStream()) {
+                return IOUtils.toByteArray(in);
+            }
+        }
+    }
+
+    @Override
+    public void save(byte[] snapshot) throws Exception {
+        try (ResourceResolver resolver = serviceUserConfig.getServiceResourceResolver()) {
+            Session session = resolver.adaptTo(Session.class);
+            if (session == null) {
+                throw new RepositoryException("Could not adapt ResourceResolver to Session");
+            }
+            Node folder = JcrResponseCacheStore.createFolderStructure(session, INDEX_FOLDER);
+            Node contentNode = folder.hasNode(INDEX_FILE)
+                ? folder.getNode(INDEX_FILE).getNode("jcr:content")
+                : folder.addNode(INDEX_FILE, "nt:file").addNode("jcr:content", "nt:resource");
+            Binary binary = session.getValueFactory().createBinary(new ByteArrayInputStream(snapshot));
+            contentNode.setProperty("jcr:data", binary);
+            contentNode.setProperty("jcr:mimeType", "application/octet-stream");
+            contentNode.setProperty("jcr:lastModified", Calendar.getInstance());
+            session.save();
+        }
+    }
+}
@@ -0,0 +1,595 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass extraction and repair of the component JSON in free-form LLM output
+ *
+ * One linear scan over the output does what used to take a chain of regular expressions,
+ * a validation parse and a quadratic quote fixer:
+ * <ul>
+ *   <li>Markdown code fences ({@code ```json}, {@code ```}) are skipped as they are read</li>
+ *   <li>the block from the first {@code '{'} to the last {@code '}'} is cut out</li>
+ *   <li>unescaped quotes inside string values are found (a quote after {@code ':'} opens a
+ *       value, a quote followed by {@code ,}, {@code '}'}, {@code ']'} or the end closes it,
+ *       any other quote inside the value is escaped)</li>
+ *   <li>a JSON syntax check with the rules of Jackson's default parser decides whether the
+ *       block is returned as is or with the quotes escaped</li>
+ * </ul>
+ * The only string built is the result, and none at all when the block is valid and contains no
+ * fence. The output is the same as that of the former implementation, except on runs of more
+ * than three backticks running into another fence.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class JsonExtractor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonExtractor.class);
+
+    /** Same limit as Jackson's default StreamReadConstraints */
+    static final int MAX_NESTING_DEPTH = 1000;
+
+    private JsonExtractor() {
+    }
+
+    /**
+     * Extract the JSON object from LLM output, repairing unescaped quotes if it does not parse
+     *
+     * @param stripMarkdown Whether to remove Markdown code fences
+     * @return The JSON text, or null when the output holds no object
+     */
+    static String extract(CharSequence raw, boolean stripMarkdown) {
+        if (raw == null || isBlank(raw)) {
+            return null;
+        }
+        Scan scan = new Scan(raw, stripMarkdown, false);
+        scan.run();
+        if (scan.lastBrace >= 0) {
+            return scan.result();
+        }
+        if (!stripMarkdown && scan.regionStart >= 0 && scan.closeBeforeOpen) {
+            // A '}' before the first '{' only: repair the whole text, keep it unless that parses
+            LOG.warn("⚠️ Fallback JSON extraction - attempting quote fixes on raw content");
+            Scan whole = new Scan(raw, false, true);
+            whole.run();
+            return whole.syntax.isValid() ? whole.result() : raw.toString();
+        }
+        LOG.error("❌ No valid JSON structure found in response");
+        return null;
+    }
+
+    /**
+     * Escape the unescaped quotes inside the string values of the given text
+     */
+    static String repairQuotes(CharSequence json) {
+        if (json == null || isBlank(json)) {
+            return json == null ? null : json.toString();
+        }
+        Scan whole = new Scan(json, false, true);
+        whole.run();
+        return whole.repaired();
+    }
+
+    /**
+     * Same test as {@code String.trim().isEmpty()}
+     */
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whitespace as matched by {@code \s} in a regular expression
+     */
+    private static boolean isPatternSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * One scan of the text. In region mode (the default) it looks for the first '{' and processes
+     * everything from there, noting where the last '}' is; in whole mode it processes all of the text
+     * and checks the syntax of the repaired text instead of the original.
+     */
+    private static final class Scan {
+
+        private final CharSequence text;
+        private final boolean stripFences;
+        private final boolean whole;
+        final JsonSyntax syntax;
+
+        // Reading position in the text; backticks left over from a fence still to be returned
+        private int pos;
+        private int pendingBackticks;
+        // Raw position where the first fence inside the region started, -1 while there was none
+        private int firstSkip = -1;
+
+        // Region: raw start, logical length so far, logical index of the last '}'
+        int regionStart = -1;
+        private int length;
+        int lastBrace = -1;
+        boolean closeBeforeOpen;
+        // Logical region text, only built once a fence made it differ from the raw text
+        private StringBuilder out;
+
+        // Quote repair state and the logical positions of the quotes to escape
+        private boolean inStringValue;
+        private boolean escaped;
+        private char previousNonSpace;
+        private int[] escapes = new int[8];
+        private int escapeCount;
+
+        Scan(CharSequence text, boolean stripFences, boolean whole) {
+            this.text = text;
+            this.stripFences = stripFences;
+            this.whole = whole;
+            this.syntax = new JsonSyntax();
+            if (whole) {
+                regionStart = 0;
+            }
+        }
+
+        void run() {
+            int c;
+            while ((c = next()) >= 0) {
+                if (regionStart < 0) {
+                    if (c == '}') {
+                        closeBeforeOpen = true;
+                    }
+                    if (c != '{') {
+                        continue;
+                    }
+                    regionStart = pos - 1;
+                    firstSkip = -1;
+                }
+                accept((char) c);
+            }
+            if (whole) {
+                syntax.end();
+            }
+        }
+
+        private void accept(char c) {
+            if (firstSkip >= 0 && out == null) {
+                out = new StringBuilder(text.length() - regionStart);
+                out.append(text, regionStart, firstSkip);
+            }
+            if (out != null) {
+                out.append(c);
+            }
+            boolean escapeThis = repair(c);
+            if (escapeThis) {
+                if (escapeCount == escapes.length) {
+                    escapes = Arrays.copyOf(escapes, escapeCount * 2);
+                }
+                escapes[escapeCount++] = length;
+            }
+            if (whole) {
+                if (escapeThis) {
+                    syntax.accept('\\');
+                }
+                syntax.accept(c);
+            } else if (!syntax.isDecided()) {
+                syntax.accept(c);
+            }
+            if (c == '}') {
+                lastBrace = length;
+            }
+            length++;
+        }
+
+        /**
+         * Advance the quote repair by one character
+         *
+         * @return whether it is an unescaped quote inside a string value
+         */
+        private boolean repair(char c) {
+            boolean escapeThis = false;
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                if (!inStringValue) {
+                    inStringValue = previousNonSpace == ':';
+                } else if (endsStringValue()) {
+                    inStringValue = false;
+                } else {
+                    escapeThis = true;
+                }
+            }
+            if (!Character.isWhitespace(c)) {
+                previousNonSpace = c;
+            }
+            return escapeThis;
+        }
+
+        /**
+         * Whether the quote just read is followed by a structural character, or only by whitespace
+         * that {@code String.trim()} removes
+         */
+        private boolean endsStringValue() {
+            int savedPos = pos;
+            int savedPending = pendingBackticks;
+            int savedSkip = firstSkip;
+            boolean trimmable = true;
+            int c;
+            while ((c = next()) >= 0 && Character.isWhitespace(c)) {
+                trimmable &= c <= ' ';
+            }
+            pos = savedPos;
+            pendingBackticks = savedPending;
+            firstSkip = savedSkip;
+            return c < 0 ? trimmable : c == ',' || c == '}' || c == ']';
+        }
+
+        /**
+         * Next character of the text with Markdown fences left out, -1 at the end. A fence is a run of
+         * three backticks and the whitespace after it, or three backticks, whitespace, "json" and
+         * whitespace. Of a longer run of backticks, fences are taken from the start (from the end when
+         * "json" follows) and the rest of the run is kept.
+         */
+        private int next() {
+            if (pendingBackticks > 0) {
+                pendingBackticks--;
+                return '`';
+            }
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c != '`' || !stripFences) {
+                    pos++;
+                    return c;
+                }
+                int runStart = pos;
+                int run = 0;
+                while (pos < text.length() && text.charAt(pos) == '`') {
+                    run++;
+                    pos++;
+                }
+                int kept = run;
+                if (run >= 3) {
+                    int afterJson = afterJsonTag(pos);
+                    if (afterJson >= 0) {
+                        kept = (run - 3) % 3;
+                        pos = afterJson;
+                    } else {
+                        kept = run % 3;
+                        if (kept == 0) {
+                            while (pos < text.length() && isPatternSpace(text.charAt(pos))) {
+                                pos++;
+                            }
+                        }
+                    }
+                    if (firstSkip < 0 && regionStart >= 0) {
+                        firstSkip = runStart;
+                    }
+                }
+                if (kept > 0) {
+                    pendingBackticks = kept - 1;
+                    return '`';
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Position after whitespace, "json" and whitespace starting at from, -1 if there is no such tag
+         */
+        private int afterJsonTag(int from) {
+            int i = from;
+            while (i < text.length() && isPatternSpace(text.charAt(i))) {
+                i++;
+            }
+            if (i + 4 > text.length() || text.charAt(i) != 'j' || text.charAt(i + 1) != 's'
+                || text.charAt(i + 2) != 'o' || text.charAt(i + 3) != 'n') {
+                return -1;
+            }
+            i += 4;
+            while (i < text.length() && isPatternSpace(text.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * The region up to the last '}' (all of it in whole mode), repaired unless it is valid JSON
+         */
+        String result() {
+            return syntax.isValid() ? original() : repaired();
+        }
+
+        private String original() {
+            int end = whole ? length : lastBrace + 1;
+            return out != null ? out.substring(0, end) : text.subSequence(regionStart, regionStart + end).toString();
+        }
+
+        String repaired() {
+            int end = whole ? length : lastBrace + 1;
+            if (escapeCount == 0) {
+                return original();
+            }
+            LOG.debug("🔧 Escaping {} unescaped quotes in JSON string values", escapeCount);
+            StringBuilder result = new StringBuilder(end + escapeCount);
+            int copied = 0;
+            for (int i = 0; i < escapeCount && escapes[i] < end; i++) {
+                appendLogical(result, copied, escapes[i]);
+                result.append('\\');
+                copied = escapes[i];
+            }
+            appendLogical(result, copied, end);
+            return result.toString();
+        }
+
+        private void appendLogical(StringBuilder result, int from, int to) {
+            if (out != null) {
+                result.append(out, from, to);
+            } else {
+                result.append(text, regionStart + from, regionStart + to);
+            }
+        }
+    }
+
+    /**
+     * JSON syntax check of the first value in a character stream, following the rules of Jackson's
+     * default parser (no comments, unquoted names, control characters in strings, leading zeros or
+     * trailing commas). Characters after the first complete value are not looked at, as
+     * {@code ObjectMapper.readTree} does not either.
+     */
+    static final class JsonSyntax {
+
+        private static final int ROOT = 0;
+        private static final int VALUE = 1;
+        private static final int ARRAY_FIRST = 2;
+        private static final int OBJECT_FIRST = 3;
+        private static final int NAME = 4;
+        private static final int COLON = 5;
+        private static final int AFTER_VALUE = 6;
+        private static final int STRING = 7;
+        private static final int ESCAPE = 8;
+        private static final int UNICODE = 9;
+        private static final int MINUS = 10;
+        private static final int ZERO = 11;
+        private static final int INTEGER = 12;
+        private static final int DOT = 13;
+        private static final int FRACTION = 14;
+        private static final int EXPONENT = 15;
+        private static final int EXPONENT_SIGN = 16;
+        private static final int EXPONENT_DIGITS = 17;
+        private static final int LITERAL = 18;
+        private static final int LITERAL_END = 19;
+        private static final int VALID = 20;
+        private static final int INVALID = 21;
+
+        private final boolean[] objects = new boolean[MAX_NESTING_DEPTH + 1];
+        private int depth;
+        private int state = ROOT;
+        private boolean name;
+        private int hexDigits;
+        private String literal;
+        private int literalIndex;
+
+        boolean isDecided() {
+            return state == VALID || state == INVALID;
+        }
+
+        boolean isValid() {
+            return state == VALID;
+        }
+
+        /**
+         * End of input: a value at the root that needs no closing character is complete
+         */
+        void end() {
+            if (depth == 0 && (state == ZERO || state == INTEGER || state == FRACTION
+                               || state == EXPONENT_DIGITS || state == LITERAL_END)) {
+                state = VALID;
+            } else if (!isDecided()) {
+                state = INVALID;
+            }
+        }
+
+        void accept(char c) {
+            switch (state) {
+                case ROOT:
+                case VALUE:
+                case ARRAY_FIRST:
+                    if (c == ']' && state == ARRAY_FIRST) {
+                        close();
+                    } else if (!isSpace(c)) {
+                        startValue(c);
+                    }
+                    break;
+                case OBJECT_FIRST:
+                case NAME:
+                    if (c == '"') {
+                        name = true;
+                        state = STRING;
+                    } else if (c == '}' && state == OBJECT_FIRST) {
+                        close();
+                    } else if (!isSpace(c)) {
+                        state = INVALID;
+                    }
+                    break;
+                case COLON:
+                    if (c == ':') {
+                        state = VALUE;
+                    } else if (!isSpace(c)) {
+                        state = INVALID;
+                    }
+                    break;
+                case AFTER_VALUE:
+                    afterValue(c);
+                    break;
+                case STRING:
+                    if (c == '"') {
+                        if (name) {
+                            name = false;
+                            state = COLON;
+                        } else {
+                            valueDone();
+                        }
+                    } else if (c == '\\') {
+                        state = ESCAPE;
+                    } else if (c < ' ') {
+                        state = INVALID;
+                    }
+                    break;
+                case ESCAPE:
+                    if (c == 'u') {
+                        hexDigits = 0;
+                        state = UNICODE;
+                    } else {
+                        state = "\"\\/bfnrt".indexOf(c) >= 0 ? STRING : INVALID;
+                    }
+                    break;
+                case UNICODE:
+                    if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                        state = INVALID;
+                    } else if (++hexDigits == 4) {
+                        state = STRING;
+                    }
+                    break;
+                case MINUS:
+                    state = c == '0' ? ZERO : c >= '1' && c <= '9' ? INTEGER : INVALID;
+                    break;
+                case ZERO:
+                case INTEGER:
+                    if (c >= '0' && c <= '9') {
+                        state = state == ZERO ? INVALID : INTEGER;
+                    } else if (c == '.') {
+                        state = DOT;
+                    } else if (c == 'e' || c == 'E') {
+                        state = EXPONENT;
+                    } else {
+                        numberDone(c);
+                    }
+                    break;
+                case DOT:
+                    state = c >= '0' && c <= '9' ? FRACTION : INVALID;
+                    break;
+                case FRACTION:
+                    if (c == 'e' || c == 'E') {
+                        state = EXPONENT;
+                    } else if (c < '0' || c > '9') {
+                        numberDone(c);
+                    }
+                    break;
+                case EXPONENT:
+                    state = c == '+' || c == '-' ? EXPONENT_SIGN : c >= '0' && c <= '9' ? EXPONENT_DIGITS : INVALID;
+                    break;
+                case EXPONENT_SIGN:
+                    state = c >= '0' && c <= '9' ? EXPONENT_DIGITS : INVALID;
+                    break;
+                case EXPONENT_DIGITS:
+                    if (c < '0' || c > '9') {
+                        numberDone(c);
+                    }
+                    break;
+                case LITERAL:
+                    if (c != literal.charAt(literalIndex)) {
+                        state = INVALID;
+                    } else if (++literalIndex == literal.length()) {
+                        state = LITERAL_END;
+                    }
+                    break;
+                case LITERAL_END:
+                    // Jackson rejects a literal running into a name character ("truex")
+                    if (Character.isJavaIdentifierPart(c)) {
+                        state = INVALID;
+                    } else {
+                        valueDone();
+                        if (state == AFTER_VALUE) {
+                            afterValue(c);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void startValue(char c) {
+            if (c == '{' || c == '[') {
+                if (++depth > MAX_NESTING_DEPTH) {
+                    state = INVALID;
+                    return;
+                }
+                objects[depth] = c == '{';
+                state = c == '{' ? OBJECT_FIRST : ARRAY_FIRST;
+            } else if (c == '"') {
+                name = false;
+                state = STRING;
+            } else if (c == '-') {
+                state = MINUS;
+            } else if (c == '0') {
+                state = ZERO;
+            } else if (c >= '1' && c <= '9') {
+                state = INTEGER;
+            } else if (c == 't' || c == 'f' || c == 'n') {
+                literal = c == 't' ? "true" : c == 'f' ? "false" : "null";
+                literalIndex = 1;
+                state = LITERAL;
+            } else {
+                state = INVALID;
+            }
+        }
+
+        private void numberDone(char c) {
+            if (depth == 0) {
+                // Jackson requires whitespace after a number at the root
+                state = isSpace(c) ? VALID : INVALID;
+                return;
+            }
+            state = AFTER_VALUE;
+            afterValue(c);
+        }
+
+        private void valueDone() {
+            state = depth == 0 ? VALID : AFTER_VALUE;
+        }
+
+        private void afterValue(char c) {
+            if (c == ',') {
+                state = objects[depth] ? NAME : VALUE;
+            } else if (c == '}' || c == ']') {
+                if (objects[depth] == (c == '}')) {
+                    close();
+                } else {
+                    state = INVALID;
+                }
+            } else if (!isSpace(c)) {
+                state = INVALID;
+            }
+        }
+
+        private void close() {
+            depth--;
+            valueDone();
+        }
+
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+/**
+ * Finds where the first top-level JSON object ends in text that arrives in pieces
+ *
+ * Only braces, string quotes and escapes are tracked, a handful of comparisons per character,
+ * so it can run on every streamed token. Text before the first {@code '{'} (such as a Markdown
+ * fence) is skipped. Positions are offsets into the concatenation of everything fed.
+ * Malformed output (an unescaped quote inside a string) can make it report an end that is not
+ * the real one, so callers should check the object before acting on it.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class JsonObjectTracker {
+
+    private int offset;
+    private int start = -1;
+    private int end = -1;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * Track the next piece of text
+     *
+     * @return true once the object is closed (by this piece or an earlier one)
+     */
+    boolean feed(CharSequence text) {
+        if (end >= 0) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (start < 0) {
+                if (c == '{') {
+                    start = offset + i;
+                    depth = 1;
+                }
+            } else if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                end = offset + i + 1;
+                offset += text.length();
+                return true;
+            }
+        }
+        offset += text.length();
+        return false;
+    }
+
+    boolean isClosed() {
+        return end >= 0;
+    }
+
+    /**
+     * Offset of the opening brace, -1 before it was seen
+     */
+    int getStart() {
+        return start;
+    }
+
+    /**
+     * Offset just past the closing brace, -1 while the object is open
+     */
+    int getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Request entity serializing a value straight into the connection
+ *
+ * The body is never built as a String or byte array: the writer streams it to the socket (chunked)
+ * each time the request is sent, so large members such as images ({@link ImageBase64Serializer})
+ * only pass through the generator's buffers. Repeatable, as long as the value is.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class JsonStreamEntity extends AbstractHttpEntity {
+
+    private final ObjectWriter writer;
+    private final Object value;
+
+    JsonStreamEntity(ObjectWriter writer, Object value) {
+        // The connection's stream belongs to HttpClient, which finishes and closes it
+        this.writer = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.value = value;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * The whole body in memory; only for callers that insist on reading the entity, sending does not use it
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ByteArrayInputStream(writer.writeValueAsBytes(value));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        writer.writeValue(out, value);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -15,18 +15,21 @@
  */
 package com.surgesoftware.aem.llm.core.services.impl;
 
+import com.surgesoftware.aem.llm.core.config.ServiceUserConfig;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
 import com.surgesoftware.aem.llm.core.services.LocalLLMService;
 import com.surgesoftware.aem.llm.core.services.LocalLLMConfiguration;
 import com.surgesoftware.aem.llm.core.models.*;
 import com.surgesoftware.aem.llm.core.exceptions.LLMUnavailableException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.util.EntityUtils;
 import org.apache.http.conn.ConnectTimeoutException;
@@ -40,13 +43,27 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.Designate;
 
 
@@ -68,39 +85,30 @@ public class LocalLLMServiceImpl implements LocalLLMService {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalLLMServiceImpl.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final OllamaStreamReader streamReader = new OllamaStreamReader(objectMapper);
+    private static final ParseTimings parseTimings = new ParseTimings();
+    private static final ObjectNode RESPONSE_SCHEMA = ResponseSchema.of(objectMapper, LLMResponse.class);
+    private static final ObjectNode RESPONSE_FORMAT = responseFormat("aem_component", RESPONSE_SCHEMA);
+    // Wire formats are bound once up front instead of going through maps on every call
+    private static final ObjectWriter generateRequestWriter = objectMapper.writerFor(OllamaGenerateRequest.class);
+    private static final ObjectWriter chatRequestWriter = objectMapper.writerFor(ChatCompletion.Request.class);
+    private static final ObjectReader chatResponseReader = objectMapper.readerFor(ChatCompletion.Response.class);
     
-    // Production-hardened defaults - no OSGi config required for startup
-    private static final String DEFAULT_PROVIDER = "ollama";
-    private static final String DEFAULT_API_URL = "http://localhost:11434/api/generate";
-    private static final String DEFAULT_MODEL = "llama3.2";
     private static final String[] FALLBACK_MODELS = {"llama3", "llama2", "codellama", "llama3.2:latest"};
-    private static final boolean DEFAULT_ENABLED = true;
-    private static final int DEFAULT_MAX_TOKENS = 4000;
-    private static final double DEFAULT_TEMPERATURE = 0.7;
-    private static final int DEFAULT_TIMEOUT = 180;
-    private static final int DEFAULT_RETRY_ATTEMPTS = 3;
-    private static final String DEFAULT_SYSTEM_PROMPT = "You are an expert AEM developer working for SURGE Software Solutions. Generate clean, production-ready AEM component files following Adobe best practices.";
-    private static final boolean DEFAULT_STRIP_MARKDOWN = true;
+    // Model used for requests with an image
+    private static final String VISION_MODEL = "llava:7b";
     
-    // Retry and backoff configuration for timeout resilience
-    private static final int MAX_RETRY_ATTEMPTS = 3;
-    private static final long BASE_BACKOFF_MS = 2000; // 2 seconds
     private static final long WARMUP_TIMEOUT_MS = 10000; // 10 seconds for warm-up
-    private static final String WARMUP_PROMPT = "hi"; // Simple prompt for model warm-up
     
-    // Instance variables - configured from defaults or OSGi
-    private String provider;
-    private String apiUrl;
-    private String model;
-    private boolean enabled;
-    private int maxTokens;
-    private double temperature;
-    private int timeout;
-    private int retryAttempts;
-    private String systemPrompt;
-    private boolean stripMarkdown;
+    // Repository access for the persistent response cache tier; without it only the heap tier is used
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private ServiceUserConfig serviceUserConfig;
     
-    private CloseableHttpClient httpClient;
+    // Settings and resources of the current configuration, replaced as a whole on activate/modify
+    private volatile ServiceState state = ServiceState.inactive();
+    
+    // Gate in front of the connection test that the health endpoints run on request
+    private final DeepProbe deepProbe = new DeepProbe();
     
     @Activate
     @Modified
@@ -110,46 +118,38 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         // Use defaults if OSGi config is missing or incomplete
         if (configuration == null) {
             LOG.info("No OSGi configuration found - using embedded defaults");
-            initializeWithDefaults();
-        } else {
-            // Apply configuration with fallback to defaults for missing values
-            this.enabled = configuration.enabled();
-            this.apiUrl = Optional.ofNullable(configuration.apiUrl())
-                .filter(s -> !s.trim().isEmpty())
-                .orElse(DEFAULT_API_URL);
-            this.model = Optional.ofNullable(configuration.model())
-                .filter(s -> !s.trim().isEmpty())
-                .orElse(DEFAULT_MODEL);
-            this.provider = Optional.ofNullable(configuration.provider())
-                .filter(s -> !s.trim().isEmpty())
-                .orElse(DEFAULT_PROVIDER);
-            this.maxTokens = configuration.maxTokens() > 0 ? configuration.maxTokens() : DEFAULT_MAX_TOKENS;
-            this.temperature = configuration.temperature() > 0 ? configuration.temperature() : DEFAULT_TEMPERATURE;
-            this.timeout = configuration.timeout() > 0 ? configuration.timeout() : DEFAULT_TIMEOUT;
-            this.retryAttempts = configuration.retryAttempts() > 0 ? configuration.retryAttempts() : DEFAULT_RETRY_ATTEMPTS;
-            this.systemPrompt = Optional.ofNullable(configuration.systemPrompt())
-                .filter(s -> !s.trim().isEmpty())
-                .orElse(DEFAULT_SYSTEM_PROMPT);
-            this.stripMarkdown = configuration.stripMarkdown();
-        }
-        
-        if (this.enabled) {
-            // Create HTTP client with proper timeouts
-            RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(this.timeout * 1000) // Convert to milliseconds
-                .setSocketTimeout(this.timeout * 1000)
-                .setConnectionRequestTimeout(this.timeout * 1000)
-                .build();
-            
-            this.httpClient = HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
-                .build();
-            
-            LOG.info("✅ Local LLM Provider: {}", this.provider);
-            LOG.info("✅ Local LLM API URL: {}", this.apiUrl);
-            LOG.info("✅ Local LLM Model: {}", this.model);
-            LOG.info("✅ Max Tokens: {}", this.maxTokens);
-            LOG.info("✅ Temperature: {}", this.temperature);
+        }
+        ServiceSettings settings = ServiceSettings.from(configuration);
+        
+        // Publish the new state atomically, then retire the previous one
+        ServiceState previous = this.state;
+        this.state = settings.enabled ? ServiceState.start(settings, serviceUserConfig) : new ServiceState(settings);
+        previous.retire();
+        
+        if (settings.enabled) {
+            LOG.info("✅ Local LLM Provider: {}", settings.provider);
+            LOG.info("✅ Local LLM API URL: {}", settings.apiUrl);
+            if (settings.backends.size() > 1) {
+                LOG.info("✅ Inference backends: {}", settings.backends);
+            }
+            LOG.info("✅ Local LLM Model: {}", settings.model);
+            LOG.info("✅ Max Tokens: {}", settings.maxTokens);
+            LOG.info("✅ Temperature: {}", settings.temperature);
+            LOG.info("✅ Connection pool: {} total / {} per route", settings.maxConnectionsTotal, settings.maxConnectionsPerRoute);
+            LOG.info("✅ Max in-flight generations: {} ({} may wait)", settings.maxInFlightRequests, settings.maxQueuedRequests);
+            LOG.info("✅ Retries: {} attempts per generation, budget {}% of requests", settings.retryAttempts,
+                    settings.retryBudgetPercent);
+            LOG.info("✅ Request deadline: {}", settings.requestDeadlineSeconds > 0 ? settings.requestDeadlineSeconds + "s" : "none");
+            if (settings.isOllama()) {
+                LOG.info("✅ Model keep-alive: {}, kept warm: {} ({})", 
+                        settings.modelKeepAlive.isEmpty() ? "server default" : settings.modelKeepAlive,
+                        settings.keepWarmEnabled ? settings.keepWarmModels : "off",
+                        settings.keepWarmSchedule.isEmpty() ? "always" : settings.keepWarmSchedule);
+            }
+            if (settings.responseCacheEnabled) {
+                LOG.info("✅ Response cache: {} MB heap, {}h TTL, persistent: {}", settings.responseCacheMaxSizeMb,
+                        settings.responseCacheTtlHours, settings.responseCachePersistent && serviceUserConfig != null);
+            }
             LOG.info("🎉 SURGE AEM LLM Connector: Service activated successfully with {} configuration", 
                     configuration != null ? "OSGi" : "embedded defaults");
         } else {
@@ -157,44 +157,193 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         }
     }
     
+    @Deactivate
+    protected void deactivate() {
+        LOG.info("SURGE AEM LLM Connector: Local LLM Service deactivating...");
+        ServiceState previous = this.state;
+        this.state = ServiceState.inactive();
+        previous.retire();
+    }
+    
+    @Override
+    public ComponentGenerationResponse generateComponent(ComponentGenerationRequest request) {
+        return generateComponent(request, null);
+    }
+    
     /**
-     * Initialize service with hardcoded production defaults
+     * Blocking variant: a thin wrapper that waits for {@link #generateComponentAsync(ComponentGenerationRequest, GenerationListener)}
      */
-    private void initializeWithDefaults() {
-        this.enabled = DEFAULT_ENABLED;
-        this.provider = DEFAULT_PROVIDER;
-        this.apiUrl = DEFAULT_API_URL;
-        this.model = DEFAULT_MODEL;
-        this.maxTokens = DEFAULT_MAX_TOKENS;
-        this.temperature = DEFAULT_TEMPERATURE;
-        this.timeout = DEFAULT_TIMEOUT;
-        this.retryAttempts = DEFAULT_RETRY_ATTEMPTS;
-        this.systemPrompt = DEFAULT_SYSTEM_PROMPT;
-        this.stripMarkdown = DEFAULT_STRIP_MARKDOWN;
-        LOG.info("🔧 Initialized with production defaults: {} - {} - {}", 
-                this.provider, this.model, this.apiUrl);
+    @Override
+    public ComponentGenerationResponse generateComponent(ComponentGenerationRequest request, GenerationListener listener) {
+        CompletableFuture<ComponentGenerationResponse> generation = generateComponentAsync(request, listener);
+        try {
+            return generation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Nobody waits for the result any more
+            generation.cancel(true);
+            LOG.warn("Interrupted while waiting for component generation");
+            return errorResponse("Component generation was interrupted");
+        } catch (ExecutionException e) {
+            LOG.error("❌ Component generation failed: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage(), e);
+            return errorResponse("Failed to generate component: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
     }
     
     @Override
-    public ComponentGenerationResponse generateComponent(ComponentGenerationRequest request) {
+    public CompletableFuture<ComponentGenerationResponse> generateComponentAsync(ComponentGenerationRequest request) {
+        return generateComponentAsync(request, null);
+    }
+    
+    @Override
+    public CompletableFuture<ComponentGenerationResponse> generateComponentAsync(ComponentGenerationRequest request,
+                                                                                 GenerationListener listener) {
+        // Uploaded images live in temporary files: the one of the request that starts an upstream
+        // generation is closed by that generation, any other right away (a joined flight reads its own)
+        AtomicBoolean imageInFlight = new AtomicBoolean();
+        CompletableFuture<ComponentGenerationResponse> generation = startGeneration(request, listener, imageInFlight);
+        ImageAttachment image = request.getImage();
+        if (image != null && !imageInFlight.get()) {
+            image.close();
+        }
+        return generation;
+    }
+    
+    /**
+     * @param imageInFlight Set when an upstream generation was started, which then owns the image of the request
+     */
+    private CompletableFuture<ComponentGenerationResponse> startGeneration(ComponentGenerationRequest request,
+                                                                           GenerationListener listener,
+                                                                           AtomicBoolean imageInFlight) {
+        // Captured once: the whole generation runs against this configuration
+        ServiceState current = this.state;
+        ExecutorService executor = current.executor;
+        if (!current.settings.enabled || executor == null) {
+            return CompletableFuture.completedFuture(errorResponse("Local LLM service is not enabled"));
+        }
+        
+        String key = GenerationCoalescer.keyOf(request, current.settings);
+        ResponseCache cache = current.responseCache;
+        if (cache != null && !request.isBypassCache()) {
+            ComponentGenerationResponse cached = cache.get(key);
+            if (cached != null) {
+                LOG.info("⚡ Serving cached generation for prompt: {}", request.getPrompt());
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        
+        // Identical requests already in flight share one upstream generation; it is abandoned
+        // (cancelling its backend calls) once every caller cancelled its future
+        SemanticCache semanticCache = current.semanticCache;
+        String contextKey = GenerationCoalescer.contextKeyOf(request, current.settings);
+        return current.coalescer.execute(key, listener, flightListener -> {
+            RequestDeadline deadline = RequestDeadline.of(request.getDeadline(),
+                                                          current.settings.requestDeadlineSeconds * 1000L);
+            // Differently worded prompts with the same meaning: serve a close match, offer a weaker one.
+            // Embedding the prompt is a backend call too: once per flight, on the executor, briefly.
+            CompletableFuture<SemanticCache.Lookup> lookup = semanticCache != null && !request.isBypassCache()
+                ? semanticCache.lookupAsync(request.getPrompt(), contextKey, executor, current.settings.maxInFlightRequests)
+                : CompletableFuture.completedFuture(null);
+            CompletableFuture<ComponentGenerationResponse> generation = lookup.thenCompose(similar -> {
+                if (similar != null && similar.response != null) {
+                    if (similar.hit) {
+                        similar.response.setSimilarity(similar.similarity);
+                        return CompletableFuture.completedFuture(similar.response);
+                    }
+                    flightListener.onSuggestion(similar.response, similar.similarity);
+                }
+                if (deadline.isAbandoned()) {
+                    // Every caller left while the prompt was being embedded
+                    return CompletableFuture.completedFuture(errorResponse("Generation was abandoned"));
+                }
+                return startGeneration(current, request, flightListener, deadline).thenApply(response -> {
+                    if (cache != null) {
+                        cache.put(key, response);
+                        if (similar != null && response.isSuccess()) {
+                            semanticCache.add(contextKey, key, similar.embedding);
+                        }
+                    }
+                    return response;
+                });
+            });
+            // The flight, not its first caller, owns the image: retries and hedges of every caller
+            // still read it after that caller went away. Only the copy handed to the coalescer
+            // gets cancelled, so this completes once the backend calls are really over.
+            ImageAttachment image = request.getImage();
+            if (image != null) {
+                imageInFlight.set(true);
+                generation.whenComplete((response, error) -> image.close());
+            }
+            CompletableFuture<ComponentGenerationResponse> result = generation.copy();
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    deadline.abandon("no caller is waiting any more");
+                }
+            });
+            return result;
+        });
+    }
+    
+    /**
+     * Admit a generation and submit it to the executor of the given state
+     */
+    private CompletableFuture<ComponentGenerationResponse> startGeneration(ServiceState current,
+                                                                           ComponentGenerationRequest request,
+                                                                           GenerationListener listener,
+                                                                           RequestDeadline deadline) {
+        ExecutorService executor = current.executor;
+        
+        // Admission control: reject right away instead of queueing behind the socket timeout
+        GenerationAdmission admission = current.admission;
+        int queuePosition = admission.tryAdmit();
+        if (queuePosition == GenerationAdmission.REJECTED) {
+            long retryAfterSeconds = admission.retryAfterSeconds();
+            LOG.warn("🚦 Generation rejected - queue is full, retry after {}s", retryAfterSeconds);
+            ComponentGenerationResponse rejected = errorResponse("Local LLM is busy with other generations");
+            rejected.setErrorCode(ComponentGenerationResponse.ERROR_QUEUE_FULL);
+            rejected.setRetryAfterSeconds(retryAfterSeconds);
+            return CompletableFuture.completedFuture(rejected);
+        }
+        
+        notifyStage(listener, GenerationListener.STAGE_QUEUED,
+                    queuePosition == 0 ? "starting" : "position " + queuePosition + " in queue");
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long startTime = System.currentTimeMillis();
+                try {
+                    ComponentGenerationResponse response = doGenerateComponent(current, request, listener, deadline);
+                    response.setQueuePosition(queuePosition);
+                    return response;
+                } finally {
+                    admission.recordServiceTime(System.currentTimeMillis() - startTime);
+                    admission.release();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            LOG.warn("⚠️ Generation rejected - executor is shutting down");
+            return CompletableFuture.completedFuture(errorResponse("Local LLM service is shutting down, please retry"));
+        }
+    }
+    
+    /**
+     * Run one generation on the calling (executor) thread
+     */
+    private ComponentGenerationResponse doGenerateComponent(ServiceState current, ComponentGenerationRequest request,
+                                                            GenerationListener listener, RequestDeadline deadline) {
         LOG.info("Generating component using Local LLM for prompt: {}", request.getPrompt());
         
         ComponentGenerationResponse response = new ComponentGenerationResponse();
         response.setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         
-        if (!this.enabled) {
-            response.setStatus("error");
-            response.setError("Local LLM service is not enabled");
-            return response;
-        }
-        
         try {
             // Build the prompt for the LLM
             String prompt = buildComponentPrompt(request);
             LOG.debug("Sending prompt to Local LLM: {}", prompt);
             
-            // Call the local LLM with image support and retry logic
-            String llmResponse = callLocalLLMWithRetry(prompt, request.getImageData());
+            // Call the local LLM with image support and retry logic, reporting fields as they complete
+            FieldStreamingListener fieldListener = new FieldStreamingListener(objectMapper, listener);
+            String llmResponse = callLocalLLMWithRetry(current, prompt, request.getImage(), fieldListener, deadline);
             
             if (llmResponse == null || llmResponse.trim().isEmpty()) {
                 response.setStatus("error");
@@ -203,7 +352,8 @@ public class LocalLLMServiceImpl implements LocalLLMService {
             }
             
             // Parse the LLM response
-            LLMResponse parsedResponse = parseLLMResponse(llmResponse);
+            notifyStage(listener, GenerationListener.STAGE_PARSING, null);
+            LLMResponse parsedResponse = toLLMResponse(current, llmResponse, fieldListener.getStreamedResponse());
             
             if (parsedResponse == null) {
                 response.setStatus("error");
@@ -255,6 +405,12 @@ public class LocalLLMServiceImpl implements LocalLLMService {
             
             // Provide user-friendly error messages from custom exception
             response.setError(e.getUserFriendlyMessage());
+            if (e.isCircuitOpen()) {
+                response.setErrorCode(ComponentGenerationResponse.ERROR_CIRCUIT_OPEN);
+                response.setRetryAfterSeconds(e.getRetryAfterSeconds());
+            } else if (e.isDeadlineExceeded()) {
+                response.setErrorCode(ComponentGenerationResponse.ERROR_DEADLINE_EXCEEDED);
+            }
             if (e.getTechnicalDetails() != null) {
                 response.setModelError(e.getTechnicalDetails());
             }
@@ -270,7 +426,7 @@ public class LocalLLMServiceImpl implements LocalLLMService {
             // Provide specific error messages based on exception type
             String errorMessage = e.getMessage();
             if (errorMessage.contains("Connection timeout") || errorMessage.contains("Connection refused")) {
-                response.setError("Cannot connect to Local LLM. Please ensure Ollama is running on " + this.apiUrl);
+                response.setError("Cannot connect to Local LLM. Please ensure Ollama is running on " + backendUrls(current.settings));
             } else if (errorMessage.contains("not found") || errorMessage.contains("Available models:")) {
                 // This is a model availability error
                 response.setModelError(errorMessage);
@@ -285,180 +441,319 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         return response;
     }
     
+    private ComponentGenerationResponse errorResponse(String error) {
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        response.setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        response.setStatus("error");
+        response.setError(error);
+        return response;
+    }
+    
+    /**
+     * API URLs of all configured backends, for messages
+     */
+    private static String backendUrls(ServiceSettings settings) {
+        return settings.backends.stream().map(backend -> backend.apiUrl).collect(Collectors.joining(", "));
+    }
+    
+    private static void invalidateModelCatalog(BackendPool.Backend backend) {
+        if (backend.modelCatalog != null) {
+            backend.modelCatalog.invalidate();
+        }
+    }
+    
     @Override
     public boolean testConnection() {
         LOG.info("Testing Local LLM API connection");
         
-        if (!this.enabled) {
+        ServiceState current = this.state;
+        if (!current.settings.enabled) {
             LOG.warn("Local LLM service is not enabled");
             return false;
         }
         
+        // Shared by concurrent callers and reused for a while: polling adds no load of its own
         try {
-            String testPrompt = "Generate a simple test response for AEM component generation.";
-            String response = callLocalLLM(testPrompt);
-            boolean isConnected = response != null && !response.trim().isEmpty();
-            
-            LOG.info("Local LLM API connection test result: {}", isConnected ? "SUCCESS" : "FAILED");
-            return isConnected;
-            
-        } catch (Exception e) {
-            LOG.error("Local LLM API connection test failed: {}", e.getMessage(), e);
+            return deepProbe.check(current, () -> startConnectionTest(current)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            LOG.error("Local LLM API connection test failed: {}", e.getCause().getMessage(), e.getCause());
             return false;
         }
     }
     
+    /**
+     * Run the connection test generation like any other: admitted, and on the generation executor
+     */
+    private CompletableFuture<Boolean> startConnectionTest(ServiceState current) {
+        GenerationAdmission admission = current.admission;
+        if (admission.tryAdmit() == GenerationAdmission.REJECTED) {
+            // Busy generating: say what the liveness check says rather than queue up behind the others
+            boolean reachable = current.backendPool.getHealth().isReachable();
+            LOG.info("Local LLM API connection test skipped, queue is full - backend reachable: {}", reachable);
+            return CompletableFuture.completedFuture(reachable);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    String testPrompt = "Generate a simple test response for AEM component generation.";
+                    String response = callLocalLLM(current, current.settings.model, testPrompt, null, null,
+                                                   new ArrayList<>(), new CallCancellation(), new RequestDeadline(0));
+                    boolean isConnected = response != null && !response.trim().isEmpty();
+                    
+                    LOG.info("Local LLM API connection test result: {}", isConnected ? "SUCCESS" : "FAILED");
+                    return isConnected;
+                    
+                } catch (Exception e) {
+                    LOG.error("Local LLM API connection test failed: {}", e.getMessage(), e);
+                    return false;
+                } finally {
+                    admission.release();
+                }
+            }, current.executor);
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+    
+    @Override
+    public BackendHealth getBackendHealth() {
+        ServiceState current = this.state;
+        if (!current.settings.enabled) {
+            return BackendHealth.of(BackendHealth.STATUS_DISABLED, "Local LLM service is disabled");
+        }
+        BackendPool pool = current.backendPool;
+        return pool != null
+            ? pool.getHealth()
+            : BackendHealth.of(BackendHealth.STATUS_UNKNOWN, "Health probe is not running");
+    }
+    
     @Override
     public String getLLMInfo() {
-        if (!this.enabled) {
+        ServiceSettings settings = this.state.settings;
+        if (!settings.enabled) {
             return "Local LLM Service: Disabled";
         }
         return String.format("Local LLM Service: %s - %s - %s", 
-                this.provider, this.model, this.apiUrl);
+                settings.provider, settings.model, backendUrls(settings));
     }
     
-    /**
-     * Check what models are available on the Ollama server
-     */
-    private List<String> getAvailableModels() throws IOException {
-        if (!"ollama".equals(this.provider)) {
-            return new ArrayList<>();
+    @Override
+    public Map<String, Object> getServiceMetrics() {
+        ServiceState current = this.state;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        PooledHttpTransport currentTransport = current.transport;
+        metrics.put("connectionPool", currentTransport != null
+            ? currentTransport.getPoolStats()
+            : Collections.singletonMap("status", "inactive"));
+        
+        ThreadPoolExecutor executor = current.executor;
+        Map<String, Object> generations = new LinkedHashMap<>();
+        if (executor != null) {
+            generations.put("maxInFlight", executor.getMaximumPoolSize());
+            generations.put("active", executor.getActiveCount());
+            generations.put("queued", executor.getQueue().size());
+            generations.put("completed", executor.getCompletedTaskCount());
+            generations.put("admission", current.admission.getStats());
+            generations.put("coalescing", current.coalescer.getStats());
+            if (current.responseCache != null) {
+                generations.put("responseCache", current.responseCache.getStats());
+            }
+            if (current.semanticCache != null) {
+                generations.put("semanticCache", current.semanticCache.getStats());
+            }
+        } else {
+            generations.put("status", "inactive");
         }
+        metrics.put("generations", generations);
         
-        String tagsUrl = this.apiUrl.replace("/api/generate", "/api/tags");
-        LOG.info("🔍 Checking available models at: {}", tagsUrl);
-        
-        HttpGet httpGet = new HttpGet(tagsUrl);
+        ModelCatalog catalog = current.backendPool != null ? current.backendPool.primary().modelCatalog : null;
+        if (catalog != null) {
+            metrics.put("modelCatalog", catalog.getStats()); // each backend's catalog is in its stats
+        }
         
-        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-            int statusCode = response.getStatusLine().getStatusCode();
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-            
-            if (statusCode == 200) {
-                Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-                List<String> availableModels = new ArrayList<>();
-                
-                if (responseMap.containsKey("models")) {
-                    List<Map<String, Object>> models = (List<Map<String, Object>>) responseMap.get("models");
-                    for (Map<String, Object> model : models) {
-                        if (model.containsKey("name")) {
-                            availableModels.add((String) model.get("name"));
-                        }
-                    }
-                }
-                
-                LOG.info("📋 Available models: {}", availableModels);
-                return availableModels;
-            } else {
-                LOG.warn("Failed to get available models. Status: {}, Response: {}", statusCode, responseBody);
-                return new ArrayList<>();
-            }
-        } catch (Exception e) {
-            LOG.warn("Error checking available models: {}", e.getMessage());
-            return new ArrayList<>();
+        CircuitBreaker breaker = current.circuitBreaker;
+        if (breaker != null) {
+            metrics.put("circuitBreaker", breaker.getStats());
         }
-    }
-    
-    /**
-     * Check if a specific model is available and find best alternative
-     */
-    private String findBestAvailableModel(String requestedModel) throws IOException {
-        List<String> availableModels = getAvailableModels();
         
-        if (availableModels.isEmpty()) {
-            LOG.warn("No models found on Ollama server");
-            return requestedModel; // Fall back to original request
+        BackendPool pool = current.backendPool;
+        if (pool != null) {
+            metrics.put("backends", pool.getStats());
         }
         
-        // Check if requested model is available (exact match or with :latest)
-        String normalizedRequest = requestedModel.contains(":") ? requestedModel : requestedModel + ":latest";
-        for (String available : availableModels) {
-            if (available.equals(requestedModel) || available.equals(normalizedRequest)) {
-                LOG.info("✅ Requested model '{}' is available", requestedModel);
-                return requestedModel;
-            }
+        RetryPolicy retryPolicy = current.retryPolicy;
+        if (retryPolicy != null) {
+            metrics.put("retries", retryPolicy.getStats());
         }
         
-        // Model not found - try to find a suitable alternative
-        LOG.warn("❌ Model '{}' not found. Available models: {}", requestedModel, availableModels);
+        Map<String, Object> parsing = parseTimings.getStats();
+        parsing.put("structuredOutput", current.settings.structuredOutput);
+        metrics.put("parsing", parsing);
         
-        // Try to find a similar model (llama family first)
-        String bestMatch = findBestModelMatch(requestedModel, availableModels);
-        if (bestMatch != null) {
-            LOG.info("🔄 Auto-selecting alternative model: {}", bestMatch);
-            return bestMatch;
+        if (current.settings.isOllama()) {
+            Map<String, Object> streams = streamReader.getStats();
+            streams.put("stopAtJsonEnd", current.settings.stopAtJsonEnd);
+            metrics.put("streams", streams);
         }
         
-        // If no good match, just use the first available model
-        if (!availableModels.isEmpty()) {
-            String firstModel = availableModels.get(0);
-            LOG.info("🔄 Using first available model: {}", firstModel);
-            return firstModel;
+        RequestHedger hedger = current.hedger;
+        if (hedger != null) {
+            metrics.put("hedging", hedger.getStats());
         }
         
-        // No models available at all
-        throw new IOException("No models available on Ollama server. Available models: " + availableModels + 
-                             ". Please run 'ollama pull " + requestedModel + "' to install the requested model.");
+        if (current.adaptiveTimeouts != null) {
+            Map<String, Object> timeouts = current.adaptiveTimeouts.getStats();
+            timeouts.putAll(current.watchdog.getStats());
+            metrics.put("adaptiveTimeouts", timeouts);
+        }
+        return metrics;
     }
     
     /**
-     * Find the best matching model from available models
+     * Check what models are available on an Ollama backend (served from its cached model catalog)
      */
-    private String findBestModelMatch(String requestedModel, List<String> availableModels) {
-        String baseRequest = requestedModel.split(":")[0].toLowerCase();
-        
-        // Priority order for model families
-        String[] preferredPrefixes = {"llama3", "llama", "codellama", "mistral", "phi"};
-        
-        for (String prefix : preferredPrefixes) {
-            if (baseRequest.startsWith(prefix)) {
-                // Look for models with the same prefix
-                for (String available : availableModels) {
-                    String baseAvailable = available.split(":")[0].toLowerCase();
-                    if (baseAvailable.startsWith(prefix)) {
-                        return available;
-                    }
-                }
+    private static List<String> getAvailableModels(BackendPool.Backend backend) {
+        ModelCatalog catalog = backend.modelCatalog;
+        if (catalog == null) {
+            return new ArrayList<>();
+        }
+        return catalog.getModels();
+    }
+    
+    /**
+     * Check if a specific model is available on the backend and find best alternative, resolved in memory
+     * from the backend's model catalog
+     */
+    private String findBestAvailableModel(String requestedModel) throws IOException {
+        BackendPool pool = this.state.backendPool;
+        return pool != null ? findBestAvailableModel(pool.primary(), requestedModel) : requestedModel;
+    }
+    
+    private static String findBestAvailableModel(BackendPool.Backend backend, String requestedModel) throws IOException {
+        ModelCatalog catalog = backend.modelCatalog;
+        if (catalog == null) {
+            return requestedModel; // Fall back to original request
+        }
+        return catalog.resolve(requestedModel);
+    }
+    
+    /**
+     * Fallback models installed on at least one backend, in the configured order; every fallback but the
+     * failed model while a backend's listing is unknown
+     */
+    private static List<String> installedFallbacks(ServiceState current, String failedModel) {
+        Set<String> installed = new HashSet<>();
+        for (BackendPool.Backend backend : current.backendPool.getBackends()) {
+            if (backend.modelCatalog == null) {
+                installed.addAll(Arrays.asList(FALLBACK_MODELS));
+            } else {
+                installed.addAll(backend.modelCatalog.installedFallbacks(failedModel, FALLBACK_MODELS));
             }
         }
-        
-        // If no family match, look for any llama model
-        for (String available : availableModels) {
-            if (available.toLowerCase().contains("llama")) {
-                return available;
+        List<String> fallbackModels = new ArrayList<>();
+        for (String fallbackModel : FALLBACK_MODELS) {
+            if (!fallbackModel.equals(failedModel) && installed.contains(fallbackModel)) {
+                fallbackModels.add(fallbackModel);
             }
         }
-        
-        return null;
+        return fallbackModels;
     }
     
     /**
-     * Enhanced Local LLM call with retry logic, exponential backoff, and model warm-up
+     * Enhanced Local LLM call with retry logic, jittered backoff, and model warm-up.
+     * Only transient failures are retried, as many times as configured and the service-wide
+     * retry budget allows. A missing model is looked for on the backends not tried yet, which
+     * costs neither an attempt nor retry budget, then the fallback models are tried.
+     * All of it runs within the request deadline: no step starts once it has passed, and
+     * a backoff that would outlast it ends the retries.
      */
-    private String callLocalLLMWithRetry(String prompt, String imageData) throws LLMUnavailableException {
+    private String callLocalLLMWithRetry(ServiceState current, String prompt, ImageAttachment image,
+                                         GenerationListener listener, RequestDeadline deadline)
+            throws LLMUnavailableException {
+        ServiceSettings settings = current.settings;
+        RetryPolicy retryPolicy = current.retryPolicy;
+        int maxAttempts = retryPolicy.getMaxAttempts();
+        RetryPolicy.Backoff backoff = retryPolicy.backoff();
+        retryPolicy.recordRequest();
         LLMUnavailableException lastException = null;
         boolean attemptedWarmup = false;
+        // Each attempt goes to a backend not tried yet, as long as there is one
+        List<BackendPool.Backend> triedBackends = new CopyOnWriteArrayList<>();
         
-        // Enhanced retry loop with exponential backoff
-        for (int attempt = 1; attempt <= MAX_RETRY_ATTEMPTS; attempt++) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
             try {
+                deadline.check(lastException != null ? lastException.getMessage() : null);
                 LOG.info("⏳ Sending prompt to Ollama... (timeout: {}s, model: {}, attempt: {}/{})", 
-                         this.timeout, this.model, attempt, MAX_RETRY_ATTEMPTS);
+                         settings.timeout, settings.model, attempt, maxAttempts);
+                notifyStage(listener, attempt == 1 ? GenerationListener.STAGE_MODEL_LOADING : GenerationListener.STAGE_RETRYING,
+                            "attempt " + attempt + " of " + maxAttempts);
                          
-                return callLocalLLM(prompt, imageData);
+                return callHedged(current, settings.model, prompt, image, tokenConsumerFor(listener), triedBackends,
+                                  deadline);
                 
             } catch (IOException e) {
-                LOG.warn("🔄 Retrying LLM call... attempt {} of {} failed: {}", attempt, MAX_RETRY_ATTEMPTS, e.getMessage());
+                if (e instanceof LLMUnavailableException && ((LLMUnavailableException) e).isCircuitOpen()) {
+                    // Backend is known to be down: no retries, warm-up or fallbacks
+                    LOG.warn("🚫 Circuit breaker open, failing fast: {}", e.getMessage());
+                    throw (LLMUnavailableException) e;
+                }
+                // Out of time (or abandoned): whatever the call failed with, nothing more is tried
+                deadline.check(e.getMessage());
+                
+                String failedApiUrl = triedBackends.isEmpty()
+                    ? settings.apiUrl : triedBackends.get(triedBackends.size() - 1).apiUrl();
+                
+                // Convert IOException to LLMUnavailableException for better error handling
+                if (e instanceof SocketTimeoutException) {
+                    lastException = LLMUnavailableException.forTimeout(settings.model, settings.timeout);
+                } else if (e instanceof ConnectException || e.getMessage().contains("Connection refused")) {
+                    lastException = LLMUnavailableException.forConnectivity(failedApiUrl);
+                } else {
+                    lastException = new LLMUnavailableException(e.getMessage(), e);
+                }
+                
+                RetryPolicy.Failure failure = RetryPolicy.classify(e);
+                if (failure == RetryPolicy.Failure.MODEL_MISSING) {
+                    // Calling the same model on the same backend cannot help, another backend may have it
+                    if (current.backendPool.hasUntried(triedBackends)) {
+                        LOG.warn("🔀 Model not found on {}, trying another backend: {}", failedApiUrl, e.getMessage());
+                        attempt--;
+                        continue;
+                    }
+                    if (settings.isOllama()) {
+                        return tryFallbackModels(current, prompt, image, listener, lastException, triedBackends,
+                                                 deadline);
+                    }
+                    throw lastException;
+                }
+                if (failure == RetryPolicy.Failure.TERMINAL) {
+                    retryPolicy.recordTerminalFailure();
+                    LOG.warn("⛔ Attempt {} of {} failed permanently, not retrying: {}", attempt, maxAttempts, e.getMessage());
+                    throw lastException;
+                }
                 
                 // Check if this is a timeout that might benefit from warm-up
                 boolean isTimeout = e instanceof SocketTimeoutException || 
                                   e.getMessage().contains("timeout") || 
                                   e.getMessage().contains("Timeout");
+                boolean warmUp = isTimeout && !attemptedWarmup && settings.isOllama();
+                if (attempt == maxAttempts && !warmUp) {
+                    break;
+                }
+                if (!retryPolicy.tryAcquireRetry()) {
+                    // Retries already add their share of load: fail with what we have
+                    throw lastException;
+                }
+                LOG.warn("🔄 Retrying LLM call... attempt {} of {} failed: {}", attempt, maxAttempts, e.getMessage());
                 
-                if (isTimeout && !attemptedWarmup && "ollama".equals(this.provider)) {
+                if (warmUp) {
                     LOG.info("🔥 Model warm-up triggered. Waiting for LLM to load...");
                     try {
-                        warmUpModel(this.model);
+                        warmUpModel(current, failedApiUrl, settings.model, deadline);
                         attemptedWarmup = true;
                         LOG.info("✅ Model warm-up completed, retrying original request");
                         // Don't count warm-up as an attempt, continue with same attempt number
@@ -466,33 +761,24 @@ public class LocalLLMServiceImpl implements LocalLLMService {
                         continue;
                     } catch (Exception warmupException) {
                         LOG.warn("⚠️ Model warm-up failed: {}", warmupException.getMessage());
+                        if (attempt == maxAttempts) {
+                            break;
+                        }
                     }
                 }
                 
-                // Convert IOException to LLMUnavailableException for better error handling
-                if (e instanceof SocketTimeoutException) {
-                    lastException = LLMUnavailableException.forTimeout(this.model, this.timeout);
-                } else if (e instanceof ConnectException || e.getMessage().contains("Connection refused")) {
-                    lastException = LLMUnavailableException.forConnectivity(this.apiUrl);
-                } else {
-                    lastException = new LLMUnavailableException(e.getMessage(), e);
-                }
-                
-                // If this is the last attempt, try fallback models
-                if (attempt == MAX_RETRY_ATTEMPTS) {
-                    if (e.getMessage().contains("not found") && "ollama".equals(this.provider)) {
-                        return tryFallbackModels(prompt, imageData, lastException);
-                    }
-                } else {
-                    // Apply exponential backoff before next attempt
-                    long backoffTime = BASE_BACKOFF_MS * (long) Math.pow(2, attempt - 1);
-                    LOG.info("⏱️ Waiting {}ms before retry {} of {}", backoffTime, attempt + 1, MAX_RETRY_ATTEMPTS);
-                    try {
-                        Thread.sleep(backoffTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new LLMUnavailableException("Retry interrupted", ie);
+                // Jittered backoff, so callers that failed together do not retry together
+                long backoffTime = backoff.nextDelayMillis();
+                LOG.info("⏱️ Waiting {}ms before retry {} of {}", backoffTime, attempt + 1, maxAttempts);
+                try {
+                    if (!deadline.pause(backoffTime)) {
+                        LOG.warn("⏰ No time left for retry {} of {} within the request deadline",
+                                 attempt + 1, maxAttempts);
+                        throw deadline.exceeded(lastException.getMessage());
                     }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new LLMUnavailableException("Retry interrupted", ie);
                 }
             }
         }
@@ -501,149 +787,254 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         throw lastException != null ? lastException : new LLMUnavailableException("All retry attempts failed");
     }
     
+    /**
+     * Null-safe stage notification
+     */
+    private static void notifyStage(GenerationListener listener, String stage, String detail) {
+        if (listener != null) {
+            listener.onStage(stage, detail);
+        }
+    }
+    
+    /**
+     * Adapt a listener to a per-attempt token consumer that reports the generating stage on the first token
+     */
+    private static Consumer<String> tokenConsumerFor(GenerationListener listener) {
+        if (listener == null) {
+            return null;
+        }
+        boolean[] firstToken = {true};
+        return token -> {
+            if (firstToken[0]) {
+                firstToken[0] = false;
+                listener.onStage(GenerationListener.STAGE_GENERATING, null);
+            }
+            listener.onToken(token);
+        };
+    }
+    
     /**
      * Attempt to warm up the model with a simple request
      */
     private void warmUpModel(String modelToWarmUp) throws IOException {
-        LOG.info("🔥 Warming up model: {}", modelToWarmUp);
-        
-        Map<String, Object> warmupRequest = new HashMap<>();
-        warmupRequest.put("model", modelToWarmUp);
-        warmupRequest.put("prompt", WARMUP_PROMPT);
-        warmupRequest.put("stream", false); // Don't stream for warm-up
-        warmupRequest.put("options", Map.of("num_predict", 1)); // Minimal response
-        
-        String jsonBody = objectMapper.writeValueAsString(warmupRequest);
-        HttpPost httpPost = new HttpPost(this.apiUrl);
-        httpPost.setHeader("Content-Type", "application/json");
-        httpPost.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
-        
-        // Use shorter timeout for warm-up
-        RequestConfig warmupConfig = RequestConfig.custom()
-            .setConnectTimeout((int) WARMUP_TIMEOUT_MS)
-            .setSocketTimeout((int) WARMUP_TIMEOUT_MS)
-            .build();
-        httpPost.setConfig(warmupConfig);
+        ServiceState current = this.state;
+        warmUpModel(current, current.settings.backends.get(0).apiUrl, modelToWarmUp, new RequestDeadline(0));
+    }
+    
+    /**
+     * Warm-up within the request deadline: skipped without time left, shortened to the time left otherwise
+     */
+    private static void warmUpModel(ServiceState current, String apiUrl, String modelToWarmUp,
+                                    RequestDeadline deadline) throws IOException {
+        if (current.httpClient == null) {
+            throw new IOException("Local LLM service is not active");
+        }
+        deadline.check(null);
+        LOG.info("🔥 Warming up model: {} on {}", modelToWarmUp, apiUrl);
         
-        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 200) {
-                LOG.info("✅ Model warm-up successful for: {}", modelToWarmUp);
-            } else {
-                LOG.warn("⚠️ Model warm-up returned status {}", statusCode);
-            }
+        // Loads the model without generating and sets its keep-alive; shorter timeout than a generation
+        CallCancellation cancellation = new CallCancellation();
+        deadline.register(cancellation);
+        try {
+            ModelKeeper.warmUp(current.httpClient, objectMapper, apiUrl, modelToWarmUp,
+                               current.settings.modelKeepAlive, deadline.clamp((int) WARMUP_TIMEOUT_MS), cancellation);
+        } finally {
+            deadline.unregister(cancellation);
         }
+        LOG.info("✅ Model warm-up successful for: {}", modelToWarmUp);
     }
     
     /**
-     * Try fallback models when primary model fails
+     * Try fallback models when primary model fails. The fallback is passed down per call,
+     * the configured model of the (shared) service is never changed. Fallbacks that no longer
+     * fit in the request deadline are skipped.
      */
-    private String tryFallbackModels(String prompt, String imageData, LLMUnavailableException originalException) throws LLMUnavailableException {
-        String originalModel = this.model;
+    private String tryFallbackModels(ServiceState current, String prompt, ImageAttachment image,
+                                     GenerationListener listener,
+                                     LLMUnavailableException originalException,
+                                     List<BackendPool.Backend> triedBackends,
+                                     RequestDeadline deadline) throws LLMUnavailableException {
+        String originalModel = current.settings.model;
         LOG.info("🔄 Trying fallback models after primary model '{}' failed", originalModel);
         
-        for (String fallbackModel : FALLBACK_MODELS) {
-            if (fallbackModel.equals(originalModel)) {
-                continue; // Skip the model that already failed
+        // Only try fallbacks that are actually installed somewhere, resolved in memory from the model catalogs
+        List<String> fallbackModels = installedFallbacks(current, originalModel);
+        
+        for (String fallbackModel : fallbackModels) {
+            if (deadline.isOver()) {
+                LOG.warn("⏰ Request deadline reached, skipping the remaining fallback models");
+                throw deadline.exceeded(originalException.getMessage());
             }
-            
             try {
                 LOG.info("🔄 Trying fallback model: {}", fallbackModel);
-                this.model = fallbackModel; // Temporarily switch model
-                String result = callLocalLLM(prompt, imageData);
+                notifyStage(listener, GenerationListener.STAGE_RETRYING, "fallback model " + fallbackModel);
+                String result = callHedged(current, fallbackModel, prompt, image, tokenConsumerFor(listener),
+                                           triedBackends, deadline);
                 LOG.info("✅ Fallback model '{}' succeeded", fallbackModel);
-                this.model = originalModel; // Restore original model
                 return result;
             } catch (IOException fallbackException) {
                 LOG.warn("Fallback model '{}' failed: {}", fallbackModel, fallbackException.getMessage());
             }
         }
         
-        this.model = originalModel; // Restore original model
+        deadline.check(originalException.getMessage());
         LOG.error("❌ All fallback models failed, throwing original exception");
         throw originalException;
     }
     
     /**
-     * Check if Ollama service is ready to accept requests
+     * Check if Ollama service is ready to accept requests, based on the last background liveness check (no round trip)
      */
     private boolean isOllamaReady() {
-        if (!"ollama".equals(this.provider)) {
+        return isOllamaReady(this.state);
+    }
+    
+    private static boolean isOllamaReady(ServiceState current) {
+        if (!current.settings.isOllama()) {
             return true; // Skip check for non-Ollama providers
         }
         
-        try {
-            String tagsUrl = this.apiUrl.replace("/api/generate", "/api/tags");
-            HttpGet httpGet = new HttpGet(tagsUrl);
-            
-            // Short timeout for readiness check
-            RequestConfig quickCheck = RequestConfig.custom()
-                .setConnectTimeout(5000)
-                .setSocketTimeout(5000)
-                .build();
-            httpGet.setConfig(quickCheck);
-            
-            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                if (statusCode == 200) {
-                    LOG.debug("✅ Ollama readiness check passed");
-                    return true;
-                } else {
-                    LOG.warn("⚠️ Ollama readiness check failed with status: {}", statusCode);
-                    return false;
-                }
-            }
-        } catch (Exception e) {
-            LOG.warn("⚠️ Ollama readiness check failed: {}", e.getMessage());
-            return false;
-        }
+        BackendPool pool = current.backendPool;
+        return pool != null && pool.isAnyReachable();
     }
     
-    private String callLocalLLM(String prompt) throws IOException {
-        return callLocalLLM(prompt, null);
+    /**
+     * Call the LLM, hedged with a duplicate call on another backend (or slot) when hedging is
+     * enabled and the first token is late. Both legs share triedBackends, so the hedge avoids
+     * the backend of the first leg and later retries avoid both.
+     */
+    private String callHedged(ServiceState current, String model, String prompt, ImageAttachment image,
+                              Consumer<String> tokenConsumer, List<BackendPool.Backend> triedBackends,
+                              RequestDeadline deadline) throws IOException {
+        RequestHedger hedger = current.hedger;
+        if (hedger == null) {
+            return callLocalLLM(current, model, prompt, image, tokenConsumer, triedBackends, new CallCancellation(),
+                                deadline);
+        }
+        return hedger.execute((legConsumer, cancellation) ->
+            callLocalLLM(current, model, prompt, image, legConsumer, triedBackends, cancellation, deadline),
+            tokenConsumer);
     }
     
     /**
-     * Enhanced method that can handle both text and image prompts
+     * Enhanced method that can handle both text and image prompts.
+     * Tokens are passed to the optional tokenConsumer as they stream in.
+     * Every backend call goes through the shared circuit breaker, which rejects it
+     * immediately while the backend is considered down, and is routed to one of the
+     * configured backends, preferring one not in triedBackends (the chosen one is added).
+     * A call aborted through its cancellation (e.g. a lost hedge), or cut off by the request deadline,
+     * counts against neither the breaker nor the backend: its permit is released without an outcome.
+     * A slow backend still shows up in the slow-call rate.
      */
-    private String callLocalLLM(String prompt, String imageData) throws IOException {
-        if (!this.enabled) {
+    private String callLocalLLM(ServiceState current, String model, String prompt, ImageAttachment image,
+                                Consumer<String> tokenConsumer, List<BackendPool.Backend> triedBackends,
+                                CallCancellation cancellation, RequestDeadline deadline) throws IOException {
+        if (!current.settings.enabled) {
             LOG.warn("Local LLM service is not enabled");
             return null;
         }
+        deadline.check(null);
+        
+        CircuitBreaker breaker = current.circuitBreaker;
+        CircuitBreaker.Permit permit = breaker != null ? breaker.tryAcquirePermission() : null;
+        if (breaker != null && permit == null) {
+            long retryAfterSeconds = Math.max(1, (breaker.getRemainingOpenMillis() + 999) / 1000);
+            throw LLMUnavailableException.forCircuitOpen(backendUrls(current.settings), retryAfterSeconds);
+        }
         
-        String providerName = this.provider.toLowerCase();
+        // A backend that has the model installed, while there is one
+        BackendPool pool = current.backendPool;
+        BackendPool.Backend backend = pool.acquire(triedBackends, ollamaModel(current.settings, model, image));
+        triedBackends.add(backend);
         
-        switch (providerName) {
-            case "ollama":
-                return callOllamaAPI(prompt, imageData);
-            case "localai":
-                return callLocalAIAPI(prompt, imageData);
-            default:
-                LOG.warn("Unsupported LLM provider: {}", providerName);
-                return null;
+        String providerName = current.settings.provider.toLowerCase();
+        long startTime = System.currentTimeMillis();
+        boolean backendFailed = true;
+        deadline.register(cancellation);
+        try {
+            String result;
+            switch (providerName) {
+                case "ollama":
+                    result = callOllamaAPI(current, backend, model, prompt, image, tokenConsumer, cancellation,
+                                           deadline);
+                    break;
+                case "localai":
+                    result = callLocalAIAPI(current, backend, model, prompt, image, cancellation, deadline);
+                    break;
+                default:
+                    LOG.warn("Unsupported LLM provider: {}", providerName);
+                    result = null;
+            }
+            backendFailed = false;
+            recordCallOutcome(breaker, permit, true, startTime);
+            return result;
+        } catch (IOException e) {
+            if (cancellation.isCancelled() || deadline.isOver()) {
+                // Says nothing about the backend either way
+                backendFailed = false;
+                if (breaker != null) {
+                    breaker.release(permit);
+                }
+                throw e;
+            }
+            // A missing model is answered quickly by a healthy backend and does not count against it
+            boolean modelMissing = RetryPolicy.classify(e) == RetryPolicy.Failure.MODEL_MISSING;
+            backendFailed = !modelMissing;
+            recordCallOutcome(breaker, permit, modelMissing, startTime);
+            throw e;
+        } catch (RuntimeException e) {
+            recordCallOutcome(breaker, permit, false, startTime);
+            throw e;
+        } finally {
+            deadline.unregister(cancellation);
+            pool.release(backend, backendFailed);
+        }
+    }
+    
+    /**
+     * Model an Ollama call asks for: the vision model when an image is attached; null for other providers
+     */
+    private static String ollamaModel(ServiceSettings settings, String model, ImageAttachment image) {
+        if (!settings.isOllama()) {
+            return null;
         }
+        return (image != null) ? VISION_MODEL : model;
     }
     
-    private String callOllamaAPI(String prompt) throws IOException {
-        return callOllamaAPI(prompt, null);
+    private static void recordCallOutcome(CircuitBreaker breaker, CircuitBreaker.Permit permit, boolean success,
+                                          long startTime) {
+        if (breaker == null) {
+            return;
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        if (success) {
+            breaker.onSuccess(permit, duration);
+        } else {
+            breaker.onFailure(permit, duration);
+        }
     }
     
     /**
-     * Enhanced Ollama API call with readiness check and improved timeout handling
+     * Enhanced Ollama API call with readiness check and improved timeout handling.
+     * The NDJSON response is consumed incrementally; each token is handed to the
+     * optional tokenConsumer as soon as it arrives.
      */
-    private String callOllamaAPI(String prompt, String imageData) throws IOException {
-        String requestedModel = (imageData != null) ? "llava:7b" : this.model;
-        
-        // Perform readiness check before making the actual request
-        if (!isOllamaReady()) {
+    private String callOllamaAPI(ServiceState current, BackendPool.Backend backend, String model, String prompt,
+                                 ImageAttachment image, Consumer<String> tokenConsumer, CallCancellation cancellation,
+                                 RequestDeadline deadline) throws IOException {
+        ServiceSettings settings = current.settings;
+        String apiUrl = backend.apiUrl();
+        String requestedModel = ollamaModel(settings, model, image);
+        
+        // Cached readiness state from the last background liveness check of this backend
+        if (!backend.isReachable()) {
             LOG.warn("⚠️ Ollama service not ready, proceeding anyway");
         }
         
-        // Check model availability and find best alternative if needed
+        // Check model availability and find best alternative if needed (in memory, from this backend's model catalog)
         String modelToUse;
         try {
-            modelToUse = findBestAvailableModel(requestedModel);
+            modelToUse = findBestAvailableModel(backend, requestedModel);
         } catch (IOException e) {
             // If we can't check models, try the requested model anyway
             LOG.warn("Cannot check model availability, proceeding with requested model: {}", requestedModel);
@@ -651,52 +1042,66 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         }
         
         LOG.info("🚀 Calling Ollama API: {} with model: {} (requested: {}) - Start time: {}", 
-                 this.apiUrl, modelToUse, requestedModel, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+                 apiUrl, modelToUse, requestedModel, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
         LOG.debug("Request details - Prompt length: {} chars, Image provided: {}, Timeout: {}s", 
-                  prompt.length(), imageData != null, this.timeout);
+                  prompt.length(), image != null, settings.timeout);
         LOG.debug("Prompt preview: {}", prompt.length() > 100 ? prompt.substring(0, 100) + "..." : prompt);
         
         if (!modelToUse.equals(requestedModel)) {
             LOG.info("🔄 Using alternative model '{}' instead of '{}'", modelToUse, requestedModel);
         }
         
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", modelToUse);
-        requestBody.put("prompt", prompt);
-        requestBody.put("stream", true);
-        requestBody.put("options", Map.of(
-            "temperature", this.temperature,
-            "num_predict", this.maxTokens
-        ));
+        OllamaGenerateRequest requestBody = new OllamaGenerateRequest(modelToUse, true);
+        requestBody.prompt = prompt;
+        requestBody.options = new OllamaGenerateRequest.Options(settings.temperature, settings.maxTokens);
+        requestBody.keepAlive = ModelKeeper.keepAliveParameter(settings.modelKeepAlive);
+        if (settings.structuredOutput) {
+            requestBody.format = RESPONSE_SCHEMA;
+        }
         
         // Add image data if provided
-        if (imageData != null) {
-            String base64Data = imageData.substring(imageData.indexOf(",") + 1);
-            requestBody.put("images", List.of(base64Data));
-            LOG.info("📷 Added image data to Ollama request, using vision model: {}", modelToUse);
+        // Encoded from its file while the body is written, never held in memory
+        if (image != null) {
+            requestBody.images = List.of(image);
+            LOG.info("📷 Added image ({} bytes) to Ollama request, using vision model: {}", image.getSize(), modelToUse);
         }
         
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
-        LOG.info("📤 Sending request to Ollama - JSON size: {} bytes", jsonBody.length());
-        LOG.debug("Request JSON preview: {}", jsonBody.length() > 200 ? jsonBody.substring(0, 200) + "..." : jsonBody);
+        LOG.info("📤 Sending request to Ollama - prompt: {} chars, image: {} bytes", prompt.length(),
+                 image != null ? image.getSize() : 0);
         
-        HttpPost httpPost = new HttpPost(this.apiUrl);
+        HttpPost httpPost = new HttpPost(apiUrl);
         httpPost.setHeader("Content-Type", "application/json");
-        httpPost.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
+        httpPost.setEntity(new JsonStreamEntity(generateRequestWriter, requestBody));
+        withinDeadline(httpPost, settings, deadline);
+        cancellation.attach(httpPost);
+        StreamWatchdog.Watch watch = watchStream(current, backend, httpPost, modelToUse, prompt.length(), image != null,
+                                                 deadline);
+        Consumer<String> watchedTokenConsumer = watch == null ? tokenConsumer : token -> {
+            watch.onToken();
+            if (tokenConsumer != null) {
+                tokenConsumer.accept(token);
+            }
+        };
+        AdaptiveTimeouts timeouts = current.adaptiveTimeouts;
+        String modelUsed = modelToUse;
+        Consumer<OllamaChunk> doneConsumer = timeouts == null ? null
+            : done -> timeouts.record(modelUsed, prompt.length(), done);
         
         long startTime = System.currentTimeMillis();
         LOG.info("⏱️ Starting request at: {}", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
         
-        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+        try (CloseableHttpResponse response = current.httpClient.execute(httpPost)) {
             int statusCode = response.getStatusLine().getStatusCode();
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
             
             LOG.info("📬 Ollama API Response: HTTP {} - Processing streaming response...", statusCode);
             
             if (statusCode == 200) {
                 try {
-                    // Handle streaming response (application/x-ndjson)
-                    String fullResponse = processStreamingResponse(responseBody, modelToUse, startTime);
+                    // Handle streaming response (application/x-ndjson) incrementally from the socket,
+                    // aborting the request once the component JSON is complete (the connection is not reused)
+                    String fullResponse = streamReader.read(response.getEntity().getContent(), modelToUse, startTime,
+                                                            watchedTokenConsumer, doneConsumer,
+                                                            settings.stopAtJsonEnd ? httpPost::abort : null);
                     
                     long duration = System.currentTimeMillis() - startTime;
                     LOG.info("✅ Successfully received LLM response ({} chars) in {}ms", 
@@ -705,16 +1110,15 @@ public class LocalLLMServiceImpl implements LocalLLMService {
                     return fullResponse;
                 } catch (JsonProcessingException e) {
                     LOG.error("❌ Failed to parse Ollama JSON response: {}", e.getMessage());
-                    throw new IOException("Invalid JSON response from Ollama: " + e.getMessage());
-                }
-            } else if (statusCode == 404) {
-                // Get available models for better error message
-                List<String> availableModels;
-                try {
-                    availableModels = getAvailableModels();
-                } catch (Exception ex) {
-                    availableModels = new ArrayList<>();
+                    throw new IOException("Invalid JSON response from Ollama: " + e.getMessage(), e);
                 }
+            }
+            
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode == 404) {
+                // Cached models for a better error message; the catalog is stale now
+                List<String> availableModels = getAvailableModels(backend);
+                invalidateModelCatalog(backend);
                 
                 String errorMsg = "Model '" + modelToUse + "' not found on Ollama server.";
                 if (!availableModels.isEmpty()) {
@@ -723,137 +1127,161 @@ public class LocalLLMServiceImpl implements LocalLLMService {
                 errorMsg += " Please run 'ollama pull " + modelToUse + "' to install this model.";
                 
                 LOG.error("❌ {}", errorMsg);
-                throw new IOException(errorMsg);
+                throw new BackendResponseException(statusCode, errorMsg);
             } else if (statusCode == 500) {
                 LOG.error("❌ Ollama server error (500): {}", responseBody);
-                throw new IOException("Ollama server error: " + responseBody);
+                throw new BackendResponseException(statusCode, "Ollama server error: " + responseBody);
             } else {
                 LOG.error("❌ Ollama API failed with status {}: {}", statusCode, responseBody);
-                throw new IOException("Ollama API failed with status " + statusCode + ": " + responseBody);
+                throw new BackendResponseException(statusCode,
+                    "Ollama API failed with status " + statusCode + ": " + responseBody);
             }
             
         } catch (ConnectTimeoutException e) {
-            LOG.error("❌ Connection timeout to Ollama API at {}", this.apiUrl);
-            throw new IOException("Connection timeout to Ollama. Is Ollama running on " + this.apiUrl + "?");
+            LOG.error("❌ Connection timeout to Ollama API at {}", apiUrl);
+            throw new IOException("Connection timeout to Ollama. Is Ollama running on " + apiUrl + "?");
         } catch (SocketTimeoutException e) {
             LOG.error("❌ Socket timeout waiting for Ollama response ({}s) - Model: {} - Time: {}", 
-                     this.timeout, modelToUse, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
+                     settings.timeout, modelToUse, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_TIME));
             LOG.info("💡 Suggestion: Try running 'ollama run {}' manually to warm up the model", modelToUse);
             throw new IOException("Timeout waiting for Ollama response. Try increasing timeout or using a smaller model.");
         } catch (ConnectException e) {
-            LOG.error("❌ Connection refused to Ollama API at {}", this.apiUrl);
-            throw new IOException("Cannot connect to Ollama. Is Ollama running on " + this.apiUrl + "?");
+            LOG.error("❌ Connection refused to Ollama API at {}", apiUrl);
+            throw new IOException("Cannot connect to Ollama. Is Ollama running on " + apiUrl + "?");
         } catch (IOException e) {
+            if (cancellation.isCancelled()) {
+                LOG.debug("Ollama call to {} was cancelled", apiUrl);
+                throw e;
+            }
+            if (watch != null && watch.isExpired()) {
+                // Aborted by the watchdog: report it as the timeout it is
+                LOG.error("❌ {} - Model: {} on {}", watch.getExpiredReason(), modelToUse, apiUrl);
+                throw new IOException(watch.getExpiredReason(), e);
+            }
             LOG.error("❌ IO error calling Ollama API: {}", e.getMessage());
+            if (RetryPolicy.classify(e) == RetryPolicy.Failure.MODEL_MISSING) {
+                invalidateModelCatalog(backend); // e.g. model removed while streaming
+            }
             throw e;
+        } finally {
+            if (watch != null) {
+                watch.close();
+            }
         }
     }
     
     /**
-     * Process streaming response from Ollama (NDJSON format)
+     * Put a streaming call under the watchdog with deadlines learned for its model, cut to the time
+     * left of the request deadline; null while there are neither. A model that is not loaded on the
+     * backend, or a prompt with an image, gets the configured timeout for its first token: neither
+     * loading nor image evaluation is covered by the learned prompt eval rate.
      */
-    private String processStreamingResponse(String responseBody, String modelToUse, long startTime) throws IOException {
-        StringBuilder fullResponse = new StringBuilder();
-        String[] lines = responseBody.split("\n");
-        
-        LOG.info("🔄 Processing {} stream chunks for model: {}", lines.length, modelToUse);
-        
-        for (String line : lines) {
-            if (line.trim().isEmpty()) continue;
-            
-            try {
-                Map<String, Object> chunk = objectMapper.readValue(line, Map.class);
-                
-                if (chunk.containsKey("response")) {
-                    String partialResponse = (String) chunk.get("response");
-                    fullResponse.append(partialResponse);
-                    
-                    // Log progress every 10 chunks or if it's the last chunk
-                    if (chunk.containsKey("done") && (Boolean) chunk.get("done")) {
-                        long elapsed = System.currentTimeMillis() - startTime;
-                        LOG.info("🏁 Stream completed - Total response: {} chars in {}ms", 
-                                fullResponse.length(), elapsed);
-                        break;
-                    }
-                } else if (chunk.containsKey("error")) {
-                    String error = chunk.get("error").toString();
-                    LOG.error("❌ Ollama streaming error: {}", error);
-                    throw new IOException("Ollama streaming error: " + error);
-                }
-            } catch (JsonProcessingException e) {
-                LOG.warn("⚠️ Skipping malformed JSON chunk: {}", line);
-                continue;
-            }
+    private static StreamWatchdog.Watch watchStream(ServiceState current, BackendPool.Backend backend, HttpPost httpPost,
+                                                    String model, int promptChars, boolean withImage,
+                                                    RequestDeadline deadline) {
+        ServiceSettings settings = current.settings;
+        AdaptiveTimeouts.Deadlines deadlines = current.adaptiveTimeouts != null
+            ? current.adaptiveTimeouts.deadlinesFor(model, promptChars, settings.maxTokens)
+            : null;
+        if (deadlines != null && (withImage || !backend.hasLoaded(model))) {
+            long coldStartMs = settings.timeout * 1000L;
+            deadlines = new AdaptiveTimeouts.Deadlines(Math.max(deadlines.firstTokenMs, coldStartMs), deadlines.idleMs,
+                                                       deadlines.totalMs + coldStartMs);
         }
-        
-        if (fullResponse.length() == 0) {
-            LOG.error("❌ No response content received from streaming");
-            throw new IOException("No response content received from Ollama streaming API");
+        if (deadline.isBounded()) {
+            long remainingMs = deadline.remainingMillis();
+            deadlines = deadlines == null
+                ? new AdaptiveTimeouts.Deadlines(remainingMs, remainingMs, remainingMs)
+                : new AdaptiveTimeouts.Deadlines(Math.min(deadlines.firstTokenMs, remainingMs),
+                                                 Math.min(deadlines.idleMs, remainingMs),
+                                                 Math.min(deadlines.totalMs, remainingMs));
         }
-        
-        return fullResponse.toString();
+        if (deadlines == null) {
+            return null;
+        }
+        LOG.debug("⏱️ Deadlines for {}: {}", model, deadlines);
+        return current.watchdog.watch(httpPost, deadlines);
     }
     
-    private String callLocalAIAPI(String prompt) throws IOException {
-        return callLocalAIAPI(prompt, null);
+    /**
+     * Shorten the connect, socket and connection lease timeouts of a call to the time left
+     */
+    private static void withinDeadline(HttpPost httpPost, ServiceSettings settings, RequestDeadline deadline) {
+        if (!deadline.isBounded()) {
+            return;
+        }
+        httpPost.setConfig(RequestConfig.custom()
+            .setConnectTimeout(deadline.clamp(settings.timeout * 1000))
+            .setSocketTimeout(deadline.clamp(settings.timeout * 1000))
+            .setConnectionRequestTimeout(deadline.clamp(settings.connectionLeaseTimeout * 1000))
+            .build());
     }
     
     /**
      * NEW: Enhanced LocalAI API call that supports image prompts (basic implementation)
      * Note: LocalAI image support may vary based on model configuration
      */
-    private String callLocalAIAPI(String prompt, String imageData) throws IOException {
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", this.model);
-        requestBody.put("max_tokens", this.maxTokens);
-        requestBody.put("temperature", this.temperature);
-        
-        List<Map<String, Object>> messages = new ArrayList<>();
-        messages.add(Map.of("role", "system", "content", this.systemPrompt));
+    private String callLocalAIAPI(ServiceState current, BackendPool.Backend backend, String model, String prompt,
+                                  ImageAttachment image, CallCancellation cancellation,
+                                  RequestDeadline deadline) throws IOException {
+        ServiceSettings settings = current.settings;
+        ChatCompletion.Request requestBody = new ChatCompletion.Request(model, settings.maxTokens, settings.temperature)
+            .message("system", settings.systemPrompt);
         
         // NEW: Handle image content for LocalAI
-        if (imageData != null) {
+        if (image != null) {
             // For LocalAI, we include image information in the prompt
-            Map<String, Object> userMessage = new HashMap<>();
-            userMessage.put("role", "user");
-            userMessage.put("content", prompt + "\n\n[Note: Image data provided for analysis]");
-            messages.add(userMessage);
+            requestBody.message("user", prompt + "\n\n[Note: Image data provided for analysis]");
             LOG.info("Added image context to LocalAI request");
         } else {
-        messages.add(Map.of("role", "user", "content", prompt));
+            requestBody.message("user", prompt);
         }
         
-        requestBody.put("messages", messages);
+        if (settings.structuredOutput) {
+            requestBody.responseFormat = RESPONSE_FORMAT;
+        }
         
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
+        String jsonBody = chatRequestWriter.writeValueAsString(requestBody);
         
-        HttpPost httpPost = new HttpPost(this.apiUrl);
+        HttpPost httpPost = new HttpPost(backend.apiUrl());
         httpPost.setHeader("Content-Type", "application/json");
         httpPost.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
+        withinDeadline(httpPost, settings, deadline);
+        cancellation.attach(httpPost);
+        // Not streamed: the whole answer must arrive within the time left
+        StreamWatchdog.Watch watch = null;
+        if (deadline.isBounded()) {
+            long remainingMs = deadline.remainingMillis();
+            watch = current.watchdog.watch(httpPost, new AdaptiveTimeouts.Deadlines(remainingMs, remainingMs, remainingMs));
+        }
         
-        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+        try (CloseableHttpResponse response = current.httpClient.execute(httpPost)) {
             if (response.getStatusLine().getStatusCode() == 200) {
                 String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-                
-                if (responseMap.containsKey("choices")) {
-                    List<Map<String, Object>> choices = (List<Map<String, Object>>) responseMap.get("choices");
-                    if (!choices.isEmpty()) {
-                        Map<String, Object> choice = choices.get(0);
-                        if (choice.containsKey("message")) {
-                            Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                            if (message.containsKey("content")) {
-                                return (String) message.get("content");
-                            }
-                        }
-                    }
-                }
+                ChatCompletion.Response completion = chatResponseReader.readValue(responseBody);
+                return completion.content();
+            }
+        } finally {
+            if (watch != null) {
+                watch.close();
             }
         }
         
         return null;
     }
     
+    /**
+     * OpenAI style {@code response_format} constraining the answer to the given JSON schema
+     */
+    private static ObjectNode responseFormat(String name, ObjectNode schema) {
+        ObjectNode format = objectMapper.createObjectNode().put("type", "json_schema");
+        format.putObject("json_schema")
+            .put("name", name)
+            .put("strict", true)
+            .set("schema", schema);
+        return format;
+    }
+    
     private String buildComponentPrompt(ComponentGenerationRequest request) {
         StringBuilder prompt = new StringBuilder();
         
@@ -901,12 +1329,72 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         return prompt.toString();
     }
     
-    private LLMResponse parseLLMResponse(String rawResponse) {
+    /**
+     * Turn the generated text into an LLMResponse along the cheapest path that works: the object
+     * parsed while streaming, a plain parse of schema-constrained output, or extraction and repair
+     * of free-form output. Each path is timed for the parsing metrics.
+     */
+    private LLMResponse toLLMResponse(ServiceState current, String llmResponse, ObjectNode streamed) {
+        long start = System.nanoTime();
+        LLMResponse parsed = fromStreamedResponse(streamed);
+        if (parsed != null) {
+            parseTimings.record(ParseTimings.STREAMED, System.nanoTime() - start);
+            return parsed;
+        }
+        if (current.settings.structuredOutput) {
+            start = System.nanoTime();
+            parsed = parseStructuredResponse(llmResponse);
+            if (parsed != null) {
+                parseTimings.record(ParseTimings.DIRECT, System.nanoTime() - start);
+                return parsed;
+            }
+        }
+        start = System.nanoTime();
+        parsed = parseLLMResponse(llmResponse, current.settings.stripMarkdown);
+        parseTimings.record(parsed != null ? ParseTimings.REPAIRED : ParseTimings.FAILED, System.nanoTime() - start);
+        return parsed;
+    }
+    
+    /**
+     * Parse output generated under the response schema as is, without any clean-up
+     *
+     * @return null if it does not parse after all (e.g. cut off at the token limit)
+     */
+    private LLMResponse parseStructuredResponse(String rawResponse) {
+        try {
+            return objectMapper.readValue(rawResponse, LLMResponse.class);
+        } catch (JsonProcessingException e) {
+            LOG.warn("⚠️ Structured output does not parse ({}), falling back to repairing it", e.getOriginalMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Convert the component JSON already parsed while streaming, saving a second parse of the raw text
+     *
+     * @return null when nothing complete was streamed or it does not map onto LLMResponse
+     */
+    private LLMResponse fromStreamedResponse(ObjectNode streamed) {
+        if (streamed == null) {
+            return null;
+        }
+        try {
+            LLMResponse response = objectMapper.treeToValue(streamed, LLMResponse.class);
+            LOG.info("✅ Using component JSON parsed while streaming: component='{}'", response.getName());
+            return response;
+        } catch (JsonProcessingException e) {
+            LOG.debug("Streamed component JSON does not map onto LLMResponse, parsing the raw text: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private LLMResponse parseLLMResponse(String rawResponse, boolean stripMarkdown) {
         LOG.info("🔄 Starting JSON parsing for LLM response ({} chars)", rawResponse.length());
         
+        String cleaned = null;
         try {
             // Enhanced JSON extraction with Markdown sanitization
-            String cleaned = extractJsonBlock(rawResponse);
+            cleaned = extractJsonBlock(rawResponse, stripMarkdown);
             
             if (cleaned == null) {
                 LOG.error("❌ No JSON content found in LLM response. Raw response preview:\n{}", 
@@ -958,7 +1446,6 @@ public class LocalLLMServiceImpl implements LocalLLMService {
                      rawResponse.substring(0, Math.min(500, rawResponse.length())));
             
             // Try to show the problematic area
-            String cleaned = extractJsonBlock(rawResponse);
             if (cleaned != null) {
                 LOG.error("   Cleaned JSON (first 500 chars):\n{}", 
                          cleaned.substring(0, Math.min(500, cleaned.length())));
@@ -978,6 +1465,10 @@ public class LocalLLMServiceImpl implements LocalLLMService {
      * Robust JSON extraction method that handles Markdown code fences and streaming artifacts
      */
     private String extractJsonBlock(String raw) {
+        return extractJsonBlock(raw, this.state.settings.stripMarkdown);
+    }
+    
+    private String extractJsonBlock(String raw, boolean stripMarkdown) {
         if (raw == null || raw.trim().isEmpty()) {
             return null;
         }
@@ -985,58 +1476,12 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         LOG.debug("🔍 Raw response before sanitization (first 300 chars): {}", 
                  raw.substring(0, Math.min(300, raw.length())));
         
-        // Only apply sanitization if stripMarkdown is enabled
-        if (this.stripMarkdown) {
-            // Step 1: Remove various Markdown code fence patterns
-            raw = raw.replaceAll("(?s)```\\s*json\\s*\\n?", "")     // ```json or ```json\n
-                     .replaceAll("(?s)```\\s*\\n?", "")             // ``` or ```\n
-                     .replaceAll("(?s)```\\s*$", "")                // trailing ```
-                     .trim();
-            
-            // Step 2: Remove any remaining backticks at start/end
-            while (raw.startsWith("`")) {
-                raw = raw.substring(1);
-            }
-            while (raw.endsWith("`")) {
-                raw = raw.substring(0, raw.length() - 1);
-            }
-            
-            // Step 3: Remove common streaming artifacts
-            raw = raw.replaceAll("(?s)^[^{]*", "")  // Remove everything before first {
-                     .replaceAll("(?s)[^}]*$", "")  // Remove everything after last }
-                     .trim();
-        }
-        
-        // Step 4: Extract JSON block from first '{' to last '}'
-        int start = raw.indexOf('{');
-        int end = raw.lastIndexOf('}');
-        
-        if (start != -1 && end != -1 && end > start) {
-            String extracted = raw.substring(start, end + 1);
-            
-            // Step 5: Additional validation - ensure it looks like JSON
-            if (extracted.trim().startsWith("{") && extracted.trim().endsWith("}")) {
-                // Step 6: Try to validate JSON, if it fails, fix quotes
-                String finalJson = extracted;
-                if (!isValidJson(extracted)) {
-                    LOG.debug("🔧 Invalid JSON detected, attempting quote fixing");
-                    finalJson = escapeUnescapedQuotesInStringValues(extracted);
-                }
-                
-                LOG.debug("✅ Successfully extracted and sanitized JSON block ({} chars)", finalJson.length());
-                return finalJson;
-            }
-        }
-        
-        // Step 7: Last resort - try to find any JSON-like structure
-        if (raw.contains("{") && raw.contains("}")) {
-            LOG.warn("⚠️ Fallback JSON extraction - attempting quote fixes on raw content");
-            String fallback = escapeUnescapedQuotesInStringValues(raw);
-            return isValidJson(fallback) ? fallback : raw;
+        // One linear scan: Markdown fences, object bounds, quote repair and validation
+        String json = JsonExtractor.extract(raw, stripMarkdown);
+        if (json != null) {
+            LOG.debug("✅ Successfully extracted and sanitized JSON block ({} chars)", json.length());
         }
-        
-        LOG.error("❌ No valid JSON structure found in response");
-        return null;
+        return json;
     }
     
     /**
@@ -1044,117 +1489,7 @@ public class LocalLLMServiceImpl implements LocalLLMService {
      * This handles cases like: "sample": "<p>This is a "bad" example</p>"
      */
     private String escapeUnescapedQuotesInStringValues(String json) {
-        if (json == null || json.trim().isEmpty()) {
-            return json;
-        }
-        
-        LOG.debug("🔧 Escaping unescaped quotes in JSON string values");
-        LOG.debug("🔍 Before sanitization (first 300 chars): {}", 
-                 json.substring(0, Math.min(300, json.length())));
-        
-        StringBuilder result = new StringBuilder();
-        boolean inStringValue = false;
-        boolean escaped = false;
-        
-        for (int i = 0; i < json.length(); i++) {
-            char current = json.charAt(i);
-            char prev = (i > 0) ? json.charAt(i - 1) : '\0';
-            
-            if (escaped) {
-                // Previous character was backslash, so this character is escaped
-                result.append(current);
-                escaped = false;
-                continue;
-            }
-            
-            if (current == '\\') {
-                // This is an escape character
-                result.append(current);
-                escaped = true;
-                continue;
-            }
-            
-            if (current == '"') {
-                if (!inStringValue) {
-                    // Check if this starts a string value (must be preceded by : and optional whitespace)
-                    if (isStartOfStringValue(json, i)) {
-                        inStringValue = true;
-                        result.append(current);
-                    } else {
-                        // This is a key or structural quote
-                        result.append(current);
-                    }
-                } else {
-                    // We're inside a string value, check if this ends it
-                    if (isEndOfStringValue(json, i)) {
-                        inStringValue = false;
-                        result.append(current);
-                    } else {
-                        // This is an unescaped quote inside a string value - escape it
-                        result.append("\\\"");
-                        LOG.debug("🔧 Escaped quote at position {}", i);
-                    }
-                }
-            } else {
-                result.append(current);
-            }
-        }
-        
-        String sanitized = result.toString();
-        if (!sanitized.equals(json)) {
-            LOG.debug("✅ Applied quote escaping to JSON string values");
-            LOG.debug("🔍 After sanitization (first 300 chars): {}", 
-                     sanitized.substring(0, Math.min(300, sanitized.length())));
-        }
-        
-        return sanitized;
-    }
-    
-    /**
-     * Check if a quote at position i starts a string value (preceded by : and optional whitespace)
-     */
-    private boolean isStartOfStringValue(String json, int quotePos) {
-        // Look backwards for ':' skipping whitespace
-        for (int i = quotePos - 1; i >= 0; i--) {
-            char c = json.charAt(i);
-            if (c == ':') {
-                return true;
-            } else if (!Character.isWhitespace(c)) {
-                return false;
-            }
-        }
-        return false;
-    }
-    
-    /**
-     * Check if a quote at position i ends a string value (followed by structural characters)
-     */
-    private boolean isEndOfStringValue(String json, int quotePos) {
-        // Look forwards for structural characters (comma, closing brace/bracket) skipping whitespace
-        for (int i = quotePos + 1; i < json.length(); i++) {
-            char c = json.charAt(i);
-            if (c == ',' || c == '}' || c == ']') {
-                return true;
-            } else if (!Character.isWhitespace(c)) {
-                return false;
-            }
-        }
-        // If we reach end of string, this could be the final closing quote
-        return quotePos == json.length() - 1 || 
-               json.substring(quotePos + 1).trim().isEmpty() ||
-               json.substring(quotePos + 1).trim().matches("^[}\\]]*$");
-    }
-    
-    /**
-     * Basic JSON validation check
-     */
-    private boolean isValidJson(String json) {
-        try {
-            objectMapper.readTree(json);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return JsonExtractor.repairQuotes(json);
     }
     
     private String generatePreviewHtml(LLMResponse llmResponse) {
@@ -1185,4 +1520,185 @@ public class LocalLLMServiceImpl implements LocalLLMService {
         if (str == null || str.isEmpty()) return str;
         return str.substring(0, 1).toUpperCase() + str.substring(1);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Immutable state of one activation: the settings snapshot and everything built from it.
+     * Published as a whole on activate/modify; a request captures it once and uses it throughout,
+     * so it never mixes settings or resources of two configurations.
+     */
+    private static final class ServiceState {
+        
+        final ServiceSettings settings;
+        final PooledHttpTransport transport;
+        final CloseableHttpClient httpClient;
+        final ThreadPoolExecutor executor;
+        final GenerationAdmission admission;
+        final GenerationCoalescer coalescer;
+        final ResponseCache responseCache;
+        final SemanticCache semanticCache;
+        final CircuitBreaker circuitBreaker;
+        final BackendPool backendPool;
+        final RequestHedger hedger;
+        final AdaptiveTimeouts adaptiveTimeouts;
+        final StreamWatchdog watchdog;
+        final RetryPolicy retryPolicy;
+        
+        /**
+         * State without resources (not activated or disabled)
+         */
+        ServiceState(ServiceSettings settings) {
+            this(settings, null, null, null, null, null, null, null, null, null, null, null, null);
+        }
+        
+        private ServiceState(ServiceSettings settings, PooledHttpTransport transport, ThreadPoolExecutor executor,
+                             GenerationAdmission admission, GenerationCoalescer coalescer, ResponseCache responseCache,
+                             SemanticCache semanticCache, CircuitBreaker circuitBreaker,
+                             BackendPool backendPool, RequestHedger hedger, AdaptiveTimeouts adaptiveTimeouts,
+                             StreamWatchdog watchdog, RetryPolicy retryPolicy) {
+            this.settings = settings;
+            this.transport = transport;
+            this.httpClient = transport != null ? transport.getClient() : null;
+            this.executor = executor;
+            this.admission = admission;
+            this.coalescer = coalescer;
+            this.responseCache = responseCache;
+            this.semanticCache = semanticCache;
+            this.circuitBreaker = circuitBreaker;
+            this.backendPool = backendPool;
+            this.hedger = hedger;
+            this.adaptiveTimeouts = adaptiveTimeouts;
+            this.watchdog = watchdog;
+            this.retryPolicy = retryPolicy;
+        }
+        
+        static ServiceState inactive() {
+            return new ServiceState(ServiceSettings.inactive());
+        }
+        
+        /**
+         * Build and start the pooled client, executor and background helpers for the given settings
+         */
+        static ServiceState start(ServiceSettings settings, ServiceUserConfig serviceUserConfig) {
+            PooledHttpTransport transport = PooledHttpTransport.forSettings(settings);
+            // The pool is closed once the last generation of this configuration has finished
+            ThreadPoolExecutor executor = createGenerationExecutor(settings.maxInFlightRequests,
+                settings.maxQueuedRequests, transport::close);
+            GenerationAdmission admission = new GenerationAdmission(settings.maxInFlightRequests, settings.maxQueuedRequests);
+            CircuitBreaker circuitBreaker = new CircuitBreaker(settings.breakerWindowSize, settings.breakerFailureRate,
+                settings.breakerSlowCallRate, settings.breakerSlowCallSeconds * 1000L, settings.breakerOpenSeconds * 1000L);
+            
+            // The primary backend answers the other metadata queries (embeddings)
+            String primaryApiUrl = settings.backends.get(0).apiUrl;
+            BackendPool backendPool = createBackendPool(settings, transport.getClient());
+            backendPool.start(settings.warmUpOnActivate, settings.keepWarmEnabled);
+            // A hedge needs somewhere to go and first tokens to time: another slot, and a streaming provider
+            RequestHedger hedger = settings.isHedgingActive()
+                ? new RequestHedger(settings.hedgeDelayPercentile, settings.hedgeBudgetPercent)
+                : null;
+            // The watchdog also enforces request deadlines, with or without learned ones
+            AdaptiveTimeouts adaptiveTimeouts = settings.adaptiveTimeoutsEnabled && settings.isOllama()
+                ? new AdaptiveTimeouts(settings.minStreamDeadlineSeconds * 1000L)
+                : null;
+            StreamWatchdog watchdog = new StreamWatchdog();
+            
+            ResponseCache responseCache = null;
+            SemanticCache semanticCache = null;
+            if (settings.responseCacheEnabled) {
+                boolean persistent = settings.responseCachePersistent && serviceUserConfig != null;
+                responseCache = new ResponseCache(TimeUnit.HOURS.toMillis(settings.responseCacheTtlHours),
+                    settings.responseCacheMaxSizeMb * 1024L * 1024L,
+                    persistent ? new JcrResponseCacheStore(serviceUserConfig) : null);
+                if (settings.semanticCacheEnabled) {
+                    EmbeddingClient embeddingClient = new EmbeddingClient(transport.getClient(), objectMapper,
+                        settings.provider, primaryApiUrl, settings.semanticCacheEmbeddingModel);
+                    semanticCache = new SemanticCache(embeddingClient, responseCache, settings.semanticCacheMaxEntries,
+                        settings.semanticCacheThreshold, settings.semanticCacheSuggestionThreshold,
+                        persistent ? new JcrSemanticIndexStore(serviceUserConfig) : null);
+                    semanticCache.start();
+                }
+            }
+            
+            return new ServiceState(settings, transport, executor, admission, new GenerationCoalescer(), responseCache,
+                                    semanticCache, circuitBreaker, backendPool, hedger,
+                                    adaptiveTimeouts, watchdog,
+                                    new RetryPolicy(settings.retryAttempts, settings.retryBudgetPercent));
+        }
+        
+        /**
+         * One health probe per backend, and a model catalog and model keeper on each Ollama backend
+         */
+        private static BackendPool createBackendPool(ServiceSettings settings, CloseableHttpClient httpClient) {
+            List<BackendPool.Backend> backends = new ArrayList<>();
+            for (BackendEndpoint endpoint : settings.backends) {
+                BackendHealthProbe healthProbe = new BackendHealthProbe(httpClient, objectMapper,
+                    settings.provider, endpoint.apiUrl, settings.healthProbeIntervalSeconds * 1000L);
+                // Backends may not have the same models installed: each one is listed on its own
+                ModelCatalog modelCatalog = null;
+                if (settings.isOllama()) {
+                    modelCatalog = new ModelCatalog(httpClient, objectMapper,
+                        endpoint.apiUrl.replace("/api/generate", "/api/tags"), settings.modelCatalogTtlSeconds * 1000L);
+                }
+                ModelKeeper modelKeeper = null;
+                if (settings.isOllama() && (settings.warmUpOnActivate || settings.keepWarmEnabled)) {
+                    // Loading a model can take as long as a generation
+                    modelKeeper = new ModelKeeper(httpClient, objectMapper, endpoint.apiUrl,
+                        settings.keepWarmModels, settings.modelKeepAlive, settings.keepWarmSchedule,
+                        settings.keepWarmCheckSeconds * 1000L, settings.timeout * 1000);
+                }
+                backends.add(new BackendPool.Backend(endpoint, healthProbe, modelCatalog, modelKeeper));
+            }
+            return new BackendPool(backends, settings.outlierConsecutiveFailures,
+                                   settings.outlierEjectionSeconds * 1000L);
+        }
+        
+        /**
+         * Stop background work and accepting new generations. Already queued generations still
+         * finish against this state; its connection pool is closed after the last one.
+         */
+        void retire() {
+            if (backendPool != null) {
+                backendPool.close();
+            }
+            if (hedger != null) {
+                hedger.close();
+            }
+            if (watchdog != null) {
+                watchdog.close();
+            }
+            if (semanticCache != null) {
+                semanticCache.close();
+            }
+            if (executor != null) {
+                executor.shutdown();
+            } else if (transport != null) {
+                transport.close();
+            }
+        }
+        
+        /**
+         * Executor bounding the number of generations in flight against the backend.
+         * Admission control keeps the queue within maxQueued; the extra capacity covers
+         * workers that already released their slot but are still finishing up, and up to
+         * maxInFlight semantic cache lookups.
+         * Backend calls use the blocking pooled client, so a worker is held for the whole call:
+         * maxInFlight threads at most, however many callers are waiting.
+         */
+        private static ThreadPoolExecutor createGenerationExecutor(int maxInFlight, int maxQueued, Runnable onTerminated) {
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxInFlight, maxInFlight,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(maxQueued + 2 * maxInFlight),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "surge-llm-generation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }) {
+                @Override
+                protected void terminated() {
+                    onTerminated.run();
+                }
+            };
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
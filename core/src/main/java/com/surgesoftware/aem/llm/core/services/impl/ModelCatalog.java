@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cached catalog of the models installed on the Ollama server
+ *
+ * Keeps the {@code /api/tags} listing in memory with a TTL and refreshes it on a
+ * background thread, so resolving the model for a request (including fallbacks) needs
+ * no extra round trip. The cache is invalidated when the backend reports a missing model.
+ * A failed refresh keeps the previous listing: stale entries are served until the server answers again.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class ModelCatalog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelCatalog.class);
+
+    private static final int FETCH_TIMEOUT_MS = 5000;
+    private static final String[] PREFERRED_PREFIXES = {"llama3", "llama", "codellama", "mistral", "phi"};
+
+    private final CloseableHttpClient httpClient;
+    private final ObjectReader modelListReader;
+    private final String tagsUrl;
+    private final long ttlMillis;
+    private final ScheduledExecutorService refresher;
+    private final AtomicBoolean refreshInProgress = new AtomicBoolean();
+    // One background refresh at a time, however many callers find the listing expired
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    private volatile List<String> models = Collections.emptyList();
+    private volatile long loadedAt;
+    private volatile boolean reachable;
+    private volatile String lastError;
+
+    ModelCatalog(CloseableHttpClient httpClient, ObjectMapper objectMapper, String tagsUrl, long ttlMillis) {
+        this.httpClient = httpClient;
+        this.modelListReader = objectMapper.readerFor(OllamaModelList.class);
+        this.tagsUrl = tagsUrl;
+        this.ttlMillis = ttlMillis;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-model-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load the catalog now and keep refreshing it in the background every TTL
+     */
+    void start() {
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Installed models. Served from memory; only an empty or invalidated catalog is loaded synchronously.
+     */
+    List<String> getModels() {
+        if (loadedAt == 0) {
+            refreshQuietly();
+        } else if (System.currentTimeMillis() - loadedAt > ttlMillis) {
+            refreshInBackground();
+        }
+        return models;
+    }
+
+    /**
+     * Installed models as last listed, without loading or refreshing the catalog; empty while not loaded
+     */
+    List<String> getCachedModels() {
+        return models;
+    }
+
+    /**
+     * Whether the last catalog refresh reached the server
+     */
+    boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Drop the cached listing, e.g. after the backend reported a missing model
+     */
+    void invalidate() {
+        LOG.info("♻️ Model catalog invalidated");
+        loadedAt = 0;
+        refreshInBackground();
+    }
+
+    /**
+     * Resolve the model to use for a request: the requested one if installed, otherwise the best alternative.
+     * Falls back to the requested model when the catalog is empty.
+     */
+    String resolve(String requestedModel) {
+        List<String> availableModels = getModels();
+        if (availableModels.isEmpty()) {
+            LOG.warn("No models found on Ollama server");
+            return requestedModel;
+        }
+
+        if (isInstalled(requestedModel, availableModels)) {
+            LOG.debug("✅ Requested model '{}' is available", requestedModel);
+            return requestedModel;
+        }
+
+        LOG.warn("❌ Model '{}' not found. Available models: {}", requestedModel, availableModels);
+        String bestMatch = findBestModelMatch(requestedModel, availableModels);
+        if (bestMatch != null) {
+            LOG.info("🔄 Auto-selecting alternative model: {}", bestMatch);
+            return bestMatch;
+        }
+
+        String firstModel = availableModels.get(0);
+        LOG.info("🔄 Using first available model: {}", firstModel);
+        return firstModel;
+    }
+
+    /**
+     * The subset of the given fallback models that is actually installed, excluding the failed model
+     */
+    List<String> installedFallbacks(String failedModel, String[] fallbackModels) {
+        List<String> availableModels = getModels();
+        List<String> candidates = new ArrayList<>();
+        for (String fallback : fallbackModels) {
+            if (fallback.equals(failedModel)) {
+                continue;
+            }
+            // With an unknown catalog every fallback is worth a try
+            if (availableModels.isEmpty() || isInstalled(fallback, availableModels)) {
+                candidates.add(fallback);
+            }
+        }
+        return candidates;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("models", models);
+        stats.put("reachable", reachable);
+        stats.put("ageMs", loadedAt > 0 ? System.currentTimeMillis() - loadedAt : -1);
+        stats.put("ttlMs", ttlMillis);
+        if (lastError != null) {
+            stats.put("lastError", lastError);
+        }
+        return stats;
+    }
+
+    static boolean isInstalled(String model, List<String> availableModels) {
+        String normalized = model.contains(":") ? model : model + ":latest";
+        for (String available : availableModels) {
+            if (available.equals(model) || available.equals(normalized)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the best matching model from available models (same family first, then any llama model)
+     */
+    static String findBestModelMatch(String requestedModel, List<String> availableModels) {
+        String baseRequest = requestedModel.split(":")[0].toLowerCase();
+
+        for (String prefix : PREFERRED_PREFIXES) {
+            if (baseRequest.startsWith(prefix)) {
+                for (String available : availableModels) {
+                    String baseAvailable = available.split(":")[0].toLowerCase();
+                    if (baseAvailable.startsWith(prefix)) {
+                        return available;
+                    }
+                }
+            }
+        }
+
+        for (String available : availableModels) {
+            if (available.toLowerCase().contains("llama")) {
+                return available;
+            }
+        }
+
+        return null;
+    }
+
+    private void refreshInBackground() {
+        if (refresher.isShutdown() || !refreshQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    refreshQuietly();
+                } finally {
+                    refreshQueued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshQueued.set(false);
+            LOG.debug("Model catalog refresher is shut down");
+        }
+    }
+
+    private void refreshQuietly() {
+        if (!refreshInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            models = Collections.unmodifiableList(fetchModels());
+            loadedAt = System.currentTimeMillis();
+            reachable = true;
+            lastError = null;
+            LOG.debug("📋 Model catalog refreshed: {}", models);
+        } catch (Exception e) {
+            reachable = false;
+            lastError = e.getMessage();
+            LOG.warn("⚠️ Could not refresh model catalog from {}: {}", tagsUrl, e.getMessage());
+        } finally {
+            refreshInProgress.set(false);
+        }
+    }
+
+    private List<String> fetchModels() throws IOException {
+        HttpGet httpGet = new HttpGet(tagsUrl);
+        httpGet.setConfig(RequestConfig.custom()
+            .setConnectTimeout(FETCH_TIMEOUT_MS)
+            .setSocketTimeout(FETCH_TIMEOUT_MS)
+            .setConnectionRequestTimeout(FETCH_TIMEOUT_MS)
+            .build());
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw new IOException("HTTP " + statusCode + " from " + tagsUrl);
+            }
+
+            OllamaModelList listing = modelListReader.readValue(responseBody);
+            return listing.names();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the configured models loaded on the Ollama server
+ *
+ * Ollama unloads a model once its {@code keep_alive} has passed without a request, so the
+ * next generation pays the full load time. The keeper warms the models up once when the
+ * service activates and then checks {@code /api/ps} periodically: a model that is not loaded,
+ * or whose expiry falls within the next two check intervals, is loaded again with an empty
+ * prompt, which resets its expiry without generating anything. An optional schedule
+ * (e.g. {@code MON-FRI 08:00-19:00}) limits keeping warm to business hours; outside of it
+ * the models are left to expire.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class ModelKeeper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelKeeper.class);
+
+    private static final int PS_TIMEOUT_MS = 3000;
+    private static final Pattern INTEGER = Pattern.compile("-?\\d+");
+
+    private final CloseableHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader modelListReader;
+    private final String generateUrl;
+    private final String psUrl;
+    private final List<String> models;
+    private final String keepAlive;
+    private final Schedule schedule;
+    private final long intervalMs;
+    private final int warmUpTimeoutMs;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong warmUps = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Map<String, String> expiries = Collections.emptyMap();
+    private volatile boolean inSchedule;
+    private volatile String lastError;
+
+    ModelKeeper(CloseableHttpClient httpClient, ObjectMapper objectMapper, String apiUrl, List<String> models,
+                String keepAlive, String schedule, long intervalMs, int warmUpTimeoutMs) {
+        this(httpClient, objectMapper, apiUrl, models, keepAlive, schedule, intervalMs, warmUpTimeoutMs,
+             Clock.systemDefaultZone());
+    }
+
+    ModelKeeper(CloseableHttpClient httpClient, ObjectMapper objectMapper, String apiUrl, List<String> models,
+                String keepAlive, String schedule, long intervalMs, int warmUpTimeoutMs, Clock clock) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.modelListReader = objectMapper.readerFor(OllamaModelList.class);
+        this.generateUrl = apiUrl;
+        this.psUrl = BackendHealthProbe.baseUrlOf(apiUrl) + "/api/ps";
+        this.models = Collections.unmodifiableList(models);
+        this.keepAlive = keepAlive;
+        this.schedule = Schedule.parse(schedule);
+        this.intervalMs = intervalMs;
+        this.warmUpTimeoutMs = warmUpTimeoutMs;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-model-keeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start keeping the models loaded
+     *
+     * @param warmUpNow load the models right away, regardless of the schedule
+     * @param keepWarm keep checking and reloading them in the background
+     */
+    void start(boolean warmUpNow, boolean keepWarm) {
+        if (warmUpNow) {
+            scheduler.execute(this::warmUpAll);
+        }
+        if (keepWarm) {
+            scheduler.scheduleWithFixedDelay(this::checkQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Reload every model that is not loaded or about to expire. Does nothing outside the schedule,
+     * except shortly before it begins so the models are resident when it does.
+     */
+    void check() throws IOException {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        long marginMs = 2 * intervalMs;
+        inSchedule = schedule.contains(now) || schedule.contains(now.plusNanos(marginMs * 1_000_000L));
+        if (!inSchedule) {
+            return;
+        }
+        checks.incrementAndGet();
+
+        Map<String, String> loaded = loadedModels();
+        expiries = Collections.unmodifiableMap(loaded);
+        Instant refreshBefore = now.toInstant().plusMillis(marginMs);
+        for (String model : models) {
+            String expiresAt = expiryOf(model, loaded);
+            if (expiresAt == null) {
+                LOG.info("🔥 Model '{}' is not loaded, warming it up", model);
+                warmUpQuietly(model);
+            } else if (expiresBefore(expiresAt, refreshBefore)) {
+                LOG.debug("Model '{}' expires at {}, extending its keep-alive", model, expiresAt);
+                warmUpQuietly(model);
+            }
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("models", models);
+        stats.put("keepAlive", keepAlive);
+        stats.put("schedule", schedule.toString());
+        stats.put("inSchedule", inSchedule);
+        stats.put("checks", checks.get());
+        stats.put("warmUps", warmUps.get());
+        stats.put("failures", failures.get());
+        stats.put("expiries", expiries);
+        if (lastError != null) {
+            stats.put("lastError", lastError);
+        }
+        return stats;
+    }
+
+    /**
+     * Load a model without generating anything (Ollama loads the model for an empty prompt)
+     * and set its keep-alive
+     */
+    static void warmUp(CloseableHttpClient httpClient, ObjectMapper objectMapper, String generateUrl, String model,
+                       String keepAlive, int timeoutMs) throws IOException {
+        warmUp(httpClient, objectMapper, generateUrl, model, keepAlive, timeoutMs, new CallCancellation());
+    }
+
+    /**
+     * Warm-up that can be aborted through the given cancellation
+     */
+    static void warmUp(CloseableHttpClient httpClient, ObjectMapper objectMapper, String generateUrl, String model,
+                       String keepAlive, int timeoutMs, CallCancellation cancellation) throws IOException {
+        OllamaGenerateRequest body = new OllamaGenerateRequest(model, false);
+        body.keepAlive = keepAliveParameter(keepAlive);
+
+        HttpPost httpPost = new HttpPost(generateUrl);
+        httpPost.setConfig(RequestConfig.custom()
+            .setConnectTimeout(timeoutMs)
+            .setSocketTimeout(timeoutMs)
+            .setConnectionRequestTimeout(timeoutMs)
+            .build());
+        httpPost.setEntity(new StringEntity(objectMapper.writerFor(OllamaGenerateRequest.class).writeValueAsString(body),
+                                         ContentType.APPLICATION_JSON));
+        cancellation.attach(httpPost);
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw new IOException("HTTP " + statusCode + " warming up '" + model + "': " + responseBody);
+            }
+        }
+    }
+
+    /**
+     * The {@code keep_alive} request value: whole numbers are sent as seconds (-1 keeps the model
+     * loaded indefinitely), anything else as an Ollama duration string such as {@code 30m}.
+     * Null when blank, leaving the server default in place.
+     */
+    static Object keepAliveParameter(String keepAlive) {
+        if (keepAlive == null || keepAlive.trim().isEmpty()) {
+            return null;
+        }
+        String value = keepAlive.trim();
+        return INTEGER.matcher(value).matches() ? (Object) Long.valueOf(value) : value;
+    }
+
+    private void warmUpAll() {
+        for (String model : models) {
+            LOG.info("🔥 Warming up model '{}' (keep-alive: {})", model, keepAlive);
+            warmUpQuietly(model);
+        }
+    }
+
+    private void warmUpQuietly(String model) {
+        long startTime = System.currentTimeMillis();
+        try {
+            warmUp(httpClient, objectMapper, generateUrl, model, keepAlive, warmUpTimeoutMs);
+            warmUps.incrementAndGet();
+            lastError = null;
+            LOG.info("✅ Model '{}' is loaded ({}ms)", model, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            lastError = e.getMessage();
+            LOG.warn("⚠️ Could not warm up model '{}': {}", model, e.getMessage());
+        }
+    }
+
+    private void checkQuietly() {
+        try {
+            check();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            lastError = e.getMessage();
+            LOG.warn("⚠️ Could not check loaded models at {}: {}", psUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Loaded models and their expiry timestamps from {@code /api/ps}
+     */
+    private Map<String, String> loadedModels() throws IOException {
+        HttpGet httpGet = new HttpGet(psUrl);
+        httpGet.setConfig(RequestConfig.custom()
+            .setConnectTimeout(PS_TIMEOUT_MS)
+            .setSocketTimeout(PS_TIMEOUT_MS)
+            .setConnectionRequestTimeout(PS_TIMEOUT_MS)
+            .build());
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode != 200) {
+                throw new IOException("HTTP " + statusCode + " from " + psUrl);
+            }
+
+            Map<String, String> loaded = new LinkedHashMap<>();
+            OllamaModelList listing = modelListReader.readValue(responseBody);
+            for (OllamaModelList.Model model : listing.models()) {
+                loaded.put(model.name, model.expiresAt != null ? model.expiresAt : "");
+            }
+            return loaded;
+        }
+    }
+
+    private static String expiryOf(String model, Map<String, String> loaded) {
+        String expiresAt = loaded.get(model);
+        return expiresAt != null || model.contains(":") ? expiresAt : loaded.get(model + ":latest");
+    }
+
+    /**
+     * An unreadable expiry counts as not expiring, the model is loaded after all
+     */
+    private static boolean expiresBefore(String expiresAt, Instant instant) {
+        try {
+            return OffsetDateTime.parse(expiresAt).toInstant().isBefore(instant);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Days of the week and time of day during which the models are kept loaded,
+     * e.g. {@code MON-FRI 08:00-19:00}, {@code 07:30-20:00} or {@code MON-SAT}. Blank means always.
+     */
+    static final class Schedule {
+
+        private static final Pattern FORMAT = Pattern.compile(
+            "(?:([A-Za-z]{3})(?:-([A-Za-z]{3}))?)?\\s*(?:(\\d{1,2}:\\d{2})-(\\d{1,2}:\\d{2}))?");
+
+        private final String text;
+        private final DayOfWeek firstDay;
+        private final DayOfWeek lastDay;
+        private final LocalTime startTime;
+        private final LocalTime endTime;
+
+        private Schedule(String text, DayOfWeek firstDay, DayOfWeek lastDay, LocalTime startTime, LocalTime endTime) {
+            this.text = text;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /**
+         * Parse a schedule; an invalid one is logged and treated as always
+         */
+        static Schedule parse(String schedule) {
+            String text = schedule != null ? schedule.trim() : "";
+            Matcher matcher = FORMAT.matcher(text);
+            if (text.isEmpty() || !matcher.matches()) {
+                if (!text.isEmpty()) {
+                    LOG.warn("⚠️ Invalid keep-warm schedule '{}', keeping models loaded at all times", text);
+                }
+                return new Schedule("always", null, null, null, null);
+            }
+            try {
+                DayOfWeek firstDay = matcher.group(1) != null ? day(matcher.group(1)) : null;
+                DayOfWeek lastDay = matcher.group(2) != null ? day(matcher.group(2)) : firstDay;
+                LocalTime startTime = matcher.group(3) != null ? LocalTime.parse(pad(matcher.group(3))) : null;
+                LocalTime endTime = matcher.group(4) != null ? LocalTime.parse(pad(matcher.group(4))) : null;
+                return new Schedule(text, firstDay, lastDay, startTime, endTime);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                LOG.warn("⚠️ Invalid keep-warm schedule '{}', keeping models loaded at all times", text);
+                return new Schedule("always", null, null, null, null);
+            }
+        }
+
+        boolean contains(ZonedDateTime time) {
+            if (firstDay != null) {
+                int offset = Math.floorMod(time.getDayOfWeek().getValue() - firstDay.getValue(), 7);
+                int length = Math.floorMod(lastDay.getValue() - firstDay.getValue(), 7);
+                if (offset > length) {
+                    return false;
+                }
+            }
+            if (startTime == null) {
+                return true;
+            }
+            LocalTime timeOfDay = time.toLocalTime();
+            if (startTime.isBefore(endTime)) {
+                return !timeOfDay.isBefore(startTime) && timeOfDay.isBefore(endTime);
+            }
+            // Overnight window such as 22:00-06:00
+            return !timeOfDay.isBefore(startTime) || timeOfDay.isBefore(endTime);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        private static DayOfWeek day(String abbreviation) {
+            String upper = abbreviation.toUpperCase(Locale.ROOT);
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (day.name().startsWith(upper)) {
+                    return day;
+                }
+            }
+            throw new IllegalArgumentException("Unknown day " + abbreviation);
+        }
+
+        private static String pad(String time) {
+            return time.length() == 4 ? "0" + time : time;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * One line of an Ollama {@code /api/generate} stream
+ *
+ * Read with a streaming parser that pulls only the fields used here and skips everything else
+ * unread, notably the {@code context} token array of the done chunk, which can run to thousands
+ * of numbers. No tree, map or per-field object is built; an instance is reset and refilled for
+ * every line of a stream.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class OllamaChunk {
+
+    String response = "";
+    String error;
+    boolean done;
+    long promptEvalCount;
+    long promptEvalDuration;
+    long evalCount;
+    long evalDuration;
+
+    /**
+     * Fill this chunk from one NDJSON line, clearing what the previous line left
+     *
+     * @throws JsonParseException if the line is not a JSON object
+     */
+    void read(JsonFactory factory, String line) throws IOException {
+        clear();
+        try (JsonParser parser = factory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Stream chunk is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "response":
+                        response = textOf(parser, value, "");
+                        break;
+                    case "error":
+                        error = value == JsonToken.VALUE_NULL ? null : textOf(parser, value, "");
+                        break;
+                    case "done":
+                        done = parser.getValueAsBoolean(false);
+                        break;
+                    case "prompt_eval_count":
+                        promptEvalCount = parser.getValueAsLong(0);
+                        break;
+                    case "prompt_eval_duration":
+                        promptEvalDuration = parser.getValueAsLong(0);
+                        break;
+                    case "eval_count":
+                        evalCount = parser.getValueAsLong(0);
+                        break;
+                    case "eval_duration":
+                        evalDuration = parser.getValueAsLong(0);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (!parser.hasToken(JsonToken.END_OBJECT)) {
+                throw new JsonParseException(parser, "Stream chunk is not a complete JSON object");
+            }
+        }
+    }
+
+    /**
+     * Stand-in for the done chunk of a stream that was stopped early, with the generation measured locally
+     */
+    static OllamaChunk measured(long evalCount, long evalDuration) {
+        OllamaChunk chunk = new OllamaChunk();
+        chunk.done = true;
+        chunk.evalCount = evalCount;
+        chunk.evalDuration = evalDuration;
+        return chunk;
+    }
+
+    private void clear() {
+        response = "";
+        error = null;
+        done = false;
+        promptEvalCount = 0;
+        promptEvalDuration = 0;
+        evalCount = 0;
+        evalDuration = 0;
+    }
+
+    /**
+     * Scalars as text (as {@code JsonNode.asText} has it); null, objects and arrays give the fallback
+     */
+    private static String textOf(JsonParser parser, JsonToken value, String fallback) throws IOException {
+        if (value == JsonToken.VALUE_NULL || !value.isScalarValue()) {
+            parser.skipChildren();
+            return fallback;
+        }
+        return parser.getText();
+    }
+}
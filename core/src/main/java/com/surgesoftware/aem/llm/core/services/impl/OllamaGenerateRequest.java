@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.surgesoftware.aem.llm.core.models.ImageAttachment;
+
+import java.util.List;
+
+/**
+ * Request body of Ollama's {@code /api/generate}, written through a pre-built {@code ObjectWriter}
+ *
+ * Unset (null) fields are left out, leaving the server defaults in place. Images are Base64 encoded
+ * from their attachment while the body is written (see {@link JsonStreamEntity}).
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+final class OllamaGenerateRequest {
+
+    @JsonProperty("model")
+    final String model;
+
+    @JsonProperty("stream")
+    final boolean stream;
+
+    @JsonProperty("prompt")
+    String prompt;
+
+    @JsonProperty("images")
+    @JsonSerialize(contentUsing = ImageBase64Serializer.class)
+    List<ImageAttachment> images;
+
+    @JsonProperty("options")
+    Options options;
+
+    /** Seconds as a number or an Ollama duration string, see {@link ModelKeeper#keepAliveParameter} */
+    @JsonProperty("keep_alive")
+    Object keepAlive;
+
+    /** JSON schema the output is constrained to */
+    @JsonProperty("format")
+    JsonNode format;
+
+    OllamaGenerateRequest(String model, boolean stream) {
+        this.model = model;
+        this.stream = stream;
+    }
+
+    static final class Options {
+
+        @JsonProperty("temperature")
+        final double temperature;
+
+        @JsonProperty("num_predict")
+        final int numPredict;
+
+        Options(double temperature, int numPredict) {
+            this.temperature = temperature;
+            this.numPredict = numPredict;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Model listing of Ollama's {@code /api/tags} (installed models) and {@code /api/ps} (loaded models)
+ *
+ * Only the fields used here are bound; details, digests and sizes are skipped by the parser.
+ * Read through an {@code ObjectReader} built once per consumer.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+final class OllamaModelList {
+
+    @JsonProperty("models")
+    private List<Model> models;
+
+    /**
+     * Models that have a name, in listing order
+     */
+    List<Model> models() {
+        if (models == null) {
+            return Collections.emptyList();
+        }
+        List<Model> named = new ArrayList<>(models.size());
+        for (Model model : models) {
+            if (model != null && model.name != null) {
+                named.add(model);
+            }
+        }
+        return named;
+    }
+
+    /**
+     * Names of the listed models
+     */
+    List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (Model model : models()) {
+            names.add(model.name);
+        }
+        return names;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static final class Model {
+
+        @JsonProperty("name")
+        String name;
+
+        /** Only in {@code /api/ps}: when the model is unloaded */
+        @JsonProperty("expires_at")
+        String expiresAt;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Incremental reader for Ollama streaming responses (application/x-ndjson)
+ *
+ * Consumes the response entity line by line as it arrives from the socket, appends each
+ * token to the generated text, hands it to an optional token consumer and stops at the
+ * {@code done} chunk. Only the generated text is retained, never the raw wire format: each
+ * line is pulled into one reused {@link OllamaChunk} by a streaming parser, no JSON tree is built.
+ *
+ * Models tend to keep talking after the component JSON (an explanation, another code fence).
+ * The end of the first JSON object is tracked as tokens arrive; when asked to, the reader stops
+ * right there and lets the caller close the upstream request, which also stops the generation
+ * on the backend. The tokens saved are estimated from the text that streams which did run to
+ * their end produced after the object.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class OllamaStreamReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OllamaStreamReader.class);
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    private final AtomicLong stoppedStreams = new AtomicLong();
+    private final AtomicLong completedStreams = new AtomicLong();
+    private final AtomicLong tokensAfterObject = new AtomicLong();
+
+    OllamaStreamReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Read the NDJSON stream until the {@code done} chunk or end of stream
+     *
+     * @param stream Response entity stream
+     * @param modelToUse Model name, for logging
+     * @param startTime Request start time in millis, for logging
+     * @param tokenConsumer Optional consumer notified with each token as it arrives
+     * @return The full generated text
+     */
+    String read(InputStream stream, String modelToUse, long startTime, Consumer<String> tokenConsumer) throws IOException {
+        return read(stream, modelToUse, startTime, tokenConsumer, null);
+    }
+
+    /**
+     * Read the NDJSON stream until the {@code done} chunk or end of stream
+     *
+     * @param doneConsumer Optional consumer of the {@code done} chunk, which carries the timing
+     *                     statistics of the generation (load, prompt eval and eval durations and counts)
+     */
+    String read(InputStream stream, String modelToUse, long startTime, Consumer<String> tokenConsumer,
+                Consumer<OllamaChunk> doneConsumer) throws IOException {
+        return read(stream, modelToUse, startTime, tokenConsumer, doneConsumer, null);
+    }
+
+    /**
+     * Read the NDJSON stream until the {@code done} chunk, end of stream or, when stopUpstream is given,
+     * the end of the generated JSON object
+     *
+     * @param stopUpstream Optional action closing the request once the JSON object is complete; the text
+     *                     is then cut after the object and doneConsumer receives timings measured here
+     */
+    String read(InputStream stream, String modelToUse, long startTime, Consumer<String> tokenConsumer,
+                Consumer<OllamaChunk> doneConsumer, Runnable stopUpstream) throws IOException {
+        StringBuilder fullResponse = new StringBuilder();
+        OllamaChunk chunk = new OllamaChunk();
+        JsonObjectTracker tracker = new JsonObjectTracker();
+        boolean stopAtObjectEnd = stopUpstream != null;
+        boolean objectComplete = false;
+        int chunks = 0;
+        int tokens = 0;
+        int tailTokens = 0;
+        long firstTokenAt = 0;
+        boolean done = false;
+
+        LOG.info("🔄 Reading stream chunks for model: {}", modelToUse);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        String line;
+        while (!done && (line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+
+            try {
+                chunk.read(jsonFactory, line);
+            } catch (JsonProcessingException e) {
+                LOG.warn("⚠️ Skipping malformed JSON chunk: {}", line);
+                continue;
+            }
+
+            if (chunk.error != null) {
+                LOG.error("❌ Ollama streaming error: {}", chunk.error);
+                throw new IOException("Ollama streaming error: " + chunk.error);
+            }
+
+            chunks++;
+            String token = chunk.response;
+            if (!token.isEmpty()) {
+                if (fullResponse.length() == 0) {
+                    firstTokenAt = System.currentTimeMillis();
+                    LOG.info("⚡ First token received after {}ms", firstTokenAt - startTime);
+                }
+                tokens++;
+                fullResponse.append(token);
+                if (tokenConsumer != null) {
+                    tokenConsumer.accept(token);
+                }
+                if (tracker.isClosed()) {
+                    tailTokens++;
+                } else if (tracker.feed(token)) {
+                    objectComplete = isJsonObject(fullResponse.substring(tracker.getStart(), tracker.getEnd()));
+                    if (!objectComplete) {
+                        LOG.debug("Generated JSON object does not parse, reading the stream to its end");
+                    } else if (stopAtObjectEnd) {
+                        fullResponse.setLength(tracker.getEnd());
+                        stopUpstream.run();
+                        stoppedStreams.incrementAndGet();
+                        LOG.info("✂️ Component JSON complete after {} chunks ({} chars in {}ms), closing the stream",
+                                chunks, fullResponse.length(), System.currentTimeMillis() - startTime);
+                        if (doneConsumer != null) {
+                            doneConsumer.accept(measuredTimings(tokens, firstTokenAt));
+                        }
+                        return fullResponse.toString();
+                    }
+                }
+            }
+
+            if (chunk.done) {
+                done = true;
+                long elapsed = System.currentTimeMillis() - startTime;
+                LOG.info("🏁 Stream completed - {} chunks, total response: {} chars in {}ms",
+                        chunks, fullResponse.length(), elapsed);
+                if (objectComplete) {
+                    completedStreams.incrementAndGet();
+                    tokensAfterObject.addAndGet(tailTokens);
+                }
+                if (doneConsumer != null) {
+                    doneConsumer.accept(chunk);
+                }
+            }
+        }
+
+        if (!done) {
+            LOG.warn("⚠️ Stream ended without a done chunk after {} chunks", chunks);
+        }
+
+        if (fullResponse.length() == 0) {
+            LOG.error("❌ No response content received from streaming");
+            throw new IOException("No response content received from Ollama streaming API");
+        }
+
+        return fullResponse.toString();
+    }
+
+    /**
+     * Streams stopped at the end of the JSON object, and the tokens that saved: the average number
+     * of tokens generated after a valid object by streams that ran to their end (while stopping was
+     * off), times the stops
+     */
+    Map<String, Object> getStats() {
+        long stopped = stoppedStreams.get();
+        long completed = completedStreams.get();
+        long tail = tokensAfterObject.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stoppedStreams", stopped);
+        stats.put("completedStreams", completed);
+        stats.put("tokensAfterObject", tail);
+        stats.put("tokensSavedEstimate", completed == 0 ? 0 : stopped * tail / completed);
+        return stats;
+    }
+
+    private boolean isJsonObject(String candidate) {
+        try {
+            return objectMapper.readTree(candidate).isObject();
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stand-in for the {@code done} chunk of a stream that was stopped: the generation rate as seen
+     * here, between the first and the last token (prompt evaluation is not known)
+     */
+    private static OllamaChunk measuredTimings(int tokens, long firstTokenAt) {
+        return OllamaChunk.measured(tokens - 1,
+                                    TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - firstTokenAt));
+    }
+}
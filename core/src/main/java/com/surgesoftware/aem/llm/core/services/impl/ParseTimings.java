@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count and latency of turning generated text into an LLMResponse, per parse path
+ *
+ * Lets the cost of the repair path (Markdown stripping, quote fixing, validation parses)
+ * be compared with a plain parse of schema-constrained output.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class ParseTimings {
+
+    /** Object parsed incrementally while streaming, only mapped onto the model */
+    static final String STREAMED = "streamed";
+    /** Structured output parsed as is */
+    static final String DIRECT = "direct";
+    /** Free-form output extracted and repaired before parsing */
+    static final String REPAIRED = "repaired";
+    /** No path produced a response */
+    static final String FAILED = "failed";
+
+    private final Map<String, Path> paths = new ConcurrentHashMap<>();
+
+    void record(String path, long nanos) {
+        Path stats = paths.computeIfAbsent(path, name -> new Path());
+        stats.count.increment();
+        stats.nanos.add(nanos);
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String name : new String[] {STREAMED, DIRECT, REPAIRED, FAILED}) {
+            Path path = paths.get(name);
+            if (path == null) {
+                continue;
+            }
+            long count = path.count.sum();
+            Map<String, Object> pathStats = new LinkedHashMap<>();
+            pathStats.put("count", count);
+            pathStats.put("avgMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(path.nanos.sum() / count));
+            stats.put(name, pathStats);
+        }
+        return stats;
+    }
+
+    private static final class Path {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled, keep-alive HTTP transport used to talk to the local LLM backend.
+ *
+ * Wraps a {@link PoolingHttpClientConnectionManager} with per-route and total limits,
+ * honours server keep-alive hints (falling back to a configured default) and runs the
+ * HttpClient idle connection evictor on a background thread.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class PooledHttpTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+    // Health probe, model keeper and model catalog, which must not wait behind busy generations
+    static final int BACKGROUND_CALLS_PER_ROUTE = 3;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    PooledHttpTransport(int maxTotal, int maxPerRoute, int keepAliveSeconds, int idleEvictSeconds,
+                        RequestConfig defaultRequestConfig) {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // Re-validate connections that sat idle in the pool before handing them out again
+        this.connectionManager.setValidateAfterInactivity(2000);
+
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(defaultRequestConfig)
+            .setKeepAliveStrategy(keepAliveStrategy(keepAliveSeconds * 1000L))
+            .evictExpiredConnections()
+            .evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+            .build();
+
+        LOG.info("🔌 HTTP connection pool created - max total: {}, max per route: {}, keep-alive: {}s, idle eviction: {}s",
+                 maxTotal, maxPerRoute, keepAliveSeconds, idleEvictSeconds);
+    }
+
+    /**
+     * Transport sized and timed from the service settings: every backend is its own route, with room
+     * for the generation workers that may call it plus its background calls (and a hedge, when hedging
+     * is on). Max Connections per Route only raises that size.
+     */
+    static PooledHttpTransport forSettings(ServiceSettings settings) {
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(settings.timeout * 1000) // Convert to milliseconds
+            .setSocketTimeout(settings.timeout * 1000)
+            .setConnectionRequestTimeout(settings.connectionLeaseTimeout * 1000)
+            .build();
+
+        int workerCalls = settings.backends.stream().mapToInt(backend -> backend.maxConcurrency).max().orElse(1);
+        if (settings.responseCacheEnabled && settings.semanticCacheEnabled) {
+            // Embedding lookups run on any generation worker, all against the primary backend
+            workerCalls = settings.maxInFlightRequests;
+        }
+        int maxPerRoute = Math.max(settings.maxConnectionsPerRoute, workerCalls + BACKGROUND_CALLS_PER_ROUTE);
+        if (settings.isHedgingActive()) {
+            maxPerRoute++; // a hedge must not wait for a pooled connection
+        }
+        return new PooledHttpTransport(
+            Math.max(settings.maxConnectionsTotal, maxPerRoute * settings.backends.size()),
+            maxPerRoute,
+            settings.keepAliveSeconds,
+            settings.idleConnectionEvictSeconds,
+            requestConfig);
+    }
+
+    CloseableHttpClient getClient() {
+        return httpClient;
+    }
+
+    /**
+     * Snapshot of the connection pool state (leased/pending/available/max), in total and per route
+     */
+    Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        PoolStats total = connectionManager.getTotalStats();
+        stats.put("leased", total.getLeased());
+        stats.put("pending", total.getPending());
+        stats.put("available", total.getAvailable());
+        stats.put("max", total.getMax());
+        stats.put("maxPerRoute", connectionManager.getDefaultMaxPerRoute());
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            PoolStats routeStats = connectionManager.getStats(route);
+            Map<String, Object> routeMap = new LinkedHashMap<>();
+            routeMap.put("leased", routeStats.getLeased());
+            routeMap.put("pending", routeStats.getPending());
+            routeMap.put("available", routeStats.getAvailable());
+            routeMap.put("max", routeStats.getMax());
+            routes.put(route.getTargetHost().toURI(), routeMap);
+        }
+        stats.put("routes", routes);
+        return stats;
+    }
+
+    void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing HTTP client: {}", e.getMessage());
+        }
+        connectionManager.shutdown();
+        LOG.info("🔌 HTTP connection pool closed");
+    }
+
+    /**
+     * Use the server's Keep-Alive timeout hint when present, otherwise the configured default
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAliveMs) {
+        return (HttpResponse response, HttpContext context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000L, defaultKeepAliveMs);
+                    } catch (NumberFormatException ignore) {
+                        // fall through to the configured default
+                    }
+                }
+            }
+            return defaultKeepAliveMs;
+        };
+    }
+}
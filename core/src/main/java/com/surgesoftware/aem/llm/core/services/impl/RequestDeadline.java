@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.exceptions.LLMUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Wall-clock budget of one generation, shared by every step it takes
+ *
+ * Retries, backoff, warm-up and fallback models all draw from the same budget: each step
+ * shortens its timeout to the time left, or is skipped once there is none. A generation
+ * nobody waits for any more is abandoned, which cancels its calls in flight so the backend
+ * stops generating for it.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class RequestDeadline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDeadline.class);
+
+    private final long expiresAt;
+    private final long budgetMillis;
+    private final LongSupplier clock;
+    private final Set<CallCancellation> calls = ConcurrentHashMap.newKeySet();
+    private volatile String abandonedReason;
+
+    /**
+     * @param expiresAt Epoch millis at which the budget is used up, 0 for no deadline
+     */
+    RequestDeadline(long expiresAt) {
+        this(expiresAt, System::currentTimeMillis);
+    }
+
+    RequestDeadline(long expiresAt, LongSupplier clock) {
+        this.expiresAt = expiresAt;
+        this.clock = clock;
+        this.budgetMillis = expiresAt > 0 ? Math.max(0, expiresAt - clock.getAsLong()) : 0;
+    }
+
+    /**
+     * The earlier of the deadline the client asked for and the configured budget from now
+     *
+     * @param requestedDeadline Epoch millis from the request, 0 if the client set none
+     * @param maxBudgetMillis Configured budget, 0 for none
+     */
+    static RequestDeadline of(long requestedDeadline, long maxBudgetMillis) {
+        long expiresAt = requestedDeadline;
+        if (maxBudgetMillis > 0) {
+            long configured = System.currentTimeMillis() + maxBudgetMillis;
+            expiresAt = expiresAt > 0 ? Math.min(expiresAt, configured) : configured;
+        }
+        return new RequestDeadline(expiresAt);
+    }
+
+    boolean isBounded() {
+        return expiresAt > 0;
+    }
+
+    /**
+     * Time left, Long.MAX_VALUE without a deadline
+     */
+    long remainingMillis() {
+        return expiresAt > 0 ? Math.max(0, expiresAt - clock.getAsLong()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * The given timeout, shortened to the time left
+     */
+    int clamp(int timeoutMillis) {
+        return (int) Math.max(1, Math.min(timeoutMillis, remainingMillis()));
+    }
+
+    /**
+     * Whether the budget is used up or the generation was abandoned
+     */
+    boolean isOver() {
+        return abandonedReason != null || remainingMillis() == 0;
+    }
+
+    boolean isAbandoned() {
+        return abandonedReason != null;
+    }
+
+    /**
+     * Fail before starting a step if there is no time left for it
+     *
+     * @param lastFailure Failure of the previous step, reported with the deadline, may be null
+     */
+    void check(String lastFailure) throws LLMUnavailableException {
+        if (isOver()) {
+            throw exceeded(lastFailure);
+        }
+    }
+
+    /**
+     * The exception ending a generation that is out of time or abandoned
+     */
+    LLMUnavailableException exceeded(String lastFailure) {
+        if (abandonedReason != null) {
+            return new LLMUnavailableException("Generation cancelled: " + abandonedReason);
+        }
+        return LLMUnavailableException.forDeadlineExceeded(budgetMillis, lastFailure);
+    }
+
+    /**
+     * Sleep for the given time, cut short by the deadline or abandonment
+     *
+     * @return false if the deadline passes or the generation is abandoned before the time is up
+     */
+    boolean pause(long millis) throws InterruptedException {
+        if (millis >= remainingMillis()) {
+            return false;
+        }
+        long until = clock.getAsLong() + millis;
+        synchronized (this) {
+            long left;
+            while (abandonedReason == null && (left = until - clock.getAsLong()) > 0) {
+                wait(left);
+            }
+        }
+        return abandonedReason == null;
+    }
+
+    /**
+     * Track a call in flight, so abandoning the generation aborts it. Unregister it when done.
+     */
+    void register(CallCancellation call) {
+        calls.add(call);
+        if (abandonedReason != null) {
+            call.cancel();
+        }
+    }
+
+    void unregister(CallCancellation call) {
+        calls.remove(call);
+    }
+
+    /**
+     * Stop the generation: no further steps are started and the calls in flight are aborted
+     */
+    void abandon(String reason) {
+        if (abandonedReason != null) {
+            return;
+        }
+        abandonedReason = reason;
+        LOG.info("🛑 Generation abandoned ({}), cancelling {} call(s) in flight", reason, calls.size());
+        for (CallCancellation call : calls) {
+            call.cancel();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hedged LLM calls for a shorter latency tail
+ *
+ * Tracks the time to first token of recent calls. Once enough samples are in, a call that has
+ * not produced a token within the configured percentile of that distribution gets a duplicate
+ * (the hedge), routed elsewhere by the caller. Whichever leg streams a token first wins; the
+ * other one is cancelled and its tokens never reach the consumer. A leg failing without a
+ * token leaves the other one running.
+ *
+ * Hedges are paid from a budget: every call earns {@code budgetPercent / 100} of a hedge and a
+ * hedge costs one, so duplicates stay within that share of the calls. Savings are capped so a
+ * quiet period cannot fund a burst of hedges.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class RequestHedger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestHedger.class);
+
+    static final int SAMPLE_WINDOW = 200;
+    static final int MIN_SAMPLES = 20;
+    // Budget in hundredths of a hedge, so earning a percentage per call stays exact
+    private static final int HEDGE_COST = 100;
+    private static final int MAX_SAVED_BUDGET = 5 * HEDGE_COST;
+
+    /**
+     * One leg of a hedged call, run against some backend
+     */
+    interface Leg {
+        String call(Consumer<String> tokenConsumer, CallCancellation cancellation) throws IOException;
+    }
+
+    private final int percentile;
+    private final int budgetPerCall;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService hedgeExecutor;
+
+    // Guarded by this
+    private final long[] samples = new long[SAMPLE_WINDOW];
+    private int sampleCount;
+    private int nextSample;
+    private int budget;
+    private long calls;
+    private long hedgedCalls;
+    private long hedgeWins;
+    private long budgetExhausted;
+
+    RequestHedger(int percentile, int budgetPercent) {
+        this.percentile = Math.min(99, Math.max(50, percentile));
+        this.budgetPerCall = Math.max(0, Math.min(HEDGE_COST, budgetPercent));
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hedgeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-hedge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void close() {
+        timer.shutdownNow();
+        hedgeExecutor.shutdown();
+    }
+
+    /**
+     * Run a call, hedging it with a second run of the same leg when its first token is late
+     *
+     * @param leg the call; invoked again for the hedge, which must then avoid the first leg's backend
+     * @param tokenConsumer receives the tokens of the winning leg only, may be null
+     */
+    String execute(Leg leg, Consumer<String> tokenConsumer) throws IOException {
+        long delayMs = nextCall();
+        if (delayMs < 0) {
+            // Still learning the first-token latency
+            long startTime = System.currentTimeMillis();
+            boolean[] firstToken = {true};
+            return leg.call(token -> {
+                if (firstToken[0]) {
+                    firstToken[0] = false;
+                    recordFirstToken(System.currentTimeMillis() - startTime);
+                }
+                if (tokenConsumer != null) {
+                    tokenConsumer.accept(token);
+                }
+            }, new CallCancellation());
+        }
+
+        Race race = new Race(tokenConsumer);
+        Race.Runner primary = race.newRunner();
+        ScheduledFuture<?> hedgeTimer = timer.schedule(() -> startHedge(race, leg), delayMs, TimeUnit.MILLISECONDS);
+        String result;
+        try {
+            result = leg.call(primary, primary.cancellation);
+        } catch (IOException | RuntimeException e) {
+            hedgeTimer.cancel(false);
+            CompletableFuture<String> hedge = race.finish();
+            if (hedge == null || race.winner == primary) {
+                throw e;
+            }
+            // The hedge won, or is still our best chance
+            try {
+                return awaitHedge(hedge);
+            } catch (IOException hedgeException) {
+                if (race.winner != null) {
+                    throw hedgeException;
+                }
+                throw e;
+            }
+        }
+        hedgeTimer.cancel(false);
+        CompletableFuture<String> hedge = race.finish();
+        if (hedge != null && race.winner == null) {
+            // Finished without streaming a token: the primary leg's answer stands
+            race.cancelAllBut(primary);
+        }
+        return result;
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("percentile", percentile);
+        stats.put("hedgeDelayMs", hedgeDelay());
+        stats.put("samples", sampleCount);
+        stats.put("calls", calls);
+        stats.put("hedged", hedgedCalls);
+        stats.put("hedgeWins", hedgeWins);
+        stats.put("budgetExhausted", budgetExhausted);
+        stats.put("hedgeRate", calls > 0 ? (double) hedgedCalls / calls : 0.0);
+        return stats;
+    }
+
+    /**
+     * Count a call and earn its share of the budget
+     *
+     * @return hedge delay, or -1 while there are too few samples
+     */
+    private synchronized long nextCall() {
+        long delay = hedgeDelay();
+        if (delay >= 0) {
+            calls++;
+            budget = Math.min(MAX_SAVED_BUDGET, budget + budgetPerCall);
+        }
+        return delay;
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if (budget >= HEDGE_COST) {
+            budget -= HEDGE_COST;
+            hedgedCalls++;
+            return true;
+        }
+        budgetExhausted++;
+        return false;
+    }
+
+    synchronized void recordFirstToken(long latencyMs) {
+        samples[nextSample] = latencyMs;
+        nextSample = (nextSample + 1) % SAMPLE_WINDOW;
+        sampleCount = Math.min(sampleCount + 1, SAMPLE_WINDOW);
+    }
+
+    private synchronized void recordHedgeWin() {
+        hedgeWins++;
+    }
+
+    private long hedgeDelay() {
+        if (sampleCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+        return sorted[Math.max(0, Math.min(index, sampleCount - 1))];
+    }
+
+    private void startHedge(Race race, Leg leg) {
+        synchronized (race) {
+            if (race.finished || race.winner != null || !tryAcquireHedge()) {
+                return;
+            }
+            LOG.info("🏁 No first token after the hedge delay, sending a hedged request");
+            Race.Runner hedgeRunner = race.newRunner();
+            race.hedge = CompletableFuture.supplyAsync(() -> {
+                try {
+                    String result = leg.call(hedgeRunner, hedgeRunner.cancellation);
+                    if (race.winner == hedgeRunner) {
+                        recordHedgeWin();
+                    }
+                    return result;
+                } catch (IOException e) {
+                    throw new HedgeFailedException(e);
+                }
+            }, hedgeExecutor);
+        }
+    }
+
+    private static String awaitHedge(CompletableFuture<String> hedge) throws IOException {
+        try {
+            return hedge.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            hedge.cancel(true);
+            throw new IOException("Interrupted while waiting for the hedged request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HedgeFailedException) {
+                throw (IOException) cause.getCause();
+            }
+            throw new IOException("Hedged request failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * The legs of one hedged call; the first to stream a token wins and cancels the others
+     */
+    private final class Race {
+
+        private final Consumer<String> tokenConsumer;
+        private final Runner[] runners = new Runner[2];
+        private int runnerCount;
+        private volatile Runner winner;
+        private boolean finished;
+        private CompletableFuture<String> hedge;
+
+        Race(Consumer<String> tokenConsumer) {
+            this.tokenConsumer = tokenConsumer;
+        }
+
+        synchronized Runner newRunner() {
+            Runner runner = new Runner();
+            runners[runnerCount++] = runner;
+            return runner;
+        }
+
+        /**
+         * Stop hedging; returns the hedge if one was started
+         */
+        synchronized CompletableFuture<String> finish() {
+            finished = true;
+            return hedge;
+        }
+
+        synchronized void cancelAllBut(Runner keep) {
+            for (int i = 0; i < runnerCount; i++) {
+                if (runners[i] != keep) {
+                    runners[i].cancellation.cancel();
+                }
+            }
+        }
+
+        private synchronized boolean claim(Runner runner) {
+            if (winner == null) {
+                winner = runner;
+                cancelAllBut(runner);
+            }
+            return winner == runner;
+        }
+
+        /**
+         * Token consumer of one leg: claims the win on its first token, drops tokens if it lost
+         */
+        final class Runner implements Consumer<String> {
+
+            final CallCancellation cancellation = new CallCancellation();
+            private final long startTime = System.currentTimeMillis();
+            private boolean first = true;
+
+            @Override
+            public void accept(String token) {
+                if (first) {
+                    first = false;
+                    if (!claim(this)) {
+                        return;
+                    }
+                    recordFirstToken(System.currentTimeMillis() - startTime);
+                }
+                if (winner == this && tokenConsumer != null) {
+                    tokenConsumer.accept(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries the IOException of a hedge leg through its future
+     */
+    private static final class HedgeFailedException extends RuntimeException {
+        HedgeFailedException(IOException cause) {
+            super(cause);
+        }
+    }
+}
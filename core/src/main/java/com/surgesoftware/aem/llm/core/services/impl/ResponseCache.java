@@ -0,0 +1,243 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Two-tier cache of successful generation responses
+ *
+ * Responses are stored as JSON, keyed on the generation key. The heap tier is an LRU bounded
+ * by the approximate size of the stored JSON; the optional persistent tier keeps entries across
+ * restarts and refills the heap tier on a hit. Every hit is deserialized into a fresh response,
+ * so callers may modify it and still save its files to new download/preview paths.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class ResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+    // Per-entry overhead of the map entry, key and bookkeeping, in bytes
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Persistent tier
+     */
+    interface Store {
+
+        /**
+         * @return the stored entry, or null if there is none
+         */
+        Entry read(String key) throws Exception;
+
+        void write(String key, String json) throws Exception;
+
+        void delete(String key) throws Exception;
+    }
+
+    static final class Entry {
+
+        final String json;
+        final long storedAt;
+
+        Entry(String json, long storedAt) {
+            this.json = json;
+            this.storedAt = storedAt;
+        }
+
+        long sizeInBytes() {
+            return json.length() * 2L + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final Store store;
+    private final LongSupplier clock;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong storeErrors = new AtomicLong();
+
+    ResponseCache(long ttlMillis, long maxBytes, Store store) {
+        this(ttlMillis, maxBytes, store, System::currentTimeMillis);
+    }
+
+    ResponseCache(long ttlMillis, long maxBytes, Store store, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * Look up a cached response, heap tier first
+     *
+     * @return a fresh copy of the cached response marked as cached, or null on a miss
+     */
+    ComponentGenerationResponse get(String key) {
+        Entry entry = getFromMemory(key);
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return toResponse(key, entry);
+        }
+
+        entry = readFromStore(key);
+        if (entry != null) {
+            persistentHits.incrementAndGet();
+            putInMemory(key, entry);
+            return toResponse(key, entry);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache a successful response in both tiers
+     */
+    void put(String key, ComponentGenerationResponse response) {
+        if (!response.isSuccess()) {
+            return;
+        }
+        String json;
+        try {
+            json = mapper.writeValueAsString(response);
+        } catch (Exception e) {
+            LOG.warn("⚠️ Could not serialize response for the cache: {}", e.getMessage());
+            return;
+        }
+        writes.incrementAndGet();
+        putInMemory(key, new Entry(json, clock.getAsLong()));
+        if (store != null) {
+            try {
+                store.write(key, json);
+            } catch (Exception e) {
+                storeErrors.incrementAndGet();
+                LOG.warn("⚠️ Could not persist cached response {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("heapBytes", currentBytes);
+        stats.put("maxHeapBytes", maxBytes);
+        stats.put("persistent", store != null);
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("persistentHits", persistentHits.get());
+        stats.put("misses", misses.get());
+        stats.put("expirations", expirations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("writes", writes.get());
+        stats.put("storeErrors", storeErrors.get());
+        return stats;
+    }
+
+    private synchronized Entry getFromMemory(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            entries.remove(key);
+            currentBytes -= entry.sizeInBytes();
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void putInMemory(String key, Entry entry) {
+        long size = entry.sizeInBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            currentBytes -= previous.sizeInBytes();
+        }
+        currentBytes += size;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            currentBytes -= evicted.sizeInBytes();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private Entry readFromStore(String key) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            Entry entry = store.read(key);
+            if (entry != null && isExpired(entry)) {
+                expirations.incrementAndGet();
+                store.delete(key);
+                return null;
+            }
+            return entry;
+        } catch (Exception e) {
+            storeErrors.incrementAndGet();
+            LOG.warn("⚠️ Could not read cached response {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return clock.getAsLong() - entry.storedAt > ttlMillis;
+    }
+
+    private ComponentGenerationResponse toResponse(String key, Entry entry) {
+        try {
+            ComponentGenerationResponse response = mapper.readValue(entry.json, ComponentGenerationResponse.class);
+            response.setCached(true);
+            response.setQueuePosition(null);
+            return response;
+        } catch (Exception e) {
+            LOG.warn("⚠️ Dropping unreadable cached response {}: {}", key, e.getMessage());
+            synchronized (this) {
+                Entry removed = entries.remove(key);
+                if (removed != null) {
+                    currentBytes -= removed.sizeInBytes();
+                }
+            }
+            return null;
+        }
+    }
+}
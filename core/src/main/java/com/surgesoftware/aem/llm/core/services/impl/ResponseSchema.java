@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * JSON schema of a response model, for backends that constrain generation to a schema
+ *
+ * Derived from the Jackson view of the model class, so the schema cannot drift from what is
+ * deserialized: every property becomes a schema property, {@code required = true} on its
+ * {@code @JsonProperty} makes it required, nested beans and collections are followed and maps
+ * become free-form objects.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class ResponseSchema {
+
+    private ResponseSchema() {
+    }
+
+    static ObjectNode of(ObjectMapper objectMapper, Class<?> type) {
+        return schemaFor(objectMapper, objectMapper.constructType(type));
+    }
+
+    private static ObjectNode schemaFor(ObjectMapper objectMapper, JavaType type) {
+        ObjectNode schema = objectMapper.createObjectNode();
+        Class<?> raw = type.getRawClass();
+        if (type.isArrayType() || type.isCollectionLikeType()) {
+            schema.put("type", "array");
+            schema.set("items", schemaFor(objectMapper, type.getContentType()));
+        } else if (type.isMapLikeType() || raw == Object.class) {
+            schema.put("type", "object");
+        } else if (raw == String.class || raw == char.class || raw == Character.class || type.isEnumType()) {
+            schema.put("type", "string");
+        } else if (raw == boolean.class || raw == Boolean.class) {
+            schema.put("type", "boolean");
+        } else if (raw == int.class || raw == long.class || raw == Integer.class || raw == Long.class) {
+            schema.put("type", "integer");
+        } else if (type.isPrimitive() || Number.class.isAssignableFrom(raw)) {
+            schema.put("type", "number");
+        } else {
+            schema.put("type", "object");
+            ObjectNode properties = schema.putObject("properties");
+            ArrayNode required = objectMapper.createArrayNode();
+            BeanDescription bean = objectMapper.getDeserializationConfig().introspect(type);
+            for (BeanPropertyDefinition property : bean.findProperties()) {
+                properties.set(property.getName(), schemaFor(objectMapper, property.getPrimaryType()));
+                if (property.isRequired()) {
+                    required.add(property.getName());
+                }
+            }
+            if (!required.isEmpty()) {
+                schema.set("required", required);
+            }
+        }
+        return schema;
+    }
+}
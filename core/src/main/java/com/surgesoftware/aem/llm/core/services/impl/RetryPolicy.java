@@ -0,0 +1,232 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Retry policy for LLM calls, shared by all requests of the service
+ *
+ * Failures are classified first, on the HTTP status where there is one: timeouts, connection
+ * errors, overload and 5xx answers are retried, other 4xx answers end the generation right away.
+ * Only a few exact Ollama messages override the status: a missing model goes to the fallback
+ * models, an unreadable image or a prompt beyond the context length can never succeed. Words
+ * such as "invalid" alone decide nothing, they turn up in transient server errors too.
+ *
+ * Backoff uses decorrelated jitter, so clients that failed together do not come back together.
+ * Retries are paid from a budget: within a sliding window they may add at most
+ * {@code budgetPercent} of the requests on top (plus a small allowance for quiet periods),
+ * so during an incident the backend is not flooded with retries of failing calls.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class RetryPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+    enum Failure { RETRYABLE, MODEL_MISSING, TERMINAL }
+
+    static final long BASE_BACKOFF_MS = 2000;
+    static final long MAX_BACKOFF_MS = 30000;
+    static final long WINDOW_MS = 60000;
+    // Retries always allowed per window, so a single failing request can retry while traffic is low
+    static final int MIN_RETRIES_PER_WINDOW = 10;
+    private static final int BUCKETS = 10;
+    private static final long BUCKET_MS = WINDOW_MS / BUCKETS;
+
+    // Ollama's answer for a model that is not pulled, e.g. model "llama3" not found, try pulling it first
+    // (quotes still escaped when the message quotes the JSON error body)
+    private static final Pattern MODEL_NOT_FOUND = Pattern.compile("\\bmodel \\\\?[\"'][^\"'\\\\]+\\\\?[\"'] not found");
+    // Ollama error texts of requests that fail the same way every time, whatever the status
+    private static final String[] PERMANENT_ERRORS = {
+        "invalid image", "input length exceeds the context length", "input length exceeds maximum context length",
+        "does not support generate", "does not support insert"
+    };
+
+    private final int maxAttempts;
+    private final int budgetPercent;
+    private final LongSupplier clock;
+    private final DoubleSupplier random;
+
+    // Sliding window of request and retry counts, guarded by this
+    private final long[] bucketIds = new long[BUCKETS];
+    private final int[] bucketRequests = new int[BUCKETS];
+    private final int[] bucketRetries = new int[BUCKETS];
+    private long requests;
+    private long retries;
+    private long budgetExhausted;
+    private long terminalFailures;
+
+    RetryPolicy(int maxAttempts, int budgetPercent) {
+        this(maxAttempts, budgetPercent, System::currentTimeMillis, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RetryPolicy(int maxAttempts, int budgetPercent, LongSupplier clock, DoubleSupplier random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.budgetPercent = Math.max(0, budgetPercent);
+        this.clock = clock;
+        this.random = random;
+        Arrays.fill(bucketIds, -1);
+    }
+
+    /**
+     * Attempts per generation, the first call included
+     */
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Count a generation towards the budget; call once per generation, before its first attempt
+     */
+    synchronized void recordRequest() {
+        requests++;
+        bucketRequests[currentBucket()]++;
+    }
+
+    /**
+     * Ask the budget for one retry
+     *
+     * @return false if retries already make up the allowed share of the recent requests
+     */
+    synchronized boolean tryAcquireRetry() {
+        int bucket = currentBucket();
+        long windowRequests = 0;
+        long windowRetries = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketIds[i] > bucketIds[bucket] - BUCKETS) {
+                windowRequests += bucketRequests[i];
+                windowRetries += bucketRetries[i];
+            }
+        }
+        long allowed = Math.max(MIN_RETRIES_PER_WINDOW, windowRequests * budgetPercent / 100);
+        if (windowRetries >= allowed) {
+            budgetExhausted++;
+            LOG.warn("🪫 Retry budget exhausted: {} retries for {} requests in the last {}s",
+                     windowRetries, windowRequests, WINDOW_MS / 1000);
+            return false;
+        }
+        retries++;
+        bucketRetries[bucket]++;
+        return true;
+    }
+
+    synchronized void recordTerminalFailure() {
+        terminalFailures++;
+    }
+
+    /**
+     * Backoff sequence of one generation
+     */
+    Backoff backoff() {
+        return new Backoff();
+    }
+
+    /**
+     * Whether the failure of a call can go away by calling again
+     */
+    static Failure classify(IOException failure) {
+        String message = failure.getMessage() != null ? failure.getMessage() : "";
+        if (failure instanceof BackendResponseException) {
+            int statusCode = ((BackendResponseException) failure).getStatusCode();
+            if (statusCode == 404 || MODEL_NOT_FOUND.matcher(message).find()) {
+                return Failure.MODEL_MISSING;
+            }
+            if (isPermanentError(message)) {
+                return Failure.TERMINAL;
+            }
+            if (statusCode == 408 || statusCode == 429 || statusCode >= 500) {
+                return Failure.RETRYABLE;
+            }
+            return Failure.TERMINAL;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException) {
+                return Failure.TERMINAL;
+            }
+        }
+        // Errors inside a stream that started with 200 OK, and transport failures
+        if (MODEL_NOT_FOUND.matcher(message).find()) {
+            return Failure.MODEL_MISSING;
+        }
+        if (isPermanentError(message)) {
+            return Failure.TERMINAL;
+        }
+        return Failure.RETRYABLE;
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxAttempts", maxAttempts);
+        stats.put("budgetPercent", budgetPercent);
+        stats.put("requests", requests);
+        stats.put("retries", retries);
+        stats.put("budgetExhausted", budgetExhausted);
+        stats.put("terminalFailures", terminalFailures);
+        return stats;
+    }
+
+    private static boolean isPermanentError(String message) {
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String permanent : PERMANENT_ERRORS) {
+            if (lower.contains(permanent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index of the bucket for the current time, cleared when it was last used a window ago
+     */
+    private int currentBucket() {
+        long bucketId = clock.getAsLong() / BUCKET_MS;
+        int index = (int) (bucketId % BUCKETS);
+        if (bucketIds[index] != bucketId) {
+            bucketIds[index] = bucketId;
+            bucketRequests[index] = 0;
+            bucketRetries[index] = 0;
+        }
+        return index;
+    }
+
+    /**
+     * Decorrelated jitter: each delay is drawn between the base and three times the previous one, capped
+     */
+    final class Backoff {
+
+        private long previous = BASE_BACKOFF_MS;
+
+        long nextDelayMillis() {
+            long upper = Math.min(MAX_BACKOFF_MS, previous * 3);
+            long delay = BASE_BACKOFF_MS + (long) (random.getAsDouble() * (upper - BASE_BACKOFF_MS));
+            previous = delay;
+            return delay;
+        }
+    }
+}
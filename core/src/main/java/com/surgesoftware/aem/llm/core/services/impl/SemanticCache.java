@@ -0,0 +1,269 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Semantic layer on top of the response cache
+ *
+ * Embeds the prompt through the backend's embeddings endpoint and looks up the most similar
+ * earlier prompt with the same context (requirements, image and model settings) in a
+ * {@link VectorIndex}. Matches at or above the hit threshold are served like exact cache hits;
+ * weaker matches above the suggestion threshold are offered to the author while a fresh
+ * generation runs. The index is snapshotted to the repository in the background.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class SemanticCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SemanticCache.class);
+
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
+    // A lookup that takes longer counts as a miss: the generation should not wait on it
+    static final long LOOKUP_TIMEOUT_MS = 1000;
+
+    /**
+     * Persistent snapshot of the vector index
+     */
+    interface SnapshotStore {
+
+        /**
+         * @return the last saved snapshot, or null if there is none
+         */
+        byte[] load() throws Exception;
+
+        void save(byte[] snapshot) throws Exception;
+    }
+
+    /**
+     * Outcome of a lookup. The embedding is kept to index the fresh response without embedding twice.
+     */
+    static final class Lookup {
+
+        final float[] embedding;
+        final ComponentGenerationResponse response;
+        final double similarity;
+        final boolean hit;
+
+        Lookup(float[] embedding, ComponentGenerationResponse response, double similarity, boolean hit) {
+            this.embedding = embedding;
+            this.response = response;
+            this.similarity = similarity;
+            this.hit = hit;
+        }
+    }
+
+    private static final Lookup TIMED_OUT = new Lookup(null, null, 0, false);
+
+    private final EmbeddingClient embeddingClient;
+    private final ResponseCache responseCache;
+    private final VectorIndex index;
+    private final double hitThreshold;
+    private final double suggestionThreshold;
+    private final SnapshotStore snapshotStore;
+    private final ScheduledExecutorService persister;
+    private volatile boolean dirty;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong suggestions = new AtomicLong();
+    private final AtomicLong embeddingErrors = new AtomicLong();
+    private final AtomicLong embeddingTimeTotalMs = new AtomicLong();
+    private final AtomicLong lookupsSkipped = new AtomicLong();
+    private final AtomicInteger pendingLookups = new AtomicInteger();
+
+    SemanticCache(EmbeddingClient embeddingClient, ResponseCache responseCache, int maxEntries,
+                  double hitThreshold, double suggestionThreshold, SnapshotStore snapshotStore) {
+        this.embeddingClient = embeddingClient;
+        this.responseCache = responseCache;
+        this.index = new VectorIndex(maxEntries);
+        this.hitThreshold = hitThreshold;
+        this.suggestionThreshold = suggestionThreshold;
+        this.snapshotStore = snapshotStore;
+        this.persister = snapshotStore == null ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-semantic-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load the last snapshot in the background and start saving changes periodically
+     */
+    void start() {
+        if (persister != null) {
+            persister.execute(this::loadSnapshot);
+            persister.scheduleWithFixedDelay(this::saveSnapshotIfDirty, SNAPSHOT_INTERVAL_SECONDS,
+                                             SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Save pending changes and stop the background thread
+     */
+    void close() {
+        if (persister != null) {
+            persister.execute(this::saveSnapshotIfDirty);
+            persister.shutdown();
+        }
+    }
+
+    /**
+     * Find the most similar cached generation for a prompt
+     *
+     * @return the lookup (response is null when nothing similar enough is cached),
+     *         or null if the prompt could not be embedded
+     */
+    Lookup lookup(String prompt, String contextKey) {
+        lookups.incrementAndGet();
+        float[] embedding;
+        long start = System.currentTimeMillis();
+        try {
+            embedding = embeddingClient.embed(prompt);
+        } catch (IOException e) {
+            embeddingErrors.incrementAndGet();
+            LOG.warn("⚠️ Could not embed prompt for the semantic cache: {}", e.getMessage());
+            return null;
+        } finally {
+            embeddingTimeTotalMs.addAndGet(System.currentTimeMillis() - start);
+        }
+
+        VectorIndex.Match match = index.nearest(contextKey, embedding);
+        if (match == null || match.similarity < suggestionThreshold) {
+            return new Lookup(embedding, null, 0, false);
+        }
+        ComponentGenerationResponse response = responseCache.get(match.responseKey);
+        if (response == null) {
+            // The response expired or was evicted from the cache
+            return new Lookup(embedding, null, 0, false);
+        }
+        boolean hit = match.similarity >= hitThreshold;
+        (hit ? hits : suggestions).incrementAndGet();
+        LOG.info("🧭 Semantic cache {} (similarity {})", hit ? "hit" : "suggestion",
+                 String.format("%.3f", match.similarity));
+        return new Lookup(embedding, response, match.similarity, hit);
+    }
+
+    /**
+     * {@link #lookup(String, String)} on the given executor, completing with null (a miss) when it takes
+     * longer than {@link #LOOKUP_TIMEOUT_MS}, or right away when maxPending lookups are already waiting
+     * or running. A lookup that gave up before it was run is not run any more.
+     */
+    CompletableFuture<Lookup> lookupAsync(String prompt, String contextKey, Executor executor, int maxPending) {
+        CompletableFuture<Lookup> lookup = new CompletableFuture<>();
+        if (pendingLookups.incrementAndGet() > maxPending) {
+            pendingLookups.decrementAndGet();
+            lookupsSkipped.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!lookup.isDone()) {
+                        lookup.complete(lookup(prompt, contextKey));
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("⚠️ Semantic cache lookup failed: {}", e.getMessage());
+                    lookup.complete(null);
+                } finally {
+                    pendingLookups.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingLookups.decrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+        return lookup.completeOnTimeout(TIMED_OUT, LOOKUP_TIMEOUT_MS, TimeUnit.MILLISECONDS).thenApply(result -> {
+            if (result == TIMED_OUT) {
+                lookupsSkipped.incrementAndGet();
+                return null;
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Index the prompt embedding of a response that was just cached under the given key
+     */
+    void add(String contextKey, String responseKey, float[] embedding) {
+        index.add(contextKey, responseKey, embedding);
+        dirty = true;
+    }
+
+    Map<String, Object> getStats() {
+        long lookupCount = lookups.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", index.size());
+        stats.put("lookups", lookupCount);
+        stats.put("hits", hits.get());
+        stats.put("suggestions", suggestions.get());
+        stats.put("embeddingErrors", embeddingErrors.get());
+        stats.put("lookupsSkipped", lookupsSkipped.get());
+        stats.put("averageEmbeddingMs", lookupCount > 0 ? embeddingTimeTotalMs.get() / lookupCount : 0);
+        stats.put("hitThreshold", hitThreshold);
+        stats.put("suggestionThreshold", suggestionThreshold);
+        return stats;
+    }
+
+    private void loadSnapshot() {
+        try {
+            byte[] snapshot = snapshotStore.load();
+            if (snapshot != null) {
+                index.readFrom(new DataInputStream(new ByteArrayInputStream(snapshot)));
+                LOG.info("📥 Semantic cache index loaded with {} entries", index.size());
+            }
+        } catch (Exception e) {
+            LOG.warn("⚠️ Could not load semantic cache index: {}", e.getMessage());
+        }
+    }
+
+    private void saveSnapshotIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                index.writeTo(out);
+            }
+            snapshotStore.save(bytes.toByteArray());
+            LOG.debug("💾 Semantic cache index saved with {} entries", index.size());
+        } catch (Exception e) {
+            dirty = true;
+            LOG.warn("⚠️ Could not save semantic cache index: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.services.LocalLLMConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of the Local LLM service configuration
+ *
+ * Built once per activation/modification from the OSGi configuration (falling back to
+ * embedded production defaults for missing values) and never changed afterwards, so a
+ * request that captured it sees one consistent set of settings from start to finish.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class ServiceSettings {
+
+    // Production-hardened defaults - no OSGi config required for startup
+    static final String DEFAULT_PROVIDER = "ollama";
+    static final String DEFAULT_API_URL = "http://localhost:11434/api/generate";
+    static final String DEFAULT_MODEL = "llama3.2";
+    static final boolean DEFAULT_ENABLED = true;
+    static final int DEFAULT_MAX_TOKENS = 4000;
+    static final double DEFAULT_TEMPERATURE = 0.7;
+    static final int DEFAULT_TIMEOUT = 180;
+    static final int DEFAULT_RETRY_ATTEMPTS = 3;
+    static final int DEFAULT_RETRY_BUDGET_PERCENT = 20;
+    static final String DEFAULT_SYSTEM_PROMPT = "You are an expert AEM developer working for SURGE Software Solutions. Generate clean, production-ready AEM component files following Adobe best practices.";
+    static final boolean DEFAULT_STRIP_MARKDOWN = true;
+    static final boolean DEFAULT_STOP_AT_JSON_END = true;
+    static final boolean DEFAULT_STRUCTURED_OUTPUT = false;
+    static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 8;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+    static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+    static final int DEFAULT_IDLE_EVICT_SECONDS = 30;
+    static final int DEFAULT_CONNECTION_LEASE_TIMEOUT = 30;
+    static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 4;
+    static final int DEFAULT_MAX_QUEUED_REQUESTS = 8;
+    static final int DEFAULT_MODEL_CATALOG_TTL_SECONDS = 60;
+    static final int DEFAULT_BREAKER_WINDOW_SIZE = 10;
+    static final int DEFAULT_BREAKER_FAILURE_RATE = 50;
+    static final int DEFAULT_BREAKER_SLOW_CALL_RATE = 80;
+    static final int DEFAULT_BREAKER_SLOW_CALL_SECONDS = 120;
+    static final int DEFAULT_BREAKER_OPEN_SECONDS = 30;
+    static final int DEFAULT_HEALTH_PROBE_INTERVAL_SECONDS = 15;
+    static final boolean DEFAULT_RESPONSE_CACHE_ENABLED = false;
+    static final int DEFAULT_RESPONSE_CACHE_TTL_HOURS = 24;
+    static final int DEFAULT_RESPONSE_CACHE_MAX_SIZE_MB = 16;
+    static final boolean DEFAULT_RESPONSE_CACHE_PERSISTENT = false;
+    static final boolean DEFAULT_SEMANTIC_CACHE_ENABLED = false;
+    static final String DEFAULT_SEMANTIC_CACHE_EMBEDDING_MODEL = "nomic-embed-text";
+    static final double DEFAULT_SEMANTIC_CACHE_THRESHOLD = 0.92;
+    static final double DEFAULT_SEMANTIC_CACHE_SUGGESTION_THRESHOLD = 0.80;
+    static final int DEFAULT_SEMANTIC_CACHE_MAX_ENTRIES = 10000;
+    static final String DEFAULT_MODEL_KEEP_ALIVE = "30m";
+    static final boolean DEFAULT_WARM_UP_ON_ACTIVATE = true;
+    static final boolean DEFAULT_KEEP_WARM_ENABLED = true;
+    static final int DEFAULT_KEEP_WARM_CHECK_SECONDS = 60;
+    static final int DEFAULT_OUTLIER_CONSECUTIVE_FAILURES = 3;
+    static final int DEFAULT_OUTLIER_EJECTION_SECONDS = 30;
+    static final boolean DEFAULT_HEDGING_ENABLED = false;
+    static final int DEFAULT_HEDGE_DELAY_PERCENTILE = 95;
+    static final int DEFAULT_HEDGE_BUDGET_PERCENT = 10;
+    static final boolean DEFAULT_ADAPTIVE_TIMEOUTS_ENABLED = true;
+    static final int DEFAULT_MIN_STREAM_DEADLINE_SECONDS = 10;
+    static final int DEFAULT_REQUEST_DEADLINE_SECONDS = 300;
+
+    final String provider;
+    final String apiUrl;
+    final List<BackendEndpoint> backends;
+    final int outlierConsecutiveFailures;
+    final int outlierEjectionSeconds;
+    final String model;
+    final boolean enabled;
+    final int maxTokens;
+    final double temperature;
+    final int timeout;
+    final int retryAttempts;
+    final int retryBudgetPercent;
+    final String systemPrompt;
+    final boolean stripMarkdown;
+    final boolean stopAtJsonEnd;
+    final boolean structuredOutput;
+    final int maxConnectionsTotal;
+    final int maxConnectionsPerRoute;
+    final int keepAliveSeconds;
+    final int idleConnectionEvictSeconds;
+    final int connectionLeaseTimeout;
+    final int maxInFlightRequests;
+    final int maxQueuedRequests;
+    final int modelCatalogTtlSeconds;
+    final int breakerWindowSize;
+    final int breakerFailureRate;
+    final int breakerSlowCallRate;
+    final int breakerSlowCallSeconds;
+    final int breakerOpenSeconds;
+    final int healthProbeIntervalSeconds;
+    final boolean responseCacheEnabled;
+    final int responseCacheTtlHours;
+    final int responseCacheMaxSizeMb;
+    final boolean responseCachePersistent;
+    final boolean semanticCacheEnabled;
+    final String semanticCacheEmbeddingModel;
+    final double semanticCacheThreshold;
+    final double semanticCacheSuggestionThreshold;
+    final int semanticCacheMaxEntries;
+    final String modelKeepAlive;
+    final boolean warmUpOnActivate;
+    final boolean keepWarmEnabled;
+    final List<String> keepWarmModels;
+    final String keepWarmSchedule;
+    final int keepWarmCheckSeconds;
+    final boolean hedgingEnabled;
+    final int hedgeDelayPercentile;
+    final int hedgeBudgetPercent;
+    final boolean adaptiveTimeoutsEnabled;
+    final int minStreamDeadlineSeconds;
+    final int requestDeadlineSeconds;
+
+    /**
+     * Settings with all embedded defaults
+     */
+    private ServiceSettings(boolean enabled) {
+        this.provider = DEFAULT_PROVIDER;
+        this.apiUrl = DEFAULT_API_URL;
+        this.backends = Collections.singletonList(new BackendEndpoint(DEFAULT_API_URL, 1, DEFAULT_MAX_IN_FLIGHT_REQUESTS));
+        this.outlierConsecutiveFailures = DEFAULT_OUTLIER_CONSECUTIVE_FAILURES;
+        this.outlierEjectionSeconds = DEFAULT_OUTLIER_EJECTION_SECONDS;
+        this.model = DEFAULT_MODEL;
+        this.enabled = enabled;
+        this.maxTokens = DEFAULT_MAX_TOKENS;
+        this.temperature = DEFAULT_TEMPERATURE;
+        this.timeout = DEFAULT_TIMEOUT;
+        this.retryAttempts = DEFAULT_RETRY_ATTEMPTS;
+        this.retryBudgetPercent = DEFAULT_RETRY_BUDGET_PERCENT;
+        this.systemPrompt = DEFAULT_SYSTEM_PROMPT;
+        this.stripMarkdown = DEFAULT_STRIP_MARKDOWN;
+        this.stopAtJsonEnd = DEFAULT_STOP_AT_JSON_END;
+        this.structuredOutput = DEFAULT_STRUCTURED_OUTPUT;
+        this.maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+        this.maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        this.keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+        this.idleConnectionEvictSeconds = DEFAULT_IDLE_EVICT_SECONDS;
+        this.connectionLeaseTimeout = DEFAULT_CONNECTION_LEASE_TIMEOUT;
+        this.maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+        this.maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+        this.modelCatalogTtlSeconds = DEFAULT_MODEL_CATALOG_TTL_SECONDS;
+        this.breakerWindowSize = DEFAULT_BREAKER_WINDOW_SIZE;
+        this.breakerFailureRate = DEFAULT_BREAKER_FAILURE_RATE;
+        this.breakerSlowCallRate = DEFAULT_BREAKER_SLOW_CALL_RATE;
+        this.breakerSlowCallSeconds = DEFAULT_BREAKER_SLOW_CALL_SECONDS;
+        this.breakerOpenSeconds = DEFAULT_BREAKER_OPEN_SECONDS;
+        this.healthProbeIntervalSeconds = DEFAULT_HEALTH_PROBE_INTERVAL_SECONDS;
+        this.responseCacheEnabled = DEFAULT_RESPONSE_CACHE_ENABLED;
+        this.responseCacheTtlHours = DEFAULT_RESPONSE_CACHE_TTL_HOURS;
+        this.responseCacheMaxSizeMb = DEFAULT_RESPONSE_CACHE_MAX_SIZE_MB;
+        this.responseCachePersistent = DEFAULT_RESPONSE_CACHE_PERSISTENT;
+        this.semanticCacheEnabled = DEFAULT_SEMANTIC_CACHE_ENABLED;
+        this.semanticCacheEmbeddingModel = DEFAULT_SEMANTIC_CACHE_EMBEDDING_MODEL;
+        this.semanticCacheThreshold = DEFAULT_SEMANTIC_CACHE_THRESHOLD;
+        this.semanticCacheSuggestionThreshold = DEFAULT_SEMANTIC_CACHE_SUGGESTION_THRESHOLD;
+        this.semanticCacheMaxEntries = DEFAULT_SEMANTIC_CACHE_MAX_ENTRIES;
+        this.modelKeepAlive = DEFAULT_MODEL_KEEP_ALIVE;
+        this.warmUpOnActivate = DEFAULT_WARM_UP_ON_ACTIVATE;
+        this.keepWarmEnabled = DEFAULT_KEEP_WARM_ENABLED;
+        this.keepWarmModels = Collections.singletonList(this.model);
+        this.keepWarmSchedule = "";
+        this.keepWarmCheckSeconds = DEFAULT_KEEP_WARM_CHECK_SECONDS;
+        this.hedgingEnabled = DEFAULT_HEDGING_ENABLED;
+        this.hedgeDelayPercentile = DEFAULT_HEDGE_DELAY_PERCENTILE;
+        this.hedgeBudgetPercent = DEFAULT_HEDGE_BUDGET_PERCENT;
+        this.adaptiveTimeoutsEnabled = DEFAULT_ADAPTIVE_TIMEOUTS_ENABLED;
+        this.minStreamDeadlineSeconds = DEFAULT_MIN_STREAM_DEADLINE_SECONDS;
+        this.requestDeadlineSeconds = DEFAULT_REQUEST_DEADLINE_SECONDS;
+    }
+
+    /**
+     * Apply configuration with fallback to defaults for missing values
+     */
+    private ServiceSettings(LocalLLMConfiguration configuration) {
+        this.enabled = configuration.enabled();
+        this.apiUrl = nonBlank(configuration.apiUrl(), DEFAULT_API_URL);
+        this.model = nonBlank(configuration.model(), DEFAULT_MODEL);
+        this.provider = nonBlank(configuration.provider(), DEFAULT_PROVIDER);
+        this.maxTokens = positive(configuration.maxTokens(), DEFAULT_MAX_TOKENS);
+        this.temperature = configuration.temperature() > 0 ? configuration.temperature() : DEFAULT_TEMPERATURE;
+        this.timeout = positive(configuration.timeout(), DEFAULT_TIMEOUT);
+        this.retryAttempts = positive(configuration.retryAttempts(), DEFAULT_RETRY_ATTEMPTS);
+        this.retryBudgetPercent = configuration.retryBudgetPercent() >= 0
+            ? configuration.retryBudgetPercent() : DEFAULT_RETRY_BUDGET_PERCENT;
+        this.systemPrompt = nonBlank(configuration.systemPrompt(), DEFAULT_SYSTEM_PROMPT);
+        this.stripMarkdown = configuration.stripMarkdown();
+        this.stopAtJsonEnd = configuration.stopAtJsonEnd();
+        this.structuredOutput = configuration.structuredOutput();
+        this.maxConnectionsTotal = positive(configuration.maxConnectionsTotal(), DEFAULT_MAX_CONNECTIONS_TOTAL);
+        this.maxConnectionsPerRoute = positive(configuration.maxConnectionsPerRoute(), DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        this.keepAliveSeconds = positive(configuration.keepAliveSeconds(), DEFAULT_KEEP_ALIVE_SECONDS);
+        this.idleConnectionEvictSeconds = positive(configuration.idleConnectionEvictSeconds(), DEFAULT_IDLE_EVICT_SECONDS);
+        this.connectionLeaseTimeout = positive(configuration.connectionLeaseTimeout(), DEFAULT_CONNECTION_LEASE_TIMEOUT);
+        int configuredMaxInFlight = positive(configuration.maxInFlightRequests(), DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+        this.backends = BackendEndpoint.parseAll(configuration.backends(), this.apiUrl, this.maxConnectionsPerRoute,
+                                                 configuredMaxInFlight);
+        this.outlierConsecutiveFailures = positive(configuration.outlierConsecutiveFailures(), DEFAULT_OUTLIER_CONSECUTIVE_FAILURES);
+        this.outlierEjectionSeconds = positive(configuration.outlierEjectionSeconds(), DEFAULT_OUTLIER_EJECTION_SECONDS);
+        // Capacity grows with every backend added (a lone API URL backend gets the configured limit)
+        this.maxInFlightRequests = this.backends.stream().mapToInt(backend -> backend.maxConcurrency).sum();
+        // 0 is valid: no waiting at all beyond the in-flight generations
+        this.maxQueuedRequests = configuration.maxQueuedRequests() >= 0
+            ? configuration.maxQueuedRequests() : DEFAULT_MAX_QUEUED_REQUESTS;
+        this.modelCatalogTtlSeconds = positive(configuration.modelCatalogTtlSeconds(), DEFAULT_MODEL_CATALOG_TTL_SECONDS);
+        this.breakerWindowSize = positive(configuration.circuitBreakerWindowSize(), DEFAULT_BREAKER_WINDOW_SIZE);
+        this.breakerFailureRate = positive(configuration.circuitBreakerFailureRateThreshold(), DEFAULT_BREAKER_FAILURE_RATE);
+        this.breakerSlowCallRate = positive(configuration.circuitBreakerSlowCallRateThreshold(), DEFAULT_BREAKER_SLOW_CALL_RATE);
+        this.breakerSlowCallSeconds = positive(configuration.circuitBreakerSlowCallSeconds(), DEFAULT_BREAKER_SLOW_CALL_SECONDS);
+        this.breakerOpenSeconds = positive(configuration.circuitBreakerOpenSeconds(), DEFAULT_BREAKER_OPEN_SECONDS);
+        this.healthProbeIntervalSeconds = positive(configuration.healthProbeIntervalSeconds(), DEFAULT_HEALTH_PROBE_INTERVAL_SECONDS);
+        this.responseCacheEnabled = configuration.responseCacheEnabled();
+        this.responseCacheTtlHours = positive(configuration.responseCacheTtlHours(), DEFAULT_RESPONSE_CACHE_TTL_HOURS);
+        this.responseCacheMaxSizeMb = positive(configuration.responseCacheMaxSizeMb(), DEFAULT_RESPONSE_CACHE_MAX_SIZE_MB);
+        this.responseCachePersistent = configuration.responseCachePersistent();
+        this.semanticCacheEnabled = configuration.semanticCacheEnabled();
+        this.semanticCacheEmbeddingModel = nonBlank(configuration.semanticCacheEmbeddingModel(), DEFAULT_SEMANTIC_CACHE_EMBEDDING_MODEL);
+        this.semanticCacheThreshold = similarity(configuration.semanticCacheThreshold(), DEFAULT_SEMANTIC_CACHE_THRESHOLD);
+        // Suggestions never need a closer match than a hit
+        this.semanticCacheSuggestionThreshold = Math.min(this.semanticCacheThreshold,
+            similarity(configuration.semanticCacheSuggestionThreshold(), DEFAULT_SEMANTIC_CACHE_SUGGESTION_THRESHOLD));
+        this.semanticCacheMaxEntries = positive(configuration.semanticCacheMaxEntries(), DEFAULT_SEMANTIC_CACHE_MAX_ENTRIES);
+        // Blank is valid: leave the keep-alive to the server
+        this.modelKeepAlive = Optional.ofNullable(configuration.modelKeepAlive()).map(String::trim).orElse("");
+        this.warmUpOnActivate = configuration.warmUpOnActivate();
+        this.keepWarmEnabled = configuration.keepWarmEnabled();
+        this.keepWarmModels = modelList(configuration.keepWarmModels(), this.model);
+        this.keepWarmSchedule = Optional.ofNullable(configuration.keepWarmSchedule()).map(String::trim).orElse("");
+        this.keepWarmCheckSeconds = positive(configuration.keepWarmCheckSeconds(), DEFAULT_KEEP_WARM_CHECK_SECONDS);
+        this.hedgingEnabled = configuration.hedgingEnabled();
+        this.hedgeDelayPercentile = configuration.hedgeDelayPercentile() >= 50 && configuration.hedgeDelayPercentile() <= 99
+            ? configuration.hedgeDelayPercentile() : DEFAULT_HEDGE_DELAY_PERCENTILE;
+        this.hedgeBudgetPercent = positive(configuration.hedgeBudgetPercent(), DEFAULT_HEDGE_BUDGET_PERCENT);
+        this.adaptiveTimeoutsEnabled = configuration.adaptiveTimeoutsEnabled();
+        this.minStreamDeadlineSeconds = positive(configuration.minStreamDeadlineSeconds(), DEFAULT_MIN_STREAM_DEADLINE_SECONDS);
+        this.requestDeadlineSeconds = configuration.requestDeadlineSeconds() >= 0
+            ? configuration.requestDeadlineSeconds() : DEFAULT_REQUEST_DEADLINE_SECONDS;
+    }
+
+    /**
+     * Settings for the given configuration, or the embedded defaults if there is none
+     */
+    static ServiceSettings from(LocalLLMConfiguration configuration) {
+        return configuration != null ? new ServiceSettings(configuration) : new ServiceSettings(DEFAULT_ENABLED);
+    }
+
+    /**
+     * Settings of a service that has not been activated (or was deactivated)
+     */
+    static ServiceSettings inactive() {
+        return new ServiceSettings(false);
+    }
+
+    boolean isOllama() {
+        return "ollama".equals(provider);
+    }
+
+    /**
+     * Hedging needs streamed first tokens (Ollama) and a second backend or parallel slot to send the hedge to
+     */
+    boolean isHedgingActive() {
+        return hedgingEnabled && isOllama() && maxInFlightRequests > 1;
+    }
+
+    private static String nonBlank(String value, String defaultValue) {
+        return Optional.ofNullable(value)
+            .filter(s -> !s.trim().isEmpty())
+            .orElse(defaultValue);
+    }
+
+    private static List<String> modelList(String[] values, String defaultModel) {
+        List<String> models = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.trim().isEmpty()) {
+                    models.add(value.trim());
+                }
+            }
+        }
+        return models.isEmpty() ? Collections.singletonList(defaultModel) : Collections.unmodifiableList(models);
+    }
+
+    private static int positive(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    private static double similarity(double value, double defaultValue) {
+        return value > 0 && value <= 1 ? value : defaultValue;
+    }
+}
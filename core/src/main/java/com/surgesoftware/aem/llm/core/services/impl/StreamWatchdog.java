@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Enforces the first-token, idle and overall deadlines of streaming generations
+ *
+ * A single thread checks all watched streams a few times per second and aborts the HTTP
+ * request of a stream that missed a deadline, so a stalled backend is detected within
+ * seconds rather than after the socket timeout. The caller reports the abort as a timeout.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class StreamWatchdog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamWatchdog.class);
+
+    private static final long CHECK_INTERVAL_MS = 250;
+
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final AtomicLong firstTokenTimeouts = new AtomicLong();
+    private final AtomicLong idleTimeouts = new AtomicLong();
+    private final AtomicLong totalTimeouts = new AtomicLong();
+
+    StreamWatchdog() {
+        this(System::currentTimeMillis);
+    }
+
+    StreamWatchdog(LongSupplier clock) {
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "surge-llm-stream-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::checkAll, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Start watching a request; close the returned watch once the stream has been read
+     */
+    Watch watch(HttpUriRequest request, AdaptiveTimeouts.Deadlines deadlines) {
+        Watch watch = new Watch(request, deadlines, clock.getAsLong());
+        watches.add(watch);
+        return watch;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("watched", watches.size());
+        stats.put("firstTokenTimeouts", firstTokenTimeouts.get());
+        stats.put("idleTimeouts", idleTimeouts.get());
+        stats.put("totalTimeouts", totalTimeouts.get());
+        return stats;
+    }
+
+    void checkAll() {
+        long now = clock.getAsLong();
+        for (Watch watch : watches) {
+            watch.check(now);
+        }
+    }
+
+    /**
+     * Deadlines of one stream
+     */
+    final class Watch implements AutoCloseable {
+
+        private final HttpUriRequest request;
+        private final AdaptiveTimeouts.Deadlines deadlines;
+        private final long startedAt;
+        private volatile long lastTokenAt;
+        private volatile String expiredReason;
+
+        private Watch(HttpUriRequest request, AdaptiveTimeouts.Deadlines deadlines, long startedAt) {
+            this.request = request;
+            this.deadlines = deadlines;
+            this.startedAt = startedAt;
+        }
+
+        void onToken() {
+            lastTokenAt = clock.getAsLong();
+        }
+
+        boolean isExpired() {
+            return expiredReason != null;
+        }
+
+        /**
+         * Why the stream was aborted, null if it was not
+         */
+        String getExpiredReason() {
+            return expiredReason;
+        }
+
+        @Override
+        public void close() {
+            watches.remove(this);
+        }
+
+        private void check(long now) {
+            if (expiredReason != null) {
+                return;
+            }
+            long lastToken = lastTokenAt;
+            if (now - startedAt > deadlines.totalMs) {
+                totalTimeouts.incrementAndGet();
+                expire("Generation timeout: not finished within " + deadlines.totalMs + "ms");
+            } else if (lastToken == 0 && now - startedAt > deadlines.firstTokenMs) {
+                firstTokenTimeouts.incrementAndGet();
+                expire("First token timeout: no token within " + deadlines.firstTokenMs + "ms");
+            } else if (lastToken > 0 && now - lastToken > deadlines.idleMs) {
+                idleTimeouts.incrementAndGet();
+                expire("Stream idle timeout: no token for " + deadlines.idleMs + "ms");
+            }
+        }
+
+        private void expire(String reason) {
+            expiredReason = reason;
+            LOG.warn("⏰ {} - aborting {}", reason, request.getURI());
+            request.abort();
+            watches.remove(this);
+        }
+    }
+}
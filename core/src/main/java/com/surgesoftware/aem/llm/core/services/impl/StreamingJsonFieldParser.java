@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BiConsumer;
+
+/**
+ * Incremental parser for the component JSON while the LLM is still generating it
+ *
+ * Fed with the generated text token by token, it parses the first top-level JSON object with
+ * Jackson's non-blocking parser and reports each of its fields as soon as the value is
+ * complete, so the HTL template can be shown while the Sling Model is still being written.
+ * Text before the object (such as a Markdown fence) is skipped, and so is anything after it.
+ * Output that is not strict JSON stops the parser; the complete text is then parsed as usual.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class StreamingJsonFieldParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingJsonFieldParser.class);
+
+    private final ObjectMapper objectMapper;
+    private final BiConsumer<String, JsonNode> fieldConsumer;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    // Containers being built, innermost first, and the field name each one is stored under
+    private final Deque<JsonNode> containers = new ArrayDeque<>();
+    private final Deque<String> containerFields = new ArrayDeque<>();
+    private ObjectNode root;
+    // Completed top-level field held back until the token after it shows the value really ended
+    private String pendingField;
+    private boolean started;
+    private boolean complete;
+    private boolean failed;
+
+    /**
+     * @param fieldConsumer Receives the name and value of each completed top-level field, may be null
+     */
+    StreamingJsonFieldParser(ObjectMapper objectMapper, BiConsumer<String, JsonNode> fieldConsumer) {
+        this.objectMapper = objectMapper;
+        this.fieldConsumer = fieldConsumer;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Jackson non-blocking parser not available", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Parse the next piece of generated text
+     */
+    void feed(String text) {
+        if (complete || failed || text.isEmpty()) {
+            return;
+        }
+        if (!started) {
+            int objectStart = text.indexOf('{');
+            if (objectStart < 0) {
+                return;
+            }
+            started = true;
+            text = text.substring(objectStart);
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while (!complete && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException e) {
+            failed = true;
+            LOG.debug("Streamed output is not strict JSON, leaving it to the final parse: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the top-level object has been closed
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * The parsed object, null until it is complete
+     */
+    ObjectNode getResult() {
+        return complete ? root : null;
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+            case START_ARRAY:
+                JsonNode container = token == JsonToken.START_OBJECT
+                    ? objectMapper.createObjectNode() : objectMapper.createArrayNode();
+                if (root == null) {
+                    root = (ObjectNode) container;
+                } else {
+                    add(container);
+                }
+                containerFields.push(containers.isEmpty() ? "" : currentFieldName());
+                containers.push(container);
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                containers.pop();
+                String field = containerFields.pop();
+                if (containers.isEmpty()) {
+                    emitPending();
+                    complete = true;
+                    parser.close();
+                } else if (containers.size() == 1) {
+                    pendingField = field;
+                }
+                break;
+            case FIELD_NAME:
+                if (containers.size() == 1) {
+                    emitPending();
+                }
+                break;
+            default:
+                add(scalar(token));
+                if (containers.size() == 1) {
+                    pendingField = parser.getCurrentName();
+                }
+        }
+    }
+
+    private void add(JsonNode value) throws IOException {
+        JsonNode container = containers.peek();
+        if (container instanceof ObjectNode) {
+            ((ObjectNode) container).set(parser.getCurrentName(), value);
+        } else {
+            ((ArrayNode) container).add(value);
+        }
+    }
+
+    /**
+     * Name under which a container that starts now is stored in its parent (only used at the top level)
+     */
+    private String currentFieldName() throws IOException {
+        return containers.size() == 1 ? parser.getCurrentName() : "";
+    }
+
+    private JsonNode scalar(JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return objectMapper.getNodeFactory().textNode(parser.getText());
+            case VALUE_NUMBER_INT:
+                return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                    ? objectMapper.getNodeFactory().numberNode(parser.getBigIntegerValue())
+                    : objectMapper.getNodeFactory().numberNode(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT:
+                return objectMapper.getNodeFactory().numberNode(parser.getDoubleValue());
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return objectMapper.getNodeFactory().booleanNode(token == JsonToken.VALUE_TRUE);
+            default:
+                return objectMapper.getNodeFactory().nullNode();
+        }
+    }
+
+    /**
+     * Report the held back field. A string cut short by an unescaped quote looks complete to the
+     * parser, so fields are only reported once the next field name or the closing brace is read.
+     */
+    private void emitPending() {
+        if (pendingField != null && fieldConsumer != null) {
+            fieldConsumer.accept(pendingField, root.get(pendingField));
+        }
+        pendingField = null;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Flat in-memory vector index for the semantic cache
+ *
+ * Stores unit-length embeddings in one contiguous array, so cosine similarity is a plain dot
+ * product and a lookup is a single sequential scan. Every vector belongs to a context key and
+ * is only compared with queries of the same context. Once full, the oldest entry is replaced.
+ * Lookups run concurrently; adds take an exclusive lock.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class VectorIndex {
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Closest entry found for a query
+     */
+    static final class Match {
+
+        final String responseKey;
+        final double similarity;
+
+        Match(String responseKey, double similarity) {
+            this.responseKey = responseKey;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final class Context {
+
+        final String key;
+        int entries;
+
+        Context(String key) {
+            this.key = key;
+        }
+    }
+
+    private final int capacity;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int dimensions;
+    private float[] vectors = new float[0];
+    // Shared per context, so the scan compares references instead of key strings
+    private Context[] contexts = new Context[0];
+    private String[] responseKeys = new String[0];
+    private final Map<String, Context> contextByKey = new HashMap<>();
+    private final Map<String, Integer> slotByResponseKey = new HashMap<>();
+    private int size;
+    private int nextSlot;
+
+    VectorIndex(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Add (or replace) the embedding of a cached response
+     */
+    void add(String contextKey, String responseKey, float[] embedding) {
+        float[] unit = normalize(embedding);
+        lock.writeLock().lock();
+        try {
+            if (dimensions != unit.length) {
+                // A different embedding model: old vectors are not comparable anymore
+                clear(unit.length);
+            }
+            Integer slot = slotByResponseKey.get(responseKey);
+            if (slot == null) {
+                slot = nextFreeSlot();
+                slotByResponseKey.put(responseKey, slot);
+            } else {
+                release(contexts[slot]);
+            }
+            Context context = contextByKey.computeIfAbsent(contextKey, Context::new);
+            context.entries++;
+            System.arraycopy(unit, 0, vectors, slot * dimensions, dimensions);
+            contexts[slot] = context;
+            responseKeys[slot] = responseKey;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Most similar entry of the same context
+     *
+     * @return the best match, or null if the context has no entries
+     */
+    Match nearest(String contextKey, float[] embedding) {
+        float[] query = normalize(embedding);
+        lock.readLock().lock();
+        try {
+            Context context = contextByKey.get(contextKey);
+            if (context == null || query.length != dimensions) {
+                return null;
+            }
+            int best = -1;
+            double bestSimilarity = -2;
+            for (int i = 0; i < size; i++) {
+                if (contexts[i] != context) {
+                    continue;
+                }
+                double similarity = dot(query, vectors, i * dimensions);
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = i;
+                }
+            }
+            return best >= 0 ? new Match(responseKeys[best], bestSimilarity) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeUTF(contexts[i].key);
+                out.writeUTF(responseKeys[i]);
+                int offset = i * dimensions;
+                for (int d = 0; d < dimensions; d++) {
+                    out.writeFloat(vectors[offset + d]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load a snapshot written by {@link #writeTo(DataOutputStream)}; entries beyond the capacity are skipped
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported vector index snapshot version");
+        }
+        int snapshotDimensions = in.readInt();
+        int count = in.readInt();
+        float[] vector = new float[snapshotDimensions];
+        for (int i = 0; i < count && i < capacity; i++) {
+            String contextKey = in.readUTF();
+            String responseKey = in.readUTF();
+            for (int d = 0; d < snapshotDimensions; d++) {
+                vector[d] = in.readFloat();
+            }
+            add(contextKey, responseKey, vector);
+        }
+    }
+
+    private int nextFreeSlot() {
+        if (size < capacity) {
+            ensureCapacity(size + 1);
+            return size++;
+        }
+        // Full: replace the oldest entry
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % capacity;
+        slotByResponseKey.remove(responseKeys[slot]);
+        release(contexts[slot]);
+        return slot;
+    }
+
+    private void release(Context context) {
+        if (--context.entries == 0) {
+            contextByKey.remove(context.key);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= responseKeys.length) {
+            return;
+        }
+        int newLength = Math.min(capacity, Math.max(required, Math.max(INITIAL_CAPACITY, responseKeys.length * 2)));
+        vectors = Arrays.copyOf(vectors, newLength * dimensions);
+        contexts = Arrays.copyOf(contexts, newLength);
+        responseKeys = Arrays.copyOf(responseKeys, newLength);
+    }
+
+    private void clear(int newDimensions) {
+        dimensions = newDimensions;
+        vectors = new float[0];
+        contexts = new Context[0];
+        responseKeys = new String[0];
+        contextByKey.clear();
+        slotByResponseKey.clear();
+        size = 0;
+        nextSlot = 0;
+    }
+
+    /**
+     * Dot product with four independent accumulators, so the multiply-adds of consecutive
+     * dimensions do not wait on each other
+     */
+    private static double dot(float[] query, float[] data, int offset) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int length = query.length;
+        int d = 0;
+        for (; d + 3 < length; d += 4) {
+            sum0 += query[d] * data[offset + d];
+            sum1 += query[d + 1] * data[offset + d + 1];
+            sum2 += query[d + 2] * data[offset + d + 2];
+            sum3 += query[d + 3] * data[offset + d + 3];
+        }
+        for (; d < length; d++) {
+            sum0 += query[d] * data[offset + d];
+        }
+        return (double) sum0 + sum1 + sum2 + sum3;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] unit = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                unit[i] = (float) (vector[i] / norm);
+            }
+        }
+        return unit;
+    }
+}
@@ -17,8 +17,13 @@ package com.surgesoftware.aem.llm.core.servlets;
 
 import com.surgesoftware.aem.llm.core.services.LocalLLMService;
 import com.surgesoftware.aem.llm.core.services.FileManagementService;
+import com.surgesoftware.aem.llm.core.services.GenerationJobService;
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
+import com.surgesoftware.aem.llm.core.models.GenerationJob;
+import com.surgesoftware.aem.llm.core.models.ImageAttachment;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -31,16 +36,16 @@ import javax.servlet.ServletException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.InputStream;
-import java.util.Base64;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.Activate;
 import org.apache.sling.api.request.RequestParameter;
-import org.apache.commons.io.IOUtils;
 
 /**
  * Component Generator Servlet for SURGE AEM LLM Connector
@@ -51,6 +56,16 @@ import org.apache.commons.io.IOUtils;
  * 
  * URL Pattern: /bin/aem-llm/generate
  * 
+ * Streaming mode: send {@code stream=true} (or {@code Accept: text/event-stream}) to receive
+ * Server-Sent Events with stage changes, coalesced tokens and the final result.
+ * 
+ * Asynchronous mode: send {@code async=true} (or {@code Prefer: respond-async}) to get
+ * {@code 202 Accepted} with a job id right away and poll {@code /bin/aem-llm/jobs?id=...}.
+ * 
+ * Deadline: send {@code timeout=<seconds>} (or {@code X-Request-Timeout}) to stop the generation,
+ * retries and fallbacks included, once the client stops waiting; the configured request deadline
+ * of the service caps it. A streaming client that disconnects cancels its generation.
+ * 
  * @author SURGE Software Solutions Private Limited
  */
 @Component(service = Servlet.class,
@@ -66,6 +81,8 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
     private static final Logger LOG = LoggerFactory.getLogger(ComponentGeneratorServlet.class);
     private static final long serialVersionUID = 1L;
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    // How often a waiting event stream is checked for a disconnected client
+    private static final long CLIENT_CHECK_INTERVAL_MS = 5000;
     
     @Reference
     private LocalLLMService localLLMService;
@@ -73,6 +90,9 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
     @Reference
     private FileManagementService fileManagementService;
     
+    @Reference
+    private GenerationJobService generationJobService;
+    
     @Activate
     protected void activate() {
         LOG.info("🚀 SURGE AEM LLM Connector: ComponentGeneratorServlet activated successfully");
@@ -177,11 +197,11 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
             }
             
             // NEW: Handle image upload if present
-            String imageData = null;
+            ImageAttachment image = null;
             try {
-                imageData = extractImageData(request);
-                if (imageData != null) {
-                    LOG.info("Image data extracted successfully, length: {} characters", imageData.length());
+                image = extractImage(request);
+                if (image != null) {
+                    LOG.info("Image spooled successfully, size: {} bytes", image.getSize());
                 }
             } catch (Exception e) {
                 LOG.error("Error processing uploaded image: {}", e.getMessage(), e);
@@ -194,7 +214,7 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
             // Generate timestamp for this request
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
             
-            LOG.info("Processing prompt: '{}' with timestamp: {}, hasImage: {}", prompt, timestamp, imageData != null);
+            LOG.info("Processing prompt: '{}' with timestamp: {}, hasImage: {}", prompt, timestamp, image != null);
             
             // Create component generation request
             ComponentGenerationRequest generationRequest = new ComponentGenerationRequest(
@@ -203,9 +223,21 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
                 extractRequirements(request)
             );
             
-            // NEW: Add image data to request if available
-            if (imageData != null) {
-                generationRequest.setImageData(imageData);
+            // NEW: Add the image to the request if available; the service deletes it once generated
+            if (image != null) {
+                generationRequest.setImage(image);
+            }
+            generationRequest.setBypassCache(isCacheBypassed(request));
+            generationRequest.setDeadline(extractDeadline(request));
+            
+            if (isAsyncRequest(request)) {
+                processAsyncRequest(response, generationRequest, timestamp);
+                return;
+            }
+            
+            if (isStreamingRequest(request)) {
+                processStreamingRequest(response, generationRequest, prompt, timestamp);
+                return;
             }
             
             // Generate component using Local LLM service
@@ -213,40 +245,7 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
             
             if (!generationResponse.isSuccess()) {
                 LOG.error("Failed to generate component for prompt: {} - {}", prompt, generationResponse.getError());
-                
-                // Determine appropriate HTTP status based on error type
-                int httpStatus = 500; // Default to server error
-                String errorStatus = "generation_failed";
-                
-                String errorMessage = generationResponse.getError();
-                if (errorMessage != null) {
-                    if (errorMessage.contains("timeout") || errorMessage.contains("Timeout")) {
-                        httpStatus = 504; // Gateway timeout
-                        errorStatus = "llm_timeout";
-                    } else if (errorMessage.contains("Cannot connect") || errorMessage.contains("Connection refused")) {
-                        httpStatus = 503; // Service unavailable
-                        errorStatus = "llm_unavailable";
-                    } else if (errorMessage.contains("Model not available") || errorMessage.contains("not found")) {
-                        httpStatus = 422; // Unprocessable entity
-                        errorStatus = "model_unavailable";
-                    }
-                }
-                
-                response.setStatus(httpStatus);
-                response.setContentType("application/json");
-                
-                // Enhanced error response with suggestions and model error details
-                PrintWriter writer = response.getWriter();
-                writer.write("{\n");
-                writer.write("  \"error\": \"" + escapeJsonString(generationResponse.getError()) + "\",\n");
-                writer.write("  \"status\": \"" + errorStatus + "\",\n");
-                if (generationResponse.getModelError() != null) {
-                    writer.write("  \"modelError\": \"" + escapeJsonString(generationResponse.getModelError()) + "\",\n");
-                }
-                writer.write("  \"timestamp\": \"" + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\",\n");
-                writer.write("  \"suggestion\": \"" + getSuggestionForError(errorStatus) + "\"\n");
-                writer.write("}");
-                writer.flush();
+                writeGenerationError(response, generationResponse);
                 return;
             }
             
@@ -254,25 +253,11 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
                     generationResponse.getComponentName(), 
                     generationResponse.getGeneratedFiles().size());
             
-            // Save component files to repository
-            String savedPath = fileManagementService.saveComponentFiles(generationResponse.getGeneratedFiles(), timestamp);
-            LOG.info("savedPath: {}", savedPath);
-            
-            // Create ZIP file for download
-            String zipPath = fileManagementService.createZipFile(generationResponse.getGeneratedFiles(), timestamp);
-            LOG.info("zipPath: {}", zipPath);
-            
-            // Save preview HTML if available
-            String previewPath = null;
-            if (generationResponse.getPreviewHtml() != null) {
-                previewPath = fileManagementService.savePreviewFile(generationResponse.getPreviewHtml(), timestamp);
-                LOG.info("previewPath: {}", previewPath);
-            }
-            
-            // Generate URLs
-            String downloadUrl = fileManagementService.getDownloadUrl(zipPath);
-            String previewUrl = fileManagementService.getPreviewUrl(previewPath);
-            LOG.info("downloadUrl: {}, previewUrl: {}", downloadUrl, previewUrl);
+            // Save component files, ZIP and preview to repository
+            GeneratedArtifacts artifacts = fileManagementService.saveGeneratedComponent(generationResponse, timestamp);
+            String savedPath = artifacts.getSavedPath();
+            String downloadUrl = artifacts.getDownloadUrl();
+            String previewUrl = artifacts.getPreviewUrl();
             
             // Return JSON response with URLs
             response.setContentType("application/json");
@@ -287,6 +272,13 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
             writer.write("  \"componentName\": \"" + escapeJsonString(generationResponse.getComponentName()) + "\",\n");
             writer.write("  \"componentDescription\": \"" + escapeJsonString(generationResponse.getComponentDescription()) + "\",\n");
             writer.write("  \"filesGenerated\": " + generationResponse.getGeneratedFiles().size() + ",\n");
+            writer.write("  \"cached\": " + generationResponse.isCached() + ",\n");
+            if (generationResponse.getQueuePosition() != null) {
+                writer.write("  \"queuePosition\": " + generationResponse.getQueuePosition() + ",\n");
+            }
+            if (generationResponse.getSimilarity() != null) {
+                writer.write("  \"similarity\": " + generationResponse.getSimilarity() + ",\n");
+            }
             writer.write("  \"downloadUrl\": \"" + (downloadUrl != null ? downloadUrl : "") + "\",\n");
             writer.write("  \"previewUrl\": \"" + (previewUrl != null ? previewUrl : "") + "\",\n");
             writer.write("  \"previewHtml\": \"" + escapeJsonString(generationResponse.getPreviewHtml()) + "\",\n");
@@ -305,6 +297,240 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
         }
     }
     
+    /**
+     * Whether the client asked for Server-Sent Events instead of a single JSON response
+     */
+    private boolean isStreamingRequest(SlingHttpServletRequest request) {
+        if ("true".equalsIgnoreCase(request.getParameter("stream"))) {
+            return true;
+        }
+        RequestParameter streamParam = request.getRequestParameter("stream");
+        if (streamParam != null && "true".equalsIgnoreCase(streamParam.getString())) {
+            return true;
+        }
+        String accept = request.getHeader("Accept");
+        return accept != null && accept.contains("text/event-stream");
+    }
+    
+    /**
+     * Whether the client asked for a fresh generation instead of a cached response
+     * ({@code cache=false} or {@code Cache-Control: no-cache})
+     */
+    private boolean isCacheBypassed(SlingHttpServletRequest request) {
+        if ("false".equalsIgnoreCase(request.getParameter("cache"))) {
+            return true;
+        }
+        RequestParameter cacheParam = request.getRequestParameter("cache");
+        if (cacheParam != null && "false".equalsIgnoreCase(cacheParam.getString())) {
+            return true;
+        }
+        String cacheControl = request.getHeader("Cache-Control");
+        return cacheControl != null && cacheControl.contains("no-cache");
+    }
+    
+    /**
+     * Deadline from the {@code timeout} parameter or {@code X-Request-Timeout} header (seconds),
+     * as epoch millis; 0 if the client set none
+     */
+    private long extractDeadline(SlingHttpServletRequest request) {
+        String timeout = request.getParameter("timeout");
+        if (timeout == null) {
+            RequestParameter timeoutParam = request.getRequestParameter("timeout");
+            timeout = timeoutParam != null ? timeoutParam.getString() : request.getHeader("X-Request-Timeout");
+        }
+        if (timeout == null) {
+            return 0;
+        }
+        try {
+            long seconds = Long.parseLong(timeout.trim());
+            return seconds > 0 ? System.currentTimeMillis() + seconds * 1000 : 0;
+        } catch (NumberFormatException e) {
+            LOG.debug("Ignoring invalid timeout: {}", timeout);
+            return 0;
+        }
+    }
+    
+    /**
+     * Whether the client asked to get a job id right away instead of waiting for the generation
+     */
+    private boolean isAsyncRequest(SlingHttpServletRequest request) {
+        if ("true".equalsIgnoreCase(request.getParameter("async"))) {
+            return true;
+        }
+        RequestParameter asyncParam = request.getRequestParameter("async");
+        if (asyncParam != null && "true".equalsIgnoreCase(asyncParam.getString())) {
+            return true;
+        }
+        String prefer = request.getHeader("Prefer");
+        return prefer != null && prefer.contains("respond-async");
+    }
+    
+    /**
+     * Submit the generation as a job and answer 202 Accepted with the URL to poll for its status
+     */
+    private void processAsyncRequest(SlingHttpServletResponse response, ComponentGenerationRequest generationRequest,
+                                     String timestamp) throws IOException {
+        GenerationJob job = generationJobService.submit(generationRequest, timestamp);
+        
+        if (GenerationJob.STATUS_FAILED.equals(job.getStatus())) {
+            LOG.warn("Generation job rejected for prompt: {} - {}", generationRequest.getPrompt(), job.getError());
+            writeGenerationError(response, job.getFailedResponse());
+            return;
+        }
+        
+        String statusUrl = GenerationJobServlet.SERVLET_PATH + "?id=" + job.getJobId();
+        Map<String, Object> accepted = new LinkedHashMap<>();
+        accepted.put("status", "accepted");
+        accepted.put("jobId", job.getJobId());
+        accepted.put("jobStatus", job.getStatus());
+        accepted.put("statusUrl", statusUrl);
+        
+        response.setStatus(202); // Accepted
+        response.setHeader("Location", statusUrl);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getWriter(), accepted);
+        
+        LOG.info("Accepted generation job {} for prompt: '{}'", job.getJobId(), generationRequest.getPrompt());
+    }
+    
+    /**
+     * Run the generation while pushing stage changes, token batches and the final result as SSE events
+     */
+    private void processStreamingRequest(SlingHttpServletResponse response, ComponentGenerationRequest generationRequest,
+                                         String prompt, String timestamp) throws IOException {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no"); // Disable proxy buffering (nginx/dispatcher)
+        
+        // The first event (queued stage with the queue position) is sent once the request is admitted
+        SseEventWriter events = new SseEventWriter(response.getWriter(), objectMapper,
+                                                   SseEventWriter.DEFAULT_TOKEN_FLUSH_INTERVAL_MS);
+        
+        ComponentGenerationResponse generationResponse = events.awaitWhileConnected(
+            localLLMService.generateComponentAsync(generationRequest, events), CLIENT_CHECK_INTERVAL_MS);
+        if (generationResponse == null) {
+            LOG.info("Streaming client went away, generation cancelled for prompt: {}", prompt);
+            return;
+        }
+        
+        if (!generationResponse.isSuccess() && !events.hasOutput()) {
+            // Rejected before anything was streamed: answer with a plain HTTP status the client can back off on
+            LOG.warn("Streaming generation rejected for prompt: {} - {}", prompt, generationResponse.getError());
+            response.setHeader("Cache-Control", null);
+            response.setHeader("X-Accel-Buffering", null);
+            writeGenerationError(response, generationResponse);
+            return;
+        }
+        
+        if (!generationResponse.isSuccess()) {
+            LOG.error("Failed to generate component for prompt: {} - {}", prompt, generationResponse.getError());
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("status", "error");
+            error.put("error", generationResponse.getError());
+            if (generationResponse.getModelError() != null) {
+                error.put("modelError", generationResponse.getModelError());
+            }
+            if (generationResponse.getRetryAfterSeconds() != null) {
+                error.put("retryAfterSeconds", generationResponse.getRetryAfterSeconds());
+            }
+            if (generationResponse.getQueuePosition() != null) {
+                error.put("queuePosition", generationResponse.getQueuePosition());
+            }
+            error.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            events.sendError(error);
+            return;
+        }
+        
+        events.onStage(GenerationListener.STAGE_SAVING, null);
+        GeneratedArtifacts artifacts = fileManagementService.saveGeneratedComponent(generationResponse, timestamp);
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "success");
+        result.put("message", generationResponse.getMessage());
+        result.put("timestamp", formatTimestamp(timestamp));
+        result.put("prompt", prompt);
+        result.put("componentName", generationResponse.getComponentName());
+        result.put("componentDescription", generationResponse.getComponentDescription());
+        result.put("filesGenerated", generationResponse.getGeneratedFiles().size());
+        result.put("cached", generationResponse.isCached());
+        if (generationResponse.getQueuePosition() != null) {
+            result.put("queuePosition", generationResponse.getQueuePosition());
+        }
+        if (generationResponse.getSimilarity() != null) {
+            result.put("similarity", generationResponse.getSimilarity());
+        }
+        result.put("downloadUrl", artifacts.getDownloadUrl() != null ? artifacts.getDownloadUrl() : "");
+        result.put("previewUrl", artifacts.getPreviewUrl() != null ? artifacts.getPreviewUrl() : "");
+        result.put("previewHtml", generationResponse.getPreviewHtml());
+        result.put("savedPath", artifacts.getSavedPath() != null ? artifacts.getSavedPath() : "");
+        result.put("generatedBy", "SURGE AEM LLM Connector (Local LLM)");
+        events.sendResult(result);
+        
+        LOG.info("Successfully streamed component for prompt: '{}', timestamp: {}", prompt, timestamp);
+    }
+    
+    /**
+     * Write a failed generation as JSON with an HTTP status matching the error type.
+     * Overload rejections get 429/503 with a Retry-After header.
+     */
+    private void writeGenerationError(SlingHttpServletResponse response, ComponentGenerationResponse generationResponse)
+            throws IOException {
+        // Determine appropriate HTTP status based on error type
+        int httpStatus = 500; // Default to server error
+        String errorStatus = "generation_failed";
+        
+        String errorMessage = generationResponse.getError();
+        if (ComponentGenerationResponse.ERROR_QUEUE_FULL.equals(generationResponse.getErrorCode())) {
+            httpStatus = 429; // Too many requests
+            errorStatus = "llm_busy";
+        } else if (ComponentGenerationResponse.ERROR_CIRCUIT_OPEN.equals(generationResponse.getErrorCode())) {
+            httpStatus = 503; // Service unavailable
+            errorStatus = "llm_unavailable";
+        } else if (ComponentGenerationResponse.ERROR_DEADLINE_EXCEEDED.equals(generationResponse.getErrorCode())) {
+            httpStatus = 504; // Gateway timeout
+            errorStatus = "deadline_exceeded";
+        } else if (errorMessage != null) {
+            if (errorMessage.contains("timeout") || errorMessage.contains("Timeout")) {
+                httpStatus = 504; // Gateway timeout
+                errorStatus = "llm_timeout";
+            } else if (errorMessage.contains("Cannot connect") || errorMessage.contains("Connection refused")) {
+                httpStatus = 503; // Service unavailable
+                errorStatus = "llm_unavailable";
+            } else if (errorMessage.contains("Model not available") || errorMessage.contains("not found")) {
+                httpStatus = 422; // Unprocessable entity
+                errorStatus = "model_unavailable";
+            }
+        }
+        
+        response.setStatus(httpStatus);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        if (generationResponse.getRetryAfterSeconds() != null) {
+            response.setHeader("Retry-After", String.valueOf(generationResponse.getRetryAfterSeconds()));
+        }
+        
+        // Enhanced error response with suggestions and model error details
+        PrintWriter writer = response.getWriter();
+        writer.write("{\n");
+        writer.write("  \"error\": \"" + escapeJsonString(generationResponse.getError()) + "\",\n");
+        writer.write("  \"status\": \"" + errorStatus + "\",\n");
+        if (generationResponse.getModelError() != null) {
+            writer.write("  \"modelError\": \"" + escapeJsonString(generationResponse.getModelError()) + "\",\n");
+        }
+        if (generationResponse.getRetryAfterSeconds() != null) {
+            writer.write("  \"retryAfterSeconds\": " + generationResponse.getRetryAfterSeconds() + ",\n");
+        }
+        if (generationResponse.getQueuePosition() != null) {
+            writer.write("  \"queuePosition\": " + generationResponse.getQueuePosition() + ",\n");
+        }
+        writer.write("  \"timestamp\": \"" + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\",\n");
+        writer.write("  \"suggestion\": \"" + getSuggestionForError(errorStatus) + "\"\n");
+        writer.write("}");
+        writer.flush();
+    }
+    
     private String formatTimestamp(String timestamp) {
         try {
             LocalDateTime dateTime = LocalDateTime.parse(timestamp, DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
@@ -362,9 +588,9 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
     }
     
     /**
-     * NEW: Extract and encode image data from multipart request
+     * NEW: Spool the uploaded image to a temporary file, it is Base64 encoded only while the LLM request is sent
      */
-    private String extractImageData(SlingHttpServletRequest request) throws IOException {
+    private ImageAttachment extractImage(SlingHttpServletRequest request) throws IOException {
         RequestParameter imageParam = request.getRequestParameter("image");
         if (imageParam == null || imageParam.getSize() == 0) {
             return null;
@@ -383,14 +609,11 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
                                                (imageParam.getSize() / 1024 / 1024) + "MB");
         }
         
-        // Convert to base64
+        // Copy in small chunks, the upload is never held in memory
         try (InputStream inputStream = imageParam.getInputStream()) {
-            byte[] imageBytes = IOUtils.toByteArray(inputStream);
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            LOG.info("Image processed: {} bytes, content type: {}", imageBytes.length, contentType);
-            
-            // Return with data URL format for LLM processing
-            return "data:" + contentType + ";base64," + base64Image;
+            ImageAttachment image = ImageAttachment.spool(inputStream, contentType, maxSize);
+            LOG.info("Image processed: {} bytes, content type: {}", image.getSize(), contentType);
+            return image;
         }
     }
     
@@ -404,6 +627,10 @@ public class ComponentGeneratorServlet extends SlingAllMethodsServlet {
                        (localLLMService != null ? "llama3.2" : "your-model") + "' manually to warm up the model.";
             case "llm_unavailable":
                 return "Please ensure Ollama is running with 'ollama serve' and accessible at the configured URL.";
+            case "llm_busy":
+                return "The local LLM is busy with other generations. Wait for the Retry-After period and try again.";
+            case "deadline_exceeded":
+                return "The generation did not finish within the request deadline. Retry with a larger timeout or use async=true.";
             case "model_unavailable":
                 return "Install the model with 'ollama pull llama3.2' or configure a different model in OSGi settings.";
             default:
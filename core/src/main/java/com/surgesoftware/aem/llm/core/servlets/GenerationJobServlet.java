@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.GenerationJob;
+import com.surgesoftware.aem.llm.core.services.GenerationJobService;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generation Job Servlet for SURGE AEM LLM Connector
+ * 
+ * Reports the status, progress and result of a generation submitted with
+ * {@code /bin/aem-llm/generate?async=true}.
+ * 
+ * URL Pattern: /bin/aem-llm/jobs?id={jobId}
+ * 
+ * @author SURGE Software Solutions Private Limited
+ */
+@Component(service = Servlet.class,
+    property = {
+        "sling.servlet.paths=" + GenerationJobServlet.SERVLET_PATH,
+        "sling.servlet.methods=GET",
+        "sling.auth.requirements=-" + GenerationJobServlet.SERVLET_PATH,
+        "service.description=SURGE AEM LLM Connector - Generation Job Status Servlet",
+        "service.vendor=SURGE Software Solutions Private Limited"
+    })
+public class GenerationJobServlet extends SlingSafeMethodsServlet {
+
+    static final String SERVLET_PATH = "/bin/aem-llm/jobs";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationJobServlet.class);
+    private static final long serialVersionUID = 1L;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Reference
+    private GenerationJobService generationJobService;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+
+        String jobId = request.getParameter("id");
+        if (jobId == null || jobId.isEmpty()) {
+            response.setStatus(400);
+            writeError(response, "Missing id parameter", "bad_request");
+            return;
+        }
+
+        GenerationJob job = generationJobService.getJob(jobId);
+        if (job == null) {
+            LOG.debug("Generation job {} not found", jobId);
+            response.setStatus(404);
+            writeError(response, "Unknown or expired job: " + jobId, "job_not_found");
+            return;
+        }
+
+        objectMapper.writeValue(response.getWriter(), job);
+    }
+
+    private void writeError(SlingHttpServletResponse response, String error, String status) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", error);
+        body.put("status", status);
+        objectMapper.writeValue(response.getWriter(), body);
+    }
+}
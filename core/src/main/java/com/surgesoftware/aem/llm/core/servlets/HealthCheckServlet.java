@@ -16,6 +16,7 @@
 package com.surgesoftware.aem.llm.core.servlets;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
 import com.surgesoftware.aem.llm.core.services.LocalLLMService;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -37,7 +38,10 @@ import java.util.Map;
  * Health Check Servlet for LLM Service
  * 
  * Provides a quick health check endpoint to verify LLM connectivity
- * and return readiness status.
+ * and return readiness status. The answer comes from the cached background
+ * liveness check; {@code ?deep=true} additionally asks for the service's connection
+ * test, a real generation that is admitted like any other and whose result is shared
+ * for a while, so frequent polling adds no load.
  * 
  * @author SURGE Software Solutions Private Limited
  */
@@ -66,10 +70,12 @@ public class HealthCheckServlet extends SlingSafeMethodsServlet {
         long startTime = System.currentTimeMillis();
         
         try {
-            LOG.info("🏥 Health check requested for LLM service");
+            boolean deep = "true".equals(request.getParameter("deep"));
+            LOG.debug("🏥 Health check requested for LLM service (deep: {})", deep);
             
-            // Quick connectivity test
-            boolean connected = localLLMService.testConnection();
+            // Cached liveness snapshot, the deep generation probe only on explicit request
+            BackendHealth health = localLLMService.getBackendHealth();
+            boolean connected = deep ? localLLMService.testConnection() : health.isReachable();
             String llmInfo = localLLMService.getLLMInfo();
             
             long duration = System.currentTimeMillis() - startTime;
@@ -79,11 +85,14 @@ public class HealthCheckServlet extends SlingSafeMethodsServlet {
             result.put("llmInfo", llmInfo);
             result.put("responseTime", duration + "ms");
             result.put("timestamp", java.time.LocalDateTime.now().toString());
+            result.put("deep", deep);
+            result.put("backend", health);
+            result.put("metrics", localLLMService.getServiceMetrics());
             
             if (connected) {
                 result.put("message", "✅ Local LLM is reachable and ready for requests");
                 response.setStatus(SlingHttpServletResponse.SC_OK); // 200
-                LOG.info("✅ Health check PASSED - LLM ready ({}ms)", duration);
+                LOG.debug("✅ Health check PASSED - LLM ready ({}ms)", duration);
             } else {
                 result.put("message", "❌ Local LLM is not responding or service is disabled");
                 response.setStatus(SlingHttpServletResponse.SC_SERVICE_UNAVAILABLE); // 503
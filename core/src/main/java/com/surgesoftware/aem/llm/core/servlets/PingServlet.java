@@ -15,6 +15,7 @@
  */
 package com.surgesoftware.aem.llm.core.servlets;
 
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
 import com.surgesoftware.aem.llm.core.services.LocalLLMService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.sling.api.SlingHttpServletRequest;
@@ -35,6 +36,9 @@ import java.util.Map;
  * 
  * Provides a health check endpoint for the Local LLM service
  * to verify if Ollama/LocalAI is running and reachable.
+ * Answers from the cached background liveness check; {@code ?deep=true}
+ * asks for the service's connection test instead, a real generation that is
+ * admitted like any other and whose result is shared for a while.
  * 
  * @author SURGE Software Solutions Private Limited
  */
@@ -66,16 +70,20 @@ public class PingServlet extends SlingAllMethodsServlet {
         Map<String, Object> pingResponse = new HashMap<>();
         
         try {
-            LOG.info("🏓 Ping: Testing LLM connectivity...");
+            boolean deep = "true".equals(request.getParameter("deep"));
+            LOG.debug("🏓 Ping: Checking LLM connectivity (deep: {})", deep);
             
             // Get LLM service info
             String llmInfo = localLLMService.getLLMInfo();
             
-            // Test actual connection
-            boolean isConnected = localLLMService.testConnection();
+            // Cached liveness snapshot; only a deep ping puts load on the model
+            BackendHealth health = localLLMService.getBackendHealth();
+            boolean isConnected = deep ? localLLMService.testConnection() : health.isReachable();
+            pingResponse.put("health", health);
+            pingResponse.put("deep", deep);
             
             if (isConnected) {
-                LOG.info("✅ Ping: LLM is reachable");
+                LOG.debug("✅ Ping: LLM is reachable");
                 pingResponse.put("status", "OK");
                 pingResponse.put("message", "Local LLM is reachable");
                 pingResponse.put("llmInfo", llmInfo);
@@ -84,7 +92,9 @@ public class PingServlet extends SlingAllMethodsServlet {
             } else {
                 LOG.warn("❌ Ping: LLM is not reachable");
                 pingResponse.put("status", "ERROR");
-                pingResponse.put("message", "Local LLM not responding");
+                pingResponse.put("message", health.getError() != null && !deep
+                    ? "Local LLM not responding: " + health.getError()
+                    : "Local LLM not responding");
                 pingResponse.put("llmInfo", llmInfo);
                 pingResponse.put("connected", false);
                 response.setStatus(503); // Service Unavailable
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.servlets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Server-Sent Events writer for streamed component generation
+ *
+ * Writes {@code stage}, {@code suggestion}, {@code token}, {@code field}, {@code result} and {@code error} events. Tokens
+ * are coalesced into time-based batches so the response is not flushed once per token; the
+ * request thread waiting for the generation sends a batch once its interval is up, also when
+ * no further token arrives. A failed write marks the client as disconnected; further events
+ * are dropped. Heartbeat comments detect a disconnect while no events are due.
+ * Nothing is written before the first event, so a request that is rejected up front
+ * can still be answered with a plain HTTP error status.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+class SseEventWriter implements GenerationListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SseEventWriter.class);
+
+    static final long DEFAULT_TOKEN_FLUSH_INTERVAL_MS = 100;
+    private static final int MAX_BUFFERED_CHARS = 2048;
+
+    private final PrintWriter writer;
+    private final ObjectMapper objectMapper;
+    private final long flushIntervalMs;
+    private final StringBuilder tokenBuffer = new StringBuilder();
+    private long lastFlush = System.currentTimeMillis();
+    private boolean firstTokenSent;
+    private volatile boolean written;
+    private volatile boolean disconnected;
+
+    SseEventWriter(PrintWriter writer, ObjectMapper objectMapper, long flushIntervalMs) {
+        this.writer = writer;
+        this.objectMapper = objectMapper;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @Override
+    public synchronized void onStage(String stage, String detail) {
+        flushTokens();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("stage", stage);
+        if (detail != null) {
+            data.put("detail", detail);
+        }
+        data.put("timestamp", System.currentTimeMillis());
+        send("stage", data);
+    }
+
+    @Override
+    public synchronized void onToken(String token) {
+        tokenBuffer.append(token);
+        long now = System.currentTimeMillis();
+        // The first token goes out immediately, later ones are batched per interval
+        if (!firstTokenSent || now - lastFlush >= flushIntervalMs || tokenBuffer.length() >= MAX_BUFFERED_CHARS) {
+            firstTokenSent = true;
+            flushTokens();
+        }
+    }
+
+    @Override
+    public synchronized void onField(String name, JsonNode value) {
+        flushTokens();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("name", name);
+        data.put("value", value);
+        send("field", data);
+    }
+
+    @Override
+    public synchronized void onSuggestion(ComponentGenerationResponse suggestion, double similarity) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("componentName", suggestion.getComponentName());
+        data.put("componentDescription", suggestion.getComponentDescription());
+        data.put("previewHtml", suggestion.getPreviewHtml());
+        data.put("similarity", similarity);
+        send("suggestion", data);
+    }
+
+    synchronized void sendResult(Map<String, Object> result) {
+        flushTokens();
+        send("result", result);
+    }
+
+    synchronized void sendError(Map<String, Object> error) {
+        flushTokens();
+        send("error", error);
+    }
+
+    /**
+     * Wait for a streamed generation on the request thread. Every flush interval the pending token
+     * batch is sent if its interval is up, every heartbeat interval a heartbeat. A disconnected
+     * client cancels the generation.
+     *
+     * @return The response, or null if the client disconnected
+     */
+    ComponentGenerationResponse awaitWhileConnected(CompletableFuture<ComponentGenerationResponse> generation,
+                                                    long heartbeatIntervalMs) throws IOException {
+        long nextHeartbeat = System.currentTimeMillis() + heartbeatIntervalMs;
+        while (true) {
+            try {
+                return generation.get(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                flushDueTokens();
+                long now = System.currentTimeMillis();
+                if (now >= nextHeartbeat) {
+                    sendHeartbeat();
+                    nextHeartbeat = now + heartbeatIntervalMs;
+                }
+                if (disconnected) {
+                    generation.cancel(true);
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                generation.cancel(true);
+                return null;
+            } catch (ExecutionException e) {
+                throw new IOException("Component generation failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Write an SSE comment, which clients ignore, to find out whether the client is still connected.
+     * Nothing is written before the first event.
+     */
+    synchronized void sendHeartbeat() {
+        if (written) {
+            writeRaw(": keep-alive\n\n");
+        }
+    }
+
+    boolean isDisconnected() {
+        return disconnected;
+    }
+
+    /**
+     * Whether any event was written, i.e. the response is committed as an event stream
+     */
+    boolean hasOutput() {
+        return written;
+    }
+
+    /**
+     * Send the pending token batch if its interval is up
+     */
+    synchronized void flushDueTokens() {
+        if (tokenBuffer.length() > 0 && System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+            flushTokens();
+        }
+    }
+
+    private void flushTokens() {
+        lastFlush = System.currentTimeMillis();
+        if (tokenBuffer.length() == 0) {
+            return;
+        }
+        send("token", Collections.singletonMap("text", tokenBuffer.toString()));
+        tokenBuffer.setLength(0);
+    }
+
+    private void send(String event, Object data) {
+        try {
+            writeRaw("event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n");
+        } catch (IOException e) {
+            LOG.warn("Could not serialize SSE {} event: {}", event, e.getMessage());
+        }
+    }
+
+    private void writeRaw(String frame) {
+        if (disconnected) {
+            return;
+        }
+        written = true;
+        writer.write(frame);
+        writer.flush();
+        if (writer.checkError()) {
+            disconnected = true;
+            LOG.info("SSE client disconnected, dropping further events");
+        }
+    }
+}
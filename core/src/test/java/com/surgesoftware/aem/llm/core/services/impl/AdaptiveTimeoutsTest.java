@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for AdaptiveTimeouts
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class AdaptiveTimeoutsTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testNoDeadlinesWhileLearning() throws Exception {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(10000);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES - 1; i++) {
+            timeouts.record("llama3.2", 4000, done(1000, 2_000_000_000L, 500, 25_000_000_000L));
+        }
+
+        assertNull(timeouts.deadlinesFor("llama3.2", 4000, 4000));
+        assertNull(timeouts.deadlinesFor("mistral", 4000, 4000));
+    }
+
+    @Test
+    public void testDeadlinesFollowObservedRates() throws Exception {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(10000);
+        // 4 chars per token, 500 prompt tokens/s, 20 tokens/s
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.record("llama3.2", 4000, done(1000, 2_000_000_000L, 500, 25_000_000_000L));
+        }
+
+        AdaptiveTimeouts.Deadlines deadlines = timeouts.deadlinesFor("llama3.2", 40000, 1000);
+        assertNotNull(deadlines);
+        // 10k prompt tokens at a pessimistic 125 tokens/s, three times over
+        assertTrue(deadlines.firstTokenMs > 60000);
+        assertEquals("Idle deadline is floored", 10000, deadlines.idleMs);
+        long shortTotal = deadlines.totalMs;
+        assertTrue(timeouts.deadlinesFor("llama3.2", 40000, 4000).totalMs > shortTotal);
+        assertEquals("Short prompts get the minimum", 10000, timeouts.deadlinesFor("llama3.2", 400, 1000).firstTokenMs);
+    }
+
+    @Test
+    public void testSlowerModelGetsLongerIdleDeadline() throws Exception {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(1000);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.record("fast", 4000, done(1000, 1_000_000_000L, 1000, 10_000_000_000L));
+            timeouts.record("slow", 4000, done(1000, 1_000_000_000L, 100, 50_000_000_000L));
+        }
+
+        assertTrue(timeouts.deadlinesFor("slow", 4000, 1000).idleMs > timeouts.deadlinesFor("fast", 4000, 1000).idleMs);
+    }
+
+    private OllamaChunk done(long promptEvalCount, long promptEvalNanos, long evalCount, long evalNanos) throws Exception {
+        OllamaChunk chunk = new OllamaChunk();
+        chunk.read(objectMapper.getFactory(), "{\"done\":true,\"prompt_eval_count\":" + promptEvalCount
+            + ",\"prompt_eval_duration\":" + promptEvalNanos + ",\"eval_count\":" + evalCount
+            + ",\"eval_duration\":" + evalNanos + "}");
+        return chunk;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for BackendHealthProbe
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class BackendHealthProbeTest {
+
+    @Test
+    public void testBaseUrlOf() {
+        assertEquals("http://localhost:11434", BackendHealthProbe.baseUrlOf("http://localhost:11434/api/generate"));
+        assertEquals("http://localhost:8080", BackendHealthProbe.baseUrlOf("http://localhost:8080/v1/chat/completions"));
+        assertEquals("http://llm:9000", BackendHealthProbe.baseUrlOf("http://llm:9000/"));
+    }
+
+    @Test
+    public void testUnreachableBackendIsReportedDown() throws Exception {
+        try (CloseableHttpClient client = HttpClients.createDefault()) {
+            BackendHealthProbe probe = new BackendHealthProbe(client, new ObjectMapper(), "ollama",
+                "http://127.0.0.1:1/api/generate", 60000);
+            assertEquals(BackendHealth.STATUS_UNKNOWN, probe.getSnapshot().getStatus());
+
+            probe.probe();
+
+            BackendHealth health = probe.getSnapshot();
+            assertEquals(BackendHealth.STATUS_DOWN, health.getStatus());
+            assertFalse(health.isReachable());
+            assertNotNull(health.getError());
+            assertTrue(health.getLastCheck() > 0);
+        }
+    }
+}
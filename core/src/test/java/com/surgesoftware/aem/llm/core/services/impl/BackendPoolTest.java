@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Test class for BackendPool
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class BackendPoolTest {
+
+    private long now = 1000;
+
+    @Test
+    public void testRoutesToLeastOutstandingRelativeToWeight() {
+        BackendPool.Backend heavy = backend("http://heavy:11434/api/generate", 2, 4);
+        BackendPool.Backend light = backend("http://light:11434/api/generate", 1, 4);
+        BackendPool pool = pool(heavy, light);
+
+        List<BackendPool.Backend> picked = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            picked.add(pool.acquire(Collections.emptyList()));
+        }
+
+        assertEquals(4, Collections.frequency(picked, heavy));
+        assertEquals(2, Collections.frequency(picked, light));
+    }
+
+    @Test
+    public void testConcurrentCallsSpreadAcrossBackends() {
+        BackendPool pool = pool(backend("http://a/api/generate", 1, 1), backend("http://b/api/generate", 1, 1),
+                                backend("http://c/api/generate", 1, 1));
+
+        BackendPool.Backend first = pool.acquire(Collections.emptyList());
+        BackendPool.Backend second = pool.acquire(Collections.emptyList());
+        BackendPool.Backend third = pool.acquire(Collections.emptyList());
+
+        assertEquals(3, new HashSet<>(Arrays.asList(first, second, third)).size());
+        pool.release(second, false);
+        assertSame("The freed backend takes the next call", second, pool.acquire(Collections.emptyList()));
+    }
+
+    @Test
+    public void testRetryAvoidsBackendsAlreadyTried() {
+        BackendPool.Backend a = backend("http://a/api/generate", 1, 4);
+        BackendPool.Backend b = backend("http://b/api/generate", 1, 4);
+        BackendPool pool = pool(a, b);
+
+        List<BackendPool.Backend> tried = new ArrayList<>();
+        tried.add(pool.acquire(tried));
+        pool.release(tried.get(0), true);
+        BackendPool.Backend retry = pool.acquire(tried);
+
+        assertNotSame(tried.get(0), retry);
+        tried.add(retry);
+        assertNotNull("With every backend tried one is still returned", pool.acquire(tried));
+    }
+
+    @Test
+    public void testConsecutiveFailuresEjectBackendForIncreasingTime() {
+        BackendPool.Backend flaky = backend("http://flaky/api/generate", 1, 4);
+        BackendPool.Backend healthy = backend("http://healthy/api/generate", 1, 4);
+        BackendPool pool = pool(flaky, healthy);
+
+        for (int i = 0; i < 3; i++) {
+            pool.release(pool.acquire(Collections.singletonList(healthy)), true);
+        }
+        assertEquals(true, pool.getStats().get(0).get("ejected"));
+        assertEquals(10000L, pool.getStats().get(0).get("ejectedForMs"));
+        for (int i = 0; i < 4; i++) {
+            BackendPool.Backend backend = pool.acquire(Collections.emptyList());
+            assertSame(healthy, backend);
+            pool.release(backend, false);
+        }
+
+        now += 10000;
+        for (int i = 0; i < 3; i++) {
+            pool.release(pool.acquire(Collections.singletonList(healthy)), true);
+        }
+        assertEquals("Second ejection lasts twice as long", 20000L, pool.getStats().get(0).get("ejectedForMs"));
+
+        now += 20000;
+        pool.release(pool.acquire(Collections.singletonList(healthy)), false);
+        assertEquals(false, pool.getStats().get(0).get("ejected"));
+        assertEquals(0, pool.getStats().get(0).get("consecutiveFailures"));
+    }
+
+    @Test
+    public void testAllEjectedStillRoutes() {
+        BackendPool.Backend only = backend("http://only/api/generate", 1, 1);
+        BackendPool pool = pool(only);
+        for (int i = 0; i < 3; i++) {
+            pool.release(pool.acquire(Collections.emptyList()), true);
+        }
+
+        assertSame(only, pool.acquire(Collections.emptyList()));
+    }
+
+    @Test
+    public void testCallsGoToBackendsThatHaveTheModel() throws Exception {
+        try (StubOllama without = new StubOllama(); StubOllama with = new StubOllama();
+             CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            without.setDefault(StubOllama.TAGS, StubOllama.json(200, "{\"models\":[{\"name\":\"mistral:7b\"}]}"));
+            BackendPool.Backend a = backend(without, httpClient, 3);
+            BackendPool.Backend b = backend(with, httpClient, 1);
+            BackendPool pool = pool(a, b);
+
+            // Listings not loaded yet: any backend may have it, the weight decides
+            assertSame(a, pool.acquire(Collections.emptyList(), "llama3.1"));
+            pool.release(a, false);
+
+            a.modelCatalog.getModels();
+            b.modelCatalog.getModels();
+            for (int i = 0; i < 3; i++) {
+                assertSame(b, pool.acquire(Collections.emptyList(), "llama3.1"));
+            }
+            assertSame("Busy, but the only backend with the model", b, pool.acquire(Collections.emptyList(), "llama3.1"));
+            assertSame("Any backend will do without a model", a, pool.acquire(Collections.emptyList()));
+            // Neither has it: routed as usual, the backend then picks an alternative
+            assertNotNull(pool.acquire(Collections.emptyList(), "gemma:2b"));
+            a.modelCatalog.close();
+            b.modelCatalog.close();
+        }
+    }
+
+    @Test
+    public void testUntriedBackendsAreKnown() {
+        BackendPool.Backend a = backend("http://a/api/generate", 1, 4);
+        BackendPool.Backend b = backend("http://b/api/generate", 1, 4);
+        BackendPool pool = pool(a, b);
+
+        assertTrue(pool.hasUntried(Collections.singletonList(a)));
+        assertFalse(pool.hasUntried(Arrays.asList(a, b)));
+    }
+
+    private BackendPool pool(BackendPool.Backend... backends) {
+        return new BackendPool(Arrays.asList(backends), 3, 10000, () -> now);
+    }
+
+    private static BackendPool.Backend backend(String apiUrl, int weight, int maxConcurrency) {
+        return new BackendPool.Backend(new BackendEndpoint(apiUrl, weight, maxConcurrency), null, null);
+    }
+
+    private static BackendPool.Backend backend(StubOllama ollama, CloseableHttpClient httpClient, int weight) {
+        ModelCatalog catalog = new ModelCatalog(httpClient, new ObjectMapper(), ollama.getBaseUrl() + StubOllama.TAGS, 60000);
+        return new BackendPool.Backend(new BackendEndpoint(ollama.getApiUrl(), weight, 1), null, catalog, null);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class for CircuitBreaker
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 50, 80, 5000, 30000, now::get);
+
+    @Test
+    public void testOpensOnFailureRateAndFailsFast() {
+        breaker.onSuccess(breaker.tryAcquirePermission(), 100);
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquirePermission());
+        assertEquals(30000, breaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        breaker.onSuccess(breaker.tryAcquirePermission(), 6000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onSuccess(breaker.tryAcquirePermission(), 7000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenLetsSingleProbeThroughAndClosesOnSuccess() {
+        open();
+
+        CircuitBreaker.Permit probe = breaker.tryAcquirePermission();
+        assertNotNull(probe);
+        assertTrue(probe.isProbe());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull("Only one probe may be in flight", breaker.tryAcquirePermission());
+
+        breaker.onSuccess(probe, 100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testFailedProbeReopensAndTransitionsAreCounted() {
+        open();
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        @SuppressWarnings("unchecked")
+        Map<String, Long> transitions = (Map<String, Long>) breaker.getStats().get("transitions");
+        assertEquals(Long.valueOf(1), transitions.get("CLOSED->OPEN"));
+        assertEquals(Long.valueOf(1), transitions.get("OPEN->HALF_OPEN"));
+        assertEquals(Long.valueOf(1), transitions.get("HALF_OPEN->OPEN"));
+    }
+
+    @Test
+    public void testCallsLetThroughBeforeOpeningDoNotDecideTheProbe() {
+        CircuitBreaker.Permit lateSuccess = breaker.tryAcquirePermission();
+        CircuitBreaker.Permit lateFailure = breaker.tryAcquirePermission();
+        open();
+        CircuitBreaker.Permit probe = breaker.tryAcquirePermission();
+
+        breaker.onSuccess(lateSuccess, 100);
+        assertEquals("A call from the closed period must not close the breaker",
+                     CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNull("Nor let a second probe through", breaker.tryAcquirePermission());
+        breaker.onFailure(lateFailure, 100);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(probe, 100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().get("bufferedCalls"));
+    }
+
+    @Test
+    public void testReleasedPermitsRecordNoOutcome() {
+        // A cancelled call during a failure streak is no success diluting the window
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+        breaker.release(breaker.tryAcquirePermission());
+        assertEquals(1, breaker.getStats().get("bufferedCalls"));
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // A cancelled probe neither closes the breaker nor keeps it blocked
+        now.addAndGet(30000);
+        breaker.release(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        CircuitBreaker.Permit nextProbe = breaker.tryAcquirePermission();
+        assertNotNull("The next call should probe", nextProbe);
+        assertTrue(nextProbe.isProbe());
+    }
+
+    private void open() {
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+        breaker.onFailure(breaker.tryAcquirePermission(), 100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        now.addAndGet(30000);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class for DeepProbe, driven by a manual clock
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class DeepProbeTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final DeepProbe deepProbe = new DeepProbe(now::get);
+    private final AtomicInteger probes = new AtomicInteger();
+    private final Object configuration = new Object();
+
+    @Test
+    public void testConcurrentCallersShareOneProbe() {
+        CompletableFuture<Boolean> running = new CompletableFuture<>();
+
+        CompletableFuture<Boolean> first = deepProbe.check(configuration, () -> probe(running));
+        CompletableFuture<Boolean> second = deepProbe.check(configuration, () -> probe(new CompletableFuture<>()));
+
+        assertSame(first, second);
+        assertEquals(1, probes.get());
+        running.complete(true);
+        assertTrue(second.join());
+    }
+
+    @Test
+    public void testResultIsReusedUntilItExpires() {
+        deepProbe.check(configuration, () -> probe(CompletableFuture.completedFuture(false)));
+        now.addAndGet(DeepProbe.RESULT_TTL_MS - 1);
+        assertFalse(deepProbe.check(configuration, () -> probe(CompletableFuture.completedFuture(true))).join());
+        assertEquals(1, probes.get());
+
+        now.addAndGet(1);
+        assertTrue(deepProbe.check(configuration, () -> probe(CompletableFuture.completedFuture(true))).join());
+        assertEquals(2, probes.get());
+    }
+
+    @Test
+    public void testResultOfAnotherConfigurationIsNotReused() {
+        deepProbe.check(configuration, () -> probe(CompletableFuture.completedFuture(false)));
+
+        assertTrue(deepProbe.check(new Object(), () -> probe(CompletableFuture.completedFuture(true))).join());
+        assertEquals(2, probes.get());
+    }
+
+    private CompletableFuture<Boolean> probe(CompletableFuture<Boolean> result) {
+        probes.incrementAndGet();
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for GenerationAdmission
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class GenerationAdmissionTest {
+
+    @Test
+    public void testAdmitsUpToInFlightPlusQueuedThenRejects() {
+        GenerationAdmission admission = new GenerationAdmission(2, 2);
+
+        assertEquals(0, admission.tryAdmit());
+        assertEquals(0, admission.tryAdmit());
+        assertEquals(1, admission.tryAdmit());
+        assertEquals(2, admission.tryAdmit());
+        assertEquals(GenerationAdmission.REJECTED, admission.tryAdmit());
+
+        admission.release();
+        assertEquals(2, admission.tryAdmit());
+        assertEquals(1L, admission.getStats().get("rejected"));
+    }
+
+    @Test
+    public void testRetryAfterGrowsWithQueueAndServiceTime() {
+        GenerationAdmission admission = new GenerationAdmission(1, 4);
+        for (int i = 0; i < 10; i++) {
+            admission.recordServiceTime(10000);
+        }
+        admission.tryAdmit();
+        long idleQueue = admission.retryAfterSeconds();
+        admission.tryAdmit();
+        admission.tryAdmit();
+
+        assertTrue(idleQueue >= 10 && idleQueue <= 30);
+        assertEquals(3 * idleQueue, admission.retryAfterSeconds(), 3);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for GenerationCoalescer
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class GenerationCoalescerTest {
+
+    private final GenerationCoalescer coalescer = new GenerationCoalescer();
+
+    @Test
+    public void testKeyIgnoresWhitespaceButNotContent() {
+        ServiceSettings settings = ServiceSettings.from(null);
+        String key = GenerationCoalescer.keyOf(new ComponentGenerationRequest("Hero  banner ", "component", null), settings);
+
+        assertEquals(key, GenerationCoalescer.keyOf(new ComponentGenerationRequest(" Hero banner", "component", ""), settings));
+        assertNotEquals(key, GenerationCoalescer.keyOf(new ComponentGenerationRequest("Hero banner", "component", "dark"), settings));
+
+        ComponentGenerationRequest withImage = new ComponentGenerationRequest("Hero banner", "component", null);
+        withImage.setImageData("data:image/png;base64,AAAA");
+        assertNotEquals(key, GenerationCoalescer.keyOf(withImage, settings));
+    }
+
+    @Test
+    public void testIdenticalRequestsShareOneGeneration() throws Exception {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CompletableFuture<ComponentGenerationResponse> upstream = new CompletableFuture<>();
+        List<GenerationListener> generationListeners = new ArrayList<>();
+
+        CompletableFuture<ComponentGenerationResponse> first = coalescer.execute("key", null, listener -> {
+            upstreamCalls.incrementAndGet();
+            generationListeners.add(listener);
+            return upstream;
+        });
+        generationListeners.get(0).onStage(GenerationListener.STAGE_GENERATING, null);
+
+        List<String> followerStages = new ArrayList<>();
+        CompletableFuture<ComponentGenerationResponse> second = coalescer.execute("key", new GenerationListener() {
+            @Override
+            public void onStage(String stage, String detail) {
+                followerStages.add(stage);
+            }
+        }, listener -> {
+            upstreamCalls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        upstream.complete(response);
+
+        assertEquals(1, upstreamCalls.get());
+        assertSame(response, first.get());
+        assertSame(response, second.get());
+        assertEquals(GenerationListener.STAGE_GENERATING, followerStages.get(0));
+        assertEquals(1L, coalescer.getStats().get("coalesced"));
+        assertEquals(0, coalescer.getStats().get("inFlight"));
+    }
+
+    @Test
+    public void testGenerationIsCancelledOnceEveryCallerLeft() {
+        CompletableFuture<ComponentGenerationResponse> upstream = new CompletableFuture<>();
+        CompletableFuture<ComponentGenerationResponse> first = coalescer.execute("key", null, listener -> upstream);
+        CompletableFuture<ComponentGenerationResponse> second = coalescer.execute("key", null,
+            listener -> new CompletableFuture<>());
+
+        first.cancel(true);
+        assertFalse("Another caller still waits", upstream.isCancelled());
+
+        second.cancel(true);
+        assertTrue(upstream.isCancelled());
+        assertEquals(1L, coalescer.getStats().get("abandoned"));
+
+        // An identical request afterwards starts a generation of its own
+        CompletableFuture<ComponentGenerationResponse> fresh = new CompletableFuture<>();
+        CompletableFuture<ComponentGenerationResponse> third = coalescer.execute("key", null, listener -> fresh);
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        fresh.complete(response);
+        assertSame(response, third.join());
+    }
+}
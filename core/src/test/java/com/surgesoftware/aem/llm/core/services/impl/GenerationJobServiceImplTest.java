@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
+import com.surgesoftware.aem.llm.core.models.GenerationJob;
+import com.surgesoftware.aem.llm.core.services.FileManagementService;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import com.surgesoftware.aem.llm.core.services.LocalLLMService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class for GenerationJobServiceImpl
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class GenerationJobServiceImplTest {
+
+    private final LocalLLMService localLLMService = mock(LocalLLMService.class);
+    private final FileManagementService fileManagementService = mock(FileManagementService.class);
+    private GenerationJobServiceImpl jobService;
+
+    @Before
+    public void setUp() throws Exception {
+        jobService = new GenerationJobServiceImpl();
+        inject("localLLMService", localLLMService);
+        inject("fileManagementService", fileManagementService);
+        jobService.activate(null);
+    }
+
+    @After
+    public void tearDown() {
+        jobService.deactivate();
+    }
+
+    @Test
+    public void testJobCompletesWithSavedArtifacts() throws Exception {
+        CompletableFuture<ComponentGenerationResponse> generation = new CompletableFuture<>();
+        when(localLLMService.generateComponentAsync(any(ComponentGenerationRequest.class), any(GenerationListener.class)))
+            .thenReturn(generation);
+        GeneratedArtifacts artifacts = new GeneratedArtifacts();
+        artifacts.setDownloadUrl("/bin/aem-llm/download?file=card.zip");
+        when(fileManagementService.saveGeneratedComponent(any(ComponentGenerationResponse.class), anyString()))
+            .thenReturn(artifacts);
+
+        GenerationJob job = jobService.submit(new ComponentGenerationRequest("card", "component", null), "20240101");
+        assertEquals(GenerationJob.STATUS_QUEUED, job.getStatus());
+        assertSame(job, jobService.getJob(job.getJobId()));
+
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        response.setStatus("success");
+        response.setComponentName("card");
+        response.setQueuePosition(2);
+        generation.complete(response);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(GenerationJob.STATUS_SUCCEEDED, job.getStatus());
+        assertEquals("/bin/aem-llm/download?file=card.zip", job.getResult().get("downloadUrl"));
+        assertEquals(2, job.getResult().get("queuePosition"));
+    }
+
+    @Test
+    public void testRejectedGenerationIsNotRetained() {
+        ComponentGenerationResponse rejected = new ComponentGenerationResponse();
+        rejected.setStatus("error");
+        rejected.setError("Local LLM is busy with other generations");
+        rejected.setErrorCode(ComponentGenerationResponse.ERROR_QUEUE_FULL);
+        rejected.setRetryAfterSeconds(42L);
+        when(localLLMService.generateComponentAsync(any(ComponentGenerationRequest.class), any(GenerationListener.class)))
+            .thenReturn(CompletableFuture.completedFuture(rejected));
+
+        GenerationJob job = jobService.submit(new ComponentGenerationRequest("card", "component", null), "20240101");
+
+        assertEquals(GenerationJob.STATUS_FAILED, job.getStatus());
+        assertEquals(Long.valueOf(42), job.getRetryAfterSeconds());
+        assertSame(rejected, job.getFailedResponse());
+        assertNull(jobService.getJob(job.getJobId()));
+    }
+
+    private void inject(String fieldName, Object value) throws Exception {
+        Field field = GenerationJobServiceImpl.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(jobService, value);
+    }
+}
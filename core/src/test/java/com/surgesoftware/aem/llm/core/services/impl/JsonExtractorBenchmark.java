@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON extraction from a 20-40 KB LLM output: {@link JsonExtractor} against the former regex
+ * based extraction ({@link LegacyJsonExtraction})
+ *
+ * {@code valid} is fenced JSON followed by an explanation; {@code unescaped} has unescaped
+ * quotes in its HTML, so both implementations also repair it.
+ * Not run by the build. Run with:
+ * {@code mvn -pl core test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.surgesoftware.aem.llm.core.services.impl.JsonExtractorBenchmark}
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class JsonExtractorBenchmark {
+
+    @Param({"20000", "40000"})
+    public int size;
+
+    @Param({"valid", "unescaped"})
+    public String shape;
+
+    private String output;
+
+    @Setup
+    public void setUp() {
+        String quote = "unescaped".equals(shape) ? "\"" : "\\\"";
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; html.length() < size; i++) {
+            html.append("<div class=").append(quote).append("item item--").append(i).append(quote)
+                .append(">${model.items[").append(i).append("].title}</div>\\n");
+        }
+        output = "Here is the component:\n\n```json\n{\n"
+            + "  \"name\": \"item-list\",\n"
+            + "  \"description\": \"List of items\",\n"
+            + "  \"fields\": [{\"name\": \"items\", \"type\": \"text\", \"label\": \"Items\"}],\n"
+            + "  \"html\": \"" + html + "\",\n"
+            + "  \"previewHtml\": \"<div>Preview</div>\",\n"
+            + "  \"sampleData\": {\"items\": 3}\n"
+            + "}\n```\n\nThe component renders every item of the model. Let me know if you need anything else!";
+    }
+
+    @Benchmark
+    public String singlePass() {
+        return JsonExtractor.extract(output, true);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return LegacyJsonExtraction.extractJsonBlock(output, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonExtractorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
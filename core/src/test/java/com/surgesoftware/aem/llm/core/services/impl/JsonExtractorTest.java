@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test class for JsonExtractor: its output must match the former regex based extraction
+ * ({@link LegacyJsonExtraction}) on the corpus of LLM outputs in {@code llm-output}, and on
+ * random mutations of it
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class JsonExtractorTest {
+
+    private static final String[] MUTATIONS = {
+        "\"", "\\\"", "\\", "```", "```json\n", "``` json ", "``", "`", "\n", "\r\n", " ", "\u2003",
+        "{", "}", "[", "]", ",", ":", ": \"", "\", ", "0", "-", "true", "\t", "\u0001"
+    };
+
+    private static final Map<String, String> corpus = new LinkedHashMap<>();
+
+    @BeforeClass
+    public static void loadCorpus() throws IOException, URISyntaxException {
+        File directory = new File(JsonExtractorTest.class.getResource("/llm-output").toURI());
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            corpus.put(file.getName(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void assertSameAsLegacy(String description, String raw) {
+        for (boolean stripMarkdown : new boolean[] {true, false}) {
+            assertEquals(description + " (stripMarkdown=" + stripMarkdown + ")",
+                         LegacyJsonExtraction.extractJsonBlock(raw, stripMarkdown),
+                         JsonExtractor.extract(raw, stripMarkdown));
+        }
+        assertEquals(description + " (quote repair)",
+                     LegacyJsonExtraction.escapeUnescapedQuotesInStringValues(raw),
+                     JsonExtractor.repairQuotes(raw));
+    }
+
+    @Test
+    public void testCorpusMatchesLegacyExtraction() {
+        assertFalse(corpus.isEmpty());
+        corpus.forEach(JsonExtractorTest::assertSameAsLegacy);
+    }
+
+    @Test
+    public void testCorpusResultsParse() {
+        for (String name : new String[] {"01-plain.txt", "02-fenced.txt", "03-fenced-with-explanation.txt",
+                                         "04-unescaped-quotes.txt", "06-fence-inside-string.txt",
+                                         "14-single-quotes-and-backticks.txt"}) {
+            String json = JsonExtractor.extract(corpus.get(name), true);
+            assertTrue(name, LegacyJsonExtraction.isValidJson(json));
+        }
+        assertNull(JsonExtractor.extract(corpus.get("08-no-json.txt"), true));
+    }
+
+    @Test
+    public void testMutatedCorpusMatchesLegacyExtraction() {
+        Random random = new Random(20240501);
+        List<String> entries = new ArrayList<>(corpus.values());
+        int compared = 0;
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder(entries.get(random.nextInt(entries.size())));
+            int edits = 1 + random.nextInt(4);
+            for (int e = 0; e < edits; e++) {
+                int at = random.nextInt(text.length() + 1);
+                if (random.nextInt(4) == 0 && at < text.length()) {
+                    text.deleteCharAt(at);
+                } else {
+                    text.insert(at, MUTATIONS[random.nextInt(MUTATIONS.length)]);
+                }
+            }
+            String raw = text.toString();
+            // Runs of four or more backticks are documented to differ
+            if (raw.contains("````")) {
+                continue;
+            }
+            assertSameAsLegacy("mutation " + i + ": " + raw, raw);
+            compared++;
+        }
+        assertTrue(compared > 800);
+    }
+
+    @Test
+    public void testEdgeCases() {
+        String[] cases = {
+            null, "", "   ", "{}", "}{", "} {\"a\": 1", "\"x\" } {", "{\"a\": \"b\"", "{\"a\": 01}", "{\"a\": -}",
+            "{\"a\": 1.}", "{\"a\": 1e5, \"b\": -0.5E-3}", "{\"a\": truex}", "{\"a\": [1, 2,]}", "{\"a\": \"\\q\"}",
+            "{\"a\": \"\\u12G4\"}", "{\"a\": \"\\u00e9\"}", "{\"k:\": \"v\"}", "{\"a\": \"say \"hi\" now\"}",
+            "```json{\"a\": 1}```", "```\n{\"a\": \"x```y\"}\n```", "``{\"a\": 1}``", "{\"a\": \"b\" \u2003}",
+            "{\"a\": \"b\"\u2003", "1 }{", "{\"a\": [\"x\" \"y\"]}", "{\"a\": {\"b\": [null, false, true]}} trailing }"
+        };
+        for (String raw : cases) {
+            assertSameAsLegacy(String.valueOf(raw), raw);
+        }
+    }
+
+    @Test
+    public void testDeeplyNestedObjectIsRejectedLikeJackson() {
+        String deep = "{\"a\":" + "[".repeat(JsonExtractor.MAX_NESTING_DEPTH) + "]".repeat(JsonExtractor.MAX_NESTING_DEPTH) + "}";
+        assertSameAsLegacy("depth " + (JsonExtractor.MAX_NESTING_DEPTH + 1), deep);
+        String allowed = "{\"a\":" + "[".repeat(JsonExtractor.MAX_NESTING_DEPTH - 1)
+            + "]".repeat(JsonExtractor.MAX_NESTING_DEPTH - 1) + "}";
+        assertSameAsLegacy("depth " + JsonExtractor.MAX_NESTING_DEPTH, allowed);
+    }
+}
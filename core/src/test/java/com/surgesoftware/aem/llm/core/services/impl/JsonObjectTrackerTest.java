@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for JsonObjectTracker
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class JsonObjectTrackerTest {
+
+    @Test
+    public void testEndIsFoundAcrossPieces() {
+        JsonObjectTracker tracker = new JsonObjectTracker();
+        assertFalse(tracker.feed("Here it is:\n```json\n"));
+        assertEquals(-1, tracker.getStart());
+        assertFalse(tracker.feed("{\"fields\": [{\"name\": \"title\"}],"));
+        assertEquals(20, tracker.getStart());
+        assertFalse(tracker.feed(" \"html\": \"<div>"));
+        assertTrue(tracker.feed("</div>\"}\n```"));
+        assertEquals(20 + "{\"fields\": [{\"name\": \"title\"}], \"html\": \"<div></div>\"}".length(), tracker.getEnd());
+        assertTrue(tracker.feed(" more text {"));
+    }
+
+    @Test
+    public void testBracesAndQuotesInsideStringsAreIgnored() {
+        JsonObjectTracker tracker = new JsonObjectTracker();
+        assertFalse(tracker.feed("{\"js\": \"if (a) { b(\\\"}\\\"); }\\\\\""));
+        assertFalse(tracker.isClosed());
+        assertTrue(tracker.feed("}"));
+    }
+}
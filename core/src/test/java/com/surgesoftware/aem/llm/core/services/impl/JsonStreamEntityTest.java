@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.ImageAttachment;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Test class for JsonStreamEntity, with images streamed from an ImageAttachment
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class JsonStreamEntityTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static byte[] randomImage(int size) {
+        byte[] image = new byte[size];
+        new Random(42).nextBytes(image);
+        return image;
+    }
+
+    private String write(JsonStreamEntity entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private JsonStreamEntity entityFor(ImageAttachment image) {
+        OllamaGenerateRequest body = new OllamaGenerateRequest("llava:7b", true);
+        body.prompt = "Build a \"hero\" component";
+        body.options = new OllamaGenerateRequest.Options(0.7, 4000);
+        body.images = List.of(image);
+        return new JsonStreamEntity(objectMapper.writerFor(OllamaGenerateRequest.class), body);
+    }
+
+    @Test
+    public void testSpooledImageIsWrittenAsBase64() throws Exception {
+        byte[] bytes = randomImage(300_001);
+        try (ImageAttachment image = ImageAttachment.spool(new ByteArrayInputStream(bytes), "image/png", 1_000_000)) {
+            JsonNode body = objectMapper.readTree(write(entityFor(image)));
+
+            assertEquals(300_001, image.getSize());
+            assertEquals("llava:7b", body.path("model").asText());
+            assertEquals("Build a \"hero\" component", body.path("prompt").asText());
+            assertEquals(4000, body.path("options").path("num_predict").asInt());
+            assertFalse(body.has("format"));
+            assertEquals(Base64.getEncoder().encodeToString(bytes), body.path("images").path(0).asText());
+        }
+    }
+
+    @Test
+    public void testEntityIsRepeatable() throws Exception {
+        try (ImageAttachment image = ImageAttachment.spool(new ByteArrayInputStream(randomImage(5000)), "image/png",
+                                                           1_000_000)) {
+            JsonStreamEntity entity = entityFor(image);
+
+            assertTrue(entity.isRepeatable());
+            assertEquals(write(entity), write(entity));
+        }
+    }
+
+    @Test
+    public void testDataUrlImage() throws Exception {
+        String base64 = Base64.getEncoder().encodeToString(randomImage(1000));
+        ImageAttachment image = ImageAttachment.fromDataUrl("data:image/jpeg;base64," + base64);
+
+        assertEquals("image/jpeg", image.getContentType());
+        assertEquals(1000, image.getSize());
+        assertEquals(base64, objectMapper.readTree(write(entityFor(image))).path("images").path(0).asText());
+    }
+
+    @Test
+    public void testSameImageHasTheSameDigest() throws Exception {
+        byte[] bytes = randomImage(2000);
+        try (ImageAttachment first = ImageAttachment.spool(new ByteArrayInputStream(bytes), "image/png", 10_000);
+             ImageAttachment second = ImageAttachment.spool(new ByteArrayInputStream(bytes), "image/png", 10_000)) {
+            assertEquals(first.getDigest(), second.getDigest());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOversizedUploadIsRejected() throws Exception {
+        ImageAttachment.spool(new ByteArrayInputStream(randomImage(10_001)), "image/png", 10_000);
+    }
+
+    @Test(expected = IOException.class)
+    public void testClosedAttachmentCanNotBeRead() throws Exception {
+        ImageAttachment image = ImageAttachment.spool(new ByteArrayInputStream(randomImage(100)), "image/png", 10_000);
+        image.close();
+        try (InputStream in = image.openStream()) {
+            fail("Temporary file still readable");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The regex based JSON extraction that JsonExtractor replaced, kept unchanged (minus logging)
+ * as the reference its output is compared with
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class LegacyJsonExtraction {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private LegacyJsonExtraction() {
+    }
+
+    static String extractJsonBlock(String raw, boolean stripMarkdown) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return null;
+        }
+
+        if (stripMarkdown) {
+            raw = raw.replaceAll("(?s)```\\s*json\\s*\\n?", "")
+                     .replaceAll("(?s)```\\s*\\n?", "")
+                     .replaceAll("(?s)```\\s*$", "")
+                     .trim();
+
+            while (raw.startsWith("`")) {
+                raw = raw.substring(1);
+            }
+            while (raw.endsWith("`")) {
+                raw = raw.substring(0, raw.length() - 1);
+            }
+
+            raw = raw.replaceAll("(?s)^[^{]*", "")
+                     .replaceAll("(?s)[^}]*$", "")
+                     .trim();
+        }
+
+        int start = raw.indexOf('{');
+        int end = raw.lastIndexOf('}');
+
+        if (start != -1 && end != -1 && end > start) {
+            String extracted = raw.substring(start, end + 1);
+            if (extracted.trim().startsWith("{") && extracted.trim().endsWith("}")) {
+                String finalJson = extracted;
+                if (!isValidJson(extracted)) {
+                    finalJson = escapeUnescapedQuotesInStringValues(extracted);
+                }
+                return finalJson;
+            }
+        }
+
+        if (raw.contains("{") && raw.contains("}")) {
+            String fallback = escapeUnescapedQuotesInStringValues(raw);
+            return isValidJson(fallback) ? fallback : raw;
+        }
+
+        return null;
+    }
+
+    static String escapeUnescapedQuotesInStringValues(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return json;
+        }
+
+        StringBuilder result = new StringBuilder();
+        boolean inStringValue = false;
+        boolean escaped = false;
+
+        for (int i = 0; i < json.length(); i++) {
+            char current = json.charAt(i);
+
+            if (escaped) {
+                result.append(current);
+                escaped = false;
+                continue;
+            }
+
+            if (current == '\\') {
+                result.append(current);
+                escaped = true;
+                continue;
+            }
+
+            if (current == '"') {
+                if (!inStringValue) {
+                    if (isStartOfStringValue(json, i)) {
+                        inStringValue = true;
+                    }
+                    result.append(current);
+                } else {
+                    if (isEndOfStringValue(json, i)) {
+                        inStringValue = false;
+                        result.append(current);
+                    } else {
+                        result.append("\\\"");
+                    }
+                }
+            } else {
+                result.append(current);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private static boolean isStartOfStringValue(String json, int quotePos) {
+        for (int i = quotePos - 1; i >= 0; i--) {
+            char c = json.charAt(i);
+            if (c == ':') {
+                return true;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEndOfStringValue(String json, int quotePos) {
+        for (int i = quotePos + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == ',' || c == '}' || c == ']') {
+                return true;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return quotePos == json.length() - 1
+            || json.substring(quotePos + 1).trim().isEmpty()
+            || json.substring(quotePos + 1).trim().matches("^[}\\]]*$");
+    }
+
+    static boolean isValidJson(String json) {
+        try {
+            objectMapper.readTree(json);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -17,11 +17,21 @@ package com.surgesoftware.aem.llm.core.services.impl;
 
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
 import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.ImageAttachment;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test class for LocalLLMServiceImpl
@@ -39,6 +49,7 @@ public class LocalLLMServiceImplTest {
     
     @After
     public void tearDown() {
+        localLLMService.deactivate();
         localLLMService = null;
     }
     
@@ -312,4 +323,265 @@ public class LocalLLMServiceImplTest {
             assertTrue("Expected exception in test environment", true);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Two callers upload the same image and share one generation; the first one goes away while the
+     * retry after a failed attempt is pending. The retry still sends the image, and the temporary
+     * files are gone once the generation is over.
+     */
+    @Test
+    public void testCoalescedImageOutlivesTheCallerThatStartedTheGeneration() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            ollama.enqueue(StubOllama.GENERATE, StubOllama.json(503, "{\"error\":\"server busy\"}"));
+            localLLMService.activate(TestConfigurations.against(ollama));
+            
+            byte[] pixels = "not really a png".getBytes(StandardCharsets.UTF_8);
+            ComponentGenerationRequest first = imageRequest(pixels);
+            ComponentGenerationRequest second = imageRequest(pixels);
+            ImageAttachment firstImage = first.getImage();
+            ImageAttachment secondImage = second.getImage();
+            
+            CompletableFuture<ComponentGenerationResponse> firstResult = localLLMService.generateComponentAsync(first);
+            CompletableFuture<ComponentGenerationResponse> secondResult = localLLMService.generateComponentAsync(second);
+            assertTrue("First attempt should reach the backend",
+                      ollama.awaitRequests(StubOllama.GENERATE, 1, 5000));
+            firstResult.cancel(true);
+            
+            ComponentGenerationResponse response = secondResult.get(20, TimeUnit.SECONDS);
+            assertTrue("Remaining caller should get the retried generation: " + response.getError(), response.isSuccess());
+            assertEquals(2, ollama.requests(StubOllama.GENERATE).size());
+            assertTrue("Retry should still send the image",
+                      ollama.requests(StubOllama.GENERATE).get(1).contains(Base64.getEncoder().encodeToString(pixels)));
+            assertDeleted(firstImage);
+            assertDeleted(secondImage);
+        }
+    }
+    
+    /**
+     * One generation runs, one waits in the queue, the next one is turned away right away
+     */
+    @Test
+    public void testGenerationsBeyondTheQueueAreRejected() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            CountDownLatch release = new CountDownLatch(1);
+            ollama.setDefault(StubOllama.GENERATE, StubOllama.after(release, StubOllama.generated(StubOllama.COMPONENT)));
+            localLLMService.activate(TestConfigurations.against(ollama,
+                "maxInFlightRequests", 1, "maxQueuedRequests", 1));
+            
+            CompletableFuture<ComponentGenerationResponse> running = localLLMService.generateComponentAsync(request("card"));
+            CompletableFuture<ComponentGenerationResponse> queued = localLLMService.generateComponentAsync(request("teaser"));
+            ComponentGenerationResponse rejected = localLLMService.generateComponentAsync(request("hero"))
+                .get(1, TimeUnit.SECONDS);
+            
+            assertFalse(rejected.isSuccess());
+            assertEquals(ComponentGenerationResponse.ERROR_QUEUE_FULL, rejected.getErrorCode());
+            assertTrue(rejected.getRetryAfterSeconds() > 0);
+            assertFalse(queued.isDone());
+            
+            release.countDown();
+            assertTrue(running.get(10, TimeUnit.SECONDS).isSuccess());
+            ComponentGenerationResponse afterQueue = queued.get(10, TimeUnit.SECONDS);
+            assertTrue(afterQueue.isSuccess());
+            assertEquals(Integer.valueOf(1), afterQueue.getQueuePosition());
+        }
+    }
+    
+    /**
+     * Reconfiguring or stopping the service lets the generations already admitted finish against the
+     * old configuration, while new ones see the new one
+     */
+    @Test
+    public void testShutdownLetsQueuedGenerationsFinish() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            CountDownLatch release = new CountDownLatch(1);
+            ollama.setDefault(StubOllama.GENERATE, StubOllama.after(release, StubOllama.generated(StubOllama.COMPONENT)));
+            localLLMService.activate(TestConfigurations.against(ollama,
+                "maxInFlightRequests", 1, "maxQueuedRequests", 2));
+            
+            CompletableFuture<ComponentGenerationResponse> running = localLLMService.generateComponentAsync(request("card"));
+            CompletableFuture<ComponentGenerationResponse> queued = localLLMService.generateComponentAsync(request("teaser"));
+            assertTrue(ollama.awaitRequests(StubOllama.GENERATE, 1, 5000));
+            localLLMService.deactivate();
+            
+            ComponentGenerationResponse afterShutdown = localLLMService.generateComponent(request("hero"));
+            assertFalse(afterShutdown.isSuccess());
+            assertTrue(afterShutdown.getError().contains("not enabled"));
+            
+            release.countDown();
+            assertTrue(running.get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue("Queued generation should still run: " + queued.get(10, TimeUnit.SECONDS).getError(),
+                      queued.get().isSuccess());
+            assertEquals(2, ollama.requests(StubOllama.GENERATE).size());
+        }
+    }
+    
+    /**
+     * The prompt is embedded once per upstream generation, on the executor: not for a caller that
+     * joins a generation in flight, and not for a request that bypasses the cache
+     */
+    @Test
+    public void testSemanticLookupRunsOncePerFlight() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            CountDownLatch release = new CountDownLatch(1);
+            ollama.setDefault(StubOllama.GENERATE, StubOllama.after(release, StubOllama.generated(StubOllama.COMPONENT)));
+            ollama.setDefault("/api/embed", StubOllama.json(200, "{\"embeddings\":[[0.6,0.8,0.0]]}"));
+            localLLMService.activate(TestConfigurations.against(ollama,
+                "responseCacheEnabled", true, "responseCachePersistent", false, "semanticCacheEnabled", true));
+            
+            CompletableFuture<ComponentGenerationResponse> first = localLLMService.generateComponentAsync(request("card"));
+            assertTrue(ollama.awaitRequests(StubOllama.GENERATE, 1, 5000));
+            CompletableFuture<ComponentGenerationResponse> joined = localLLMService.generateComponentAsync(request("card"));
+            ComponentGenerationRequest fresh = request("teaser");
+            fresh.setBypassCache(true);
+            CompletableFuture<ComponentGenerationResponse> bypassing = localLLMService.generateComponentAsync(fresh);
+            
+            release.countDown();
+            assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue(joined.get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue(bypassing.get(10, TimeUnit.SECONDS).isSuccess());
+            assertEquals(1, ollama.requests("/api/embed").size());
+            assertEquals(2, ollama.requests(StubOllama.GENERATE).size());
+        }
+    }
+    
+    /**
+     * A slow embeddings endpoint delays a generation by the lookup timeout at most
+     */
+    @Test
+    public void testSlowSemanticLookupCountsAsMiss() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            CountDownLatch release = new CountDownLatch(1);
+            ollama.setDefault("/api/embed", StubOllama.after(release, StubOllama.json(200, "{\"embeddings\":[[1.0]]}")));
+            localLLMService.activate(TestConfigurations.against(ollama,
+                "responseCacheEnabled", true, "responseCachePersistent", false, "semanticCacheEnabled", true));
+            
+            long start = System.currentTimeMillis();
+            ComponentGenerationResponse response = localLLMService.generateComponentAsync(request("card"))
+                .get(SemanticCache.LOOKUP_TIMEOUT_MS + 4000, TimeUnit.MILLISECONDS);
+            release.countDown();
+            
+            assertTrue(response.isSuccess());
+            assertTrue(System.currentTimeMillis() - start >= SemanticCache.LOOKUP_TIMEOUT_MS);
+            assertEquals(1, ollama.requests(StubOllama.GENERATE).size());
+        }
+    }
+    
+    /**
+     * The deep connection test waits its turn like any generation, and polling it again right away
+     * reuses the result
+     */
+    @Test
+    public void testConnectionTestIsAdmittedAndShared() throws Exception {
+        try (StubOllama ollama = new StubOllama()) {
+            CountDownLatch release = new CountDownLatch(1);
+            ollama.enqueue(StubOllama.GENERATE, StubOllama.after(release, StubOllama.generated(StubOllama.COMPONENT)));
+            localLLMService.activate(TestConfigurations.against(ollama,
+                "maxInFlightRequests", 1, "maxQueuedRequests", 0));
+            
+            CompletableFuture<ComponentGenerationResponse> busy = localLLMService.generateComponentAsync(request("card"));
+            assertTrue(ollama.awaitRequests(StubOllama.GENERATE, 1, 5000));
+            localLLMService.testConnection();
+            assertEquals("A full queue should not let the test through", 1, ollama.requests(StubOllama.GENERATE).size());
+            
+            release.countDown();
+            assertTrue(busy.get(10, TimeUnit.SECONDS).isSuccess());
+            // Reconfigured: the result measured against the old configuration no longer counts
+            localLLMService.activate(TestConfigurations.against(ollama));
+            assertTrue(localLLMService.testConnection());
+            assertTrue(localLLMService.testConnection());
+            assertEquals(2, ollama.requests(StubOllama.GENERATE).size());
+        }
+    }
+    
+    /**
+     * A backend that does not have the model sends the call to another backend with the same model,
+     * before any fallback model is tried
+     */
+    @Test
+    public void testMissingModelIsLookedForOnAnotherBackend() throws Exception {
+        try (StubOllama first = new StubOllama(); StubOllama second = new StubOllama()) {
+            first.enqueue(StubOllama.GENERATE,
+                          StubOllama.json(404, "{\"error\":\"model 'llama3.1' not found, try pulling it first\"}"));
+            localLLMService.activate(TestConfigurations.against(first, "model", "llama3.1",
+                "backends", new String[] {first.getApiUrl() + ";weight=3", second.getApiUrl()}));
+            
+            ComponentGenerationResponse response = localLLMService.generateComponent(request("card"));
+            
+            assertTrue(response.getError(), response.isSuccess());
+            assertEquals(1, first.requests(StubOllama.GENERATE).size());
+            assertEquals(1, second.requests(StubOllama.GENERATE).size());
+            assertTrue(second.requests(StubOllama.GENERATE).get(0).contains("\"model\":\"llama3.1\""));
+        }
+    }
+    
+    /**
+     * Each backend lists its own models: the model is resolved against the backend the call goes to,
+     * and calls go to a backend that has it
+     */
+    @Test
+    public void testModelIsResolvedAgainstTheChosenBackend() throws Exception {
+        try (StubOllama first = new StubOllama(); StubOllama second = new StubOllama()) {
+            first.setDefault(StubOllama.TAGS, StubOllama.json(200, "{\"models\":[{\"name\":\"mistral:7b\"}]}"));
+            localLLMService.activate(TestConfigurations.against(first, "model", "llama3.1",
+                "backends", new String[] {first.getApiUrl() + ";weight=3", second.getApiUrl()}));
+            assertTrue(first.awaitRequests(StubOllama.TAGS, 1, 5000));
+            assertTrue(second.awaitRequests(StubOllama.TAGS, 1, 5000));
+            awaitCatalogsLoaded();
+            
+            for (int i = 0; i < 2; i++) {
+                ComponentGenerationRequest request = request("card" + i);
+                request.setBypassCache(true);
+                assertTrue(localLLMService.generateComponent(request).isSuccess());
+            }
+            
+            assertEquals(0, first.requests(StubOllama.GENERATE).size());
+            assertEquals(2, second.requests(StubOllama.GENERATE).size());
+            assertTrue(second.requests(StubOllama.GENERATE).get(0).contains("\"model\":\"llama3.1\""));
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void awaitCatalogsLoaded() throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (true) {
+            List<Map<String, Object>> backends = (List<Map<String, Object>>) localLLMService.getServiceMetrics().get("backends");
+            boolean loaded = true;
+            for (Map<String, Object> backend : backends) {
+                Map<String, Object> catalog = (Map<String, Object>) backend.get("modelCatalog");
+                loaded &= !((List<String>) catalog.get("models")).isEmpty();
+            }
+            if (loaded) {
+                return;
+            }
+            assertTrue("Model catalogs not loaded", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+    
+    private static ComponentGenerationRequest request(String componentType) {
+        return new ComponentGenerationRequest("Create a " + componentType + " component", componentType, null);
+    }
+    
+    private static ComponentGenerationRequest imageRequest(byte[] pixels) throws IOException {
+        ComponentGenerationRequest request = new ComponentGenerationRequest("Create a hero banner like this design",
+                                                                            "hero", null);
+        request.setImage(ImageAttachment.spool(new ByteArrayInputStream(pixels), "image/png", 1024));
+        return request;
+    }
+    
+    private static void assertDeleted(ImageAttachment image) throws InterruptedException {
+        // Closed on the executor thread right after the generation completed
+        long end = System.currentTimeMillis() + 2000;
+        while (true) {
+            try {
+                image.openStream().close();
+            } catch (IOException e) {
+                return;
+            }
+            if (System.currentTimeMillis() > end) {
+                fail("Temporary image file should be deleted: " + image);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
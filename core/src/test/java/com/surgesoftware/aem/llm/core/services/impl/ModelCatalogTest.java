@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Test class for ModelCatalog, against a stub Ollama server
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ModelCatalogTest {
+
+    private static final long TTL_MS = 200;
+    private static final List<String> INSTALLED = Arrays.asList("llava:7b", "llama3.1");
+
+    private StubOllama ollama;
+    private CloseableHttpClient httpClient;
+    private ModelCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        ollama = new StubOllama();
+        httpClient = HttpClients.createDefault();
+        catalog = new ModelCatalog(httpClient, new ObjectMapper(), ollama.getBaseUrl() + StubOllama.TAGS, TTL_MS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        catalog.close();
+        httpClient.close();
+        ollama.close();
+    }
+
+    @Test
+    public void testListingIsServedFromMemoryUntilItExpires() throws Exception {
+        assertEquals(INSTALLED, catalog.getModels());
+        assertEquals(INSTALLED, catalog.getModels());
+        assertEquals(1, ollama.requests(StubOllama.TAGS).size());
+        assertTrue(catalog.isReachable());
+
+        ollama.setDefault(StubOllama.TAGS, tags("mistral:7b"));
+        Thread.sleep(TTL_MS + 50);
+        // Expired: the caller still gets the listing in memory while it is refreshed behind it
+        assertEquals(INSTALLED, catalog.getModels());
+        await(() -> catalog.getModels().equals(Collections.singletonList("mistral:7b")));
+        assertEquals(2, ollama.requests(StubOllama.TAGS).size());
+    }
+
+    @Test
+    public void testStartKeepsTheListingFresh() throws Exception {
+        catalog.start();
+        assertTrue(ollama.awaitRequests(StubOllama.TAGS, 1, 5000));
+        await(() -> INSTALLED.equals(catalog.getStats().get("models")));
+
+        ollama.setDefault(StubOllama.TAGS, tags("mistral:7b"));
+        assertTrue(ollama.awaitRequests(StubOllama.TAGS, 2, 5000));
+        await(() -> Collections.singletonList("mistral:7b").equals(catalog.getStats().get("models")));
+    }
+
+    @Test
+    public void testInvalidateReloadsTheListing() throws Exception {
+        assertEquals(INSTALLED, catalog.getModels());
+        ollama.setDefault(StubOllama.TAGS, tags("llama3.1", "codellama:13b"));
+
+        catalog.invalidate();
+        await(() -> catalog.getModels().contains("codellama:13b"));
+    }
+
+    @Test
+    public void testMissingModelResolvesToTheBestInstalledOne() {
+        assertEquals("llava:7b", catalog.resolve("llava:7b"));
+        // Same family first
+        assertEquals("llama3.1", catalog.resolve("llama3"));
+        assertEquals("llama3.1", catalog.resolve("codellama"));
+
+        ollama.setDefault(StubOllama.TAGS, tags("phi3:mini", "qwen2:7b"));
+        catalog.invalidate();
+        await(() -> catalog.getModels().contains("phi3:mini"));
+        assertEquals("phi3:mini", catalog.resolve("phi"));
+        // No family match and no llama model: the first installed one
+        assertEquals("phi3:mini", catalog.resolve("gemma:2b"));
+        // A bare name is the :latest tag
+        ollama.setDefault(StubOllama.TAGS, tags("gemma:latest"));
+        catalog.invalidate();
+        await(() -> catalog.getModels().contains("gemma:latest"));
+        assertEquals("gemma", catalog.resolve("gemma"));
+    }
+
+    @Test
+    public void testFallbacksAreLimitedToInstalledModels() {
+        assertEquals(Collections.singletonList("llava:7b"),
+                     catalog.installedFallbacks("llama3.1", new String[] {"llama3.1", "mistral", "llava:7b"}));
+    }
+
+    @Test
+    public void testFailingTagsEndpointServesTheStaleListing() throws Exception {
+        assertEquals(INSTALLED, catalog.getModels());
+        ollama.setDefault(StubOllama.TAGS, StubOllama.json(500, "{\"error\":\"internal error\"}"));
+
+        Thread.sleep(TTL_MS + 50);
+        catalog.getModels();
+        await(() -> !catalog.isReachable());
+        assertEquals(INSTALLED, catalog.getModels());
+        assertEquals("HTTP 500 from " + ollama.getBaseUrl() + StubOllama.TAGS, catalog.getStats().get("lastError"));
+
+        // Invalidation reloads synchronously, and a failure still keeps the entries
+        catalog.invalidate();
+        assertEquals(INSTALLED, catalog.getModels());
+        assertEquals("llama3.1", catalog.resolve("llama3"));
+        assertEquals(Collections.singletonList("llava:7b"),
+                     catalog.installedFallbacks("llama3.1", new String[] {"mistral", "llava:7b"}));
+    }
+
+    @Test
+    public void testUnknownCatalogKeepsTheRequestedModels() {
+        ollama.setDefault(StubOllama.TAGS, StubOllama.json(503, "{\"error\":\"starting\"}"));
+
+        assertEquals("llama3", catalog.resolve("llama3"));
+        assertFalse(catalog.isReachable());
+        assertEquals(Arrays.asList("mistral", "llava:7b"),
+                     catalog.installedFallbacks("llama3", new String[] {"llama3", "mistral", "llava:7b"}));
+    }
+
+    private static StubOllama.Reply tags(String... names) {
+        StringBuilder body = new StringBuilder("{\"models\":[");
+        for (int i = 0; i < names.length; i++) {
+            body.append(i > 0 ? "," : "").append("{\"name\":\"").append(names[i]).append("\"}");
+        }
+        return StubOllama.json(200, body.append("]}").toString());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
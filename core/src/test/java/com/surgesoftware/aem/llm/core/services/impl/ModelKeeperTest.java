@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test class for ModelKeeper, against a local stand-in for the Ollama {@code /api/ps} and
+ * {@code /api/generate} endpoints
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ModelKeeperTest {
+
+    // A Wednesday
+    private static final ZonedDateTime NOW = ZonedDateTime.of(2024, 6, 5, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> warmUpRequests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private String apiUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        String psBody = "{\"models\":["
+            + "{\"name\":\"llama3.2:latest\",\"expires_at\":\"" + NOW.plusMinutes(1).toOffsetDateTime() + "\"},"
+            + "{\"name\":\"codellama:7b\",\"expires_at\":\"" + NOW.plusMinutes(25).toOffsetDateTime() + "\"}]}";
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/ps", exchange -> respond(exchange, psBody));
+        server.createContext("/api/generate", exchange -> {
+            warmUpRequests.add(objectMapper.readTree(exchange.getRequestBody()));
+            respond(exchange, "{\"done\":true}");
+        });
+        server.start();
+        httpClient = HttpClients.createDefault();
+        apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testReloadsMissingAndExpiringModelsOnly() throws Exception {
+        ModelKeeper keeper = keeper(Arrays.asList("llama3.2", "codellama:7b", "mistral"), "");
+
+        keeper.check();
+
+        assertEquals(2, warmUpRequests.size());
+        assertEquals("llama3.2", warmUpRequests.get(0).path("model").asText());
+        assertEquals("mistral", warmUpRequests.get(1).path("model").asText());
+        assertEquals("30m", warmUpRequests.get(0).path("keep_alive").asText());
+        assertFalse("Warm-up must not generate", warmUpRequests.get(0).has("prompt"));
+        assertEquals(2L, keeper.getStats().get("warmUps"));
+    }
+
+    @Test
+    public void testNothingIsReloadedOutsideTheSchedule() throws Exception {
+        ModelKeeper keeper = keeper(Arrays.asList("mistral"), "MON-FRI 18:00-20:00");
+
+        keeper.check();
+
+        assertTrue(warmUpRequests.isEmpty());
+        assertEquals(false, keeper.getStats().get("inSchedule"));
+    }
+
+    @Test
+    public void testSchedule() {
+        ModelKeeper.Schedule businessHours = ModelKeeper.Schedule.parse("MON-FRI 08:00-19:00");
+        assertTrue(businessHours.contains(NOW));
+        assertFalse(businessHours.contains(NOW.withHour(7)));
+        assertFalse(businessHours.contains(NOW.withHour(19)));
+        assertFalse(businessHours.contains(NOW.plusDays(3)));
+
+        ModelKeeper.Schedule overnight = ModelKeeper.Schedule.parse("22:00-6:00");
+        assertTrue(overnight.contains(NOW.withHour(23)));
+        assertTrue(overnight.contains(NOW.withHour(5)));
+        assertFalse(overnight.contains(NOW));
+
+        assertTrue(ModelKeeper.Schedule.parse("SAT-MON").contains(NOW.plusDays(5)));
+        assertFalse(ModelKeeper.Schedule.parse("SAT-MON").contains(NOW));
+        assertTrue(ModelKeeper.Schedule.parse("").contains(NOW));
+        assertTrue("Invalid schedules mean always", ModelKeeper.Schedule.parse("weekdays").contains(NOW));
+    }
+
+    @Test
+    public void testKeepAliveParameter() {
+        assertEquals(-1L, ModelKeeper.keepAliveParameter("-1"));
+        assertEquals(3600L, ModelKeeper.keepAliveParameter(" 3600 "));
+        assertEquals("30m", ModelKeeper.keepAliveParameter("30m"));
+        assertNull(ModelKeeper.keepAliveParameter(""));
+    }
+
+    private ModelKeeper keeper(List<String> models, String schedule) {
+        return new ModelKeeper(httpClient, objectMapper, apiUrl, models, "30m", schedule, 60000, 5000,
+                               Clock.fixed(NOW.toInstant(), ZoneOffset.UTC));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading one line of an Ollama stream: the streaming {@link OllamaChunk} reader against the
+ * former {@code readTree} of every line
+ *
+ * {@code token} is a typical token chunk; {@code done} is the final chunk with the context of a
+ * 2000 token conversation. Run with the GC profiler, {@code gc.alloc.rate.norm} is the heap
+ * allocated per chunk.
+ * Not run by the build. Run with:
+ * {@code mvn -pl core test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.surgesoftware.aem.llm.core.services.impl.OllamaChunkBenchmark}
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class OllamaChunkBenchmark {
+
+    @Param({"token", "done"})
+    public String shape;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
+    private final OllamaChunk chunk = new OllamaChunk();
+
+    private String line;
+
+    @Setup
+    public void setUp() {
+        if ("token".equals(shape)) {
+            line = "{\"model\":\"llama3.2\",\"created_at\":\"2024-06-01T10:15:42.123456789Z\","
+                + "\"response\":\" class=\\\"cmp-card\",\"done\":false}";
+            return;
+        }
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            context.append(i == 0 ? "" : ",").append(128000 + i * 37 % 4000);
+        }
+        line = "{\"model\":\"llama3.2\",\"created_at\":\"2024-06-01T10:16:30.987654321Z\",\"response\":\"\","
+            + "\"done\":true,\"done_reason\":\"stop\",\"context\":[" + context + "],"
+            + "\"total_duration\":48213456789,\"load_duration\":21345678,\"prompt_eval_count\":1024,"
+            + "\"prompt_eval_duration\":1934567890,\"eval_count\":976,\"eval_duration\":46123456789}";
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws Exception {
+        chunk.read(jsonFactory, line);
+        blackhole.consume(chunk.response);
+        blackhole.consume(chunk.done);
+        blackhole.consume(chunk.evalCount);
+    }
+
+    @Benchmark
+    public void tree(Blackhole blackhole) throws Exception {
+        JsonNode node = objectMapper.readTree(line);
+        blackhole.consume(node.hasNonNull("error"));
+        blackhole.consume(node.path("response").asText(""));
+        blackhole.consume(node.path("done").asBoolean(false));
+        blackhole.consume(node.path("eval_count").asLong(0));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(OllamaChunkBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
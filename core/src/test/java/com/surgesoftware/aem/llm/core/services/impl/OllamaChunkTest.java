@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for OllamaChunk
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class OllamaChunkTest {
+
+    private final JsonFactory factory = new JsonFactory();
+    private final OllamaChunk chunk = new OllamaChunk();
+
+    @Test
+    public void testTokenChunk() throws Exception {
+        chunk.read(factory, "{\"model\":\"llama3.2\",\"created_at\":\"2024-06-01T10:00:00Z\","
+            + "\"response\":\"<div \\\"x\\\">\",\"done\":false}");
+
+        assertEquals("<div \"x\">", chunk.response);
+        assertFalse(chunk.done);
+        assertNull(chunk.error);
+    }
+
+    @Test
+    public void testDoneChunkTimingsAreReadAndContextIsSkipped() throws Exception {
+        chunk.read(factory, "{\"response\":\"\",\"done\":true,\"done_reason\":\"stop\","
+            + "\"context\":[1,2,[3,{\"eval_count\":99}],4],\"total_duration\":5000,"
+            + "\"prompt_eval_count\":26,\"prompt_eval_duration\":130000,"
+            + "\"eval_count\":290,\"eval_duration\":4700000}");
+
+        assertTrue(chunk.done);
+        assertEquals(26, chunk.promptEvalCount);
+        assertEquals(130000, chunk.promptEvalDuration);
+        assertEquals(290, chunk.evalCount);
+        assertEquals(4700000, chunk.evalDuration);
+    }
+
+    @Test
+    public void testMissingAndNullValuesFallBack() throws Exception {
+        chunk.read(factory, "{\"response\":null,\"error\":null,\"done\":null}");
+
+        assertEquals("", chunk.response);
+        assertNull(chunk.error);
+        assertFalse(chunk.done);
+    }
+
+    @Test
+    public void testError() throws Exception {
+        chunk.read(factory, "{\"error\":\"model 'llava' not found\"}");
+
+        assertEquals("model 'llava' not found", chunk.error);
+    }
+
+    @Test
+    public void testReadClearsThePreviousLine() throws Exception {
+        chunk.read(factory, "{\"response\":\"a\",\"done\":true,\"eval_count\":3}");
+        chunk.read(factory, "{\"done\":false}");
+
+        assertEquals("", chunk.response);
+        assertFalse(chunk.done);
+        assertEquals(0, chunk.evalCount);
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void testNonObjectIsRejected() throws Exception {
+        chunk.read(factory, "[\"response\"]");
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void testTruncatedLineIsRejected() throws Exception {
+        chunk.read(factory, "{\"response\":\"<di");
+    }
+
+    @Test(expected = JsonProcessingException.class)
+    public void testUnclosedObjectIsRejected() throws Exception {
+        chunk.read(factory, "{\"response\":\"<div>\",\"done\":false");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for OllamaStreamReader
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class OllamaStreamReaderTest {
+
+    private final OllamaStreamReader reader = new OllamaStreamReader(new ObjectMapper());
+
+    private static InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTokensAreAppendedAndPublishedInOrder() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        String result = reader.read(ndjson(
+            "{\"response\":\"{\\\"name\\\"\",\"done\":false}",
+            "{\"response\":\":\\\"card\\\"}\",\"done\":false}",
+            "{\"response\":\"\",\"done\":true,\"eval_count\":2}"
+        ), "llama3.2", System.currentTimeMillis(), tokens::add);
+
+        assertEquals("{\"name\":\"card\"}", result);
+        assertEquals(2, tokens.size());
+        assertEquals("{\"name\"", tokens.get(0));
+    }
+
+    @Test
+    public void testReadingStopsAtDoneChunk() throws Exception {
+        String result = reader.read(ndjson(
+            "{\"response\":\"a\",\"done\":false}",
+            "{\"response\":\"b\",\"done\":true}",
+            "{\"response\":\"ignored\",\"done\":false}"
+        ), "llama3.2", System.currentTimeMillis(), null);
+
+        assertEquals("ab", result);
+    }
+
+    @Test
+    public void testMalformedChunksAreSkipped() throws Exception {
+        String result = reader.read(ndjson(
+            "{\"response\":\"a\",\"done\":false}",
+            "not json",
+            "",
+            "{\"response\":\"b\",\"done\":true}"
+        ), "llama3.2", System.currentTimeMillis(), null);
+
+        assertEquals("ab", result);
+    }
+
+    @Test(expected = IOException.class)
+    public void testErrorChunkFailsTheStream() throws Exception {
+        reader.read(ndjson(
+            "{\"response\":\"a\",\"done\":false}",
+            "{\"error\":\"model crashed\"}"
+        ), "llama3.2", System.currentTimeMillis(), null);
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptyStreamFails() throws Exception {
+        reader.read(ndjson("{\"response\":\"\",\"done\":true}"), "llama3.2", System.currentTimeMillis(), null);
+    }
+
+    @Test
+    public void testStreamIsStoppedOnceTheJsonObjectIsComplete() throws Exception {
+        List<String> stops = new ArrayList<>();
+        List<OllamaChunk> timings = new ArrayList<>();
+        String result = reader.read(ndjson(
+            "{\"response\":\"```json\\n{\\\"html\\\":\\\"<p>{}</p>\\\"\",\"done\":false}",
+            "{\"response\":\"}\\n```\",\"done\":false}",
+            "{\"response\":\"\\nHope this helps!\",\"done\":false}",
+            "{\"response\":\"\",\"done\":true}"
+        ), "llama3.2", System.currentTimeMillis(), null, timings::add, () -> stops.add("stop"));
+
+        assertEquals("```json\n{\"html\":\"<p>{}</p>\"}", result);
+        assertEquals(1, stops.size());
+        assertEquals(1, timings.get(0).evalCount);
+        assertEquals(1L, reader.getStats().get("stoppedStreams"));
+    }
+
+    @Test
+    public void testTokensAfterTheObjectAreCountedWhenNotStopping() throws Exception {
+        String result = reader.read(ndjson(
+            "{\"response\":\"{\\\"name\\\":\\\"card\\\"}\",\"done\":false}",
+            "{\"response\":\" Hope\",\"done\":false}",
+            "{\"response\":\" this helps\",\"done\":true}"
+        ), "llama3.2", System.currentTimeMillis(), null, null, null);
+
+        assertEquals("{\"name\":\"card\"} Hope this helps", result);
+        assertEquals(2L, reader.getStats().get("tokensAfterObject"));
+        assertEquals(1L, reader.getStats().get("completedStreams"));
+    }
+
+    @Test
+    public void testMalformedObjectIsNotStoppedEarly() throws Exception {
+        List<String> stops = new ArrayList<>();
+        String result = reader.read(ndjson(
+            "{\"response\":\"{\\\"html\\\":\\\"<p class=\\\"x\\\">}\",\"done\":false}",
+            "{\"response\":\"</p>\\\"}\",\"done\":true}"
+        ), "llama3.2", System.currentTimeMillis(), null, null, () -> stops.add("stop"));
+
+        assertEquals("{\"html\":\"<p class=\"x\">}</p>\"}", result);
+        assertTrue(stops.isEmpty());
+    }
+}
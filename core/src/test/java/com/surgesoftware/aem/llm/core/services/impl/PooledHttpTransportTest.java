@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.BackendHealth;
+import com.surgesoftware.aem.llm.core.services.LocalLLMConfiguration;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test class for PooledHttpTransport, against a stub Ollama server
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class PooledHttpTransportTest {
+
+    private static final String VERSION = "/api/version";
+
+    private StubOllama ollama;
+    private PooledHttpTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        ollama = new StubOllama();
+    }
+
+    @After
+    public void tearDown() {
+        if (transport != null) {
+            transport.close();
+        }
+        ollama.close();
+    }
+
+    @Test
+    public void testPoolIsSizedFromTheSettings() {
+        // A single backend gets room for every in-flight generation plus its background calls
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.of(
+            "maxConnectionsTotal", 6, "maxConnectionsPerRoute", 2, "maxInFlightRequests", 4)));
+        assertEquals(7, transport.getPoolStats().get("max"));
+        assertEquals(4 + PooledHttpTransport.BACKGROUND_CALLS_PER_ROUTE, transport.getPoolStats().get("maxPerRoute"));
+        transport.close();
+
+        // Max Connections per Route only raises the size
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.of(
+            "maxConnectionsTotal", 6, "maxConnectionsPerRoute", 12, "maxInFlightRequests", 4)));
+        assertEquals(12, transport.getPoolStats().get("maxPerRoute"));
+        transport.close();
+
+        // Each backend gets room for its generations, and the total covers every route
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.of(
+            "maxConnectionsTotal", 4, "maxConnectionsPerRoute", 2,
+            "backends", new String[] {"http://box1:11434;maxConcurrency=5", "http://box2:11434"})));
+        assertEquals(16, transport.getPoolStats().get("max"));
+        assertEquals(5 + PooledHttpTransport.BACKGROUND_CALLS_PER_ROUTE, transport.getPoolStats().get("maxPerRoute"));
+        transport.close();
+
+        // Embedding lookups of every worker go to the primary backend
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.of(
+            "maxConnectionsPerRoute", 2, "responseCacheEnabled", true, "semanticCacheEnabled", true,
+            "backends", new String[] {"http://box1:11434;maxConcurrency=2", "http://box2:11434;maxConcurrency=2"})));
+        assertEquals(4 + PooledHttpTransport.BACKGROUND_CALLS_PER_ROUTE, transport.getPoolStats().get("maxPerRoute"));
+    }
+
+    @Test
+    public void testBackgroundCallsGetAConnectionWhileGenerationsHoldTheirs() throws Exception {
+        LocalLLMConfiguration configuration = TestConfigurations.against(ollama, "maxInFlightRequests", 4,
+            "maxConnectionsPerRoute", 4, "connectionLeaseTimeout", 1);
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(configuration));
+        List<CloseableHttpResponse> generations = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                generations.add(transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION)));
+            }
+            assertEquals(4, transport.getPoolStats().get("leased"));
+
+            BackendHealthProbe probe = new BackendHealthProbe(transport.getClient(), new ObjectMapper(),
+                ServiceSettings.DEFAULT_PROVIDER, ollama.getApiUrl(), 60000);
+            probe.probe();
+            assertEquals(BackendHealth.STATUS_UP, probe.getSnapshot().getStatus());
+            probe.close();
+
+            ModelCatalog catalog = new ModelCatalog(transport.getClient(), new ObjectMapper(),
+                ollama.getBaseUrl() + StubOllama.TAGS, 60000);
+            assertFalse(catalog.getModels().isEmpty());
+            assertTrue(catalog.isReachable());
+            catalog.close();
+        } finally {
+            for (CloseableHttpResponse generation : generations) {
+                generation.close();
+            }
+        }
+    }
+
+    @Test
+    public void testLeaseTimeoutComesFromTheSettings() throws Exception {
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.against(ollama,
+            "maxInFlightRequests", 1, "maxConnectionsPerRoute", 1, "connectionLeaseTimeout", 1)));
+        int routeSize = 1 + PooledHttpTransport.BACKGROUND_CALLS_PER_ROUTE;
+
+        // Every connection of the route stays leased while its response is unread
+        List<CloseableHttpResponse> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < routeSize; i++) {
+                held.add(transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION)));
+            }
+            assertEquals(routeSize, transport.getPoolStats().get("leased"));
+            long start = System.currentTimeMillis();
+            try {
+                transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION));
+                fail("Expected no connection to be leased");
+            } catch (ConnectionPoolTimeoutException expected) {
+                long waited = System.currentTimeMillis() - start;
+                assertTrue("Waited " + waited + "ms", waited >= 900 && waited < 5000);
+            }
+        } finally {
+            for (CloseableHttpResponse response : held) {
+                EntityUtils.consume(response.getEntity());
+                response.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSocketTimeoutComesFromTheSettings() throws Exception {
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.against(ollama, "timeout", 1)));
+        CountDownLatch release = new CountDownLatch(1);
+        ollama.enqueue(VERSION, StubOllama.after(release, StubOllama.json(200, "{}")));
+        try {
+            transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION));
+            fail("Expected the read to time out");
+        } catch (SocketTimeoutException expected) {
+            // the configured timeout, not the default of minutes
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testConnectionsAreReleasedAndClosed() throws Exception {
+        transport = PooledHttpTransport.forSettings(ServiceSettings.from(TestConfigurations.against(ollama)));
+        for (int i = 0; i < 3; i++) {
+            try (CloseableHttpResponse response = transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION))) {
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+        // One kept-alive connection, reused by every request and back in the pool
+        assertEquals(0, transport.getPoolStats().get("leased"));
+        assertEquals(1, transport.getPoolStats().get("available"));
+
+        transport.close();
+        assertEquals(0, transport.getPoolStats().get("available"));
+        try {
+            transport.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION));
+            fail("Expected the closed pool to refuse requests");
+        } catch (IllegalStateException expected) {
+            // Connection pool shut down
+        }
+    }
+
+    @Test
+    public void testReconfigurationClosesThePreviousPool() throws Exception {
+        LocalLLMServiceImpl service = new LocalLLMServiceImpl();
+        try {
+            service.activate(TestConfigurations.against(ollama, "maxConnectionsTotal", 6));
+            assertTrue(service.testConnection());
+            PooledHttpTransport previous = transportOf(service);
+
+            service.activate(TestConfigurations.against(ollama, "maxConnectionsTotal", 10));
+            @SuppressWarnings("unchecked")
+            Map<String, Object> pool = (Map<String, Object>) service.getServiceMetrics().get("connectionPool");
+            assertEquals(10, pool.get("max"));
+            assertNotSame(previous, transportOf(service));
+
+            // Closed once the previous configuration's executor has drained
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!isClosed(previous)) {
+                assertTrue("Previous pool still open", System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+            assertEquals(0, previous.getPoolStats().get("available"));
+        } finally {
+            service.deactivate();
+        }
+    }
+
+    private boolean isClosed(PooledHttpTransport pooled) throws Exception {
+        try {
+            pooled.getClient().execute(new HttpGet(ollama.getBaseUrl() + VERSION)).close();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+
+    private static PooledHttpTransport transportOf(LocalLLMServiceImpl service) throws Exception {
+        Field stateField = LocalLLMServiceImpl.class.getDeclaredField("state");
+        stateField.setAccessible(true);
+        Object state = stateField.get(service);
+        Field transportField = state.getClass().getDeclaredField("transport");
+        transportField.setAccessible(true);
+        return (PooledHttpTransport) transportField.get(state);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.exceptions.LLMUnavailableException;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for RequestDeadline
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class RequestDeadlineTest {
+
+    private long now = 1000;
+
+    @Test
+    public void testTimeoutsAreClampedToTheTimeLeft() throws Exception {
+        RequestDeadline deadline = new RequestDeadline(now + 30000, () -> now);
+
+        assertEquals(10000, deadline.clamp(10000));
+        now += 25000;
+        assertEquals(5000, deadline.clamp(10000));
+        deadline.check(null);
+
+        now += 5000;
+        assertTrue(deadline.isOver());
+        try {
+            deadline.check("Timeout waiting for Ollama response");
+            fail("Should fail once the deadline has passed");
+        } catch (LLMUnavailableException e) {
+            assertTrue(e.isDeadlineExceeded());
+            assertTrue(e.getTechnicalDetails().contains("30 seconds"));
+            assertTrue(e.getTechnicalDetails().contains("Timeout waiting for Ollama response"));
+        }
+    }
+
+    @Test
+    public void testNoDeadlineNeverExpires() throws Exception {
+        RequestDeadline deadline = new RequestDeadline(0, () -> now);
+        now += TimeUnit.DAYS.toMillis(1);
+
+        assertFalse(deadline.isBounded());
+        assertFalse(deadline.isOver());
+        assertEquals(180000, deadline.clamp(180000));
+        deadline.check(null);
+    }
+
+    @Test
+    public void testEarlierOfRequestedAndConfiguredDeadlineApplies() {
+        long start = System.currentTimeMillis();
+        assertTrue(RequestDeadline.of(start + 10000, 300000).remainingMillis() <= 10000);
+        assertTrue(RequestDeadline.of(start + 600000, 300000).remainingMillis() <= 300000);
+        assertTrue(RequestDeadline.of(0, 300000).remainingMillis() > 10000);
+        assertFalse(RequestDeadline.of(0, 0).isBounded());
+    }
+
+    @Test
+    public void testAbandoningCancelsCallsInFlight() {
+        RequestDeadline deadline = new RequestDeadline(0);
+        CallCancellation running = new CallCancellation();
+        HttpPost request = new HttpPost("http://localhost:11434/api/generate");
+        running.attach(request);
+        deadline.register(running);
+
+        deadline.abandon("client disconnected");
+
+        assertTrue(request.isAborted());
+        assertTrue(deadline.isOver());
+        // A call started afterwards is cancelled right away
+        CallCancellation late = new CallCancellation();
+        deadline.register(late);
+        assertTrue(late.isCancelled());
+        try {
+            deadline.check(null);
+            fail("Should fail once abandoned");
+        } catch (LLMUnavailableException e) {
+            assertFalse(e.isDeadlineExceeded());
+            assertTrue(e.getMessage().contains("client disconnected"));
+        }
+    }
+
+    @Test
+    public void testBackoffIsCutShort() throws Exception {
+        RequestDeadline shortDeadline = new RequestDeadline(System.currentTimeMillis() + 1000);
+        assertFalse("A pause outlasting the deadline is skipped", shortDeadline.pause(2000));
+
+        RequestDeadline deadline = new RequestDeadline(0);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            scheduler.schedule(() -> deadline.abandon("client disconnected"), 100, TimeUnit.MILLISECONDS);
+            long start = System.currentTimeMillis();
+            assertFalse(deadline.pause(10000));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for RequestHedger, with legs that stream tokens or stall without a real backend
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class RequestHedgerTest {
+
+    private RequestHedger hedger;
+
+    @After
+    public void tearDown() {
+        if (hedger != null) {
+            hedger.close();
+        }
+    }
+
+    @Test
+    public void testNoHedgingUntilFirstTokenTimesAreKnown() throws Exception {
+        hedger = new RequestHedger(95, 100);
+        AtomicInteger legs = new AtomicInteger();
+
+        for (int i = 0; i < RequestHedger.MIN_SAMPLES - 1; i++) {
+            hedger.execute((tokens, cancellation) -> {
+                legs.incrementAndGet();
+                tokens.accept("ok");
+                return "ok";
+            }, null);
+        }
+
+        assertEquals(RequestHedger.MIN_SAMPLES - 1, legs.get());
+        assertEquals(-1L, hedger.getStats().get("hedgeDelayMs"));
+        assertEquals(0L, hedger.getStats().get("calls"));
+    }
+
+    @Test
+    public void testStalledLegLosesToHedge() throws Exception {
+        hedger = new RequestHedger(95, 100);
+        learn(RequestHedger.MIN_SAMPLES);
+        // The primary leg runs on the calling thread; the hedge may well call in first
+        Thread caller = Thread.currentThread();
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        String result = hedger.execute((tokens, cancellation) -> {
+            if (Thread.currentThread() == caller) {
+                return stallUntilCancelled(cancellation);
+            }
+            tokens.accept("fast ");
+            tokens.accept("answer");
+            return "fast answer";
+        }, received::add);
+
+        assertEquals("fast answer", result);
+        assertEquals(List.of("fast ", "answer"), received);
+        assertEquals(1L, hedger.getStats().get("hedged"));
+        assertEquals(1L, hedger.getStats().get("hedgeWins"));
+    }
+
+    @Test
+    public void testPrimaryFailureFallsBackToRunningHedge() throws Exception {
+        hedger = new RequestHedger(95, 100);
+        learn(RequestHedger.MIN_SAMPLES);
+        AtomicInteger legs = new AtomicInteger();
+
+        String result = hedger.execute((tokens, cancellation) -> {
+            if (legs.incrementAndGet() == 1) {
+                sleep(200);
+                throw new IOException("Ollama server error");
+            }
+            sleep(300);
+            tokens.accept("late");
+            return "late";
+        }, null);
+
+        assertEquals("late", result);
+    }
+
+    @Test
+    public void testHedgesStayWithinBudget() throws Exception {
+        hedger = new RequestHedger(95, 10);
+        learn(RequestHedger.SAMPLE_WINDOW);
+        AtomicInteger legs = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            hedger.execute((tokens, cancellation) -> {
+                legs.incrementAndGet();
+                sleep(50);
+                tokens.accept("slow");
+                return "slow";
+            }, null);
+        }
+
+        assertEquals("One hedge per ten calls", 1L, hedger.getStats().get("hedged"));
+        assertEquals(11, legs.get());
+        assertEquals(9L, hedger.getStats().get("budgetExhausted"));
+    }
+
+    private void learn(int samples) {
+        for (int i = 0; i < samples; i++) {
+            hedger.recordFirstToken(5);
+        }
+    }
+
+    private static String stallUntilCancelled(CallCancellation cancellation) throws IOException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!cancellation.isCancelled() && System.currentTimeMillis() < deadline) {
+            sleep(5);
+        }
+        throw new IOException("Request aborted");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test class for ResponseCache
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ResponseCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final MapStore store = new MapStore();
+
+    @Test
+    public void testHitReturnsFreshCopyMarkedAsCached() {
+        ResponseCache cache = new ResponseCache(60000, 1024 * 1024, null, now::get);
+        assertNull(cache.get("k1"));
+
+        cache.put("k1", response("hero"));
+        ComponentGenerationResponse first = cache.get("k1");
+        first.setComponentName("changed");
+        ComponentGenerationResponse second = cache.get("k1");
+
+        assertTrue(second.isCached());
+        assertEquals("hero", second.getComponentName());
+        assertEquals("<div>hero</div>", second.getGeneratedFiles().get("hero.html"));
+        assertEquals(2L, cache.getStats().get("memoryHits"));
+        assertEquals(1L, cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void testFailedResponsesAreNotCached() {
+        ResponseCache cache = new ResponseCache(60000, 1024 * 1024, store, now::get);
+        ComponentGenerationResponse failed = new ComponentGenerationResponse();
+        failed.setStatus("error");
+
+        cache.put("k1", failed);
+
+        assertNull(cache.get("k1"));
+        assertTrue(store.entries.isEmpty());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvictedBySize() {
+        long entrySize = new ResponseCache.Entry(jsonOf(response("a")), 0).sizeInBytes();
+        ResponseCache cache = new ResponseCache(60000, entrySize * 2 + entrySize / 2, null, now::get);
+
+        cache.put("a", response("a"));
+        cache.put("b", response("b"));
+        cache.get("a");
+        cache.put("c", response("c"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void testPersistentTierSurvivesRestartAndExpires() {
+        new ResponseCache(60000, 1024 * 1024, store, now::get).put("k1", response("hero"));
+
+        ResponseCache restarted = new ResponseCache(60000, 1024 * 1024, store, now::get);
+        assertEquals("hero", restarted.get("k1").getComponentName());
+        assertEquals(1L, restarted.getStats().get("persistentHits"));
+
+        ResponseCache later = new ResponseCache(60000, 1024 * 1024, store, now::get);
+        now.addAndGet(60001);
+        assertNull(later.get("k1"));
+        assertFalse(store.entries.containsKey("k1"));
+    }
+
+    private ComponentGenerationResponse response(String name) {
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        response.setStatus("success");
+        response.setComponentName(name);
+        response.setQueuePosition(2);
+        response.getGeneratedFiles().put(name + ".html", "<div>" + name + "</div>");
+        return response;
+    }
+
+    private String jsonOf(ComponentGenerationResponse response) {
+        ResponseCache cache = new ResponseCache(60000, 1024 * 1024, store, now::get);
+        cache.put("size", response);
+        return store.entries.remove("size").json;
+    }
+
+    private final class MapStore implements ResponseCache.Store {
+
+        final Map<String, ResponseCache.Entry> entries = new HashMap<>();
+
+        @Override
+        public ResponseCache.Entry read(String key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public void write(String key, String json) {
+            entries.put(key, new ResponseCache.Entry(json, now.get()));
+        }
+
+        @Override
+        public void delete(String key) {
+            entries.remove(key);
+        }
+    }
+}
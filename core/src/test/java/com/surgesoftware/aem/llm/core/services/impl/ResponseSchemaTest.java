@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.LLMResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for ResponseSchema
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ResponseSchemaTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static List<String> texts(JsonNode array) {
+        List<String> texts = new ArrayList<>();
+        array.forEach(node -> texts.add(node.asText()));
+        return texts;
+    }
+
+    @Test
+    public void testSchemaFollowsTheResponseModel() {
+        JsonNode schema = ResponseSchema.of(objectMapper, LLMResponse.class);
+
+        assertEquals("object", schema.path("type").asText());
+        JsonNode properties = schema.path("properties");
+        assertEquals("string", properties.path("html").path("type").asText());
+        assertEquals("object", properties.path("sampleData").path("type").asText());
+        assertTrue(texts(schema.path("required")).containsAll(List.of("name", "html", "dialog", "java", "fields")));
+        assertFalse(texts(schema.path("required")).contains("js"));
+
+        JsonNode field = properties.path("fields").path("items");
+        assertEquals("array", properties.path("fields").path("type").asText());
+        assertEquals("boolean", field.path("properties").path("required").path("type").asText());
+        assertEquals("string", field.path("properties").path("options").path("items").path("type").asText());
+        assertEquals(List.of("name", "type", "label"), texts(field.path("required")));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Test class for RetryPolicy, driven by a manual clock
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class RetryPolicyTest {
+
+    private long now = 1000;
+    private double nextRandom = 0.5;
+
+    @Test
+    public void testFailuresAreClassified() {
+        assertEquals(RetryPolicy.Failure.RETRYABLE, RetryPolicy.classify(new SocketTimeoutException("Read timed out")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE,
+                     RetryPolicy.classify(new BackendResponseException(503, "Ollama API failed with status 503: busy")));
+        assertEquals(RetryPolicy.Failure.RETRYABLE,
+                     RetryPolicy.classify(new BackendResponseException(500, "Ollama server error: llama runner process has terminated")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new BackendResponseException(500, "Ollama server error: input length exceeds the context length")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new BackendResponseException(400, "Ollama API failed with status 400: bad request")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new IOException("Invalid JSON response from Ollama", new JsonParseException(null, "bad"))));
+        assertEquals(RetryPolicy.Failure.MODEL_MISSING,
+                     RetryPolicy.classify(new BackendResponseException(404, "Model 'llama3' not found on Ollama server.")));
+        assertEquals(RetryPolicy.Failure.MODEL_MISSING,
+                     RetryPolicy.classify(new IOException("Ollama streaming error: model 'llama3' not found")));
+        assertEquals(RetryPolicy.Failure.MODEL_MISSING, RetryPolicy.classify(new BackendResponseException(400,
+                     "Ollama API failed with status 400: {\"error\":\"model \\\"llava:7b\\\" not found, try pulling it first\"}")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new BackendResponseException(500, "Ollama server error: invalid image input")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new IOException("Ollama streaming error: invalid image input")));
+    }
+
+    @Test
+    public void testServerErrorsAreRetriedWhateverTheirWording() {
+        String[] transientErrors = {
+            "Ollama server error: runtime error: invalid memory address or nil pointer dereference",
+            "Ollama server error: context length exceeds the KV cache size, retrying",
+            "Ollama server error: unsupported operation while the runner restarts",
+            "Ollama API failed with status 502: upstream response too long to buffer",
+            "Ollama server error: file not found: /tmp/ollama/runner.sock"
+        };
+        for (String error : transientErrors) {
+            int status = error.contains("502") ? 502 : 500;
+            assertEquals(error, RetryPolicy.Failure.RETRYABLE,
+                         RetryPolicy.classify(new BackendResponseException(status, error)));
+        }
+        assertEquals(RetryPolicy.Failure.RETRYABLE,
+                     RetryPolicy.classify(new IOException("Ollama streaming error: invalid memory address or nil pointer dereference")));
+        assertEquals(RetryPolicy.Failure.TERMINAL,
+                     RetryPolicy.classify(new BackendResponseException(422, "Ollama API failed with status 422: unprocessable")));
+    }
+
+    @Test
+    public void testRetriesAreLimitedToTheirShareOfRequests() {
+        RetryPolicy policy = new RetryPolicy(3, 20, () -> now, () -> nextRandom);
+        for (int i = 0; i < 100; i++) {
+            policy.recordRequest();
+        }
+
+        int granted = 0;
+        while (policy.tryAcquireRetry()) {
+            granted++;
+        }
+        assertEquals(20, granted);
+        assertEquals(1L, policy.getStats().get("budgetExhausted"));
+
+        // The window slides: old requests and retries no longer count
+        now += RetryPolicy.WINDOW_MS;
+        policy.recordRequest();
+        assertTrue(policy.tryAcquireRetry());
+    }
+
+    @Test
+    public void testQuietPeriodStillAllowsSomeRetries() {
+        RetryPolicy policy = new RetryPolicy(3, 20, () -> now, () -> nextRandom);
+        policy.recordRequest();
+
+        for (int i = 0; i < RetryPolicy.MIN_RETRIES_PER_WINDOW; i++) {
+            assertTrue(policy.tryAcquireRetry());
+        }
+        assertFalse(policy.tryAcquireRetry());
+    }
+
+    @Test
+    public void testBackoffIsJitteredAndCapped() {
+        RetryPolicy policy = new RetryPolicy(3, 20, () -> now, () -> nextRandom);
+        RetryPolicy.Backoff backoff = policy.backoff();
+
+        nextRandom = 0.0;
+        assertEquals(RetryPolicy.BASE_BACKOFF_MS, backoff.nextDelayMillis());
+        nextRandom = 1.0;
+        assertEquals(3 * RetryPolicy.BASE_BACKOFF_MS, backoff.nextDelayMillis());
+        assertEquals(9 * RetryPolicy.BASE_BACKOFF_MS, backoff.nextDelayMillis());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(backoff.nextDelayMillis() <= RetryPolicy.MAX_BACKOFF_MS);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test class for SemanticCache, against a local stand-in for the Ollama embeddings endpoint
+ *
+ * The stand-in embeds text as a bag of words hashed into a fixed number of buckets, so prompts
+ * sharing most of their words are close and unrelated prompts are not.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class SemanticCacheTest {
+
+    private static final int DIMENSIONS = 64;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private ResponseCache responseCache;
+    private SemanticCache semanticCache;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/embed", exchange -> {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            ObjectNode response = objectMapper.createObjectNode();
+            ArrayNode vector = response.putArray("embeddings").addArray();
+            for (float value : bagOfWords(request.path("input").asText())) {
+                vector.add(value);
+            }
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        httpClient = HttpClients.createDefault();
+        String apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+        responseCache = new ResponseCache(60000, 1024 * 1024, null);
+        semanticCache = new SemanticCache(new EmbeddingClient(httpClient, objectMapper, "ollama", apiUrl, "stand-in"),
+            responseCache, 100, 0.85, 0.6, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        semanticCache.close();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSimilarPromptIsServedAndDifferentContextIsNot() {
+        SemanticCache.Lookup first = semanticCache.lookup("hero banner with image and cta button", "ctx");
+        assertNotNull(first);
+        assertNull(first.response);
+        assertEquals(DIMENSIONS, first.embedding.length);
+
+        responseCache.put("key-hero", response("hero-banner"));
+        semanticCache.add("ctx", "key-hero", first.embedding);
+
+        SemanticCache.Lookup reworded = semanticCache.lookup("Hero banner with image and a CTA button", "ctx");
+        assertTrue(reworded.hit);
+        assertEquals("hero-banner", reworded.response.getComponentName());
+        assertTrue(reworded.similarity >= 0.85);
+
+        assertNull(semanticCache.lookup("hero banner with image and cta button", "other-ctx").response);
+        assertNull(semanticCache.lookup("footer with social links and newsletter form", "ctx").response);
+        assertEquals(1L, semanticCache.getStats().get("hits"));
+    }
+
+    @Test
+    public void testEmbeddingFailureIsReportedAsNoLookup() {
+        server.stop(0);
+
+        assertNull(semanticCache.lookup("hero banner", "ctx"));
+        assertEquals(1L, semanticCache.getStats().get("embeddingErrors"));
+    }
+
+    private static float[] bagOfWords(String text) {
+        float[] vector = new float[DIMENSIONS];
+        for (String word : text.toLowerCase().split("\\W+")) {
+            if (word.length() > 1) {
+                vector[Math.floorMod(word.hashCode(), DIMENSIONS)] += 1;
+            }
+        }
+        return vector;
+    }
+
+    private static ComponentGenerationResponse response(String name) {
+        ComponentGenerationResponse response = new ComponentGenerationResponse();
+        response.setStatus("success");
+        response.setComponentName(name);
+        return response;
+    }
+}
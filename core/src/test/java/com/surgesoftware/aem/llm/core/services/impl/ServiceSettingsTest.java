@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/**
+ * Test class for ServiceSettings
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ServiceSettingsTest {
+
+    @Test
+    public void testMissingConfigurationUsesEmbeddedDefaults() {
+        ServiceSettings settings = ServiceSettings.from(null);
+
+        assertTrue(settings.enabled);
+        assertTrue(settings.isOllama());
+        assertEquals(ServiceSettings.DEFAULT_API_URL, settings.apiUrl);
+        assertEquals(ServiceSettings.DEFAULT_MODEL, settings.model);
+        assertEquals(ServiceSettings.DEFAULT_TIMEOUT, settings.timeout);
+    }
+
+    @Test
+    public void testResponseCacheIsOptIn() {
+        // Generating again should give a new variant unless caching was asked for
+        for (ServiceSettings settings : new ServiceSettings[] {
+                ServiceSettings.from(null), ServiceSettings.from(TestConfigurations.of()) }) {
+            assertFalse(settings.responseCacheEnabled);
+            assertFalse(settings.responseCachePersistent);
+        }
+        assertTrue(ServiceSettings.from(TestConfigurations.of("responseCacheEnabled", true)).responseCacheEnabled);
+    }
+
+    @Test
+    public void testInactiveSettingsAreDisabled() {
+        ServiceSettings settings = ServiceSettings.inactive();
+
+        assertFalse(settings.enabled);
+        assertEquals(ServiceSettings.DEFAULT_MODEL, settings.model);
+    }
+
+    @Test
+    public void testBackendEntries() {
+        List<BackendEndpoint> backends = BackendEndpoint.parseAll(new String[] {
+            "http://box1:11434;weight=2;maxConcurrency=3",
+            "http://box2:11434/api/generate",
+            "box3:11434",
+            "http://box4:11434;speed=fast"
+        }, "http://localhost:11434/api/generate", 4, 8);
+
+        assertEquals(2, backends.size());
+        assertEquals("http://box1:11434/api/generate", backends.get(0).apiUrl);
+        assertEquals(2, backends.get(0).weight);
+        assertEquals(3, backends.get(0).maxConcurrency);
+        assertEquals(1, backends.get(1).weight);
+        assertEquals(4, backends.get(1).maxConcurrency);
+
+        BackendEndpoint single = BackendEndpoint.parseAll(new String[0], "http://localhost:11434/api/generate", 4, 8).get(0);
+        assertEquals("http://localhost:11434/api/generate", single.apiUrl);
+        assertEquals(8, single.maxConcurrency);
+    }
+}
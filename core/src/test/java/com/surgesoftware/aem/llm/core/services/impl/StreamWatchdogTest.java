@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for StreamWatchdog, driven by a manual clock
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class StreamWatchdogTest {
+
+    private long now = 1000;
+    private final StreamWatchdog watchdog = new StreamWatchdog(() -> now);
+
+    @After
+    public void tearDown() {
+        watchdog.close();
+    }
+
+    @Test
+    public void testMissingFirstTokenAbortsRequest() {
+        HttpPost request = new HttpPost("http://localhost:11434/api/generate");
+        StreamWatchdog.Watch watch = watchdog.watch(request, new AdaptiveTimeouts.Deadlines(5000, 2000, 60000));
+
+        now += 4000;
+        watchdog.checkAll();
+        assertFalse(request.isAborted());
+
+        now += 2000;
+        watchdog.checkAll();
+        assertTrue(request.isAborted());
+        assertTrue(watch.getExpiredReason().startsWith("First token timeout"));
+        assertEquals(1L, watchdog.getStats().get("firstTokenTimeouts"));
+    }
+
+    @Test
+    public void testStalledStreamAbortsRequest() {
+        HttpPost request = new HttpPost("http://localhost:11434/api/generate");
+        StreamWatchdog.Watch watch = watchdog.watch(request, new AdaptiveTimeouts.Deadlines(5000, 2000, 60000));
+
+        for (int i = 0; i < 10; i++) {
+            now += 1500;
+            watch.onToken();
+            watchdog.checkAll();
+        }
+        assertFalse("Steady tokens keep the stream alive", request.isAborted());
+
+        now += 2500;
+        watchdog.checkAll();
+        assertTrue(request.isAborted());
+        assertTrue(watch.getExpiredReason().startsWith("Stream idle timeout"));
+    }
+
+    @Test
+    public void testClosedWatchIsNotChecked() {
+        HttpPost request = new HttpPost("http://localhost:11434/api/generate");
+        watchdog.watch(request, new AdaptiveTimeouts.Deadlines(5000, 2000, 60000)).close();
+
+        now += 100000;
+        watchdog.checkAll();
+        assertFalse(request.isAborted());
+        assertEquals(0, watchdog.getStats().get("watched"));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.LLMResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test class for StreamingJsonFieldParser, fed with the output split into small tokens
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class StreamingJsonFieldParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, JsonNode> fields = new LinkedHashMap<>();
+    private final List<String> fieldOrder = new ArrayList<>();
+
+    private StreamingJsonFieldParser newParser() {
+        return new StreamingJsonFieldParser(objectMapper, (name, value) -> {
+            fieldOrder.add(name);
+            fields.put(name, value);
+        });
+    }
+
+    private static void feedInTokens(StreamingJsonFieldParser parser, String text, int tokenLength) {
+        for (int i = 0; i < text.length(); i += tokenLength) {
+            parser.feed(text.substring(i, Math.min(text.length(), i + tokenLength)));
+        }
+    }
+
+    @Test
+    public void testFieldsAreEmittedAsSoonAsTheyComplete() {
+        StreamingJsonFieldParser parser = newParser();
+        parser.feed("{\"name\": \"hero\", \"html\": \"<div cla");
+        assertEquals(List.of("name"), fieldOrder);
+
+        parser.feed("ss=\\\"hero\\\">ü</div>\"");
+        assertEquals("a field is reported once the next one starts", List.of("name"), fieldOrder);
+
+        parser.feed(", \"java\": \"package");
+        assertEquals(List.of("name", "html"), fieldOrder);
+        assertEquals("<div class=\"hero\">ü</div>", fields.get("html").asText());
+        assertFalse(parser.isComplete());
+        assertNull(parser.getResult());
+
+        parser.feed(" x;\"}");
+        assertEquals(List.of("name", "html", "java"), fieldOrder);
+        assertTrue(parser.isComplete());
+        assertEquals("package x;", parser.getResult().get("java").asText());
+    }
+
+    @Test
+    public void testNestedValuesAreEmittedWhole() throws Exception {
+        String json = "```json\n{\"name\":\"teaser\",\"fields\":[{\"name\":\"title\",\"type\":\"textfield\"}],"
+            + "\"sampleData\":{\"title\":\"Hello\",\"count\":3,\"ratio\":0.5,\"shown\":true,\"link\":null}}\n```";
+        StreamingJsonFieldParser parser = newParser();
+        feedInTokens(parser, json, 3);
+
+        assertEquals(List.of("name", "fields", "sampleData"), fieldOrder);
+        assertEquals("textfield", fields.get("fields").get(0).get("type").asText());
+        assertEquals(3, fields.get("sampleData").get("count").asInt());
+        assertTrue(parser.isComplete());
+
+        LLMResponse response = objectMapper.treeToValue(parser.getResult(), LLMResponse.class);
+        assertEquals("teaser", response.getName());
+        assertEquals("Hello", response.getSampleData().get("title"));
+    }
+
+    @Test
+    public void testMultiByteCharactersSplitAcrossTokens() {
+        StreamingJsonFieldParser parser = newParser();
+        feedInTokens(parser, "{\"description\":\"Café ☕ – 日本語\"}", 1);
+        assertEquals("Café ☕ – 日本語", fields.get("description").asText());
+        assertTrue(parser.isComplete());
+    }
+
+    @Test
+    public void testInvalidJsonStopsTheParser() {
+        StreamingJsonFieldParser parser = newParser();
+        parser.feed("{\"name\":\"card\", \"html\":\"<p class=\"x\"></p>\"}");
+        assertTrue(parser.isFailed());
+        assertFalse(parser.isComplete());
+        assertNull(parser.getResult());
+        assertEquals(List.of("name"), fieldOrder);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scripted Ollama server on a loopback port for tests that run the service end to end
+ *
+ * Every path answers with the replies queued for it, in order, then with its default reply.
+ * Out of the box it generates a small component, lists llava:7b and llama3.1, and reports a
+ * version and no loaded models to the health probes.
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class StubOllama implements Closeable {
+
+    static final String GENERATE = "/api/generate";
+    static final String TAGS = "/api/tags";
+    static final String COMPONENT = "{\"name\":\"card\",\"description\":\"A card\"}";
+
+    /**
+     * Answer to one request
+     */
+    interface Reply {
+        void send(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stub-ollama");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Deque<Reply>> queued = new ConcurrentHashMap<>();
+    private final Map<String, Reply> defaults = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> bodies = new ConcurrentHashMap<>();
+
+    StubOllama() throws IOException {
+        defaults.put(GENERATE, generated(COMPONENT));
+        defaults.put(TAGS, json(200, "{\"models\":[{\"name\":\"llava:7b\"},{\"name\":\"llama3.1\"}]}"));
+        defaults.put("/api/version", json(200, "{\"version\":\"0.5.0\"}"));
+        defaults.put("/api/ps", json(200, "{\"models\":[]}"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String getApiUrl() {
+        return getBaseUrl() + GENERATE;
+    }
+
+    /**
+     * Answer the next requests to the path with these replies, in order
+     */
+    StubOllama enqueue(String path, Reply... replies) {
+        Deque<Reply> replyQueue = queued.computeIfAbsent(path, p -> new ConcurrentLinkedDeque<>());
+        for (Reply reply : replies) {
+            replyQueue.add(reply);
+        }
+        return this;
+    }
+
+    /**
+     * Answer every request to the path, once the queued replies are used up, with this reply
+     */
+    StubOllama setDefault(String path, Reply reply) {
+        defaults.put(path, reply);
+        return this;
+    }
+
+    /**
+     * Bodies of the requests received on the path so far
+     */
+    List<String> requests(String path) {
+        return new ArrayList<>(bodies.getOrDefault(path, List.of()));
+    }
+
+    /**
+     * Wait until the path received the given number of requests
+     */
+    boolean awaitRequests(String path, int count, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (requests(path).size() < count) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        try (InputStream in = exchange.getRequestBody()) {
+            bodies.computeIfAbsent(path, p -> new CopyOnWriteArrayList<>())
+                  .add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Deque<Reply> replyQueue = queued.get(path);
+        Reply reply = replyQueue != null ? replyQueue.poll() : null;
+        if (reply == null) {
+            reply = defaults.getOrDefault(path, json(404, "{\"error\":\"not found\"}"));
+        }
+        try {
+            reply.send(exchange);
+        } catch (IOException e) {
+            // The client went away, e.g. a cancelled or stopped stream
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Plain JSON answer with the given status
+     */
+    static Reply json(int status, String body) {
+        return exchange -> {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        };
+    }
+
+    /**
+     * Streamed generation (application/x-ndjson) of the given text, one token per chunk
+     */
+    static Reply generated(String... tokens) {
+        return exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String token : tokens) {
+                    out.write(("{\"response\":" + quote(token) + ",\"done\":false}\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                out.write("{\"response\":\"\",\"done\":true,\"eval_count\":10,\"eval_duration\":1000000}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    /**
+     * The given reply, once the latch is released (or after ten seconds)
+     */
+    static Reply after(CountDownLatch release, Reply reply) {
+        return exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            reply.send(exchange);
+        };
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import com.surgesoftware.aem.llm.core.services.LocalLLMConfiguration;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * OSGi configurations for tests: the metatype defaults, with some attributes overridden
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+final class TestConfigurations {
+
+    private TestConfigurations() {
+    }
+
+    /**
+     * @param overrides Attribute names and values, alternating
+     */
+    static LocalLLMConfiguration of(Object... overrides) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < overrides.length; i += 2) {
+            values.put((String) overrides[i], overrides[i + 1]);
+        }
+        return (LocalLLMConfiguration) Proxy.newProxyInstance(LocalLLMConfiguration.class.getClassLoader(),
+            new Class<?>[] {LocalLLMConfiguration.class}, (proxy, method, args) -> {
+                if (values.containsKey(method.getName())) {
+                    return values.get(method.getName());
+                }
+                if (method.getDefaultValue() != null) {
+                    return method.getDefaultValue();
+                }
+                if (method.getName().equals("toString")) {
+                    return "TestConfiguration" + values;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    /**
+     * Quiet configuration against the given Ollama: no model loading on activation, no keep-warm
+     * schedule and no response cache, so every generation reaches the backend
+     */
+    static LocalLLMConfiguration against(StubOllama ollama, Object... overrides) {
+        Object[] values = new Object[overrides.length + 8];
+        values[0] = "apiUrl";
+        values[1] = ollama.getApiUrl();
+        values[2] = "warmUpOnActivate";
+        values[3] = false;
+        values[4] = "keepWarmEnabled";
+        values[5] = false;
+        values[6] = "responseCacheEnabled";
+        values[7] = false;
+        System.arraycopy(overrides, 0, values, 8, overrides.length);
+        return of(values);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.services.impl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Test class for VectorIndex
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class VectorIndexTest {
+
+    @Test
+    public void testNearestIsCosineSimilarityWithinContext() {
+        VectorIndex index = new VectorIndex(10);
+        index.add("ctx", "r1", new float[] {1, 0, 0});
+        index.add("ctx", "r2", new float[] {0, 2, 0});
+        index.add("other", "r3", new float[] {0, 0, 5});
+
+        VectorIndex.Match match = index.nearest("ctx", new float[] {0.1f, 3, 0});
+        assertEquals("r2", match.responseKey);
+        assertEquals(0.9994, match.similarity, 0.001);
+
+        assertEquals("r3", index.nearest("other", new float[] {1, 1, 1}).responseKey);
+        assertNull(index.nearest("unknown", new float[] {1, 0, 0}));
+        assertNull(index.nearest("ctx", new float[] {1, 0}));
+    }
+
+    @Test
+    public void testOldestEntryIsReplacedWhenFull() {
+        VectorIndex index = new VectorIndex(2);
+        index.add("ctx", "r1", new float[] {1, 0});
+        index.add("ctx", "r2", new float[] {0, 1});
+        index.add("ctx", "r1", new float[] {1, 0.1f});
+        index.add("ctx", "r3", new float[] {-1, 0});
+
+        assertEquals(2, index.size());
+        assertEquals("r2", index.nearest("ctx", new float[] {0, 1}).responseKey);
+        assertEquals("r3", index.nearest("ctx", new float[] {-1, 0}).responseKey);
+        assertEquals("r2", index.nearest("ctx", new float[] {1, 0.5f}).responseKey);
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        VectorIndex index = new VectorIndex(10);
+        index.add("ctx", "r1", new float[] {1, 2, 3});
+        index.add("ctx", "r2", new float[] {3, 2, 1});
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+
+        VectorIndex restored = new VectorIndex(10);
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, restored.size());
+        assertEquals("r2", restored.nearest("ctx", new float[] {3, 2, 1}).responseKey);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.servlets;
+
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationRequest;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.models.GeneratedArtifacts;
+import com.surgesoftware.aem.llm.core.services.FileManagementService;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import com.surgesoftware.aem.llm.core.services.LocalLLMService;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for the streaming (SSE) and blocking paths of ComponentGeneratorServlet
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class ComponentGeneratorServletTest {
+
+    private final LocalLLMService localLLMService = mock(LocalLLMService.class);
+    private final FileManagementService fileManagementService = mock(FileManagementService.class);
+    private final SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+    private final SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+    private final ClientConnection connection = new ClientConnection();
+    private final CompletableFuture<ComponentGenerationResponse> generation = new CompletableFuture<>();
+    private ComponentGeneratorServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        servlet = new ComponentGeneratorServlet();
+        inject("localLLMService", localLLMService);
+        inject("fileManagementService", fileManagementService);
+        when(request.getParameter("prompt")).thenReturn("card");
+        when(request.getParameter("stream")).thenReturn("true");
+        when(response.getWriter()).thenReturn(new PrintWriter(connection));
+        when(fileManagementService.saveGeneratedComponent(any(ComponentGenerationResponse.class), anyString()))
+            .thenReturn(new GeneratedArtifacts());
+    }
+
+    @Test
+    public void testTokensAreStreamedBeforeTheResult() throws Exception {
+        generateWith(listener -> {
+            listener.onStage(GenerationListener.STAGE_GENERATING, null);
+            listener.onToken("{\"name\"");
+            listener.onToken(":\"card\"}");
+            // Nothing else arrives for a while: the batch must not wait for the result
+            pause(500);
+            if (!connection.toString().contains(":\\\"card\\\"}")) {
+                generation.completeExceptionally(new AssertionError("Token batch held back until the result"));
+                return;
+            }
+            ComponentGenerationResponse result = new ComponentGenerationResponse("success", "Generated");
+            result.setComponentName("card");
+            result.setQueuePosition(2);
+            generation.complete(result);
+        });
+
+        servlet.doPost(request, response);
+
+        String stream = connection.toString();
+        assertTrue(stream, stream.startsWith("event: stage\n"));
+        assertTrue(stream, stream.contains("event: token\ndata: {\"text\":\"{\\\"name\\\"\"}\n\n"));
+        assertTrue(stream, stream.indexOf(":\\\"card\\\"}") < stream.indexOf("event: result"));
+        assertTrue(stream, stream.contains("\"componentName\":\"card\""));
+        assertTrue(stream, stream.contains("\"queuePosition\":2"));
+    }
+
+    @Test
+    public void testBlockingResponseTellsTheQueuePosition() throws Exception {
+        when(request.getParameter("stream")).thenReturn(null);
+        ComponentGenerationResponse result = new ComponentGenerationResponse("success", "Generated");
+        result.setComponentName("card");
+        result.setQueuePosition(3);
+        when(localLLMService.generateComponent(any(ComponentGenerationRequest.class))).thenReturn(result);
+
+        servlet.doPost(request, response);
+
+        String body = connection.toString();
+        assertTrue(body, body.contains("\"status\": \"success\""));
+        assertTrue(body, body.contains("\"queuePosition\": 3,"));
+    }
+
+    @Test
+    public void testBlockingErrorTellsTheQueuePosition() throws Exception {
+        when(request.getParameter("stream")).thenReturn(null);
+        ComponentGenerationResponse failed = new ComponentGenerationResponse("error", null);
+        failed.setError("Generation failed");
+        failed.setQueuePosition(1);
+        when(localLLMService.generateComponent(any(ComponentGenerationRequest.class))).thenReturn(failed);
+
+        servlet.doPost(request, response);
+
+        String body = connection.toString();
+        assertTrue(body, body.contains("\"error\": \"Generation failed\""));
+        assertTrue(body, body.contains("\"queuePosition\": 1,"));
+    }
+
+    @Test
+    public void testDisconnectedClientCancelsTheGeneration() throws Exception {
+        generateWith(listener -> {
+            listener.onStage(GenerationListener.STAGE_GENERATING, null);
+            listener.onToken("{");
+            connection.broken = true;
+            listener.onToken("\"name\"");
+        });
+
+        long start = System.currentTimeMillis();
+        servlet.doPost(request, response);
+
+        assertTrue(generation.isCancelled());
+        // Noticed on the next flush tick, well before the heartbeat would have found out
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private void generateWith(GenerationScript script) {
+        when(localLLMService.generateComponentAsync(any(ComponentGenerationRequest.class), any(GenerationListener.class)))
+            .thenAnswer(invocation -> {
+                GenerationListener listener = invocation.getArgument(1);
+                new Thread(() -> script.run(listener)).start();
+                return generation;
+            });
+    }
+
+    private void inject(String fieldName, Object value) throws Exception {
+        Field field = ComponentGeneratorServlet.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(servlet, value);
+    }
+
+    private static void pause(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface GenerationScript {
+        void run(GenerationListener listener);
+    }
+
+    /**
+     * Response body as the client receives it, until the client goes away
+     */
+    private static final class ClientConnection extends Writer {
+
+        private final StringBuffer received = new StringBuffer();
+        volatile boolean broken;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+            received.append(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return received.toString();
+        }
+    }
+}
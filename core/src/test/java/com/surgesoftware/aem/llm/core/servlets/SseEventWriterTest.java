@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 SURGE Software Solutions Private Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.surgesoftware.aem.llm.core.servlets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.surgesoftware.aem.llm.core.models.ComponentGenerationResponse;
+import com.surgesoftware.aem.llm.core.services.GenerationListener;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test class for SseEventWriter
+ *
+ * @author SURGE Software Solutions Private Limited
+ */
+public class SseEventWriterTest {
+
+    private static final long FLUSH_INTERVAL_MS = 50;
+
+    private final StringWriter output = new StringWriter();
+    private final SseEventWriter events = new SseEventWriter(new PrintWriter(output), new ObjectMapper(), FLUSH_INTERVAL_MS);
+
+    @Test
+    public void testFirstTokenGoesOutAndLaterOnesAreBatched() throws Exception {
+        events.onToken("Hello");
+        events.onToken(" wor");
+        events.onToken("ld");
+
+        assertEquals("event: token\ndata: {\"text\":\"Hello\"}\n\n", output.toString());
+
+        // Not due yet, then due without another token arriving
+        events.flushDueTokens();
+        assertFalse(output.toString().contains(" world"));
+        Thread.sleep(FLUSH_INTERVAL_MS);
+        events.flushDueTokens();
+        assertTrue(output.toString().endsWith("event: token\ndata: {\"text\":\" world\"}\n\n"));
+    }
+
+    @Test
+    public void testOtherEventsSendPendingTokensFirst() {
+        events.onToken("{");
+        events.onToken("\"name\"");
+        events.onStage(GenerationListener.STAGE_PARSING, null);
+
+        String stream = output.toString();
+        assertTrue(stream.indexOf("\\\"name\\\"") < stream.indexOf("event: stage"));
+    }
+
+    @Test
+    public void testWaitingSendsTheTailOfTheTokens() throws Exception {
+        CompletableFuture<ComponentGenerationResponse> generation = new CompletableFuture<>();
+        events.onToken("first");
+        events.onToken(" tail");
+
+        Thread completer = new Thread(() -> {
+            sleep(4 * FLUSH_INTERVAL_MS);
+            // The tail went out while the generation was still running
+            if (output.toString().contains(" tail")) {
+                generation.complete(new ComponentGenerationResponse());
+            } else {
+                generation.completeExceptionally(new AssertionError("Tail still held back"));
+            }
+        });
+        completer.start();
+
+        assertNotNull(events.awaitWhileConnected(generation, 10000));
+    }
+
+    @Test
+    public void testHeartbeatOnlyOnceTheStreamHasStarted() throws Exception {
+        events.sendHeartbeat();
+        assertEquals("", output.toString());
+        assertFalse(events.hasOutput());
+
+        events.onStage(GenerationListener.STAGE_QUEUED, "starting");
+        CompletableFuture<ComponentGenerationResponse> generation = new CompletableFuture<>();
+        new Thread(() -> {
+            sleep(6 * FLUSH_INTERVAL_MS);
+            generation.complete(new ComponentGenerationResponse());
+        }).start();
+        events.awaitWhileConnected(generation, 2 * FLUSH_INTERVAL_MS);
+
+        assertTrue(output.toString().contains(": keep-alive\n\n"));
+    }
+
+    @Test
+    public void testDisconnectedClientCancelsTheGeneration() throws Exception {
+        FailingWriter connection = new FailingWriter();
+        SseEventWriter streamEvents = new SseEventWriter(new PrintWriter(connection), new ObjectMapper(), FLUSH_INTERVAL_MS);
+        streamEvents.onStage(GenerationListener.STAGE_QUEUED, "starting");
+        connection.broken = true;
+        CompletableFuture<ComponentGenerationResponse> generation = new CompletableFuture<>();
+
+        assertNull(streamEvents.awaitWhileConnected(generation, FLUSH_INTERVAL_MS));
+        assertTrue(streamEvents.isDisconnected());
+        assertTrue(generation.isCancelled());
+
+        // Events after the disconnect are dropped
+        streamEvents.onToken("late");
+        assertFalse(connection.written.toString().contains("late"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Client connection that goes away on request
+     */
+    private static final class FailingWriter extends Writer {
+
+        final StringBuilder written = new StringBuilder();
+        volatile boolean broken;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+            written.append(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (broken) {
+                throw new IOException("Broken pipe");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}